@@ -116,6 +116,31 @@ module NarrativeJobService {
     */
     funcdef run_job(RunJobParams params) returns (job_id job_id) authentication required;
 
+    /*
+        jobs - the jobs to start, in order.
+    */
+    typedef structure {
+        list<RunJobParams> jobs;
+    } RunJobsParams;
+
+    /*
+        job_ids - the IDs of the started jobs, in the order of the jobs in the
+            parameters. The ID is null if the job couldn't be started.
+        errors - the errors of the jobs that couldn't be started, in the same
+            order. The error is null if the job was started.
+    */
+    typedef structure {
+        list<job_id> job_ids;
+        list<string> errors;
+    } RunJobsResults;
+
+    /*
+        Start several jobs at once. Jobs that can't be started are reported in
+        errors and don't keep the other jobs from starting.
+    */
+    funcdef run_jobs(RunJobsParams params) returns (RunJobsResults results)
+        authentication required;
+
     /*
         Get job params necessary for job execution
     */
@@ -138,9 +163,14 @@ module NarrativeJobService {
     funcdef update_job(UpdateJobParams params) returns (UpdateJobResults) 
         authentication required;
 
+    /*
+        line_number - optional, the number of the line in the log. Only set by 
+            get_job_logs when lines are filtered.
+    */
     typedef structure {
         string line;
         boolean is_error;
+        int line_number;
     } LogLine;
 
     funcdef add_job_logs(job_id job_id, list<LogLine> lines) 
@@ -149,16 +179,37 @@ module NarrativeJobService {
     /*
         skip_lines - optional parameter, number of lines to skip (in case they were 
             already loaded before).
+        wait_ms - optional parameter, if there are no lines after skip_lines wait up 
+            to this many milliseconds for new lines to arrive before returning. The 
+            server may wait for less time than requested.
+        to_line - optional parameter, number of the line after the last line to 
+            return. Together with skip_lines this gives the [skip_lines, to_line) 
+            window of lines to read.
+        limit - optional parameter, maximum number of lines to return.
+        errors_only - optional flag, only return lines marked as errors.
+        match - optional parameter, only return lines containing this string.
+        match_regex - optional flag, treat match as a Java regular expression that 
+            must be found in the line.
+        When any of errors_only or match are set at most 10000 lines are returned 
+        and each returned line has its line_number set.
     */
     typedef structure {
         job_id job_id;
         int skip_lines;
+        int wait_ms;
+        int to_line;
+        int limit;
+        boolean errors_only;
+        string match;
+        boolean match_regex;
     } GetJobLogsParams;
 
     /*
         last_line_number - common number of lines (including those in skip_lines 
             parameter), this number can be used as next skip_lines value to
-            skip already loaded lines next time.
+            skip already loaded lines next time. When lines are filtered or a limit
+            is given this is the number of the line after the last line that was
+            read, so the next page starts there.
     */
     typedef structure {
         list<LogLine> lines;
@@ -242,10 +293,47 @@ module NarrativeJobService {
     */
     funcdef list_job_statuses(string workspace_id) returns (list<JobState> job_states) authentication required;
 
+    /*
+        workspace_id - the ID of the workspace.
+        states - optional, only list jobs in these states: 'queued', 'started',
+            'completed', 'error' or 'canceled'. Jobs started before states were
+            recorded are only listed without a state filter.
+        cursor - optional, the next_cursor value of the previous page.
+        limit - optional, the maximum number of jobs to return. Default 100, maximum
+            1000.
+    */
+    typedef structure {
+        string workspace_id;
+        list<string> states;
+        string cursor;
+        int limit;
+    } ListWorkspaceJobsParams;
+
+    /*
+        job_states - the states of the jobs, in the order the jobs were submitted.
+        next_cursor - the cursor for the next page, or null if this is the last page.
+    */
+    typedef structure {
+        list<JobState> job_states;
+        string next_cursor;
+    } ListWorkspaceJobsResults;
+
+    /*
+      List the jobs in a workspace a page at a time.
+    */
+    funcdef list_workspace_jobs(ListWorkspaceJobsParams params)
+        returns (ListWorkspaceJobsResults) authentication required;
+
 
+    /*
+        timeout_ms - optional parameter, the time in milliseconds after which the
+            states of jobs that haven't been checked yet are reported in 
+            check_error as timeouts rather than delaying the response.
+    */
     typedef structure {
         list<job_id> job_ids;
         boolean with_job_params;
+        int timeout_ms;
     } CheckJobsParams;
 
     /*
@@ -262,6 +350,99 @@ module NarrativeJobService {
     funcdef check_jobs(CheckJobsParams params) returns (CheckJobsResults)
         authentication required;
 
+    /*
+        job_versions - the jobs to check, mapped to the state_version of each job the
+            client already has, or 0 if it has no state for the job yet.
+        with_job_params - return the parameters of the jobs whose state changed.
+        timeout_ms - see CheckJobsParams.
+    */
+    typedef structure {
+        mapping<job_id, int> job_versions;
+        boolean with_job_params;
+        int timeout_ms;
+    } CheckJobsSinceParams;
+
+    /*
+        job_states - states of the jobs that changed since the given versions,
+        job_params - parameters of the jobs that changed,
+        check_error - errors happening during job checking,
+        unchanged - the jobs that haven't changed since the given versions,
+        state_versions - the current state_version of each changed job. Pass these
+            back in the next call. The version of a job also changes when a sub job
+            is added to it. Jobs started before versions were recorded, and any job
+            when the service runs jobs in AWE, have no version and are always
+            returned.
+    */
+    typedef structure {
+        mapping<job_id, JobState> job_states;
+        mapping<job_id, RunJobParams> job_params;
+        mapping<job_id, JsonRpcError> check_error;
+        list<job_id> unchanged;
+        mapping<job_id, int> state_versions;
+    } CheckJobsSinceResults;
+
+    /*
+        Like check_jobs, but only returns the states of jobs that changed since the
+        client last checked them.
+    */
+    funcdef check_jobs_since(CheckJobsSinceParams params) returns (CheckJobsSinceResults)
+        authentication required;
+
+    /*
+        job_id - the ID of the root job of the tree.
+        max_depth - optional, the number of levels of sub jobs to return. 0 returns the
+            root job only. By default all levels are returned.
+    */
+    typedef structure {
+        job_id job_id;
+        int max_depth;
+    } GetJobTreeParams;
+
+    /*
+        job_id - id of the job.
+        parent_job_id - id of the parent job, or null for the root job.
+        depth - the number of levels below the root job, 0 for the root job.
+        job_state - 'queued', 'started', 'completed', 'error' or 'canceled', or null
+            for jobs started before states were recorded.
+        status - the last status message of the job.
+        finished - whether the job is done (including error/cancel cases) or not.
+        creation_time, exec_start_time and finish_time - see JobState.
+        sub_job_ids - ids of the direct sub jobs. Empty for jobs at max_depth.
+        child_states - the number of direct sub jobs in each job_state, e.g. 3 of
+            12 sub jobs are 'started'. Jobs without a state count as 'unknown'.
+        descendant_states - the same counts over all sub jobs in the tree below
+            the job.
+    */
+    typedef structure {
+        job_id job_id;
+        job_id parent_job_id;
+        int depth;
+        string job_state;
+        string status;
+        boolean finished;
+        int creation_time;
+        int exec_start_time;
+        int finish_time;
+        list<job_id> sub_job_ids;
+        mapping<string, int> child_states;
+        mapping<string, int> descendant_states;
+    } JobTreeNode;
+
+    /*
+        root_job_id - the ID of the root job.
+        jobs - the jobs in the tree, level by level starting with the root job.
+    */
+    typedef structure {
+        job_id root_job_id;
+        list<JobTreeNode> jobs;
+    } JobTree;
+
+    /*
+        Get a job and its sub jobs, their sub jobs and so on, with their states.
+    */
+    funcdef get_job_tree(GetJobTreeParams params) returns (JobTree tree)
+        authentication required;
+
     typedef structure {
         job_id job_id;
     } CancelJobParams;
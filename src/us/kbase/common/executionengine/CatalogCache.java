@@ -0,0 +1,230 @@
+package us.kbase.common.executionengine;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import us.kbase.catalog.CatalogClient;
+import us.kbase.catalog.ClientGroupConfig;
+import us.kbase.catalog.ClientGroupFilter;
+import us.kbase.catalog.ModuleVersion;
+import us.kbase.catalog.SelectModuleVersion;
+import us.kbase.catalog.VolumeMountConfig;
+import us.kbase.catalog.VolumeMountFilter;
+import us.kbase.common.service.JsonClientException;
+import us.kbase.common.service.ServerException;
+
+/** A bounded LRU cache of catalog lookups that are made for every job and sub job.
+ *
+ * Module versions looked up by git commit hash never change, so they don't expire. Module
+ * versions looked up by a release tag (release, beta or dev) or any other version string
+ * expire after the tag TTL, so a newly released version is picked up quickly. Looking up a tag
+ * also caches the version under its git commit hash. Client group and volume mount
+ * configurations expire after the configuration TTL.
+ *
+ * If refreshing an expired entry fails because the catalog can't be reached or is too slow,
+ * the expired entry is returned for up to the maximum stale time. Errors returned by the
+ * catalog itself, for example for an unknown module, are never cached and are always thrown.
+ *
+ * Cached objects are shared between callers and must not be modified.
+ */
+public class CatalogCache {
+
+    //TODO NJS_SDK move to common repo
+
+    private static final Pattern GIT_HASH = Pattern.compile("[0-9a-f]{40}");
+
+    private interface Loader<T> {
+        T load() throws IOException, JsonClientException;
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long expires;
+
+        private Entry(final Object value, final long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    private final long tagTtlMs;
+    private final long configTtlMs;
+    private final long maxStaleMs;
+    private final int refreshTimeoutMs;
+    private final Map<String, Entry> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong loadErrors = new AtomicLong();
+
+    /** Create the cache.
+     * @param maxSize the maximum number of cached lookups.
+     * @param tagTtlMs how long module versions looked up by a release tag are cached.
+     * @param configTtlMs how long client group and volume mount configurations are cached.
+     * @param maxStaleMs how long after expiring an entry may still be returned when the catalog
+     * can't be reached. 0 disables serving stale entries.
+     * @param refreshTimeoutMs the read timeout for refreshing an entry that could be served
+     * stale, so a slow catalog doesn't hold up the caller for long. 0 means no timeout.
+     */
+    public CatalogCache(
+            final int maxSize,
+            final long tagTtlMs,
+            final long configTtlMs,
+            final long maxStaleMs,
+            final int refreshTimeoutMs) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1");
+        }
+        if (tagTtlMs < 0 || configTtlMs < 0 || maxStaleMs < 0 || refreshTimeoutMs < 0) {
+            throw new IllegalArgumentException(
+                    "Catalog cache times cannot be negative");
+        }
+        this.tagTtlMs = tagTtlMs;
+        this.configTtlMs = configTtlMs;
+        this.maxStaleMs = maxStaleMs;
+        this.refreshTimeoutMs = refreshTimeoutMs;
+        cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    private static String moduleVersionKey(final String module, final String version) {
+        return "mv\n" + module + "\n" + version;
+    }
+
+    /** Look up a module version.
+     * @param catalog the catalog client, used on a cache miss. Its read timeout may be changed.
+     * @param module the module name.
+     * @param version the git commit hash, release tag or version of the module.
+     * @return the module version.
+     * @throws IOException if the catalog couldn't be reached and no stale entry is available.
+     * @throws JsonClientException if the catalog returned an error.
+     */
+    public ModuleVersion getModuleVersion(
+            final CatalogClient catalog,
+            final String module,
+            final String version)
+            throws IOException, JsonClientException {
+        final boolean isHash = GIT_HASH.matcher(version).matches();
+        final ModuleVersion mv = get(catalog, moduleVersionKey(module, version),
+                isHash ? -1 : tagTtlMs,
+                () -> catalog.getModuleVersion(new SelectModuleVersion()
+                        .withModuleName(module).withVersion(version)));
+        if (!isHash && mv.getGitCommitHash() != null) {
+            put(moduleVersionKey(module, mv.getGitCommitHash()), mv, -1);
+        }
+        return mv;
+    }
+
+    /** Look up the client group configurations of a method.
+     * @param catalog the catalog client, used on a cache miss. Its read timeout may be changed.
+     * @param module the module name.
+     * @param function the function name.
+     * @return the configurations.
+     * @throws IOException if the catalog couldn't be reached and no stale entry is available.
+     * @throws JsonClientException if the catalog returned an error.
+     */
+    public List<ClientGroupConfig> listClientGroupConfigs(
+            final CatalogClient catalog,
+            final String module,
+            final String function)
+            throws IOException, JsonClientException {
+        return get(catalog, "cg\n" + module + "\n" + function, configTtlMs,
+                () -> catalog.listClientGroupConfigs(new ClientGroupFilter()
+                        .withModuleName(module).withFunctionName(function)));
+    }
+
+    /** Look up the volume mount configurations of a method.
+     * @param catalog the catalog client with admin credentials, used on a cache miss. Its read
+     * timeout may be changed.
+     * @param module the module name.
+     * @param function the function name.
+     * @param clientGroup the client group the method runs in.
+     * @return the configurations.
+     * @throws IOException if the catalog couldn't be reached and no stale entry is available.
+     * @throws JsonClientException if the catalog returned an error.
+     */
+    public List<VolumeMountConfig> listVolumeMounts(
+            final CatalogClient catalog,
+            final String module,
+            final String function,
+            final String clientGroup)
+            throws IOException, JsonClientException {
+        return get(catalog, "vm\n" + module + "\n" + function + "\n" + clientGroup,
+                configTtlMs,
+                () -> catalog.listVolumeMounts(new VolumeMountFilter()
+                        .withModuleName(module).withFunctionName(function)
+                        .withClientGroup(clientGroup)));
+    }
+
+    // a negative TTL never expires
+    @SuppressWarnings("unchecked")
+    private <T> T get(
+            final CatalogClient catalog,
+            final String key,
+            final long ttlMs,
+            final Loader<T> loader)
+            throws IOException, JsonClientException {
+        final Entry e;
+        synchronized (cache) {
+            e = cache.get(key);
+        }
+        final long now = System.currentTimeMillis();
+        if (e != null && e.expires > now) {
+            hits.incrementAndGet();
+            return (T) e.value;
+        }
+        misses.incrementAndGet();
+        final boolean canServeStale = e != null && e.expires + maxStaleMs > now;
+        if (canServeStale && refreshTimeoutMs > 0) {
+            catalog.setConnectionReadTimeOut(refreshTimeoutMs);
+        }
+        final T value;
+        try {
+            value = loader.load();
+        } catch (ServerException se) {
+            throw se;
+        } catch (IOException ex) {
+            loadErrors.incrementAndGet();
+            if (canServeStale) {
+                staleHits.incrementAndGet();
+                return (T) e.value;
+            }
+            throw ex;
+        }
+        put(key, value, ttlMs);
+        return value;
+    }
+
+    private void put(final String key, final Object value, final long ttlMs) {
+        final long expires = ttlMs < 0 ? Long.MAX_VALUE - maxStaleMs :
+                System.currentTimeMillis() + ttlMs;
+        synchronized (cache) {
+            cache.put(key, new Entry(value, expires));
+        }
+    }
+
+    /** Get the hit, miss and stale hit counts and current size of the cache.
+     * @return the cache statistics.
+     */
+    public Map<String, Long> getStats() {
+        final Map<String, Long> ret = new LinkedHashMap<>();
+        ret.put("hits", hits.get());
+        ret.put("misses", misses.get());
+        ret.put("stale_hits", staleHits.get());
+        ret.put("load_errors", loadErrors.get());
+        synchronized (cache) {
+            ret.put("size", (long) cache.size());
+        }
+        return ret;
+    }
+}
@@ -15,7 +15,6 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import us.kbase.auth.AuthToken;
 import us.kbase.catalog.CatalogClient;
 import us.kbase.catalog.ModuleVersion;
-import us.kbase.catalog.SelectModuleVersion;
 import us.kbase.common.executionengine.CallbackServerConfigBuilder.CallbackServerConfig;
 import us.kbase.common.service.JsonClientException;
 import us.kbase.common.service.ServerException;
@@ -34,6 +33,10 @@ public abstract class SubsequentCallRunner {
     public static final String WORKDIR = "workdir";
     public static final String TEMPDIR = "tmp";
 
+    // sub jobs run in the same process as the job that started them, so they share the cache
+    private static final CatalogCache CATALOG_CACHE = new CatalogCache(
+            1000, 60 * 1000, 300 * 1000, 3600 * 1000, 5000);
+
     private final AuthToken token;
     private final String moduleName;
     private final UUID jobId;
@@ -73,8 +76,7 @@ public abstract class SubsequentCallRunner {
             serviceVer = RELEASE;
         }
         try {
-            return catClient.getModuleVersion(new SelectModuleVersion()
-                .withModuleName(moduleName).withVersion(serviceVer));
+            return CATALOG_CACHE.getModuleVersion(catClient, moduleName, serviceVer);
         } catch (ServerException se) {
             throw new IllegalArgumentException(String.format(
                     "Error looking up module %s with version %s: %s",
@@ -82,6 +84,13 @@ public abstract class SubsequentCallRunner {
         }
     }
     
+    /** Get the catalog cache shared by the jobs and sub jobs run in this process.
+     * @return the catalog cache.
+     */
+    public static CatalogCache getCatalogCache() {
+        return CATALOG_CACHE;
+    }
+
     protected ModuleRunVersion createModuleRunVersion(ModuleMethod modmeth, 
             String serviceVer, ModuleVersion mv) throws MalformedURLException {
         return new ModuleRunVersion(
@@ -29,12 +29,34 @@ public class CondorUtils {
      * @throws IOException
      */
     private static File createCondorSubmitFile(String ujsJobId, AuthToken token, AuthToken adminToken, String clientGroupsAndRequirements, String kbaseEndpoint, String baseDir, HashMap<String, String> optClassAds) throws IOException {
+        List<String> csf = createCondorSubmitDescription(ujsJobId, token, adminToken, clientGroupsAndRequirements, kbaseEndpoint, baseDir, optClassAds);
+        csf.add("queue 1");
+
+
+        File submitFile = new File(String.format("%s/%s.sub", getLogDir(token, ujsJobId), ujsJobId));
+        System.out.println("ABOUT TO PRINT OUT:" + submitFile);
+        FileUtils.writeLines(submitFile, "UTF-8", csf);
+        submitFile.setExecutable(true);
+        return submitFile;
+    }
+
+    private static File getLogDir(AuthToken token, String ujsJobId) {
+        //TODO Get from config / env
+        return new File(String.format("/mnt/awe/condor/submit/logs/%s/%s", token.getUserName(), ujsJobId));
+    }
+
+    /**
+     * Create the condor submit description of a job, without the queue statement
+     *
+     * @return The lines of the submit description
+     * @throws IOException
+     */
+    private static List<String> createCondorSubmitDescription(String ujsJobId, AuthToken token, AuthToken adminToken, String clientGroupsAndRequirements, String kbaseEndpoint, String baseDir, HashMap<String, String> optClassAds) throws IOException {
         HashMap<String, String> reqs = clientGroupsAndRequirements(clientGroupsAndRequirements);
         String clientGroups = reqs.get("client_group");
         String jobDir = baseDir + "/" + ujsJobId;
 
-        //TODO Get from config / env
-        File logdir = new File(String.format("/mnt/awe/condor/submit/logs/%s/%s", token.getUserName(), ujsJobId));
+        File logdir = getLogDir(token, ujsJobId);
         logdir.mkdirs();
 
         HashMap<String, String> envVariables = new HashMap<>();
@@ -151,14 +173,7 @@ public class CondorUtils {
                 csf.add(String.format("+%s = \"%s\"", pair.getKey(), pair.getValue()));
             }
         }
-        csf.add("queue 1");
-
-
-        File submitFile = new File(String.format("%s/%s.sub", logdir, ujsJobId));
-        System.out.println("ABOUT TO PRINT OUT:" + submitFile);
-        FileUtils.writeLines(submitFile, "UTF-8", csf);
-        submitFile.setExecutable(true);
-        return submitFile;
+        return csf;
     }
 
     /**
@@ -311,6 +326,132 @@ public class CondorUtils {
     }
 
 
+    /**
+     * Call condor_submit once for several jobs of the same user. Forking condor_submit for
+     * every job limits submission to a few jobs per second, so the jobs are queued from a
+     * single submit file instead. Every job sets all of its submit commands before its queue
+     * statement, so no settings carry over from the job before it. The jobs end up in one
+     * cluster, with process IDs in the order the jobs are given.
+     *
+     * @param ujsJobIds     The UJS job ids
+     * @param token         The token of the user of the submitted jobs
+     * @param clientGroups  The AWE Client Group of each job
+     * @param kbaseEndpoint The URL of the NJS Server
+     * @param baseDir       The Directory for the jobs to run in /mnt/awe/condor/username/
+     * @param optClassAds   The optional class ads of each job
+     * @param adminToken    The admin token used for bind mounts, stored in configs
+     * @return The condor job id of each job, in the same format condor_submit -terse uses for
+     * a single job
+     * @throws Exception
+     */
+    public static List<String> submitToCondorCLIBulk(List<String> ujsJobIds, AuthToken token, List<String> clientGroups, String kbaseEndpoint, String baseDir, List<HashMap<String, String>> optClassAds, AuthToken adminToken) throws Exception {
+        return submitToCondorCLIBulk(ujsJobIds, token, clientGroups, kbaseEndpoint, baseDir, optClassAds, adminToken, 10);
+    }
+
+    /**
+     * Submit several jobs with a single call to condor_submit, trying at most the given number
+     * of times. Callers that retry failed submissions themselves should try once.
+     *
+     * @param attempts The number of times to run condor_submit before giving up
+     * @see #submitToCondorCLIBulk(List, AuthToken, List, String, String, List, AuthToken)
+     */
+    public static List<String> submitToCondorCLIBulk(List<String> ujsJobIds, AuthToken token, List<String> clientGroups, String kbaseEndpoint, String baseDir, List<HashMap<String, String>> optClassAds, AuthToken adminToken, int attempts) throws Exception {
+        if (ujsJobIds.isEmpty()) {
+            return new ArrayList<String>();
+        }
+        Set<String> classAdNames = new TreeSet<String>();
+        for (HashMap<String, String> ads : optClassAds) {
+            classAdNames.addAll(ads.keySet());
+        }
+        List<String> csf = new ArrayList<String>();
+        for (int i = 0; i < ujsJobIds.size(); i++) {
+            csf.addAll(createCondorSubmitDescription(ujsJobIds.get(i), token, adminToken, clientGroups.get(i), kbaseEndpoint, baseDir, optClassAds.get(i)));
+            // clear the class ads other jobs set and this job doesn't
+            for (String name : classAdNames) {
+                if (!optClassAds.get(i).containsKey(name)) {
+                    csf.add(String.format("+%s = undefined", name));
+                }
+            }
+            csf.add("queue 1");
+        }
+        File condorSubmitFile = new File(String.format("%s/%s.bulk.sub", getLogDir(token, ujsJobIds.get(0)), ujsJobIds.get(0)));
+        FileUtils.writeLines(condorSubmitFile, "UTF-8", csf);
+        String[] cmdScript = {"condor_submit", "-terse", "-spool", condorSubmitFile.getAbsolutePath()};
+        String range = null;
+        int retries = attempts;
+
+        String stderr = null;
+        while (range == null && retries > 0) {
+            if (retries < attempts) {
+                // a condor_submit that reported a failure may still have queued the jobs
+                Map<String, String> queued = getJobIdsByBatchName(ujsJobIds);
+                if (queued.size() == ujsJobIds.size()) {
+                    List<String> jobIDs = new ArrayList<String>();
+                    for (String ujsJobId : ujsJobIds) {
+                        jobIDs.add(queued.get(ujsJobId));
+                    }
+                    return jobIDs;
+                }
+                for (String ujsJobId : queued.keySet()) {
+                    condorRemoveJobRange(ujsJobId);
+                }
+            }
+            CondorResponse r = runProcess(cmdScript);
+            if (r.success)
+                range = r.stdout.get(0);
+
+            stderr = String.join(", ", r.stderr);
+            retries--;
+        }
+        if (range == null) {
+            throw new IllegalStateException("Error running condorCommand: \n" + String.join(" ", cmdScript) + "\n" + stderr + "\n");
+        }
+        if (!classAdNames.contains("debugMode")) {
+            condorSubmitFile.delete();
+        }
+        // the range is cluster.first - cluster.last
+        String first = range.split("-")[0].trim();
+        int dot = first.indexOf('.');
+        String cluster = first.substring(0, dot);
+        int firstProc = Integer.parseInt(first.substring(dot + 1));
+        List<String> jobIDs = new ArrayList<String>();
+        for (int i = 0; i < ujsJobIds.size(); i++) {
+            String id = cluster + "." + (firstProc + i);
+            jobIDs.add(id + " - " + id);
+        }
+        return jobIDs;
+    }
+
+
+    /**
+     * Find the jobs with the given batch names in condor_q, e.g. to check whether a
+     * condor_submit that reported a failure queued the jobs anyway. Removed jobs are left out.
+     *
+     * @param ujsJobIds The UJS job ids, which are the batch names of the jobs
+     * @return The condor job id of each job found, in the same format condor_submit -terse uses
+     * for a single job
+     * @throws IllegalStateException if condor_q fails, since then it's not known which jobs
+     * are queued
+     */
+    public static Map<String, String> getJobIdsByBatchName(Collection<String> ujsJobIds) throws Exception {
+        //NEVER EVER USE QUOTES OR ESCAPED QUOTES FOR CONDOR COMMANDS! THEY DON'T WORK!
+        String[] cmdScript = new String[]{"condor_q", "-constraint", "JobStatus != 3", "-af", "JobBatchName", "ClusterId", "ProcId"};
+        CondorResponse r = runProcess(cmdScript);
+        if (!r.success) {
+            throw new IllegalStateException("Error running condorCommand: \n" + String.join(" ", cmdScript) + "\n" + String.join(", ", r.stderr) + "\n");
+        }
+        Set<String> wanted = new HashSet<String>(ujsJobIds);
+        Map<String, String> jobIDs = new HashMap<String, String>();
+        for (String line : r.stdout) {
+            String[] columns = line.trim().split(" ");
+            if (columns.length == 3 && wanted.contains(columns[0])) {
+                String id = columns[1] + "." + columns[2];
+                jobIDs.put(columns[0], id + " - " + id);
+            }
+        }
+        return jobIDs;
+    }
+
     /**
      * Call condor_q with the ujsJobId a string target to filter condor_q
      *
@@ -3,6 +3,8 @@ package us.kbase.narrativejobservice;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
+import us.kbase.narrativejobservice.sdkjobs.SDKMethodRunner;
+
 public class AppEventListener implements ServletContextListener {
 
 	@Override
@@ -11,5 +13,6 @@ public class AppEventListener implements ServletContextListener {
 	
 	@Override
 	public void contextDestroyed(ServletContextEvent arg0) {
+		SDKMethodRunner.shutdown();
 	}
 }
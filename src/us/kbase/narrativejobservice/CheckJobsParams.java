@@ -14,14 +14,19 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
 /**
  * <p>Original spec-file type: CheckJobsParams</p>
- * 
+ * <pre>
+ * timeout_ms - optional parameter, the time in milliseconds after which the
+ *     states of jobs that haven't been checked yet are reported in 
+ *     check_error as timeouts rather than delaying the response.
+ * </pre>
  * 
  */
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @Generated("com.googlecode.jsonschema2pojo")
 @JsonPropertyOrder({
     "job_ids",
-    "with_job_params"
+    "with_job_params",
+    "timeout_ms"
 })
 public class CheckJobsParams {
 
@@ -29,6 +34,8 @@ public class CheckJobsParams {
     private List<String> jobIds;
     @JsonProperty("with_job_params")
     private Long withJobParams;
+    @JsonProperty("timeout_ms")
+    private Long timeoutMs;
     private Map<java.lang.String, Object> additionalProperties = new HashMap<java.lang.String, Object>();
 
     @JsonProperty("job_ids")
@@ -61,6 +68,21 @@ public class CheckJobsParams {
         return this;
     }
 
+    @JsonProperty("timeout_ms")
+    public Long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    @JsonProperty("timeout_ms")
+    public void setTimeoutMs(Long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    public CheckJobsParams withTimeoutMs(Long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
     @JsonAnyGetter
     public Map<java.lang.String, Object> getAdditionalProperties() {
         return this.additionalProperties;
@@ -73,7 +95,7 @@ public class CheckJobsParams {
 
     @Override
     public java.lang.String toString() {
-        return ((((((("CheckJobsParams"+" [jobIds=")+ jobIds)+", withJobParams=")+ withJobParams)+", additionalProperties=")+ additionalProperties)+"]");
+        return ((((((((("CheckJobsParams"+" [jobIds=")+ jobIds)+", withJobParams=")+ withJobParams)+", timeoutMs=")+ timeoutMs)+", additionalProperties=")+ additionalProperties)+"]");
     }
 
 }
@@ -16,6 +16,19 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
  * <pre>
  * skip_lines - optional parameter, number of lines to skip (in case they were 
  *     already loaded before).
+ * wait_ms - optional parameter, if there are no lines after skip_lines wait up 
+ *     to this many milliseconds for new lines to arrive before returning. The 
+ *     server may wait for less time than requested.
+ * to_line - optional parameter, number of the line after the last line to 
+ *     return. Together with skip_lines this gives the [skip_lines, to_line) 
+ *     window of lines to read.
+ * limit - optional parameter, maximum number of lines to return.
+ * errors_only - optional flag, only return lines marked as errors.
+ * match - optional parameter, only return lines containing this string.
+ * match_regex - optional flag, treat match as a Java regular expression that 
+ *     must be found in the line.
+ * When any of errors_only or match are set at most 10000 lines are returned 
+ * and each returned line has its line_number set.
  * </pre>
  * 
  */
@@ -23,7 +36,13 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 @Generated("com.googlecode.jsonschema2pojo")
 @JsonPropertyOrder({
     "job_id",
-    "skip_lines"
+    "skip_lines",
+    "wait_ms",
+    "to_line",
+    "limit",
+    "errors_only",
+    "match",
+    "match_regex"
 })
 public class GetJobLogsParams {
 
@@ -31,6 +50,18 @@ public class GetJobLogsParams {
     private String jobId;
     @JsonProperty("skip_lines")
     private Long skipLines;
+    @JsonProperty("wait_ms")
+    private Long waitMs;
+    @JsonProperty("to_line")
+    private Long toLine;
+    @JsonProperty("limit")
+    private Long limit;
+    @JsonProperty("errors_only")
+    private Long errorsOnly;
+    @JsonProperty("match")
+    private String match;
+    @JsonProperty("match_regex")
+    private Long matchRegex;
     private Map<String, Object> additionalProperties = new HashMap<String, Object>();
 
     @JsonProperty("job_id")
@@ -63,6 +94,96 @@ public class GetJobLogsParams {
         return this;
     }
 
+    @JsonProperty("wait_ms")
+    public Long getWaitMs() {
+        return waitMs;
+    }
+
+    @JsonProperty("wait_ms")
+    public void setWaitMs(Long waitMs) {
+        this.waitMs = waitMs;
+    }
+
+    public GetJobLogsParams withWaitMs(Long waitMs) {
+        this.waitMs = waitMs;
+        return this;
+    }
+
+    @JsonProperty("to_line")
+    public Long getToLine() {
+        return toLine;
+    }
+
+    @JsonProperty("to_line")
+    public void setToLine(Long toLine) {
+        this.toLine = toLine;
+    }
+
+    public GetJobLogsParams withToLine(Long toLine) {
+        this.toLine = toLine;
+        return this;
+    }
+
+    @JsonProperty("limit")
+    public Long getLimit() {
+        return limit;
+    }
+
+    @JsonProperty("limit")
+    public void setLimit(Long limit) {
+        this.limit = limit;
+    }
+
+    public GetJobLogsParams withLimit(Long limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    @JsonProperty("errors_only")
+    public Long getErrorsOnly() {
+        return errorsOnly;
+    }
+
+    @JsonProperty("errors_only")
+    public void setErrorsOnly(Long errorsOnly) {
+        this.errorsOnly = errorsOnly;
+    }
+
+    public GetJobLogsParams withErrorsOnly(Long errorsOnly) {
+        this.errorsOnly = errorsOnly;
+        return this;
+    }
+
+    @JsonProperty("match")
+    public String getMatch() {
+        return match;
+    }
+
+    @JsonProperty("match")
+    public void setMatch(String match) {
+        this.match = match;
+    }
+
+    public GetJobLogsParams withMatch(String match) {
+        this.match = match;
+        return this;
+    }
+
+    @JsonProperty("match_regex")
+    public Long getMatchRegex() {
+        return matchRegex;
+    }
+
+    @JsonProperty("match_regex")
+    public void setMatchRegex(Long matchRegex) {
+        this.matchRegex = matchRegex;
+    }
+
+    public GetJobLogsParams withMatchRegex(Long matchRegex) {
+        this.matchRegex = matchRegex;
+        return this;
+    }
+
     @JsonAnyGetter
     public Map<String, Object> getAdditionalProperties() {
         return this.additionalProperties;
@@ -75,7 +196,7 @@ public class GetJobLogsParams {
 
     @Override
     public String toString() {
-        return ((((((("GetJobLogsParams"+" [jobId=")+ jobId)+", skipLines=")+ skipLines)+", additionalProperties=")+ additionalProperties)+"]");
+        return ((((((((((((((((((("GetJobLogsParams"+" [jobId=")+ jobId)+", skipLines=")+ skipLines)+", waitMs=")+ waitMs)+", toLine=")+ toLine)+", limit=")+ limit)+", errorsOnly=")+ errorsOnly)+", match=")+ match)+", matchRegex=")+ matchRegex)+", additionalProperties=")+ additionalProperties)+"]");
     }
 
 }
@@ -17,7 +17,9 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
  * <pre>
  * last_line_number - common number of lines (including those in skip_lines 
  *     parameter), this number can be used as next skip_lines value to
- *     skip already loaded lines next time.
+ *     skip already loaded lines next time. When lines are filtered or a limit
+ *     is given this is the number of the line after the last line that was
+ *     read, so the next page starts there.
  * </pre>
  * 
  */
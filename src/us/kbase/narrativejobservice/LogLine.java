@@ -13,14 +13,18 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
 /**
  * <p>Original spec-file type: LogLine</p>
- * 
+ * <pre>
+ * line_number - optional, the number of the line in the log. Only set by 
+ *     get_job_logs when lines are filtered.
+ * </pre>
  * 
  */
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @Generated("com.googlecode.jsonschema2pojo")
 @JsonPropertyOrder({
     "line",
-    "is_error"
+    "is_error",
+    "line_number"
 })
 public class LogLine {
 
@@ -28,6 +32,8 @@ public class LogLine {
     private String line;
     @JsonProperty("is_error")
     private Long isError;
+    @JsonProperty("line_number")
+    private Long lineNumber;
     private Map<String, Object> additionalProperties = new HashMap<String, Object>();
 
     @JsonProperty("line")
@@ -60,6 +66,21 @@ public class LogLine {
         return this;
     }
 
+    @JsonProperty("line_number")
+    public Long getLineNumber() {
+        return lineNumber;
+    }
+
+    @JsonProperty("line_number")
+    public void setLineNumber(Long lineNumber) {
+        this.lineNumber = lineNumber;
+    }
+
+    public LogLine withLineNumber(Long lineNumber) {
+        this.lineNumber = lineNumber;
+        return this;
+    }
+
     @JsonAnyGetter
     public Map<String, Object> getAdditionalProperties() {
         return this.additionalProperties;
@@ -72,7 +93,7 @@ public class LogLine {
 
     @Override
     public String toString() {
-        return ((((((("LogLine"+" [line=")+ line)+", isError=")+ isError)+", additionalProperties=")+ additionalProperties)+"]");
+        return ((((((((("LogLine"+" [line=")+ line)+", isError=")+ isError)+", lineNumber=")+ lineNumber)+", additionalProperties=")+ additionalProperties)+"]");
     }
 
 }
@@ -263,6 +263,25 @@ public class NarrativeJobServiceClient {
         return res.get(0);
     }
 
+    /**
+     * <p>Original spec-file function name: run_jobs</p>
+     * <pre>
+     * Start several jobs at once. Jobs that can't be started are reported in
+     * errors and don't keep the other jobs from starting.
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.narrativejobservice.RunJobsParams RunJobsParams}
+     * @return   parameter "results" of type {@link us.kbase.narrativejobservice.RunJobsResults RunJobsResults}
+     * @throws IOException if an IO exception occurs
+     * @throws JsonClientException if a JSON RPC exception occurs
+     */
+    public RunJobsResults runJobs(RunJobsParams params, RpcContext... jsonRpcContext) throws IOException, JsonClientException {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<RunJobsResults>> retType = new TypeReference<List<RunJobsResults>>() {};
+        List<RunJobsResults> res = caller.jsonrpcCall("NarrativeJobService.run_jobs", args, retType, true, true, jsonRpcContext, this.serviceVersion);
+        return res.get(0);
+    }
+
     /**
      * <p>Original spec-file function name: get_job_params</p>
      * <pre>
@@ -370,6 +389,24 @@ public class NarrativeJobServiceClient {
         return res.get(0);
     }
 
+    /**
+     * <p>Original spec-file function name: list_workspace_jobs</p>
+     * <pre>
+     * List the jobs in a workspace a page at a time.
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.narrativejobservice.ListWorkspaceJobsParams ListWorkspaceJobsParams}
+     * @return   instance of type {@link us.kbase.narrativejobservice.ListWorkspaceJobsResults ListWorkspaceJobsResults}
+     * @throws IOException if an IO exception occurs
+     * @throws JsonClientException if a JSON RPC exception occurs
+     */
+    public ListWorkspaceJobsResults listWorkspaceJobs(ListWorkspaceJobsParams params, RpcContext... jsonRpcContext) throws IOException, JsonClientException {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ListWorkspaceJobsResults>> retType = new TypeReference<List<ListWorkspaceJobsResults>>() {};
+        List<ListWorkspaceJobsResults> res = caller.jsonrpcCall("NarrativeJobService.list_workspace_jobs", args, retType, true, true, jsonRpcContext, this.serviceVersion);
+        return res.get(0);
+    }
+
     /**
      * <p>Original spec-file function name: check_jobs</p>
      * <pre>
@@ -387,6 +424,43 @@ public class NarrativeJobServiceClient {
         return res.get(0);
     }
 
+    /**
+     * <p>Original spec-file function name: check_jobs_since</p>
+     * <pre>
+     * Like check_jobs, but only returns the states of jobs that changed since the
+     * client last checked them.
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.narrativejobservice.CheckJobsSinceParams CheckJobsSinceParams}
+     * @return   instance of type {@link us.kbase.narrativejobservice.CheckJobsSinceResults CheckJobsSinceResults}
+     * @throws IOException if an IO exception occurs
+     * @throws JsonClientException if a JSON RPC exception occurs
+     */
+    public CheckJobsSinceResults checkJobsSince(CheckJobsSinceParams params, RpcContext... jsonRpcContext) throws IOException, JsonClientException {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<CheckJobsSinceResults>> retType = new TypeReference<List<CheckJobsSinceResults>>() {};
+        List<CheckJobsSinceResults> res = caller.jsonrpcCall("NarrativeJobService.check_jobs_since", args, retType, true, true, jsonRpcContext, this.serviceVersion);
+        return res.get(0);
+    }
+
+    /**
+     * <p>Original spec-file function name: get_job_tree</p>
+     * <pre>
+     * Get a job and its sub jobs, their sub jobs and so on, with their states.
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.narrativejobservice.GetJobTreeParams GetJobTreeParams}
+     * @return   parameter "tree" of type {@link us.kbase.narrativejobservice.JobTree JobTree}
+     * @throws IOException if an IO exception occurs
+     * @throws JsonClientException if a JSON RPC exception occurs
+     */
+    public JobTree getJobTree(GetJobTreeParams params, RpcContext... jsonRpcContext) throws IOException, JsonClientException {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<JobTree>> retType = new TypeReference<List<JobTree>>() {};
+        List<JobTree> res = caller.jsonrpcCall("NarrativeJobService.get_job_tree", args, retType, true, true, jsonRpcContext, this.serviceVersion);
+        return res.get(0);
+    }
+
     /**
      * <p>Original spec-file function name: cancel_job</p>
      * <pre>
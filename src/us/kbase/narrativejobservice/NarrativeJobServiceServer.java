@@ -15,14 +15,21 @@ import us.kbase.common.service.Tuple2;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Properties;
 import java.util.Set;
 import java.util.regex.Pattern;
 
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -35,7 +42,10 @@ import us.kbase.common.executionengine.ModuleMethod;
 import us.kbase.common.service.JacksonTupleModule;
 import us.kbase.common.service.UObject;
 import us.kbase.narrativejobservice.db.ExecEngineMongoDb;
+import us.kbase.narrativejobservice.db.ExecLogArchive;
+import us.kbase.narrativejobservice.db.ExecTaskEvent;
 import us.kbase.narrativejobservice.sdkjobs.ErrorLogger;
+import us.kbase.narrativejobservice.sdkjobs.JobStateFeed;
 import us.kbase.narrativejobservice.sdkjobs.SDKMethodRunner;
 
 import org.slf4j.LoggerFactory;
@@ -97,6 +107,86 @@ public class NarrativeJobServiceServer extends JsonServerServlet {
     public static final String CFG_PROP_MONGO_DBNAME = "mongodb-database";
     public static final String CFG_PROP_MONGO_USER = "mongodb-user";
     public static final String CFG_PROP_MONGO_PWD = "mongodb-pwd";
+    public static final String CFG_PROP_MONGO_MIGRATE = "mongodb.migrate";
+
+    public static final String CFG_PROP_LOG_BUFFER_ENABLED = "log.buffer.enabled";
+    public static final String CFG_PROP_LOG_BUFFER_MAX_LINES = "log.buffer.max.lines";
+    public static final String CFG_PROP_LOG_BUFFER_FLUSH_LINES = "log.buffer.flush.lines";
+    public static final String CFG_PROP_LOG_BUFFER_FLUSH_INTERVAL_MS = "log.buffer.flush.interval.ms";
+
+    public static final String CFG_PROP_SERVER_THREADS = "server-threads";
+
+    public static final String CFG_PROP_LOG_TAIL_MAX_WAIT_MS = "log.tail.max.wait.ms";
+    public static final String CFG_PROP_LOG_TAIL_POLL_INTERVAL_MS = "log.tail.poll.interval.ms";
+    public static final String CFG_PROP_LOG_TAIL_MAX_WAITERS = "log.tail.max.waiters";
+
+    public static final String CFG_PROP_LOG_ARCHIVE_DIR = "log.archive.dir";
+    public static final String CFG_PROP_LOG_ARCHIVE_NODE = "log.archive.node";
+    public static final String CFG_PROP_LOG_ARCHIVE_SEGMENT_MAX_MB = "log.archive.segment.max.mb";
+    public static final String CFG_PROP_LOG_ARCHIVE_DELAY_SEC = "log.archive.delay.sec";
+    public static final String CFG_PROP_LOG_ARCHIVE_INTERVAL_SEC = "log.archive.interval.sec";
+
+    public static final String CFG_PROP_JOB_ACCESS_CACHE_SIZE = "job.access.cache.size";
+    public static final String CFG_PROP_JOB_ACCESS_CACHE_TTL_SEC = "job.access.cache.ttl.sec";
+    public static final String CFG_PROP_JOB_ACCESS_CACHE_NEGATIVE_TTL_SEC =
+            "job.access.cache.negative.ttl.sec";
+
+    public static final String CFG_PROP_WS_OBJECT_CACHE_SIZE = "ws.object.cache.size";
+    public static final String CFG_PROP_WS_OBJECT_CACHE_TTL_SEC = "ws.object.cache.ttl.sec";
+    public static final String CFG_PROP_WS_OBJECT_CACHE_VERSIONED_TTL_SEC =
+            "ws.object.cache.versioned.ttl.sec";
+
+    public static final String CFG_PROP_CHECK_JOBS_THREADS = "check.jobs.threads";
+
+    public static final String CFG_PROP_UJS_UPDATE_THREADS = "ujs.update.threads";
+    public static final String CFG_PROP_UJS_UPDATE_SWEEP_INTERVAL_SEC =
+            "ujs.update.sweep.interval.sec";
+    public static final String CFG_PROP_UJS_UPDATE_MAX_ATTEMPTS = "ujs.update.max.attempts";
+
+    public static final String CFG_PROP_RUN_JOB_THREADS = "run.job.threads";
+    public static final String CFG_PROP_RUN_JOBS_MAX_JOBS = "run.jobs.max.jobs";
+    public static final String CFG_PROP_RUN_JOBS_THREADS = "run.jobs.threads";
+
+    public static final String CFG_PROP_SUBMIT_ASYNC = "submit.async";
+    public static final String CFG_PROP_SUBMIT_THREADS = "submit.threads";
+    public static final String CFG_PROP_SUBMIT_BATCH_SIZE = "submit.batch.size";
+    public static final String CFG_PROP_SUBMIT_MAX_ATTEMPTS = "submit.max.attempts";
+    public static final String CFG_PROP_SUBMIT_RETRY_BASE_MS = "submit.retry.base.ms";
+    public static final String CFG_PROP_SUBMIT_RETRY_MAX_MS = "submit.retry.max.ms";
+    public static final String CFG_PROP_SUBMIT_LEASE_SEC = "submit.lease.sec";
+
+    public static final String CFG_PROP_SCHEDULER = "scheduler";
+    public static final String CFG_PROP_SIM_SLOTS = "scheduler.sim.slots";
+    public static final String CFG_PROP_SIM_SUBMIT_MS = "scheduler.sim.submit.ms";
+    public static final String CFG_PROP_SIM_SUBMIT_PER_JOB_MS = "scheduler.sim.submit.per.job.ms";
+    public static final String CFG_PROP_SIM_DISPATCH_INTERVAL_MS =
+            "scheduler.sim.dispatch.interval.ms";
+    public static final String CFG_PROP_SIM_RUN_MS = "scheduler.sim.run.ms";
+    public static final String CFG_PROP_SIM_RUN_MODEL = "scheduler.sim.run.model";
+    public static final String CFG_PROP_SIM_FAILURE_RATE = "scheduler.sim.failure.rate";
+    public static final String CFG_PROP_SIM_LOG_LINES = "scheduler.sim.log.lines";
+    public static final String CFG_PROP_SIM_THREADS = "scheduler.sim.threads";
+
+    public static final String CFG_PROP_JOB_STATE_CACHE_HEAP_MB = "job.state.cache.heap.mb";
+    public static final String CFG_PROP_JOB_STATE_CACHE_OFFHEAP_MB = "job.state.cache.offheap.mb";
+    public static final String CFG_PROP_JOB_STATE_CACHE_OFFHEAP_THRESHOLD_KB =
+            "job.state.cache.offheap.threshold.kb";
+
+    public static final String CFG_PROP_CATALOG_CACHE_SIZE = "catalog.cache.size";
+    public static final String CFG_PROP_CATALOG_CACHE_TAG_TTL_SEC = "catalog.cache.tag.ttl.sec";
+    public static final String CFG_PROP_CATALOG_CACHE_CONFIG_TTL_SEC =
+            "catalog.cache.config.ttl.sec";
+    public static final String CFG_PROP_CATALOG_CACHE_MAX_STALE_SEC =
+            "catalog.cache.max.stale.sec";
+    public static final String CFG_PROP_CATALOG_CACHE_REFRESH_TIMEOUT_MS =
+            "catalog.cache.refresh.timeout.ms";
+
+    public static final String CFG_PROP_JOB_STATUS_STREAM_MAX_SUBSCRIBERS =
+            "job.status.stream.max.subscribers";
+    public static final String CFG_PROP_JOB_STATUS_STREAM_MAX_DURATION_SEC =
+            "job.status.stream.max.duration.sec";
+    public static final String CFG_PROP_JOB_STATUS_STREAM_POLL_TIMEOUT_SEC =
+            "job.status.stream.poll.timeout.sec";
 
     public static final String CFG_PROP_MONGO_HOSTS_UJS = "ujs-mongodb-host";
     public static final String CFG_PROP_MONGO_DBNAME_UJS = "ujs-mongodb-database";
@@ -214,6 +304,17 @@ public class NarrativeJobServiceServer extends JsonServerServlet {
             String user = nullIfWhitespace(config.get(CFG_PROP_MONGO_USER));
             String pwd = nullIfWhitespace(config.get(CFG_PROP_MONGO_PWD));
             db = new ExecEngineMongoDb(hosts, dbname, user, pwd);
+            String archiveDir = nullIfWhitespace(config.get(CFG_PROP_LOG_ARCHIVE_DIR));
+            if (archiveDir != null) {
+                String segmentMB = nullIfWhitespace(config.get(CFG_PROP_LOG_ARCHIVE_SEGMENT_MAX_MB));
+                // servers sharing the archive directory write to their own segment files
+                String node = nullIfWhitespace(config.get(CFG_PROP_LOG_ARCHIVE_NODE));
+                if (node == null) {
+                    node = InetAddress.getLocalHost().getHostName().replaceAll("[^A-Za-z0-9._-]", "_");
+                }
+                db.setLogArchive(new ExecLogArchive(Paths.get(archiveDir), node,
+                        (segmentMB == null ? 1024L : Long.parseLong(segmentMB)) * 1024 * 1024));
+            }
         }
         return db;
     }
@@ -347,6 +448,220 @@ public class NarrativeJobServiceServer extends JsonServerServlet {
     protected Long getMaxRPCPackageSize() {
         return maxRPCPackageSize;
     }
+
+    public static final String JOB_STATUS_STREAM_PATH = "/job_status_stream";
+    private static final long JOB_STATUS_STREAM_HEARTBEAT_MS = 15000;
+    private static final int JOB_STATUS_STREAM_REPLAY_LIMIT = 1000;
+
+    /* Serves job state changes at JOB_STATUS_STREAM_PATH, either as server sent events
+     * if the client accepts text/event-stream, or as a long poll returning a JSON object.
+     * Query parameters are job_ids (comma separated) and / or wsid, plus since for long
+     * polls. Servlet 2.5 has no async support, so each open stream holds a request thread;
+     * job.status.stream.max.subscribers should be kept well below the container's thread
+     * count. Browsers authenticate with the session cookie, so cross origin requests aren't
+     * allowed.
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!JOB_STATUS_STREAM_PATH.equals(request.getPathInfo())) {
+            super.doGet(request, response);
+            return;
+        }
+        final Map<String, String> config = config();
+        final AuthToken auth;
+        final Set<String> jobIds = new LinkedHashSet<String>();
+        final Long wsid;
+        try {
+            auth = validateToken(getStreamToken(request));
+            final String ids = request.getParameter("job_ids");
+            if (ids != null) {
+                for (final String id : ids.split(",")) {
+                    if (!id.trim().isEmpty()) {
+                        jobIds.add(id.trim());
+                    }
+                }
+            }
+            final String ws = nullIfWhitespace(request.getParameter("wsid"));
+            wsid = ws == null ? null : Long.parseLong(ws);
+            if (jobIds.isEmpty() && wsid == null) {
+                throw new IllegalArgumentException("Either job_ids or wsid must be provided");
+            }
+        } catch (Exception e) {
+            sendStreamError(response, HttpServletResponse.SC_BAD_REQUEST, e);
+            return;
+        }
+        final JobStateFeed.Subscription sub;
+        try {
+            sub = SDKMethodRunner.subscribeJobStates(jobIds, wsid, auth, config);
+        } catch (IllegalStateException e) {
+            sendStreamError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, e);
+            return;
+        } catch (Exception e) {
+            sendStreamError(response, HttpServletResponse.SC_FORBIDDEN, e);
+            return;
+        }
+        try {
+            final String accept = request.getHeader("Accept");
+            if (accept != null && accept.contains("text/event-stream")) {
+                streamJobStates(request, response, sub, auth, config);
+            } else {
+                pollJobStates(request, response, sub, auth, config);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // the client went away
+        } catch (Exception e) {
+            logErr(e);
+            if (!response.isCommitted()) {
+                sendStreamError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e);
+            }
+        } finally {
+            try {
+                SDKMethodRunner.unsubscribeJobStates(sub, config);
+            } catch (Exception e) {
+                logErr(e);
+            }
+        }
+    }
+
+    private static String getStreamToken(HttpServletRequest request) {
+        String token = nullIfWhitespace(request.getHeader("Authorization"));
+        if (token == null && request.getCookies() != null) {
+            // browsers can't set headers on EventSource requests
+            for (final Cookie c : request.getCookies()) {
+                if ("kbase_session".equals(c.getName())) {
+                    token = nullIfWhitespace(c.getValue());
+                }
+            }
+        }
+        if (token == null) {
+            throw new IllegalArgumentException("Authorization is required");
+        }
+        return token;
+    }
+
+    private void streamJobStates(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            JobStateFeed.Subscription sub,
+            AuthToken auth,
+            Map<String, String> config)
+            throws Exception {
+        final long deadline = System.currentTimeMillis() + 1000L * getIntConfig(config,
+                CFG_PROP_JOB_STATUS_STREAM_MAX_DURATION_SEC, 600);
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        final PrintWriter w = response.getWriter();
+        w.write("retry: 5000\n\n");
+        // replay the events the client missed while reconnecting. Events that are also
+        // queued in the subscription are sent once
+        final Set<String> replayed = new HashSet<String>();
+        final String lastId = nullIfWhitespace(request.getHeader("Last-Event-ID"));
+        if (lastId != null) {
+            for (final ExecTaskEvent e : SDKMethodRunner.getJobStateEvents(
+                    lastId, sub, JOB_STATUS_STREAM_REPLAY_LIMIT, config)) {
+                replayed.add(e.getId());
+                writeStreamEvent(w, e, auth, config);
+            }
+        }
+        w.flush();
+        while (System.currentTimeMillis() < deadline) {
+            final ExecTaskEvent e = sub.poll(Math.min(JOB_STATUS_STREAM_HEARTBEAT_MS,
+                    Math.max(1, deadline - System.currentTimeMillis())));
+            if (sub.isOverflowed()) {
+                w.write("event: resync\ndata: {}\n\n");
+                w.flush();
+                return;
+            }
+            if (e == null) {
+                w.write(": heartbeat\n\n");
+            } else if (!replayed.contains(e.getId())) {
+                writeStreamEvent(w, e, auth, config);
+            }
+            w.flush();
+            if (w.checkError()) {
+                return;
+            }
+        }
+    }
+
+    private static void writeStreamEvent(
+            PrintWriter w,
+            ExecTaskEvent e,
+            AuthToken auth,
+            Map<String, String> config)
+            throws IOException {
+        if (SDKMethodRunner.canSeeJobStateEvent(e, auth, config)) {
+            w.write("id: " + e.getId() + "\n");
+            w.write("data: " + UObject.getMapper().writeValueAsString(toStreamEvent(e)) + "\n\n");
+        }
+    }
+
+    private void pollJobStates(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            JobStateFeed.Subscription sub,
+            AuthToken auth,
+            Map<String, String> config)
+            throws Exception {
+        final List<ExecTaskEvent> events = new ArrayList<ExecTaskEvent>();
+        final String since = nullIfWhitespace(request.getParameter("since"));
+        if (since != null) {
+            events.addAll(SDKMethodRunner.getJobStateEvents(
+                    since, sub, JOB_STATUS_STREAM_REPLAY_LIMIT, config));
+        }
+        if (events.isEmpty()) {
+            final ExecTaskEvent e = sub.poll(1000L * getIntConfig(config,
+                    CFG_PROP_JOB_STATUS_STREAM_POLL_TIMEOUT_SEC, 30));
+            if (e != null) {
+                events.add(e);
+                events.addAll(sub.drain());
+            }
+        }
+        final List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>();
+        String lastId = since;
+        for (final ExecTaskEvent e : events) {
+            lastId = e.getId();
+            if (SDKMethodRunner.canSeeJobStateEvent(e, auth, config)) {
+                ret.add(toStreamEvent(e));
+            }
+        }
+        final Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("events", ret);
+        body.put("last_event_id", lastId);
+        body.put("resync", sub.isOverflowed());
+        response.setContentType("application/json");
+        response.setHeader("Cache-Control", "no-cache");
+        UObject.getMapper().writeValue(response.getOutputStream(), body);
+    }
+
+    private static Map<String, Object> toStreamEvent(ExecTaskEvent e) {
+        final Map<String, Object> ret = new LinkedHashMap<String, Object>();
+        ret.put("id", e.getId());
+        ret.put("job_id", e.getUjsJobId());
+        ret.put("wsid", e.getWsid());
+        ret.put("state", e.getState() == null ? null : e.getState().getValue());
+        ret.put("status", e.getStatus());
+        ret.put("time", e.getTime());
+        return ret;
+    }
+
+    private static void sendStreamError(HttpServletResponse response, int status, Exception e)
+            throws IOException {
+        final Map<String, Object> error = new LinkedHashMap<String, Object>();
+        error.put("error", e.getMessage());
+        response.setStatus(status);
+        response.setContentType("application/json");
+        UObject.getMapper().writeValue(response.getOutputStream(), error);
+    }
+
+    private static int getIntConfig(Map<String, String> config, String key, int defaultValue) {
+        final String value = nullIfWhitespace(config.get(key));
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
     //END_CLASS_HEADER
 
 
@@ -372,6 +687,11 @@ public class NarrativeJobServiceServer extends JsonServerServlet {
             public void logErr(String message) {
                 NarrativeJobServiceServer.this.logErr(message);
             }
+
+            @Override
+            public void logInfo(String message) {
+                NarrativeJobServiceServer.this.logInfo(message);
+            }
         };
 
 
@@ -406,6 +726,12 @@ public class NarrativeJobServiceServer extends JsonServerServlet {
                     "is not defined: " + CFG_PROP_CATALOG_ADMIN_USER + " or " +
                     CFG_PROP_CATALOG_ADMIN_TOKEN);
         }
+        SDKMethodRunner.setErrorLogger(logger);
+        SDKMethodRunner.checkRequestThreadLimits(config());
+        SDKMethodRunner.startLogArchiver(config(), logger);
+        SDKMethodRunner.startUjsUpdateSweeper(config(), logger);
+        SDKMethodRunner.startDbMigration(config(), logger);
+        SDKMethodRunner.startJobSubmitter(config(), logger);
 
         //END_CONSTRUCTOR
     }
@@ -503,6 +829,22 @@ public class NarrativeJobServiceServer extends JsonServerServlet {
                 .withTasksInQueue((long) queued)
                 .withConfig(safeConfig)
                 .withGitCommit(gitCommit);
+        returnVal.setAdditionalProperties("job_access_cache",
+                SDKMethodRunner.getJobAccessCacheStats(config()));
+        returnVal.setAdditionalProperties("job_state_cache",
+                SDKMethodRunner.getFinishedJobStateCacheStats(config()));
+        returnVal.setAdditionalProperties("catalog_cache",
+                SDKMethodRunner.getCatalogCacheStats(config()));
+        returnVal.setAdditionalProperties("ws_object_cache",
+                SDKMethodRunner.getWsObjectCacheStats(config()));
+        final Map<String, Long> submitterStats = SDKMethodRunner.getJobSubmitterStats();
+        if (submitterStats != null) {
+            returnVal.setAdditionalProperties("submission_queue", submitterStats);
+        }
+        final Map<String, Long> ujsUpdateStats = SDKMethodRunner.getUjsUpdateStats();
+        if (ujsUpdateStats != null) {
+            returnVal.setAdditionalProperties("ujs_updates", ujsUpdateStats);
+        }
 
         // make warnings shut up
         @SuppressWarnings("unused")
@@ -530,12 +872,30 @@ public class NarrativeJobServiceServer extends JsonServerServlet {
         String returnVal = null;
         //BEGIN run_job
         System.gc();
-        String aweClientGroups = SDKMethodRunner.requestClientGroups(config(), params.getMethod());
-        returnVal = SDKMethodRunner.runJob(params, authPart, null, config(), aweClientGroups);
+        returnVal = SDKMethodRunner.runJob(params, authPart, null, config());
         //END run_job
         return returnVal;
     }
 
+    /**
+     * <p>Original spec-file function name: run_jobs</p>
+     * <pre>
+     * Start several jobs at once. Jobs that can't be started are reported in
+     * errors and don't keep the other jobs from starting.
+     * </pre>
+     *
+     * @param params instance of type {@link us.kbase.narrativejobservice.RunJobsParams RunJobsParams}
+     * @return parameter "results" of type {@link us.kbase.narrativejobservice.RunJobsResults RunJobsResults}
+     */
+    @JsonServerMethod(rpc = "NarrativeJobService.run_jobs", async = true)
+    public RunJobsResults runJobs(RunJobsParams params, AuthToken authPart, RpcContext jsonRpcContext) throws Exception {
+        RunJobsResults returnVal = null;
+        //BEGIN run_jobs
+        returnVal = SDKMethodRunner.runJobs(params, authPart, config());
+        //END run_jobs
+        return returnVal;
+    }
+
     /**
      * <p>Original spec-file function name: get_job_params</p>
      * <pre>
@@ -608,8 +968,7 @@ public class NarrativeJobServiceServer extends JsonServerServlet {
     public GetJobLogsResults getJobLogs(GetJobLogsParams params, AuthToken authPart, RpcContext jsonRpcContext) throws Exception {
         GetJobLogsResults returnVal = null;
         //BEGIN get_job_logs
-        returnVal = SDKMethodRunner.getJobLogs(params.getJobId(), params.getSkipLines(),
-                authPart, getAdminUsers(), config());
+        returnVal = SDKMethodRunner.getJobLogs(params, authPart, getAdminUsers(), config());
         //END get_job_logs
         return returnVal;
     }
@@ -668,6 +1027,24 @@ public class NarrativeJobServiceServer extends JsonServerServlet {
         return returnVal;
     }
 
+    /**
+     * <p>Original spec-file function name: list_workspace_jobs</p>
+     * <pre>
+     * List the jobs in a workspace a page at a time.
+     * </pre>
+     *
+     * @param params instance of type {@link us.kbase.narrativejobservice.ListWorkspaceJobsParams ListWorkspaceJobsParams}
+     * @return instance of type {@link us.kbase.narrativejobservice.ListWorkspaceJobsResults ListWorkspaceJobsResults}
+     */
+    @JsonServerMethod(rpc = "NarrativeJobService.list_workspace_jobs", async = true)
+    public ListWorkspaceJobsResults listWorkspaceJobs(ListWorkspaceJobsParams params, AuthToken authPart, RpcContext jsonRpcContext) throws Exception {
+        ListWorkspaceJobsResults returnVal = null;
+        //BEGIN list_workspace_jobs
+        returnVal = SDKMethodRunner.listWorkspaceJobs(params, authPart, config());
+        //END list_workspace_jobs
+        return returnVal;
+    }
+
     /**
      *
      */
@@ -689,6 +1066,43 @@ public class NarrativeJobServiceServer extends JsonServerServlet {
         return returnVal;
     }
 
+    /**
+     * <p>Original spec-file function name: check_jobs_since</p>
+     * <pre>
+     * Like check_jobs, but only returns the states of jobs that changed since the
+     * client last checked them.
+     * </pre>
+     *
+     * @param params instance of type {@link us.kbase.narrativejobservice.CheckJobsSinceParams CheckJobsSinceParams}
+     * @return instance of type {@link us.kbase.narrativejobservice.CheckJobsSinceResults CheckJobsSinceResults}
+     */
+    @JsonServerMethod(rpc = "NarrativeJobService.check_jobs_since", async = true)
+    public CheckJobsSinceResults checkJobsSince(CheckJobsSinceParams params, AuthToken authPart, RpcContext jsonRpcContext) throws Exception {
+        CheckJobsSinceResults returnVal = null;
+        //BEGIN check_jobs_since
+        returnVal = SDKMethodRunner.checkJobsSince(params, authPart, config());
+        //END check_jobs_since
+        return returnVal;
+    }
+
+    /**
+     * <p>Original spec-file function name: get_job_tree</p>
+     * <pre>
+     * Get a job and its sub jobs, their sub jobs and so on, with their states.
+     * </pre>
+     *
+     * @param params instance of type {@link us.kbase.narrativejobservice.GetJobTreeParams GetJobTreeParams}
+     * @return parameter "tree" of type {@link us.kbase.narrativejobservice.JobTree JobTree}
+     */
+    @JsonServerMethod(rpc = "NarrativeJobService.get_job_tree", async = true)
+    public JobTree getJobTree(GetJobTreeParams params, AuthToken authPart, RpcContext jsonRpcContext) throws Exception {
+        JobTree returnVal = null;
+        //BEGIN get_job_tree
+        returnVal = SDKMethodRunner.getJobTree(params, authPart, config());
+        //END get_job_tree
+        return returnVal;
+    }
+
     /**
      * <p>Original spec-file function name: cancel_job</p>
      * <pre>
@@ -14,6 +14,9 @@ import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.bson.types.ObjectId;
 import us.kbase.common.utils.CondorUtils;
+import us.kbase.narrativejobservice.db.ExecEngineMongoDb;
+import us.kbase.narrativejobservice.db.ExecTaskState;
+import us.kbase.narrativejobservice.sdkjobs.SDKMethodRunner;
 
 import javax.ws.rs.client.*;
 import javax.ws.rs.core.Request;
@@ -31,6 +34,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 public class ReaperService {
@@ -38,6 +42,7 @@ public class ReaperService {
     MongoClient mongoClient;
     DB db;
     DBCollection coll;
+    ExecEngineMongoDb execEngineDb = null;
 
 
     final File reaperServiceLog = new File("reaperService.log");
@@ -66,6 +71,34 @@ public class ReaperService {
         this.coll = this.db.getCollection("jobstate");
     }
 
+    /**
+     * Set the NJS database, so purged jobs are also marked as failed in their exec tasks.
+     *
+     * @param execEngineDb The NJS database
+     */
+    public void setExecEngineDb(ExecEngineMongoDb execEngineDb) {
+        this.execEngineDb = execEngineDb;
+    }
+
+    /**
+     * Mark jobs as failed in their exec tasks, if the NJS database is set.
+     *
+     * @param jobIds  The jobs to mark
+     * @param message The error message
+     */
+    private void failExecTasks(List<String> jobIds, String message) {
+        if (execEngineDb == null) {
+            return;
+        }
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("job_output", ImmutableMap.of("error", ImmutableMap.of(
+                "name", "Server error", "code", -32000L, "message", message,
+                "error", message)));
+        fields.put("finish_time", System.currentTimeMillis());
+        execEngineDb.setExecTaskStates(jobIds, ExecTaskState.UNFINISHED,
+                ExecTaskState.ERROR, message, fields);
+    }
+
     /**
      * Get a list of incomplete jobs from the UserJobState db.
      *
@@ -225,6 +258,8 @@ public class ReaperService {
                 builder.find(new BasicDBObject("_id", new ObjectId(jobID))).update(setQuery);
             }
             result = builder.execute();
+            failExecTasks(ghostJobs, "Job was purged by the job reaper");
+            SDKMethodRunner.invalidateFinishedJobStates(ghostJobs);
             return result;
         } else {
             System.err.println("\nNo ghost jobs to purge. " + new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(new Date()));
@@ -258,6 +293,8 @@ public class ReaperService {
                 builder.find(new BasicDBObject("_id", new ObjectId(jobID))).update(setQuery);
             }
             result = builder.execute();
+            failExecTasks(ghostJobs, message);
+            SDKMethodRunner.invalidateFinishedJobStates(ghostJobs);
             return result;
         } else {
             System.err.println("\nNo ghost jobs to purge. " + new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(new Date()));
@@ -0,0 +1,145 @@
+package us.kbase.narrativejobservice.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/** A step from one version of the NJS database schema to the next. A migration first builds
+ * its indexes in the background and then runs its data step, if any. Both must be safe to
+ * repeat, since a migration interrupted by a server restart is run again from the start.
+ */
+public class DbMigration {
+
+	/** Changes data as part of a migration. */
+	public interface DataStep {
+
+		/** Run the step.
+		 * @return a description of what was changed, for logging.
+		 * @throws Exception if the step failed.
+		 */
+		String run() throws Exception;
+	}
+
+	/** An index built by a migration. */
+	public static class Index {
+
+		private final String collection;
+		private final DBObject keys;
+		private final boolean unique;
+
+		private Index(final String collection, final DBObject keys, final boolean unique) {
+			this.collection = collection;
+			this.keys = keys;
+			this.unique = unique;
+		}
+
+		/** Get the name of the indexed collection.
+		 * @return the collection name.
+		 */
+		public String getCollection() {
+			return collection;
+		}
+
+		/** Get the index keys.
+		 * @return the keys.
+		 */
+		public DBObject getKeys() {
+			return new BasicDBObject(keys.toMap());
+		}
+
+		/** Get whether the index is unique.
+		 * @return true if the index is unique.
+		 */
+		public boolean isUnique() {
+			return unique;
+		}
+
+		@Override
+		public String toString() {
+			return collection + " " + keys + (unique ? " (unique)" : "");
+		}
+	}
+
+	private final String fromVersion;
+	private final String toVersion;
+	private final String description;
+	private final List<Index> indexes = new ArrayList<>();
+	private DataStep dataStep = null;
+
+	/** Create a migration.
+	 * @param fromVersion the schema version the migration applies to.
+	 * @param toVersion the schema version after the migration.
+	 * @param description what the migration does.
+	 */
+	public DbMigration(final String fromVersion, final String toVersion, final String description) {
+		if (fromVersion == null || toVersion == null || fromVersion.equals(toVersion)) {
+			throw new IllegalArgumentException("A migration must change the schema version");
+		}
+		this.fromVersion = fromVersion;
+		this.toVersion = toVersion;
+		this.description = description;
+	}
+
+	/** Add an index to build.
+	 * @param collection the name of the collection.
+	 * @param keys the index keys.
+	 * @param unique true for a unique index.
+	 * @return this migration.
+	 */
+	public DbMigration withIndex(final String collection, final DBObject keys, final boolean unique) {
+		indexes.add(new Index(collection, keys, unique));
+		return this;
+	}
+
+	/** Set the data step, which runs after the indexes are built.
+	 * @param step the data step.
+	 * @return this migration.
+	 */
+	public DbMigration withDataStep(final DataStep step) {
+		dataStep = step;
+		return this;
+	}
+
+	/** Get the schema version the migration applies to.
+	 * @return the version.
+	 */
+	public String getFromVersion() {
+		return fromVersion;
+	}
+
+	/** Get the schema version after the migration.
+	 * @return the version.
+	 */
+	public String getToVersion() {
+		return toVersion;
+	}
+
+	/** Get what the migration does.
+	 * @return the description.
+	 */
+	public String getDescription() {
+		return description;
+	}
+
+	/** Get the indexes the migration builds.
+	 * @return the indexes.
+	 */
+	public List<Index> getIndexes() {
+		return Collections.unmodifiableList(indexes);
+	}
+
+	/** Get the data step.
+	 * @return the data step, or null if the migration only builds indexes.
+	 */
+	public DataStep getDataStep() {
+		return dataStep;
+	}
+
+	@Override
+	public String toString() {
+		return fromVersion + " -> " + toVersion + ": " + description;
+	}
+}
@@ -0,0 +1,273 @@
+package us.kbase.narrativejobservice.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.DuplicateKeyException;
+
+/** Brings the NJS database schema up to date by running the migrations between the schema
+ * version recorded in srv_props and the latest version, in order.
+ *
+ * Only one server migrates at a time. The migrating server holds a lock document in
+ * srv_props, which expires if the server dies, so another server can take over. Indexes are
+ * built in the background, so the servers keep serving requests while a migration runs.
+ */
+public class DbMigrator {
+
+	private static final String PROP_LOCK = "migration_lock";
+	private static final String FLD_LOCK_OWNER = "owner";
+	private static final String FLD_LOCK_EXPIRES = "expires";
+
+	private final DB db;
+	private final DBCollection propCol;
+	private final String propIdField;
+	private final String propValueField;
+	private final String versionProp;
+	private final Map<String, DbMigration> migrations = new LinkedHashMap<>();
+	private final String latestVersion;
+	private final long lockTtlMs;
+	private final String owner = UUID.randomUUID().toString();
+
+	/** Create a migrator.
+	 * @param db the database.
+	 * @param propCol the collection holding the schema version and the lock.
+	 * @param propIdField the ID field of the property documents.
+	 * @param propValueField the value field of the property documents.
+	 * @param versionProp the ID of the schema version property.
+	 * @param migrations the migrations, in order. Each migration must start at the version the
+	 * previous migration ends at.
+	 * @param lockTtlMs how long the migration lock is held without being renewed. The lock is
+	 * renewed in the background every third of this time while the migration runs, including
+	 * during long index builds and data steps.
+	 */
+	public DbMigrator(
+			final DB db,
+			final DBCollection propCol,
+			final String propIdField,
+			final String propValueField,
+			final String versionProp,
+			final List<DbMigration> migrations,
+			final long lockTtlMs) {
+		if (migrations.isEmpty()) {
+			throw new IllegalArgumentException("No migrations provided");
+		}
+		this.db = db;
+		this.propCol = propCol;
+		this.propIdField = propIdField;
+		this.propValueField = propValueField;
+		this.versionProp = versionProp;
+		this.lockTtlMs = lockTtlMs;
+		String version = migrations.get(0).getFromVersion();
+		final Set<String> seen = new HashSet<>();
+		seen.add(version);
+		for (final DbMigration m: migrations) {
+			if (!m.getFromVersion().equals(version) || !seen.add(m.getToVersion())) {
+				throw new IllegalArgumentException("Migrations are out of order at " + m);
+			}
+			this.migrations.put(m.getFromVersion(), m);
+			version = m.getToVersion();
+		}
+		latestVersion = version;
+	}
+
+	/** Get the latest schema version, which the migrations lead to.
+	 * @return the version.
+	 */
+	public String getLatestVersion() {
+		return latestVersion;
+	}
+
+	/** Get the schema version recorded in the database.
+	 * @return the version, or null if none is recorded.
+	 */
+	public String getVersion() {
+		final DBObject dbo = propCol.findOne(new BasicDBObject(propIdField, versionProp));
+		return dbo == null ? null : (String) dbo.get(propValueField);
+	}
+
+	/** Get the migrations that haven't been applied to the database yet.
+	 * @return the migrations, in the order they will be applied.
+	 * @throws IllegalStateException if the database version is unknown, e.g. because it was
+	 * migrated by a newer server.
+	 */
+	public List<DbMigration> getPendingMigrations() {
+		final String version = getVersion();
+		final List<DbMigration> ret = new ArrayList<>();
+		String v = version;
+		while (migrations.containsKey(v)) {
+			final DbMigration m = migrations.get(v);
+			ret.add(m);
+			v = m.getToVersion();
+		}
+		if (!latestVersion.equals(v)) {
+			throw new IllegalStateException(String.format(
+					"The database schema version %s is not supported by this server, " +
+					"which supports versions up to %s", version, latestVersion));
+		}
+		return ret;
+	}
+
+	/** Check whether the database has been migrated to a schema version.
+	 * @param version the version.
+	 * @return true if the migration to the version and all the migrations before it have been
+	 * applied.
+	 */
+	public boolean isMigratedTo(final String version) {
+		for (final DbMigration m: getPendingMigrations()) {
+			if (m.getToVersion().equals(version)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Describe what migrating would do without changing anything. The sizes of the indexed
+	 * collections and their existing indexes give an idea of how long the index builds take
+	 * and how much space the new indexes need.
+	 * @return the report, one line per entry.
+	 */
+	public List<String> getDryRunReport() {
+		final List<String> ret = new ArrayList<>();
+		final List<DbMigration> pending = getPendingMigrations();
+		ret.add(String.format("Database schema version %s, latest version %s, %s pending " +
+				"migration(s)", getVersion(), latestVersion, pending.size()));
+		final Map<String, CommandResult> stats = new HashMap<>();
+		for (final DbMigration m: pending) {
+			ret.add(m.toString());
+			for (final DbMigration.Index i: m.getIndexes()) {
+				final CommandResult s = stats.computeIfAbsent(i.getCollection(),
+						c -> db.getCollection(c).getStats());
+				ret.add(String.format("  index %s: %s documents, %s MB of data, %s MB of " +
+						"existing indexes", i, toLong(s.get("count")),
+						toLong(s.get("size")) / 1024 / 1024,
+						toLong(s.get("totalIndexSize")) / 1024 / 1024));
+			}
+			if (m.getDataStep() != null) {
+				ret.add("  data step");
+			}
+		}
+		return ret;
+	}
+
+	private static long toLong(final Object o) {
+		return o instanceof Number ? ((Number) o).longValue() : 0;
+	}
+
+	/** Apply the pending migrations, unless another server is already migrating.
+	 * @param log receives progress messages.
+	 * @return the number of migrations applied, or -1 if another server holds the lock.
+	 * @throws Exception if a migration failed. The failed migration is run again on the next
+	 * attempt.
+	 */
+	public int migrate(final Consumer<String> log) throws Exception {
+		if (getPendingMigrations().isEmpty()) {
+			return 0;
+		}
+		if (!lock()) {
+			log.accept("Another server is migrating the database");
+			return -1;
+		}
+		final AtomicBoolean lost = new AtomicBoolean();
+		final ScheduledExecutorService renewer = startLockRenewer(lost);
+		int count = 0;
+		try {
+			// re-read the version, another server may have migrated before the lock was taken
+			for (final DbMigration m: getPendingMigrations()) {
+				log.accept("Migrating the database: " + m);
+				for (final DbMigration.Index i: m.getIndexes()) {
+					final BasicDBObject opts = new BasicDBObject("background", true);
+					if (i.isUnique()) {
+						opts.append("unique", true);
+					}
+					db.getCollection(i.getCollection()).createIndex(i.getKeys(), opts);
+					checkLock(lost);
+				}
+				if (m.getDataStep() != null) {
+					log.accept(m.getDataStep().run());
+					checkLock(lost);
+				}
+				setVersion(m.getFromVersion(), m.getToVersion());
+				count++;
+			}
+		} finally {
+			// stop renewing before unlocking so a late renewal can't take the lock again
+			renewer.shutdownNow();
+			renewer.awaitTermination(1, TimeUnit.MINUTES);
+			unlock();
+		}
+		return count;
+	}
+
+	private void setVersion(final String from, final String to) {
+		final int n = propCol.update(
+				new BasicDBObject(propIdField, versionProp).append(propValueField, from),
+				new BasicDBObject("$set", new BasicDBObject(propValueField, to))).getN();
+		if (n != 1) {
+			throw new IllegalStateException(String.format(
+					"The database schema version changed from %s during migration", from));
+		}
+	}
+
+	private boolean lock() {
+		final long now = System.currentTimeMillis();
+		try {
+			final DBObject free = new BasicDBObject(propIdField, PROP_LOCK)
+					.append("$or", Arrays.asList(
+							new BasicDBObject(FLD_LOCK_EXPIRES, new BasicDBObject("$lt", now)),
+							new BasicDBObject(FLD_LOCK_OWNER, owner)));
+			propCol.update(free, new BasicDBObject("$set", new BasicDBObject(FLD_LOCK_OWNER, owner)
+					.append(FLD_LOCK_EXPIRES, now + lockTtlMs)), true, false);
+			return true;
+		} catch (DuplicateKeyException e) {
+			// the lock document exists and belongs to another server
+			return false;
+		}
+	}
+
+	private ScheduledExecutorService startLockRenewer(final AtomicBoolean lost) {
+		final ScheduledExecutorService renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread t = new Thread(r, "njs-migration-lock");
+			t.setDaemon(true);
+			return t;
+		});
+		final long intervalMs = Math.max(1, lockTtlMs / 3);
+		renewer.scheduleWithFixedDelay(() -> {
+			try {
+				if (!lock()) {
+					lost.set(true);
+				}
+			} catch (Exception e) {
+				// a transient database error, the lock is still held until it expires
+			}
+		}, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+		return renewer;
+	}
+
+	private void checkLock(final AtomicBoolean lost) {
+		if (lost.get() || !lock()) {
+			throw new IllegalStateException(
+					"Lost the migration lock to another server, the lock TTL is too short");
+		}
+	}
+
+	private void unlock() {
+		propCol.remove(new BasicDBObject(propIdField, PROP_LOCK).append(FLD_LOCK_OWNER, owner));
+	}
+}
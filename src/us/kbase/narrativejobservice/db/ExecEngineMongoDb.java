@@ -1,21 +1,37 @@
 package us.kbase.narrativejobservice.db;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.bson.BSONObject;
 import org.bson.LazyBSONList;
 import org.bson.types.BasicBSONList;
+import org.bson.types.ObjectId;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.CursorType;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
@@ -24,26 +40,114 @@ import com.mongodb.DuplicateKeyException;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientOptions;
 import com.mongodb.MongoCredential;
+import com.mongodb.MongoException;
 import com.mongodb.ServerAddress;
 
 
 public class ExecEngineMongoDb {
 	private DBCollection taskCol;
 	private DBCollection logCol;
+	private DBCollection logChunkCol;
 	private DBCollection propCol;
+	private DBCollection taskEventCol;
+	private DBCollection submitCol;
 
 	private static final String COL_EXEC_TASKS = "exec_tasks";
 	private static final String PK_EXEC_TASKS = "ujs_job_id";
 	private static final String COL_EXEC_LOGS = "exec_logs";
 	private static final String PK_EXEC_LOGS = "ujs_job_id";
+	private static final String COL_EXEC_LOG_CHUNKS = "exec_log_chunks";
+	private static final String FLD_LOG_CHUNKED = "chunked";
+	private static final String FLD_LOG_LINES = "lines";
+	private static final String FLD_CHUNK_NO = "chunk_no";
+	private static final String FLD_CHUNK_FIRST_LINE = "first_line";
+	private static final String FLD_CHUNK_LAST_LINE = "last_line";
+	private static final String FLD_CHUNK_LINE_COUNT = "line_count";
+	private static final String FLD_CHUNK_PACKED = "packed";
+	private static final String FLD_CHUNK_ENCODING = "encoding";
+	private static final String FLD_LOG_ARCHIVE = "archive";
+	private static final String FLD_ARCHIVE_SEGMENT = "segment";
+	private static final String FLD_ARCHIVE_LINE_COUNT = "line_count";
+	private static final String FLD_ARCHIVE_CHUNKS = "chunks";
+	private static final String FLD_ARCHIVE_OFFSET = "offset";
+	private static final String FLD_ARCHIVE_LENGTH = "length";
+	private static final String FLD_TASK_LOG_ARCHIVED = "log_archived";
+	private static final String FLD_TASK_LOG_ARCHIVE_LEASE = "log_archive_lease";
+	private static final String FLD_TASK_UJS_UPDATE = "ujs_update";
+	private static final String FLD_UJS_UPDATE_ID = "id";
+	private static final String FLD_UJS_UPDATE_ATTEMPTS = "attempts";
+	private static final String FLD_UJS_UPDATE_NEXT_ATTEMPT_TIME = "next_attempt_time";
+	private static final String FLD_TASK_PARENT_JOB_ID = "parent_job_id";
+	private static final String FLD_TASK_JOB_INPUT = "job_input";
+	private static final String FLD_TASK_JOB_OUTPUT = "job_output";
+	private static final String FLD_TASK_STATE = "last_job_state";
+	private static final String FLD_TASK_STATUS = "last_job_status";
+	private static final String FLD_TASK_STATE_TIME = "last_job_state_time";
+	private static final String FLD_TASK_STATE_VERSION = "state_version";
+	private static final String COL_EXEC_TASK_EVENTS = "exec_task_events";
+	private static final long TASK_EVENTS_MAX_BYTES = 64L * 1024 * 1024;
+	private static final String FLD_EVENT_NODE = "node";
+	private static final String FLD_EVENT_TIME = "time";
+	private static final String FLD_TASK_WSID = "wsid";
+	// the task fields needed to report the state of a job
+	private static final List<String> TASK_VIEW_FIELDS = Collections.unmodifiableList(
+			Arrays.asList(PK_EXEC_TASKS, FLD_TASK_PARENT_JOB_ID, "awe_job_id", "creation_time",
+					"exec_start_time", "finish_time", FLD_TASK_STATE, FLD_TASK_STATUS,
+					FLD_TASK_STATE_TIME, FLD_TASK_WSID, FLD_TASK_STATE_VERSION));
+	// task fields used only for bookkeeping by this class, which aren't part of ExecTask
+	private static final DBObject TASK_BOOKKEEPING_FIELDS = new BasicDBObject(
+			FLD_TASK_LOG_ARCHIVED, 0).append(FLD_TASK_LOG_ARCHIVE_LEASE, 0)
+			.append(FLD_TASK_UJS_UPDATE, 0);
+	private static final String COL_EXEC_SUBMISSIONS = "exec_submissions";
+	private static final String FLD_SUBMIT_STATE = "state";
+	private static final String FLD_SUBMIT_ATTEMPTS = "attempts";
+	private static final String FLD_SUBMIT_NEXT_ATTEMPT_TIME = "next_attempt_time";
+	private static final String FLD_SUBMIT_LAST_ERROR = "last_error";
+	/** The state of a queued job waiting for its next submission attempt. */
+	public static final String SUBMIT_STATE_PENDING = "pending";
+	/** The state of a queued job claimed by a submitter. */
+	public static final String SUBMIT_STATE_SUBMITTING = "submitting";
 	private static final String COL_SRV_PROPS = "srv_props";
 	private static final String PK_SRV_PROPS = "prop_id";
 	private static final String SRV_PROPS_VALUE = "value";
 	private static final String SRV_PROP_DB_VERSION = "db_version";
+	private static final String SRV_PROP_TASK_EVENT_SEQ = "task_event_seq";
+	// counts the times task events couldn't be written, so followers of the log re-sync
+	private static final String SRV_PROP_TASK_EVENT_GAPS = "task_event_gaps";
+
+	private static final String INITIAL_DB_VERSION = "1.0";
+	private static final long MIGRATION_LOCK_TTL_MS = 60 * 60 * 1000;
 
-	private static final String DB_VERSION = "1.0";
+	/** The maximum number of log lines stored in one exec_log_chunks document. With
+	 * lines truncated to 1000 characters by the job runner a full chunk stays around 1MB,
+	 * well under the BSON document limit.
+	 */
+	public static final int LOG_CHUNK_SIZE = 1000;
+	// the number of chunks a log scan fetches per round trip
+	private static final int SCAN_BATCH_CHUNKS = 5;
+	// the number of job logs remembered as already moved to chunked storage
+	private static final int CHUNKED_LOG_CACHE_SIZE = 10000;
 
 	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private ExecLogArchive logArchive = null;
+	private final DbMigrator migrator;
+	// set once the 1.1 migration has copied the workspace IDs of legacy tasks
+	private volatile boolean wsidsCopied = false;
+	// logs known to be chunked, which never go back to legacy storage. Guarded by itself
+	private final Set<String> chunkedLogs = Collections.newSetFromMap(
+			new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+					return size() > CHUNKED_LOG_CACHE_SIZE;
+				}
+			});
+	// identifies the task events written by this instance
+	private final String nodeId = UUID.randomUUID().toString();
+	private volatile Consumer<ExecTaskEvent> taskEventListener = null;
+	private volatile Consumer<MongoException> taskEventErrorHandler = null;
 	
 	// should really inject the DB, but worry about that later.
 	public ExecEngineMongoDb(
@@ -56,23 +160,90 @@ public class ExecEngineMongoDb {
 		final DB mongo = buildMongo(hosts, db, user, pwd).getDB(db);
 		taskCol = mongo.getCollection(COL_EXEC_TASKS);
 		logCol = mongo.getCollection(COL_EXEC_LOGS);
+		logChunkCol = mongo.getCollection(COL_EXEC_LOG_CHUNKS);
 		propCol = mongo.getCollection(COL_SRV_PROPS);
-		// Indexing
+		if (!mongo.collectionExists(COL_EXEC_TASK_EVENTS)) {
+			try {
+				mongo.createCollection(COL_EXEC_TASK_EVENTS, new BasicDBObject("capped", true)
+						.append("size", TASK_EVENTS_MAX_BYTES));
+			} catch (MongoException e) {
+				// another server created it in the meantime
+				if (!mongo.collectionExists(COL_EXEC_TASK_EVENTS)) {
+					throw e;
+				}
+			}
+		}
+		taskEventCol = mongo.getCollection(COL_EXEC_TASK_EVENTS);
+		submitCol = mongo.getCollection(COL_EXEC_SUBMISSIONS);
+		// Indexing. Indexes added after the initial schema are built by migrations
 		final BasicDBObject unique = new BasicDBObject("unique", true);
 		taskCol.createIndex(new BasicDBObject(PK_EXEC_TASKS, 1), unique);
 		logCol.createIndex(new BasicDBObject(PK_EXEC_LOGS, 1), unique);
+		logChunkCol.createIndex(new BasicDBObject(PK_EXEC_LOGS, 1).append(FLD_CHUNK_NO, 1),
+				unique);
 		propCol.createIndex(new BasicDBObject(PK_SRV_PROPS, 1), unique);
+		submitCol.createIndex(new BasicDBObject(PK_EXEC_TASKS, 1), unique);
 
-		try {
-			// at some point check that the db ver = sw ver
-			propCol.insert(new BasicDBObject(PK_SRV_PROPS, SRV_PROP_DB_VERSION)
-					.append(SRV_PROPS_VALUE, DB_VERSION));
-		} catch (DuplicateKeyException e) {
-			//version is already there so do nothing
+		migrator = new DbMigrator(mongo, propCol, PK_SRV_PROPS, SRV_PROPS_VALUE,
+				SRV_PROP_DB_VERSION, getMigrations(), MIGRATION_LOCK_TTL_MS);
+		if (migrator.getVersion() == null) {
+			// a new database starts at the latest version, there's nothing to migrate
+			final boolean isNew = taskCol.count() == 0;
+			if (isNew) {
+				for (final DbMigration m: getMigrations()) {
+					for (final DbMigration.Index i: m.getIndexes()) {
+						mongo.getCollection(i.getCollection()).createIndex(i.getKeys(),
+								new BasicDBObject("unique", i.isUnique()));
+					}
+				}
+			}
+			try {
+				propCol.insert(new BasicDBObject(PK_SRV_PROPS, SRV_PROP_DB_VERSION)
+						.append(SRV_PROPS_VALUE, isNew ?
+								migrator.getLatestVersion() : INITIAL_DB_VERSION));
+			} catch (DuplicateKeyException e) {
+				//version is already there so do nothing
+			}
 		}
+		// fails if a newer server migrated the database
+		migrator.getPendingMigrations();
+	}
 
+	/* The schema migrations, in order. Add a migration whenever a change needs new indexes
+	 * or existing data to be changed, and keep the code working on unmigrated databases, since
+	 * the servers keep running while a migration runs.
+	 */
+	private List<DbMigration> getMigrations() {
+		return Arrays.asList(
+				new DbMigration(INITIAL_DB_VERSION, "1.1",
+						"Index the sub jobs, workspaces and state versions of exec tasks")
+						.withIndex(COL_EXEC_TASKS,
+								new BasicDBObject(FLD_TASK_PARENT_JOB_ID, 1), false)
+						.withIndex(COL_EXEC_TASKS, new BasicDBObject(FLD_TASK_WSID, 1)
+								.append(PK_EXEC_TASKS, 1), false)
+						.withIndex(COL_EXEC_TASKS, new BasicDBObject(PK_EXEC_TASKS, 1)
+								.append(FLD_TASK_STATE_VERSION, 1), false)
+						.withDataStep(() -> "Copied the workspace IDs of " +
+								copyExecTaskWsids() + " exec tasks"),
+				new DbMigration("1.1", "1.2",
+						"Move the lines of unchunked exec logs to exec_log_chunks")
+						.withDataStep(() -> "Moved the lines of " +
+								migrateExecLogsToChunks() + " exec logs"),
+				new DbMigration("1.2", "1.3", "Index the submission queue")
+						.withIndex(COL_EXEC_SUBMISSIONS,
+								new BasicDBObject(FLD_SUBMIT_NEXT_ATTEMPT_TIME, 1), false),
+				new DbMigration("1.3", "1.4", "Index the finish times of exec tasks")
+						.withIndex(COL_EXEC_TASKS, new BasicDBObject("finish_time", 1), false),
+				new DbMigration("1.4", "1.5", "Index the pending UJS updates of exec tasks")
+						.withIndex(COL_EXEC_TASKS, new BasicDBObject(FLD_TASK_UJS_UPDATE + "." +
+								FLD_UJS_UPDATE_NEXT_ATTEMPT_TIME, 1), false));
+	}
 
-
+	/** Get the migrator that updates the database schema.
+	 * @return the migrator.
+	 */
+	public DbMigrator getMigrator() {
+		return migrator;
 	}
 	
 	private Map<String, Object> toMap(final Object obj) {
@@ -169,19 +340,326 @@ public class ExecEngineMongoDb {
 
 	public void insertExecLogs(List<ExecLog> execLogList) throws Exception {
 		// should be a null collection contents check here
-		logCol.insert(execLogList.stream().map(l -> toDBObj(l)).collect(Collectors.toList()));
+		// the lines are never embedded in the exec_logs document, see updateExecLogLines
+		final List<DBObject> logs = new LinkedList<>();
+		final BulkWriteOperation chunks = logChunkCol.initializeOrderedBulkOperation();
+		boolean hasLines = false;
+		for (final ExecLog l: execLogList) {
+			final DBObject dbo = toDBObj(l);
+			dbo.removeField(FLD_LOG_LINES);
+			dbo.put(FLD_LOG_CHUNKED, true);
+			logs.add(dbo);
+			if (l.getLines() != null && !l.getLines().isEmpty()) {
+				addChunkAppends(chunks, l.getUjsJobId(), l.getLines());
+				hasLines = true;
+			}
+		}
+		logCol.insert(logs);
+		if (hasLines) {
+			chunks.execute();
+		}
 	}
 
+	/* Log lines are stored in fixed size buckets in the exec_log_chunks collection, keyed by
+	 * (ujs_job_id, chunk_no), where chunk_no = line_pos / LOG_CHUNK_SIZE. The exec_logs document
+	 * only keeps the line counts. Appends push into at most a couple of small chunk documents
+	 * and ranged reads are index seeks over the chunks that cover the range.
+	 *
+	 * exec_logs documents written before chunking was introduced embed all the lines in a
+	 * 'lines' array and have no 'chunked' field. Reads of those logs fall back to the embedded
+	 * array, and the first append to such a log moves the lines into chunks.
+	 */
 	public void updateExecLogLines(String ujsJobId, int newLineCount,
 								   List<ExecLogLine> newLines) throws Exception {
 		// needs input checking
+		ensureExecLogChunked(ujsJobId);
+		if (!newLines.isEmpty()) {
+			final BulkWriteOperation chunks = logChunkCol.initializeOrderedBulkOperation();
+			addChunkAppends(chunks, ujsJobId, newLines);
+			chunks.execute();
+		}
+		// update the counts after the lines are stored so readers never see missing lines
 		logCol.update(new BasicDBObject(PK_EXEC_LOGS, ujsJobId),
 				new BasicDBObject("$set",
 						new BasicDBObject("original_line_count", newLineCount)
-								.append("stored_line_count", newLineCount))
-						.append("$push", new BasicDBObject("lines", new BasicDBObject("$each",
-								newLines.stream().map(l -> toDBObj(l))
-										.collect(Collectors.toList())))));
+								.append("stored_line_count", newLineCount)));
+	}
+
+	/** Appends lines to a job log. The log is created if it doesn't exist. The line positions
+	 * are reserved atomically in the log document, so concurrent appends to the same log
+	 * never collide, and the lines are then written to their chunks. Any positions already set
+	 * on the lines are overwritten.
+	 * @param ujsJobId the job ID.
+	 * @param lines the lines to append.
+	 * @return the number of lines in the log after the append.
+	 */
+	public int appendExecLogLines(final String ujsJobId, final List<ExecLogLine> lines) {
+		return appendExecLogLines(Collections.singletonMap(ujsJobId, lines)).get(ujsJobId);
+	}
+
+	/** Appends lines to several job logs. Positions are reserved with one findAndModify per
+	 * log and then the lines of all the logs are written with a single bulk write.
+	 * @param linesByJob the lines to append keyed by job ID.
+	 * @return the number of lines in each log after the append.
+	 * @see #appendExecLogLines(String, List)
+	 */
+	public Map<String, Integer> appendExecLogLines(
+			final Map<String, List<ExecLogLine>> linesByJob) {
+		final Map<String, Integer> ret = new HashMap<>();
+		final BulkWriteOperation chunks = logChunkCol.initializeUnorderedBulkOperation();
+		// the job and lines of each write in the bulk write, in order
+		final List<String> writeJobs = new ArrayList<>();
+		final List<List<ExecLogLine>> writeLines = new ArrayList<>();
+		for (final Map.Entry<String, List<ExecLogLine>> job: linesByJob.entrySet()) {
+			final List<ExecLogLine> lines = job.getValue();
+			int pos = reserveExecLogLines(job.getKey(), lines.size());
+			for (final ExecLogLine l: lines) {
+				l.setLinePos(pos++);
+			}
+			ret.put(job.getKey(), pos);
+			if (!lines.isEmpty()) {
+				for (final List<ExecLogLine> chunkLines:
+						addChunkAppends(chunks, job.getKey(), lines)) {
+					writeJobs.add(job.getKey());
+					writeLines.add(chunkLines);
+				}
+			}
+		}
+		if (!writeJobs.isEmpty()) {
+			try {
+				chunks.execute();
+			} catch (MongoException e) {
+				// the positions are already reserved, so make sure tailing readers don't stall
+				// at a hole in the log
+				fillLostExecLogLines(writeJobs, writeLines, e);
+				throw e;
+			}
+			// pack the chunks these appends filled up
+			for (final Map.Entry<String, List<ExecLogLine>> job: linesByJob.entrySet()) {
+				final List<ExecLogLine> lines = job.getValue();
+				if (lines.isEmpty()) {
+					continue;
+				}
+				final int firstChunk = lines.get(0).getLinePos() / LOG_CHUNK_SIZE;
+				final int end = lines.get(lines.size() - 1).getLinePos() + 1;
+				try {
+					for (int c = firstChunk; c < end / LOG_CHUNK_SIZE; c++) {
+						packExecLogChunk(job.getKey(), c, true);
+					}
+				} catch (MongoException e) {
+					// the lines are stored, packing is retried by packExecLogChunks
+				}
+			}
+		}
+		return ret;
+	}
+
+	private int reserveExecLogLines(final String ujsJobId, final int count) {
+		final DBObject query = new BasicDBObject(PK_EXEC_LOGS, ujsJobId);
+		final DBObject fields = new BasicDBObject("stored_line_count", 1)
+				.append(FLD_LOG_CHUNKED, 1);
+		final DBObject update = new BasicDBObject("$inc",
+				new BasicDBObject("original_line_count", count)
+						.append("stored_line_count", count))
+				.append("$setOnInsert", new BasicDBObject(FLD_LOG_CHUNKED, true));
+		DBObject prev;
+		try {
+			prev = logCol.findAndModify(query, fields, null, false, update, false, true);
+		} catch (MongoException e) {
+			if (e.getCode() != 11000) {
+				throw e;
+			}
+			// lost an upsert race with another append, the document exists now
+			prev = logCol.findAndModify(query, fields, null, false, update, false, true);
+		}
+		if (prev == null) {
+			return 0;
+		}
+		if (!Boolean.TRUE.equals(prev.get(FLD_LOG_CHUNKED))) {
+			migrateExecLogToChunks(ujsJobId);
+		}
+		// logs that overflowed the old single document storage have original_line_count >
+		// stored_line_count, new lines go directly after the stored lines
+		return (Integer) prev.get("stored_line_count");
+	}
+
+	private void fillLostExecLogLines(
+			final List<String> writeJobs,
+			final List<List<ExecLogLine>> writeLines,
+			final MongoException err) {
+		try {
+			final Map<String, List<ExecLogLine>> lostByJob = new LinkedHashMap<>();
+			if (err instanceof BulkWriteException) {
+				// the other writes succeeded, filling their lines would duplicate positions
+				for (final BulkWriteError we: ((BulkWriteException) err).getWriteErrors()) {
+					lostByJob.computeIfAbsent(writeJobs.get(we.getIndex()),
+							k -> new ArrayList<>()).addAll(writeLines.get(we.getIndex()));
+				}
+			} else {
+				// which writes succeeded is unknown, so look for the lines that are missing
+				for (int i = 0; i < writeJobs.size(); i++) {
+					lostByJob.computeIfAbsent(writeJobs.get(i), k -> new ArrayList<>())
+							.addAll(getMissingExecLogLines(writeJobs.get(i), writeLines.get(i)));
+				}
+			}
+			final BulkWriteOperation chunks = logChunkCol.initializeUnorderedBulkOperation();
+			boolean hasLost = false;
+			for (final Map.Entry<String, List<ExecLogLine>> job: lostByJob.entrySet()) {
+				final List<ExecLogLine> lost = new ArrayList<>();
+				for (final ExecLogLine l: job.getValue()) {
+					final ExecLogLine filler = new ExecLogLine();
+					filler.setLinePos(l.getLinePos());
+					filler.setLine("Log line lost, saving it failed: " + err.getMessage());
+					filler.setIsError(true);
+					lost.add(filler);
+				}
+				if (!lost.isEmpty()) {
+					addChunkAppends(chunks, job.getKey(), lost);
+					hasLost = true;
+				}
+			}
+			if (hasLost) {
+				chunks.execute();
+			}
+		} catch (MongoException e) {
+			// nothing else to be done, the original error is thrown by the caller
+		}
+	}
+
+	// lines must all be in the same chunk
+	private List<ExecLogLine> getMissingExecLogLines(
+			final String ujsJobId,
+			final List<ExecLogLine> lines) {
+		final DBObject chunk = logChunkCol.findOne(new BasicDBObject(PK_EXEC_LOGS, ujsJobId)
+				.append(FLD_CHUNK_NO, lines.get(0).getLinePos() / LOG_CHUNK_SIZE),
+				new BasicDBObject(FLD_LOG_LINES, 1).append(FLD_CHUNK_PACKED, 1));
+		final Set<Integer> stored = new HashSet<>();
+		if (chunk != null) {
+			for (final ExecLogLine l: getChunkLines(
+					chunk, Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+				stored.add(l.getLinePos());
+			}
+		}
+		return lines.stream().filter(l -> !stored.contains(l.getLinePos()))
+				.collect(Collectors.toList());
+	}
+
+	/* Adds one upsert per chunk to the bulk write and returns the lines of each upsert, in the
+	 * order they were added.
+	 */
+	private List<List<ExecLogLine>> addChunkAppends(
+			final BulkWriteOperation bulk,
+			final String ujsJobId,
+			final List<ExecLogLine> lines) {
+		final Map<Integer, List<ExecLogLine>> byChunk = new TreeMap<>();
+		for (final ExecLogLine l: lines) {
+			byChunk.computeIfAbsent(l.getLinePos() / LOG_CHUNK_SIZE, k -> new ArrayList<>())
+					.add(l);
+		}
+		for (final Map.Entry<Integer, List<ExecLogLine>> chunk: byChunk.entrySet()) {
+			final int chunkNo = chunk.getKey();
+			final List<DBObject> chunkLines = chunk.getValue().stream().map(l -> toDBObj(l))
+					.collect(Collectors.toList());
+			bulk.find(new BasicDBObject(PK_EXEC_LOGS, ujsJobId).append(FLD_CHUNK_NO, chunkNo))
+					.upsert().updateOne(new BasicDBObject(
+							"$setOnInsert", new BasicDBObject(
+									FLD_CHUNK_FIRST_LINE, chunkNo * LOG_CHUNK_SIZE))
+					.append("$push", new BasicDBObject(FLD_LOG_LINES,
+							new BasicDBObject("$each", chunkLines)))
+					.append("$inc", new BasicDBObject(FLD_CHUNK_LINE_COUNT, chunkLines.size()))
+					.append("$max", new BasicDBObject(FLD_CHUNK_LAST_LINE,
+							getLinePos(chunkLines.get(chunkLines.size() - 1)))));
+		}
+		return new ArrayList<>(byChunk.values());
+	}
+
+	private static Map<Integer, List<DBObject>> groupByChunk(final List<DBObject> lines) {
+		final Map<Integer, List<DBObject>> ret = new TreeMap<>();
+		for (final DBObject line: lines) {
+			final int chunkNo = getLinePos(line) / LOG_CHUNK_SIZE;
+			if (!ret.containsKey(chunkNo)) {
+				ret.put(chunkNo, new ArrayList<>());
+			}
+			ret.get(chunkNo).add(line);
+		}
+		return ret;
+	}
+
+	private static int getLinePos(final DBObject line) {
+		return (Integer) line.get("line_pos");
+	}
+
+	/** Moves the log lines of a pre-chunking exec_logs document into exec_log_chunks.
+	 * Safe to run repeatedly or concurrently for the same job since chunks are only ever
+	 * created whole and existing chunks are left alone.
+	 * @param ujsJobId the job whose log should be migrated.
+	 * @return true if the log was in the old format and was migrated, false otherwise.
+	 */
+	public boolean migrateExecLogToChunks(final String ujsJobId) {
+		final DBObject legacy = logCol.findOne(
+				new BasicDBObject(PK_EXEC_LOGS, ujsJobId)
+						.append(FLD_LOG_CHUNKED, new BasicDBObject("$ne", true)),
+				new BasicDBObject(FLD_LOG_LINES, 1));
+		if (legacy == null) {
+			return false;
+		}
+		@SuppressWarnings("unchecked")
+		final List<DBObject> lines = (List<DBObject>) legacy.get(FLD_LOG_LINES);
+		if (lines != null && !lines.isEmpty()) {
+			final BulkWriteOperation chunks = logChunkCol.initializeUnorderedBulkOperation();
+			for (final Map.Entry<Integer, List<DBObject>> chunk:
+					groupByChunk(lines).entrySet()) {
+				final int chunkNo = chunk.getKey();
+				final List<DBObject> chunkLines = chunk.getValue();
+				chunks.find(new BasicDBObject(PK_EXEC_LOGS, ujsJobId)
+						.append(FLD_CHUNK_NO, chunkNo))
+						.upsert().updateOne(new BasicDBObject("$setOnInsert", new BasicDBObject(
+								FLD_CHUNK_FIRST_LINE, chunkNo * LOG_CHUNK_SIZE)
+								.append(FLD_CHUNK_LAST_LINE,
+										getLinePos(chunkLines.get(chunkLines.size() - 1)))
+								.append(FLD_CHUNK_LINE_COUNT, chunkLines.size())
+								.append(FLD_LOG_LINES, chunkLines)));
+			}
+			chunks.execute();
+		}
+		logCol.update(new BasicDBObject(PK_EXEC_LOGS, ujsJobId),
+				new BasicDBObject("$set", new BasicDBObject(FLD_LOG_CHUNKED, true))
+						.append("$unset", new BasicDBObject(FLD_LOG_LINES, "")));
+		packExecLogChunks(ujsJobId);
+		return true;
+	}
+
+	/* Migrates a legacy log unless it's already known to be chunked, so repeated appends to
+	 * the same log don't query for legacy lines every time. A log that doesn't exist yet is
+	 * created chunked, so it's remembered as well.
+	 */
+	private void ensureExecLogChunked(final String ujsJobId) {
+		synchronized (chunkedLogs) {
+			if (chunkedLogs.contains(ujsJobId)) {
+				return;
+			}
+		}
+		migrateExecLogToChunks(ujsJobId);
+		synchronized (chunkedLogs) {
+			chunkedLogs.add(ujsJobId);
+		}
+	}
+
+	/** Moves the log lines of all pre-chunking exec_logs documents into exec_log_chunks.
+	 * Logs are otherwise migrated lazily the first time they're appended to.
+	 * @return the number of migrated logs.
+	 */
+	public int migrateExecLogsToChunks() {
+		int count = 0;
+		final DBCursor legacy = logCol.find(
+				new BasicDBObject(FLD_LOG_CHUNKED, new BasicDBObject("$ne", true)),
+				new BasicDBObject(PK_EXEC_LOGS, 1));
+		for (final DBObject dbo: legacy) {
+			if (migrateExecLogToChunks((String) dbo.get(PK_EXEC_LOGS))) {
+				count++;
+			}
+		}
+		return count;
 	}
 
 	public void updateExecLogOriginalLineCount(String ujsJobId, int newLineCount)
@@ -194,23 +672,548 @@ public class ExecEngineMongoDb {
 	public List<ExecLogLine> getExecLogLines(String ujsJobId, int from, int count)
 			throws Exception {
 		//input checking
+		if (count <= 0) {
+			return new ArrayList<>();
+		}
+		final int to = from + count;
+		final DBCursor chunks = logChunkCol.find(
+				new BasicDBObject(PK_EXEC_LOGS, ujsJobId).append(FLD_CHUNK_NO,
+						new BasicDBObject("$gte", from / LOG_CHUNK_SIZE)
+								.append("$lte", (to - 1) / LOG_CHUNK_SIZE)),
+				new BasicDBObject(FLD_LOG_LINES, 1).append(FLD_CHUNK_PACKED, 1))
+				.sort(new BasicDBObject(FLD_CHUNK_NO, 1));
+		final List<ExecLogLine> ret = new ArrayList<>();
+		for (final DBObject chunk: chunks) {
+			ret.addAll(getChunkLines(chunk, from, to));
+		}
+		boolean hasFirst = false;
+		for (final ExecLogLine l: ret) {
+			hasFirst = hasFirst || l.getLinePos() == from;
+		}
+		if (!hasFirst) {
+			// the start of the range is archived, or the log predates chunked storage
+			ret.addAll(getArchivedOrLegacyExecLogLines(ujsJobId, from, count));
+		}
+		ret.sort((l1, l2) -> Integer.compare(l1.getLinePos(), l2.getLinePos()));
+		// positions are reserved before the lines are written, so a concurrent append may
+		// not have landed yet. Only return lines up to the first missing one.
+		final List<ExecLogLine> contiguous = new ArrayList<>(ret.size());
+		for (final ExecLogLine l: ret) {
+			if (l.getLinePos() == from + contiguous.size()) {
+				contiguous.add(l);
+			} else if (l.getLinePos() > from + contiguous.size()) {
+				break;
+			} // else the line is both archived and in a chunk
+		}
+		return contiguous;
+	}
+
+	/** Scans the lines of a job log in a position range and collects those that match a
+	 * filter. The chunks in the range are read with one sorted query whose cursor fetches a
+	 * few chunks at a time, and the scan stops as soon as the limit is reached, so only a few
+	 * chunks and the matching lines are held in memory. Chunks that are archived or not yet
+	 * migrated from a legacy log are read as getExecLogLines() reads them. Like
+	 * getExecLogLines(), the scan also stops at the first line that hasn't been written yet.
+	 * @param ujsJobId the job ID.
+	 * @param from the position of the first line to scan.
+	 * @param to the position after the last line to scan.
+	 * @param filter the filter, or null to collect every line.
+	 * @param limit the maximum number of lines to collect.
+	 * @param out the list to which matching lines are added.
+	 * @return the position after the last scanned line, where the next scan should start.
+	 */
+	public int scanExecLogLines(
+			final String ujsJobId,
+			final int from,
+			final int to,
+			final Predicate<ExecLogLine> filter,
+			final int limit,
+			final List<ExecLogLine> out)
+			throws Exception {
+		if (from >= to || limit <= 0) {
+			return from;
+		}
+		final DBCursor chunks = logChunkCol.find(
+				new BasicDBObject(PK_EXEC_LOGS, ujsJobId).append(FLD_CHUNK_NO,
+						new BasicDBObject("$gte", from / LOG_CHUNK_SIZE)
+								.append("$lte", (to - 1) / LOG_CHUNK_SIZE)),
+				new BasicDBObject(FLD_CHUNK_NO, 1).append(FLD_LOG_LINES, 1)
+						.append(FLD_CHUNK_PACKED, 1))
+				.sort(new BasicDBObject(FLD_CHUNK_NO, 1))
+				.batchSize(SCAN_BATCH_CHUNKS);
+		try {
+			int pos = from;
+			int found = 0;
+			DBObject chunk = null;
+			while (pos < to) {
+				final int chunkNo = pos / LOG_CHUNK_SIZE;
+				final int end = Math.min(to, (chunkNo + 1) * LOG_CHUNK_SIZE);
+				while ((chunk == null || getChunkNo(chunk) < chunkNo) && chunks.hasNext()) {
+					chunk = chunks.next();
+				}
+				List<ExecLogLine> lines = new ArrayList<>();
+				if (chunk != null && getChunkNo(chunk) == chunkNo) {
+					lines = getChunkLines(chunk, pos, end);
+					lines.sort((l1, l2) -> Integer.compare(l1.getLinePos(), l2.getLinePos()));
+				}
+				if (lines.isEmpty() || lines.get(0).getLinePos() != pos) {
+					// the chunk is archived, or the log predates chunked storage
+					lines = getExecLogLines(ujsJobId, pos, end - pos);
+				}
+				for (final ExecLogLine l: lines) {
+					if (l.getLinePos() < pos) {
+						continue;
+					}
+					if (l.getLinePos() > pos) {
+						// a concurrent append hasn't landed yet
+						break;
+					}
+					pos++;
+					if (filter == null || filter.test(l)) {
+						out.add(l);
+						found++;
+						if (found >= limit) {
+							return pos;
+						}
+					}
+				}
+				if (pos < end) {
+					break;
+				}
+			}
+			return pos;
+		} finally {
+			chunks.close();
+		}
+	}
+
+	private static int getChunkNo(final DBObject chunk) {
+		return ((Number) chunk.get(FLD_CHUNK_NO)).intValue();
+	}
+
+	/* Returns the lines of a chunk in a position range. A chunk holds its lines either as
+	 * subdocuments in the 'lines' array or packed by LogChunkCodec, or both if lines were
+	 * appended after the chunk was packed.
+	 */
+	private static List<ExecLogLine> getChunkLines(
+			final DBObject chunk,
+			final int from,
+			final int to) {
+		final List<ExecLogLine> ret = new ArrayList<>();
+		final byte[] packed = (byte[]) chunk.get(FLD_CHUNK_PACKED);
+		if (packed != null) {
+			ret.addAll(LogChunkCodec.decode(packed, from, to));
+		}
 		@SuppressWarnings("unchecked")
-		final List<DBObject> lines = (List<DBObject>) logCol.findOne(
+		final List<DBObject> lines = (List<DBObject>) chunk.get(FLD_LOG_LINES);
+		if (lines != null) {
+			for (final DBObject dbo: lines) {
+				final int pos = getLinePos(dbo);
+				if (pos >= from && pos < to) {
+					ret.add(toExecLogLine(dbo));
+				}
+			}
+		}
+		return ret;
+	}
+
+	/** Packs the lines of all the chunks of a job log with LogChunkCodec, which is much
+	 * smaller than storing each line as a subdocument. Full chunks are packed as soon as their
+	 * last line is written, so this only needs to be called for the last chunk when a job
+	 * finishes. Chunks with appends still in flight are skipped. Lines appended to a packed
+	 * chunk are stored as subdocuments until the chunk is packed again.
+	 * @param ujsJobId the job ID.
+	 * @return the number of packed chunks.
+	 */
+	public int packExecLogChunks(final String ujsJobId) {
+		final DBCursor chunks = logChunkCol.find(
+				new BasicDBObject(PK_EXEC_LOGS, ujsJobId)
+						.append(FLD_LOG_LINES, new BasicDBObject("$exists", true)),
+				new BasicDBObject(FLD_CHUNK_NO, 1));
+		int count = 0;
+		for (final DBObject chunk: chunks) {
+			if (packExecLogChunk(ujsJobId, (Integer) chunk.get(FLD_CHUNK_NO), false)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private boolean packExecLogChunk(
+			final String ujsJobId,
+			final int chunkNo,
+			final boolean onlyFull) {
+		final DBObject query = new BasicDBObject(PK_EXEC_LOGS, ujsJobId)
+				.append(FLD_CHUNK_NO, chunkNo)
+				.append(FLD_LOG_LINES, new BasicDBObject("$exists", true));
+		if (onlyFull) {
+			query.put(FLD_CHUNK_LINE_COUNT, LOG_CHUNK_SIZE);
+		}
+		final DBObject chunk = logChunkCol.findOne(query);
+		if (chunk == null) {
+			return false;
+		}
+		final int lineCount = (Integer) chunk.get(FLD_CHUNK_LINE_COUNT);
+		final List<ExecLogLine> lines = getChunkLines(chunk, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		lines.sort((l1, l2) -> Integer.compare(l1.getLinePos(), l2.getLinePos()));
+		if (lines.size() != lineCount) {
+			return false;
+		}
+		for (int i = 1; i < lines.size(); i++) {
+			if (lines.get(i).getLinePos() != lines.get(i - 1).getLinePos() + 1) {
+				// a reserved range hasn't been written yet
+				return false;
+			}
+		}
+		// any concurrent append changes the line count, in which case this is a no-op
+		return logChunkCol.update(
+				new BasicDBObject(PK_EXEC_LOGS, ujsJobId)
+						.append(FLD_CHUNK_NO, chunkNo)
+						.append(FLD_CHUNK_LINE_COUNT, lineCount),
+				new BasicDBObject("$set", new BasicDBObject(
+						FLD_CHUNK_PACKED, LogChunkCodec.encode(lines))
+						.append(FLD_CHUNK_ENCODING, LogChunkCodec.ENCODING))
+						.append("$unset", new BasicDBObject(FLD_LOG_LINES, "")))
+				.getN() > 0;
+	}
+
+	private List<ExecLogLine> getArchivedOrLegacyExecLogLines(
+			final String ujsJobId,
+			final int from,
+			final int count)
+			throws IOException {
+		final DBObject log = logCol.findOne(
 				new BasicDBObject(PK_EXEC_LOGS, ujsJobId),
-				new BasicDBObject("lines", new BasicDBObject("$slice",
-						Arrays.asList(from, count)))).get("lines");
-		return lines.stream().map(dbo -> {
-			final ExecLogLine line = new ExecLogLine();
-			line.setIsError((Boolean) dbo.get("is_error"));
-			line.setLine((String) dbo.get("line"));
-			line.setLinePos((Integer) dbo.get("line_pos"));
-			return line;
-		}).collect(Collectors.toList());
+				new BasicDBObject(FLD_LOG_ARCHIVE, 1).append(FLD_LOG_LINES,
+						new BasicDBObject("$slice", Arrays.asList(from, count))));
+		if (log == null) {
+			return new ArrayList<>();
+		}
+		if (log.get(FLD_LOG_ARCHIVE) != null) {
+			return getArchivedExecLogLines(
+					ujsJobId, (DBObject) log.get(FLD_LOG_ARCHIVE), from, from + count);
+		}
+		@SuppressWarnings("unchecked")
+		final List<DBObject> lines = (List<DBObject>) log.get(FLD_LOG_LINES);
+		if (lines == null) {
+			return new ArrayList<>();
+		}
+		return lines.stream().map(dbo -> toExecLogLine(dbo)).collect(Collectors.toList());
+	}
+
+	private List<ExecLogLine> getArchivedExecLogLines(
+			final String ujsJobId,
+			final DBObject archive,
+			final int from,
+			final int to)
+			throws IOException {
+		if (logArchive == null) {
+			throw new IllegalStateException(String.format(
+					"The log for job %s is archived but no log archive is configured", ujsJobId));
+		}
+		// logs archived before they could span segments only record the segment of the log
+		final String logSegment = (String) archive.get(FLD_ARCHIVE_SEGMENT);
+		final List<ExecLogLine> ret = new ArrayList<>();
+		@SuppressWarnings("unchecked")
+		final List<DBObject> chunks = (List<DBObject>) archive.get(FLD_ARCHIVE_CHUNKS);
+		for (final DBObject chunk: chunks) {
+			final int chunkNo = (Integer) chunk.get(FLD_CHUNK_NO);
+			if (chunkNo >= from / LOG_CHUNK_SIZE && chunkNo <= (to - 1) / LOG_CHUNK_SIZE) {
+				final String segment = chunk.get(FLD_ARCHIVE_SEGMENT) == null ?
+						logSegment : (String) chunk.get(FLD_ARCHIVE_SEGMENT);
+				ret.addAll(LogChunkCodec.decode(logArchive.read(segment,
+						((Number) chunk.get(FLD_ARCHIVE_OFFSET)).longValue(),
+						(Integer) chunk.get(FLD_ARCHIVE_LENGTH)), from, to));
+			}
+		}
+		return ret;
+	}
+
+	/** Set the archive used for the logs of finished jobs. Without an archive, logs can't be
+	 * archived and reads of archived logs fail.
+	 * @param archive the log archive.
+	 */
+	public void setLogArchive(final ExecLogArchive archive) {
+		logArchive = archive;
+	}
+
+	/** Claim a job that finished before a given time and whose log hasn't been archived, so
+	 * the servers sharing the database don't archive the same logs. The claim is a lease that
+	 * expires, after which another server may claim the job, e.g. if archiving failed.
+	 * @param finishedBefore the finish time cutoff in epoch milliseconds.
+	 * @param leaseMs how long the claim lasts.
+	 * @return the job ID, or null if there are no more jobs to archive.
+	 */
+	public String claimUnarchivedFinishedJob(final long finishedBefore, final long leaseMs) {
+		final long now = System.currentTimeMillis();
+		final DBObject task = taskCol.findAndModify(
+				new BasicDBObject("finish_time", new BasicDBObject("$lt", finishedBefore))
+						.append(FLD_TASK_LOG_ARCHIVED, new BasicDBObject("$ne", true))
+						.append("$or", Arrays.asList(
+								new BasicDBObject(FLD_TASK_LOG_ARCHIVE_LEASE,
+										new BasicDBObject("$exists", false)),
+								new BasicDBObject(FLD_TASK_LOG_ARCHIVE_LEASE,
+										new BasicDBObject("$lt", now)))),
+				new BasicDBObject(PK_EXEC_TASKS, 1), null, false,
+				new BasicDBObject("$set", new BasicDBObject(
+						FLD_TASK_LOG_ARCHIVE_LEASE, now + leaseMs)),
+				false, false);
+		return task == null ? null : (String) task.get(PK_EXEC_TASKS);
+	}
+
+	/** Move the log of a finished job from Mongo to the log archive. The chunks are written
+	 * to the archive first and only removed from Mongo once the log document points to the
+	 * archive, so a failure at any point leaves the log readable.
+	 * @param ujsJobId the job ID.
+	 * @return true if the log was archived, false if there was nothing to archive or the log
+	 * is still being written to, in which case archiving should be retried later.
+	 * @throws IOException if the archive couldn't be written.
+	 */
+	public boolean archiveExecLog(final String ujsJobId) throws IOException {
+		if (logArchive == null) {
+			throw new IllegalStateException("No log archive is configured");
+		}
+		final DBObject log = logCol.findOne(new BasicDBObject(PK_EXEC_LOGS, ujsJobId),
+				new BasicDBObject("stored_line_count", 1).append(FLD_LOG_ARCHIVE, 1));
+		if (log == null || log.get(FLD_LOG_ARCHIVE) != null) {
+			setTaskLogArchived(ujsJobId);
+			return false;
+		}
+		migrateExecLogToChunks(ujsJobId);
+		packExecLogChunks(ujsJobId);
+		final int lineCount = (Integer) log.get("stored_line_count");
+		final List<Integer> chunkNos = new ArrayList<>();
+		final List<Integer> chunkLineCounts = new ArrayList<>();
+		final List<byte[]> packed = new ArrayList<>();
+		int chunkLines = 0;
+		for (final DBObject chunk: logChunkCol.find(new BasicDBObject(PK_EXEC_LOGS, ujsJobId))
+				.sort(new BasicDBObject(FLD_CHUNK_NO, 1))) {
+			if (chunk.get(FLD_LOG_LINES) != null) {
+				return false; // lines are still arriving
+			}
+			chunkNos.add((Integer) chunk.get(FLD_CHUNK_NO));
+			packed.add((byte[]) chunk.get(FLD_CHUNK_PACKED));
+			chunkLineCounts.add((Integer) chunk.get(FLD_CHUNK_LINE_COUNT));
+			chunkLines += (Integer) chunk.get(FLD_CHUNK_LINE_COUNT);
+		}
+		if (chunkLines != lineCount) {
+			return false;
+		}
+		final List<DBObject> index = new ArrayList<>();
+		final String segment;
+		if (packed.isEmpty()) {
+			segment = null;
+		} else {
+			final ExecLogArchive.Location loc = logArchive.append(packed);
+			// the chunks are removed from Mongo below, so make sure the archived copy is good
+			logArchive.verify(loc, packed);
+			segment = loc.segments[0];
+			for (int i = 0; i < packed.size(); i++) {
+				index.add(new BasicDBObject(FLD_CHUNK_NO, chunkNos.get(i))
+						.append(FLD_ARCHIVE_SEGMENT, loc.segments[i])
+						.append(FLD_ARCHIVE_OFFSET, loc.offsets[i])
+						.append(FLD_ARCHIVE_LENGTH, packed.get(i).length));
+			}
+		}
+		final int updated = logCol.update(new BasicDBObject(PK_EXEC_LOGS, ujsJobId)
+				.append("stored_line_count", lineCount)
+				.append(FLD_LOG_ARCHIVE, new BasicDBObject("$exists", false)),
+				new BasicDBObject("$set", new BasicDBObject(FLD_LOG_ARCHIVE,
+						new BasicDBObject(FLD_ARCHIVE_SEGMENT, segment)
+								.append(FLD_ARCHIVE_LINE_COUNT, lineCount)
+								.append(FLD_ARCHIVE_CHUNKS, index)))).getN();
+		if (updated == 0) {
+			// a late append, the archived copy is abandoned in the segment
+			return false;
+		}
+		// leave any chunk that got a late append in place, reads skip the duplicated lines
+		final BulkWriteOperation remove = logChunkCol.initializeUnorderedBulkOperation();
+		for (int i = 0; i < chunkNos.size(); i++) {
+			remove.find(new BasicDBObject(PK_EXEC_LOGS, ujsJobId)
+					.append(FLD_CHUNK_NO, chunkNos.get(i))
+					.append(FLD_CHUNK_LINE_COUNT, chunkLineCounts.get(i)))
+					.removeOne();
+		}
+		if (!chunkNos.isEmpty()) {
+			remove.execute();
+		}
+		setTaskLogArchived(ujsJobId);
+		return true;
+	}
+
+	private void setTaskLogArchived(final String ujsJobId) {
+		taskCol.update(new BasicDBObject(PK_EXEC_TASKS, ujsJobId),
+				new BasicDBObject("$set", new BasicDBObject(FLD_TASK_LOG_ARCHIVED, true))
+						.append("$unset", new BasicDBObject(FLD_TASK_LOG_ARCHIVE_LEASE, "")));
+	}
+
+	private static DBObject toDBObj(final ExecLogLine line) {
+		return new BasicDBObject("line_pos", line.getLinePos())
+				.append("line", line.getLine())
+				.append("is_error", line.getIsError());
+	}
+
+	private static ExecLogLine toExecLogLine(final DBObject dbo) {
+		final ExecLogLine line = new ExecLogLine();
+		line.setIsError((Boolean) dbo.get("is_error"));
+		line.setLine((String) dbo.get("line"));
+		line.setLinePos((Integer) dbo.get("line_pos"));
+		return line;
 	}
 
 	public void insertExecTask(ExecTask execTask) throws Exception {
 		// needs input checking
 		taskCol.insert(toDBObj(execTask));
+		incParentStateVersions(Arrays.asList(execTask));
+	}
+
+	/** Insert several tasks with one call to the database.
+	 * @param execTasks the tasks.
+	 * @throws Exception if the tasks couldn't be inserted.
+	 */
+	public void insertExecTasks(final List<ExecTask> execTasks) throws Exception {
+		if (execTasks.isEmpty()) {
+			return;
+		}
+		final List<DBObject> dbos = new ArrayList<>();
+		for (final ExecTask t: execTasks) {
+			dbos.add(toDBObj(t));
+		}
+		taskCol.insert(dbos);
+		incParentStateVersions(execTasks);
+	}
+
+	// a new sub job shows up in the job state of its parent. Parents created before versions
+	// were recorded are left without a version
+	private void incParentStateVersions(final List<ExecTask> execTasks) {
+		final Set<String> parents = new HashSet<>();
+		for (final ExecTask t: execTasks) {
+			if (t.getParentJobId() != null) {
+				parents.add(t.getParentJobId());
+			}
+		}
+		if (parents.isEmpty()) {
+			return;
+		}
+		taskCol.update(new BasicDBObject(PK_EXEC_TASKS, new BasicDBObject("$in", parents))
+						.append(FLD_TASK_STATE_VERSION, new BasicDBObject("$exists", true)),
+				new BasicDBObject("$inc", new BasicDBObject(FLD_TASK_STATE_VERSION, 1)),
+				false, true);
+	}
+
+	/** Add jobs to the submission queue. Each job's task must already exist.
+	 * @param submissions the queue entries. The entries are due at once.
+	 */
+	public void insertExecSubmissions(final List<ExecSubmission> submissions) {
+		if (submissions.isEmpty()) {
+			return;
+		}
+		final long now = System.currentTimeMillis();
+		final List<DBObject> dbos = new ArrayList<>();
+		for (final ExecSubmission s: submissions) {
+			final DBObject dbo = toDBObj(s);
+			dbo.put(FLD_SUBMIT_STATE, SUBMIT_STATE_PENDING);
+			dbo.put(FLD_SUBMIT_ATTEMPTS, 0);
+			dbo.put(FLD_SUBMIT_NEXT_ATTEMPT_TIME, now);
+			dbos.add(dbo);
+		}
+		submitCol.insert(dbos);
+	}
+
+	/** Claim the due entries of the submission queue, oldest first. A claimed entry is leased
+	 * to the caller and becomes due again when the lease expires, so another server can submit
+	 * the job if the claiming server dies. In that case the job may be submitted twice.
+	 * Claiming an entry counts as a submission attempt.
+	 * @param max the maximum number of entries to claim.
+	 * @param leaseMs the length of the lease.
+	 * @return the claimed entries.
+	 */
+	public List<ExecSubmission> claimExecSubmissions(final int max, final long leaseMs) {
+		final List<ExecSubmission> ret = new ArrayList<>();
+		while (ret.size() < max) {
+			final long now = System.currentTimeMillis();
+			final DBObject dbo = submitCol.findAndModify(
+					new BasicDBObject(FLD_SUBMIT_NEXT_ATTEMPT_TIME, new BasicDBObject("$lte", now)),
+					null, new BasicDBObject(FLD_SUBMIT_NEXT_ATTEMPT_TIME, 1), false,
+					new BasicDBObject("$set", new BasicDBObject(
+							FLD_SUBMIT_STATE, SUBMIT_STATE_SUBMITTING)
+							.append(FLD_SUBMIT_NEXT_ATTEMPT_TIME, now + leaseMs))
+							.append("$inc", new BasicDBObject(FLD_SUBMIT_ATTEMPTS, 1)),
+					true, false);
+			if (dbo == null) {
+				break;
+			}
+			ret.add(toObj(dbo, ExecSubmission.class));
+		}
+		return ret;
+	}
+
+	/** Remove a submitted job from the submission queue, along with the user token stored in
+	 * the queue entry, and record the scheduler ID of the job in its task. The ID is only
+	 * recorded if the job is still in the queue and its task hasn't finished. If the entry is
+	 * already gone, another submitter took over the job after this submitter's lease expired
+	 * and recorded its own submission, which usually found this submitter's job by name.
+	 * @param ujsJobId the job ID.
+	 * @param schedulerId the ID the scheduler assigned to the job.
+	 * @return whether the ID was recorded, the job was already completed by another
+	 * submitter, or the job finished and should be removed from the scheduler.
+	 */
+	public ExecSubmission.Completion completeExecSubmission(
+			final String ujsJobId,
+			final String schedulerId) {
+		final DBObject entry = submitCol.findAndModify(new BasicDBObject(PK_EXEC_TASKS, ujsJobId),
+				new BasicDBObject(PK_EXEC_TASKS, 1), null, true, null, false, false);
+		if (entry != null) {
+			final List<String> unfinished = new ArrayList<>();
+			for (final ExecTaskState s: ExecTaskState.UNFINISHED) {
+				unfinished.add(s.getValue());
+			}
+			// matches tasks created before states were recorded
+			unfinished.add(null);
+			if (taskCol.update(new BasicDBObject(PK_EXEC_TASKS, ujsJobId)
+							.append(FLD_TASK_STATE, new BasicDBObject("$in", unfinished)),
+					new BasicDBObject("$set", new BasicDBObject("task_id", schedulerId)))
+					.getN() > 0) {
+				return ExecSubmission.Completion.COMPLETED;
+			}
+		}
+		final DBObject task = taskCol.findOne(new BasicDBObject(PK_EXEC_TASKS, ujsJobId),
+				new BasicDBObject(FLD_TASK_STATE, 1));
+		final ExecTaskState state = task == null ? null :
+				ExecTaskState.fromValue((String) task.get(FLD_TASK_STATE));
+		if (task == null || (state != null && state.isFinished())) {
+			return ExecSubmission.Completion.CANCELED;
+		}
+		return ExecSubmission.Completion.ALREADY_COMPLETED;
+	}
+
+	/** Return a claimed job to the submission queue after a failed submission attempt.
+	 * @param ujsJobId the job ID.
+	 * @param nextAttemptTime the earliest time of the next attempt in epoch milliseconds.
+	 * @param error the reason the attempt failed.
+	 */
+	public void retryExecSubmission(
+			final String ujsJobId,
+			final long nextAttemptTime,
+			final String error) {
+		submitCol.update(new BasicDBObject(PK_EXEC_TASKS, ujsJobId),
+				new BasicDBObject("$set", new BasicDBObject(FLD_SUBMIT_STATE, SUBMIT_STATE_PENDING)
+						.append(FLD_SUBMIT_NEXT_ATTEMPT_TIME, nextAttemptTime)
+						.append(FLD_SUBMIT_LAST_ERROR, error)));
+	}
+
+	/** Remove a job from the submission queue without submitting it.
+	 * @param ujsJobId the job ID.
+	 */
+	public void removeExecSubmission(final String ujsJobId) {
+		submitCol.remove(new BasicDBObject(PK_EXEC_TASKS, ujsJobId));
+	}
+
+	/** Get the number of jobs in the submission queue, including claimed jobs.
+	 * @return the number of jobs.
+	 */
+	public long getExecSubmissionQueueDepth() {
+		return submitCol.count();
 	}
 
 	// note that result must be sanitized before storing in mongo. See {@link SanitizeMongoObject}.
@@ -218,7 +1221,33 @@ public class ExecEngineMongoDb {
 	public void addExecTaskResult(final String ujsJobId, final Map<String, Object> result) {
 		// input checking
 		taskCol.update(new BasicDBObject(PK_EXEC_TASKS, ujsJobId),
-				new BasicDBObject("$set", new BasicDBObject("job_output", result)));
+				new BasicDBObject("$set", new BasicDBObject("job_output", result))
+						.append("$inc", new BasicDBObject(FLD_TASK_STATE_VERSION, 1)));
+	}
+
+	/** Get the state versions of tasks. The version of a task increases with every change to
+	 * the task that shows up in its job state.
+	 * @param ujsJobIds the job IDs.
+	 * @return the state versions. Tasks that don't exist or were created before versions were
+	 * recorded are missing.
+	 */
+	public Map<String, Long> getExecTaskStateVersions(final Collection<String> ujsJobIds) {
+		final Map<String, Long> ret = new HashMap<>();
+		if (ujsJobIds.isEmpty()) {
+			return ret;
+		}
+		// only the index is read once the database is migrated to 1.1
+		final DBCursor cur = taskCol.find(
+				new BasicDBObject(PK_EXEC_TASKS, new BasicDBObject("$in", ujsJobIds)),
+				new BasicDBObject("_id", 0).append(PK_EXEC_TASKS, 1)
+						.append(FLD_TASK_STATE_VERSION, 1));
+		for (final DBObject dbo: cur) {
+			final Long version = toLong(dbo.get(FLD_TASK_STATE_VERSION));
+			if (version != null) {
+				ret.put((String) dbo.get(PK_EXEC_TASKS), version);
+			}
+		}
+		return ret;
 	}
 
 	// note that job inputs and outputs must be un-sanitized before use.
@@ -226,7 +1255,614 @@ public class ExecEngineMongoDb {
 	// the un-santization should really happen here.
 	public ExecTask getExecTask(String ujsJobId) throws Exception {
 		// input checking
-		return toObj(taskCol.findOne(new BasicDBObject(PK_EXEC_TASKS, ujsJobId)), ExecTask.class);
+		return toObj(taskCol.findOne(new BasicDBObject(PK_EXEC_TASKS, ujsJobId),
+				TASK_BOOKKEEPING_FIELDS), ExecTask.class);
+	}
+
+	/** Get the parts of a task needed to report the state of its job, and the IDs of its sub
+	 * jobs.
+	 * @param ujsJobId the job ID.
+	 * @param withOutput true to include the job output. Only finished jobs have output.
+	 * @return the task view, or null if the job has neither a task nor sub jobs.
+	 */
+	public ExecTaskView getExecTaskView(final String ujsJobId, final boolean withOutput) {
+		return getExecTaskViews(Arrays.asList(ujsJobId), false, withOutput).get(ujsJobId);
+	}
+
+	/** Get the parts of several tasks needed to report the states of their jobs, and the IDs of
+	 * their sub jobs. The tasks are read with one query and the sub job IDs with a second,
+	 * projected query, so the sub job documents and their large job inputs and outputs aren't
+	 * read.
+	 * @param ujsJobIds the job IDs.
+	 * @param withInput true to include the job inputs.
+	 * @param withOutput true to include the job outputs.
+	 * @return the task views, mapped by job ID. Jobs with neither a task nor sub jobs are
+	 * omitted.
+	 */
+	public Map<String, ExecTaskView> getExecTaskViews(
+			final Collection<String> ujsJobIds,
+			final boolean withInput,
+			final boolean withOutput) {
+		final List<String> ids = new ArrayList<>(new LinkedHashSet<>(ujsJobIds));
+		final Map<String, ExecTaskView> ret = new HashMap<>();
+		if (ids.isEmpty()) {
+			return ret;
+		}
+		final BasicDBObject proj = getTaskViewProjection();
+		if (withInput) {
+			proj.append(FLD_TASK_JOB_INPUT, 1);
+		}
+		if (withOutput) {
+			proj.append(FLD_TASK_JOB_OUTPUT, 1);
+		}
+		final Map<String, ExecTask> tasks = new HashMap<>();
+		for (final DBObject dbo: taskCol.find(
+				new BasicDBObject(PK_EXEC_TASKS, new BasicDBObject("$in", ids)), proj)) {
+			final ExecTask task = toPartialExecTask(dbo);
+			tasks.put(task.getUjsJobId(), task);
+		}
+		final Map<String, List<String>> subJobs = new HashMap<>();
+		for (final DBObject dbo: taskCol.find(
+				new BasicDBObject(FLD_TASK_PARENT_JOB_ID, new BasicDBObject("$in", ids)),
+				new BasicDBObject("_id", 0).append(PK_EXEC_TASKS, 1)
+						.append(FLD_TASK_PARENT_JOB_ID, 1))) {
+			subJobs.computeIfAbsent((String) dbo.get(FLD_TASK_PARENT_JOB_ID),
+					k -> new ArrayList<>()).add((String) dbo.get(PK_EXEC_TASKS));
+		}
+		for (final String jobId: ids) {
+			final ExecTask task = tasks.get(jobId);
+			final List<String> subs = subJobs.get(jobId);
+			if (task != null || subs != null) {
+				ret.put(jobId, new ExecTaskView(task,
+						subs == null ? Collections.emptyList() : subs));
+			}
+		}
+		return ret;
+	}
+
+	/** Get a page of the tasks in a workspace, with the parts needed to report the states of
+	 * their jobs and the IDs of their sub jobs. The sub job IDs are read with a second query
+	 * rather than joined in, so the sub job documents aren't read. Tasks are ordered by job ID.
+	 * @param wsid the workspace ID.
+	 * @param states only return tasks in these states, or null for all tasks. Tasks created
+	 * before states were recorded have no state and are only returned if this is null.
+	 * @param afterJobId return the tasks after this job ID, or null to start at the first task.
+	 * @param limit the maximum number of tasks to return.
+	 * @return the task views, including the job outputs.
+	 */
+	public List<ExecTaskView> getExecTaskViewsByWorkspace(
+			final long wsid,
+			final Collection<ExecTaskState> states,
+			final String afterJobId,
+			final int limit) {
+		final BasicDBObject match = new BasicDBObject(FLD_TASK_WSID, wsid);
+		if (afterJobId != null) {
+			match.append(PK_EXEC_TASKS, new BasicDBObject("$gt", afterJobId));
+		}
+		if (states != null) {
+			final List<String> values = new ArrayList<>();
+			for (final ExecTaskState state: states) {
+				values.add(state.getValue());
+			}
+			match.append(FLD_TASK_STATE, new BasicDBObject("$in", values));
+		}
+		final BasicDBObject proj = getTaskViewProjection().append(FLD_TASK_JOB_OUTPUT, 1);
+		final List<ExecTask> tasks = new ArrayList<>();
+		final Map<String, List<String>> subJobs = new HashMap<>();
+		for (final DBObject dbo: taskCol.find(match, proj)
+				.sort(new BasicDBObject(PK_EXEC_TASKS, 1)).limit(limit)) {
+			final ExecTask task = toPartialExecTask(dbo);
+			tasks.add(task);
+			subJobs.put(task.getUjsJobId(), new ArrayList<>());
+		}
+		if (!tasks.isEmpty()) {
+			// only the IDs of the sub jobs are needed, not their documents
+			for (final DBObject dbo: taskCol.find(
+					new BasicDBObject(FLD_TASK_PARENT_JOB_ID,
+							new BasicDBObject("$in", subJobs.keySet())),
+					new BasicDBObject("_id", 0).append(PK_EXEC_TASKS, 1)
+							.append(FLD_TASK_PARENT_JOB_ID, 1))) {
+				subJobs.get((String) dbo.get(FLD_TASK_PARENT_JOB_ID))
+						.add((String) dbo.get(PK_EXEC_TASKS));
+			}
+		}
+		final List<ExecTaskView> ret = new ArrayList<>();
+		for (final ExecTask task: tasks) {
+			ret.add(new ExecTaskView(task, subJobs.get(task.getUjsJobId())));
+		}
+		return ret;
+	}
+
+	/** Check whether the workspace IDs of tasks created before they were recorded at the top
+	 * level of the task have been copied there by the 1.1 migration. Until then those tasks
+	 * are missing from {@link #getExecTaskViewsByWorkspace}.
+	 * @return true if the workspace IDs have been copied.
+	 */
+	public boolean isExecTaskWsidsCopied() {
+		if (!wsidsCopied) {
+			// migrations are never undone, so only the first true result needs the database
+			wsidsCopied = migrator.isMigratedTo("1.1");
+		}
+		return wsidsCopied;
+	}
+
+	/** Copies the workspace ID in the job input of tasks created before it was recorded at
+	 * the top level of the task, so the tasks show up in workspace job listings. Run by the
+	 * 1.1 migration.
+	 * @return the number of updated tasks.
+	 */
+	public int copyExecTaskWsids() {
+		int count = 0;
+		final String inputWsid = FLD_TASK_JOB_INPUT + "." + FLD_TASK_WSID;
+		final DBCursor legacy = taskCol.find(
+				new BasicDBObject(FLD_TASK_WSID, new BasicDBObject("$exists", false))
+						.append(inputWsid, new BasicDBObject("$exists", true)),
+				new BasicDBObject(PK_EXEC_TASKS, 1).append(inputWsid, 1));
+		for (final DBObject dbo: legacy) {
+			final Object wsid = ((DBObject) dbo.get(FLD_TASK_JOB_INPUT)).get(FLD_TASK_WSID);
+			if (wsid instanceof Number) {
+				taskCol.update(new BasicDBObject(PK_EXEC_TASKS, dbo.get(PK_EXEC_TASKS)),
+						new BasicDBObject("$set", new BasicDBObject(
+								FLD_TASK_WSID, ((Number) wsid).longValue())));
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/** Get a job and all its sub jobs, their sub jobs and so on. Only the parts of the tasks
+	 * needed to report the states of the jobs are returned. The tree is read one level at a
+	 * time with a query on the parent_job_id index, so a large tree is never held in a single
+	 * server side document.
+	 * @param ujsJobId the ID of the root job.
+	 * @param maxDepth the number of levels of sub jobs to return, or null for all levels. 0
+	 * returns the root job only.
+	 * @return the tasks, root first, each level before the next, or an empty list if the root
+	 * job has no task.
+	 */
+	public List<ExecTask> getExecTaskTree(final String ujsJobId, final Integer maxDepth) {
+		if (maxDepth != null && maxDepth < 0) {
+			throw new IllegalArgumentException("maxDepth cannot be negative");
+		}
+		final BasicDBObject proj = getTaskViewProjection();
+		final List<ExecTask> ret = new ArrayList<>();
+		final DBObject root = taskCol.findOne(new BasicDBObject(PK_EXEC_TASKS, ujsJobId), proj);
+		if (root == null) {
+			return ret;
+		}
+		ret.add(toPartialExecTask(root));
+		// guards against cycles in bad data
+		final Set<String> seen = new HashSet<>(Arrays.asList(ujsJobId));
+		List<String> level = Arrays.asList(ujsJobId);
+		for (int depth = 0; !level.isEmpty() && (maxDepth == null || depth < maxDepth);
+				depth++) {
+			final List<String> next = new ArrayList<>();
+			for (final DBObject dbo: taskCol.find(new BasicDBObject(FLD_TASK_PARENT_JOB_ID,
+					new BasicDBObject("$in", level)), proj)) {
+				final ExecTask task = toPartialExecTask(dbo);
+				if (seen.add(task.getUjsJobId())) {
+					ret.add(task);
+					next.add(task.getUjsJobId());
+				}
+			}
+			level = next;
+		}
+		return ret;
+	}
+
+	private static BasicDBObject getTaskViewProjection() {
+		final BasicDBObject ret = new BasicDBObject("_id", 0);
+		for (final String field: TASK_VIEW_FIELDS) {
+			ret.append(field, 1);
+		}
+		return ret;
+	}
+
+	// avoids pushing the potentially large input and output through the object mapper twice
+	private ExecTask toPartialExecTask(final DBObject dbo) {
+		final ExecTask task = new ExecTask();
+		task.setUjsJobId((String) dbo.get(PK_EXEC_TASKS));
+		task.setParentJobId((String) dbo.get(FLD_TASK_PARENT_JOB_ID));
+		task.setAweJobId((String) dbo.get("awe_job_id"));
+		task.setCreationTime(toLong(dbo.get("creation_time")));
+		task.setExecStartTime(toLong(dbo.get("exec_start_time")));
+		task.setFinishTime(toLong(dbo.get("finish_time")));
+		task.setLastJobState((String) dbo.get(FLD_TASK_STATE));
+		task.setLastJobStatus((String) dbo.get(FLD_TASK_STATUS));
+		task.setLastJobStateTime(toLong(dbo.get(FLD_TASK_STATE_TIME)));
+		task.setWsid(toLong(dbo.get(FLD_TASK_WSID)));
+		task.setStateVersion(toLong(dbo.get(FLD_TASK_STATE_VERSION)));
+		final Object input = dbo.get(FLD_TASK_JOB_INPUT);
+		if (input instanceof BSONObject) {
+			task.setJobInput(toMapRec((BSONObject) input));
+		}
+		final Object output = dbo.get(FLD_TASK_JOB_OUTPUT);
+		if (output instanceof BSONObject) {
+			task.setJobOutput(toMapRec((BSONObject) output));
+		}
+		return task;
+	}
+
+	private static Long toLong(final Object o) {
+		return o == null ? null : ((Number) o).longValue();
+	}
+
+	/** Move a task to a new state if it is in one of the expected states.
+	 * @param ujsJobId the job ID.
+	 * @param from the expected states. Tasks created before states were recorded have no state
+	 * and can always move to a new state.
+	 * @param to the new state.
+	 * @param status a status message for the new state.
+	 * @param fields other task fields to set along with the state, or null.
+	 * @return true if the task was updated, false if it doesn't exist or is in another state.
+	 */
+	public boolean setExecTaskState(
+			final String ujsJobId,
+			final Collection<ExecTaskState> from,
+			final ExecTaskState to,
+			final String status,
+			final Map<String, Object> fields) {
+		return setExecTaskState(ujsJobId, from, to, status, fields, null);
+	}
+
+	/** Move a task to a new state if it is in one of the expected states, and record the UJS
+	 * update for the new state in the same write, so the update is sent even if this server
+	 * dies before sending it.
+	 * @param ujsJobId the job ID.
+	 * @param from the expected states. Tasks created before states were recorded have no state
+	 * and can always move to a new state.
+	 * @param to the new state.
+	 * @param status a status message for the new state.
+	 * @param fields other task fields to set along with the state, or null.
+	 * @param ujsUpdate the UJS update, which replaces any pending update, or null.
+	 * @return true if the task was updated, false if it doesn't exist or is in another state.
+	 * @see #addExecTaskUjsUpdates(List)
+	 */
+	public boolean setExecTaskState(
+			final String ujsJobId,
+			final Collection<ExecTaskState> from,
+			final ExecTaskState to,
+			final String status,
+			final Map<String, Object> fields,
+			final ExecUjsUpdate ujsUpdate) {
+		final Map<String, Object> allFields = new HashMap<>();
+		if (fields != null) {
+			allFields.putAll(fields);
+		}
+		if (ujsUpdate != null) {
+			allFields.put(FLD_TASK_UJS_UPDATE, toUjsUpdateDBObj(ujsUpdate));
+		}
+		return setExecTaskStates(Arrays.asList(ujsJobId), from, to, status, allFields) > 0;
+	}
+
+	private DBObject toUjsUpdateDBObj(final ExecUjsUpdate update) {
+		final DBObject ret = toDBObj(update);
+		// the job ID is the ID of the task holding the update
+		ret.removeField(PK_EXEC_TASKS);
+		return ret;
+	}
+
+	/** Record the first UJS updates of jobs. An update isn't recorded if its job already has a
+	 * pending update, since that update is newer. Pending updates are due once their next
+	 * attempt time has passed, and are removed when they're sent.
+	 * @param updates the updates.
+	 * @see #claimExecTaskUjsUpdates(int, long)
+	 * @see #removeExecTaskUjsUpdate(String, String)
+	 */
+	public void addExecTaskUjsUpdates(final List<ExecUjsUpdate> updates) {
+		if (updates.isEmpty()) {
+			return;
+		}
+		final BulkWriteOperation bulk = taskCol.initializeUnorderedBulkOperation();
+		for (final ExecUjsUpdate u: updates) {
+			bulk.find(new BasicDBObject(PK_EXEC_TASKS, u.getUjsJobId()).append(
+					FLD_TASK_UJS_UPDATE, new BasicDBObject("$exists", false))).updateOne(
+					new BasicDBObject("$set", new BasicDBObject(
+							FLD_TASK_UJS_UPDATE, toUjsUpdateDBObj(u))));
+		}
+		bulk.execute();
+	}
+
+	/** Claim the due pending UJS updates. A claimed update is due again after the lease, so
+	 * it's retried if sending it fails. Claiming an update counts as an attempt to send it.
+	 * @param max the maximum number of updates to claim.
+	 * @param leaseMs the length of the lease.
+	 * @return the claimed updates.
+	 */
+	public List<ExecUjsUpdate> claimExecTaskUjsUpdates(final int max, final long leaseMs) {
+		final String nextAttempt = FLD_TASK_UJS_UPDATE + "." + FLD_UJS_UPDATE_NEXT_ATTEMPT_TIME;
+		final List<ExecUjsUpdate> ret = new ArrayList<>();
+		while (ret.size() < max) {
+			final long now = System.currentTimeMillis();
+			final DBObject dbo = taskCol.findAndModify(
+					new BasicDBObject(nextAttempt, new BasicDBObject("$lte", now)),
+					new BasicDBObject(PK_EXEC_TASKS, 1).append(FLD_TASK_UJS_UPDATE, 1),
+					null, false,
+					new BasicDBObject("$set", new BasicDBObject(nextAttempt, now + leaseMs))
+							.append("$inc", new BasicDBObject(FLD_TASK_UJS_UPDATE + "." +
+									FLD_UJS_UPDATE_ATTEMPTS, 1)),
+					true, false);
+			if (dbo == null) {
+				break;
+			}
+			final ExecUjsUpdate u = toObj(
+					(DBObject) dbo.get(FLD_TASK_UJS_UPDATE), ExecUjsUpdate.class);
+			u.setUjsJobId((String) dbo.get(PK_EXEC_TASKS));
+			ret.add(u);
+		}
+		return ret;
+	}
+
+	/** Remove a pending UJS update, e.g. because it was sent.
+	 * @param ujsJobId the job ID.
+	 * @param updateId the ID of the update, so a newer update of the job isn't removed, or
+	 * null to remove any pending update.
+	 */
+	public void removeExecTaskUjsUpdate(final String ujsJobId, final String updateId) {
+		final BasicDBObject query = new BasicDBObject(PK_EXEC_TASKS, ujsJobId);
+		if (updateId != null) {
+			query.append(FLD_TASK_UJS_UPDATE + "." + FLD_UJS_UPDATE_ID, updateId);
+		}
+		taskCol.update(query,
+				new BasicDBObject("$unset", new BasicDBObject(FLD_TASK_UJS_UPDATE, "")));
+	}
+
+	/** Get the number of pending UJS updates.
+	 * @return the number of updates.
+	 */
+	public long getExecTaskUjsUpdateCount() {
+		return taskCol.count(new BasicDBObject(FLD_TASK_UJS_UPDATE + "." +
+				FLD_UJS_UPDATE_NEXT_ATTEMPT_TIME, new BasicDBObject("$gt", 0)));
+	}
+
+	/** Move tasks to a new state. Each task is updated in one atomic write, and only if it is
+	 * in one of the expected states.
+	 * @param ujsJobIds the job IDs.
+	 * @param from the expected states. Tasks created before states were recorded have no state
+	 * and can always move to a new state.
+	 * @param to the new state.
+	 * @param status a status message for the new state.
+	 * @param fields other task fields to set along with the state, or null.
+	 * @return the number of updated tasks.
+	 */
+	public int setExecTaskStates(
+			final Collection<String> ujsJobIds,
+			final Collection<ExecTaskState> from,
+			final ExecTaskState to,
+			final String status,
+			final Map<String, Object> fields) {
+		final List<String> fromValues = new ArrayList<>();
+		for (final ExecTaskState s: from) {
+			fromValues.add(s.getValue());
+		}
+		// matches missing fields as well as nulls
+		fromValues.add(null);
+		final BasicDBObject set = new BasicDBObject();
+		if (fields != null) {
+			set.putAll(fields);
+		}
+		final long now = System.currentTimeMillis();
+		set.append(FLD_TASK_STATE, to.getValue())
+				.append(FLD_TASK_STATUS, status)
+				.append(FLD_TASK_STATE_TIME, now);
+		final List<DBObject> events = new ArrayList<>();
+		for (final String jobId: new LinkedHashSet<>(ujsJobIds)) {
+			final DBObject task = taskCol.findAndModify(
+					new BasicDBObject(PK_EXEC_TASKS, jobId)
+							.append(FLD_TASK_STATE, new BasicDBObject("$in", fromValues)),
+					new BasicDBObject(FLD_TASK_WSID, 1), null, false,
+					new BasicDBObject("$set", set).append("$inc",
+							new BasicDBObject(FLD_TASK_STATE_VERSION, 1)),
+					true, false);
+			if (task != null) {
+				events.add(new BasicDBObject(PK_EXEC_TASKS, jobId)
+						.append(FLD_TASK_WSID, toLong(task.get(FLD_TASK_WSID)))
+						.append(FLD_TASK_STATE, to.getValue())
+						.append(FLD_TASK_STATUS, status)
+						.append(FLD_EVENT_TIME, now)
+						.append(FLD_EVENT_NODE, nodeId));
+			}
+		}
+		if (!events.isEmpty()) {
+			addExecTaskEvents(events);
+		}
+		return events.size();
+	}
+
+	// the events are only a notification mechanism, so failures don't fail the state change
+	private void addExecTaskEvents(final List<DBObject> events) {
+		try {
+			long id = reserveExecTaskEventIds(events.size());
+			for (final DBObject e: events) {
+				e.put("_id", id++);
+			}
+		} catch (MongoException e) {
+			execTaskEventsLost(e);
+			return;
+		}
+		try {
+			taskEventCol.insert(events);
+		} catch (MongoException e) {
+			execTaskEventsLost(e);
+		}
+		final Consumer<ExecTaskEvent> listener = taskEventListener;
+		if (listener != null) {
+			for (final DBObject e: events) {
+				listener.accept(toExecTaskEvent(e));
+			}
+		}
+	}
+
+	private void execTaskEventsLost(final MongoException err) {
+		try {
+			propCol.update(new BasicDBObject(PK_SRV_PROPS, SRV_PROP_TASK_EVENT_GAPS),
+					new BasicDBObject("$inc", new BasicDBObject(SRV_PROPS_VALUE, 1L)),
+					true, false);
+		} catch (MongoException e) {
+			// the handler still tells this server's followers to re-sync
+			err.addSuppressed(e);
+		}
+		final Consumer<MongoException> handler = taskEventErrorHandler;
+		if (handler != null) {
+			handler.accept(err);
+		}
+	}
+
+	/* Events are numbered from a counter in the database rather than by the servers' clocks,
+	 * so events from different servers are in order no matter how far the clocks are apart.
+	 * Two servers can still insert their events in the opposite order to their numbers in the
+	 * moment between numbering and inserting them.
+	 */
+	private long reserveExecTaskEventIds(final int count) {
+		final DBObject query = new BasicDBObject(PK_SRV_PROPS, SRV_PROP_TASK_EVENT_SEQ);
+		final DBObject inc = new BasicDBObject("$inc",
+				new BasicDBObject(SRV_PROPS_VALUE, (long) count));
+		DBObject seq;
+		try {
+			seq = propCol.findAndModify(query, null, null, false, inc, true, true);
+		} catch (MongoException e) {
+			if (e.getCode() != 11000) {
+				throw e;
+			}
+			// another server created the counter in the meantime
+			seq = propCol.findAndModify(query, null, null, false, inc, true, true);
+		}
+		return toLong(seq.get(SRV_PROPS_VALUE)) - count + 1;
+	}
+
+	// events written before events were numbered come before any numbered event
+	private static String toEventId(final Object id) {
+		return id instanceof Number ? "" + ((Number) id).longValue() : "0";
+	}
+
+	private static ExecTaskEvent toExecTaskEvent(final DBObject dbo) {
+		return new ExecTaskEvent(
+				toEventId(dbo.get("_id")),
+				(String) dbo.get(PK_EXEC_TASKS),
+				toLong(dbo.get(FLD_TASK_WSID)),
+				ExecTaskState.fromValue((String) dbo.get(FLD_TASK_STATE)),
+				(String) dbo.get(FLD_TASK_STATUS),
+				toLong(dbo.get(FLD_EVENT_TIME)));
+	}
+
+	/** Set a listener that is called with each task event written by this instance, right
+	 * after it is written. Events written by other servers can be read with
+	 * {@link #tailExecTaskEvents(String, Consumer, BooleanSupplier)}.
+	 * @param listener the listener, or null to remove the listener.
+	 */
+	public void setExecTaskEventListener(final Consumer<ExecTaskEvent> listener) {
+		taskEventListener = listener;
+	}
+
+	/** Set a handler that is called when the events for task state changes couldn't be
+	 * written. The state changes are still made, so followers of the log must re-read the job
+	 * states. Failures are also counted in the database, see
+	 * {@link #getExecTaskEventGapCount()}.
+	 * @param handler the handler, or null to remove the handler.
+	 */
+	public void setExecTaskEventErrorHandler(final Consumer<MongoException> handler) {
+		taskEventErrorHandler = handler;
+	}
+
+	/** Get the number of times any server failed to write task events. A change in the count
+	 * means events are missing from the log.
+	 * @return the count.
+	 */
+	public long getExecTaskEventGapCount() {
+		final DBObject dbo = propCol.findOne(
+				new BasicDBObject(PK_SRV_PROPS, SRV_PROP_TASK_EVENT_GAPS),
+				new BasicDBObject(SRV_PROPS_VALUE, 1));
+		final Long count = dbo == null ? null : toLong(dbo.get(SRV_PROPS_VALUE));
+		return count == null ? 0 : count;
+	}
+
+	/** Get the ID of the newest task event.
+	 * @return the event ID, or null if there are no events.
+	 */
+	public String getLastExecTaskEventId() {
+		final DBCursor cur = taskEventCol.find().sort(new BasicDBObject("$natural", -1))
+				.limit(1);
+		return cur.hasNext() ? toEventId(cur.next().get("_id")) : null;
+	}
+
+	/** Get the task events written after an event, oldest first.
+	 * @param afterId the event ID. The event may have already been removed from the log.
+	 * @param ujsJobIds only return events for these jobs, or null.
+	 * @param wsid also return events for jobs in this workspace, or null.
+	 * @param limit the maximum number of events to return.
+	 * @return the events.
+	 */
+	public List<ExecTaskEvent> getExecTaskEvents(
+			final String afterId,
+			final Collection<String> ujsJobIds,
+			final Long wsid,
+			final int limit) {
+		final BasicDBObject query = new BasicDBObject("_id",
+				new BasicDBObject("$gt", toEventNumber(afterId)));
+		final List<DBObject> or = new ArrayList<>();
+		if (ujsJobIds != null && !ujsJobIds.isEmpty()) {
+			or.add(new BasicDBObject(PK_EXEC_TASKS, new BasicDBObject("$in", ujsJobIds)));
+		}
+		if (wsid != null) {
+			or.add(new BasicDBObject(FLD_TASK_WSID, wsid));
+		}
+		if (or.isEmpty()) {
+			return new ArrayList<>();
+		}
+		query.append("$or", or);
+		final List<ExecTaskEvent> ret = new ArrayList<>();
+		for (final DBObject dbo: taskEventCol.find(query).sort(new BasicDBObject("$natural", 1))
+				.limit(limit)) {
+			ret.add(toExecTaskEvent(dbo));
+		}
+		return ret;
+	}
+
+	private static long toEventNumber(final String id) {
+		if (ObjectId.isValid(id)) {
+			// the ID of an event written before events were numbered
+			return 0;
+		}
+		try {
+			return Long.parseLong(id);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Illegal event ID: " + id);
+		}
+	}
+
+	/** Follow the task event log, passing events written by other servers to a consumer as
+	 * they arrive. Events written by this instance go to the listener instead. Returns when
+	 * the running check fails or the log can't be followed any more, e.g. because it is empty.
+	 * @param afterId the ID of the event to start after, or null to start at the oldest event.
+	 * @param consumer the event consumer.
+	 * @param running checked between events and while waiting. Returning false stops the call.
+	 * @return the ID of the last event seen, or afterId if there were none.
+	 */
+	public String tailExecTaskEvents(
+			final String afterId,
+			final Consumer<ExecTaskEvent> consumer,
+			final BooleanSupplier running) {
+		final DBObject query = afterId == null ? new BasicDBObject() :
+				new BasicDBObject("_id", new BasicDBObject("$gt", toEventNumber(afterId)));
+		String last = afterId;
+		try (final DBCursor cur = taskEventCol.find(query)
+				.cursorType(CursorType.TailableAwait)) {
+			while (running.getAsBoolean()) {
+				final DBObject dbo = cur.tryNext();
+				if (dbo == null) {
+					if (cur.getCursorId() == 0) {
+						break;
+					}
+					continue;
+				}
+				final ExecTaskEvent e = toExecTaskEvent(dbo);
+				last = e.getId();
+				if (!nodeId.equals(dbo.get(FLD_EVENT_NODE))) {
+					consumer.accept(e);
+				}
+			}
+		}
+		return last;
 	}
 
 	public void updateExecTaskTime(String ujsJobId, boolean finishTime, long time)
@@ -234,7 +1870,8 @@ public class ExecEngineMongoDb {
 		//inputs
 		taskCol.update(new BasicDBObject(PK_EXEC_TASKS, ujsJobId),
 				new BasicDBObject("$set",
-						new BasicDBObject(finishTime ? "finish_time" : "exec_start_time", time)));
+						new BasicDBObject(finishTime ? "finish_time" : "exec_start_time", time))
+						.append("$inc", new BasicDBObject(FLD_TASK_STATE_VERSION, 1)));
 	}
 
 	public void updateQueueTaskTime(String ujsJobId, long queueTime)
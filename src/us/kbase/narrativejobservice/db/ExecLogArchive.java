@@ -0,0 +1,286 @@
+package us.kbase.narrativejobservice.db;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/** Append-only segment files holding the packed log chunks of finished jobs.
+ *
+ * Chunks are appended to the current segment file until it reaches the maximum segment
+ * size, after which a new segment is started. The chunks of a log that doesn't fit in the
+ * rest of a segment continue in the next one, and a chunk larger than the maximum segment
+ * size gets a segment of its own. Segments are never modified after they're written, and
+ * the location of each chunk is kept in the job's exec_logs document.
+ * Reads go through read-only memory maps of the most recently read segments.
+ *
+ * The archive lives on the local file system, so every server that reads logs must see the
+ * same archive directory. Each server writes to its own segment files, named after the
+ * server's node name, so servers sharing the directory never write to the same file.
+ */
+public class ExecLogArchive {
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".seg";
+	private static final Pattern NODE_NAME = Pattern.compile("[A-Za-z0-9._-]+");
+	/** The default maximum number of segments kept mapped. */
+	public static final int DEFAULT_MAX_MAPPED_SEGMENTS = 16;
+
+	/** The location of a set of appended chunks. */
+	public static class Location {
+		/** The names of the segments containing the chunks, in the order they were appended. */
+		public final String[] segments;
+		/** The offsets of the chunks in their segments, in the order they were appended. */
+		public final long[] offsets;
+
+		private Location(final String[] segments, final long[] offsets) {
+			this.segments = segments;
+			this.offsets = offsets;
+		}
+	}
+
+	private final Path dir;
+	private final String node;
+	private final long maxSegmentBytes;
+	private int segmentNo;
+	private FileChannel current = null;
+	// guarded by itself. Evicted maps are unmapped when they're garbage collected, since
+	// unmapping them while a read may still be using them isn't safe
+	private final Map<String, MappedByteBuffer> maps;
+
+	/** Open an archive that keeps up to the default number of segments mapped, creating the
+	 * directory if needed.
+	 * @param dir the archive directory.
+	 * @param node the name of this server, which must be unique among the servers sharing the
+	 * archive directory. Letters, digits, periods, underscores and hyphens only.
+	 * @param maxSegmentBytes the size after which a new segment file is started. At most
+	 * Integer.MAX_VALUE since segments are mapped in one piece.
+	 * @throws IOException if the directory can't be read or created.
+	 */
+	public ExecLogArchive(final Path dir, final String node, final long maxSegmentBytes)
+			throws IOException {
+		this(dir, node, maxSegmentBytes, DEFAULT_MAX_MAPPED_SEGMENTS);
+	}
+
+	/** Open an archive, creating the directory if needed.
+	 * @param dir the archive directory.
+	 * @param node the name of this server, which must be unique among the servers sharing the
+	 * archive directory. Letters, digits, periods, underscores and hyphens only.
+	 * @param maxSegmentBytes the size after which a new segment file is started. At most
+	 * Integer.MAX_VALUE since segments are mapped in one piece.
+	 * @param maxMappedSegments the maximum number of segments kept mapped. The least recently
+	 * read segment is dropped when another segment is mapped.
+	 * @throws IOException if the directory can't be read or created.
+	 */
+	public ExecLogArchive(
+			final Path dir,
+			final String node,
+			final long maxSegmentBytes,
+			final int maxMappedSegments)
+			throws IOException {
+		if (node == null || !NODE_NAME.matcher(node).matches()) {
+			throw new IllegalArgumentException("Illegal log archive node name: " + node);
+		}
+		if (maxSegmentBytes < 1 || maxSegmentBytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Illegal maximum segment size: " + maxSegmentBytes);
+		}
+		if (maxMappedSegments < 1) {
+			throw new IllegalArgumentException(
+					"Illegal maximum mapped segment count: " + maxMappedSegments);
+		}
+		this.dir = dir;
+		this.node = node;
+		this.maxSegmentBytes = maxSegmentBytes;
+		maps = new LinkedHashMap<String, MappedByteBuffer>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, MappedByteBuffer> e) {
+				return size() > maxMappedSegments;
+			}
+		};
+		Files.createDirectories(dir);
+		final String prefix = SEGMENT_PREFIX + node + "-";
+		int max = 0;
+		try (final DirectoryStream<Path> ds = Files.newDirectoryStream(
+				dir, prefix + "*" + SEGMENT_SUFFIX)) {
+			for (final Path p: ds) {
+				final String name = p.getFileName().toString();
+				try {
+					max = Math.max(max, Integer.parseInt(name.substring(
+							prefix.length(), name.length() - SEGMENT_SUFFIX.length())));
+				} catch (NumberFormatException e) {
+					// not ours
+				}
+			}
+		}
+		segmentNo = max == 0 ? 1 : max;
+	}
+
+	private String segmentName(final int segmentNo) {
+		return String.format("%s%s-%06d%s", SEGMENT_PREFIX, node, segmentNo, SEGMENT_SUFFIX);
+	}
+
+	/** Append chunks to the archive. The chunks go into the current segment as long as they
+	 * fit, and continue in new segments if they don't. They are flushed to disk before this
+	 * method returns.
+	 * @param chunks the packed chunks.
+	 * @return the location of the chunks.
+	 * @throws IOException if the chunks couldn't be written.
+	 */
+	public synchronized Location append(final List<byte[]> chunks) throws IOException {
+		final String[] segments = new String[chunks.size()];
+		final long[] offsets = new long[chunks.size()];
+		int start = 0;
+		while (start < chunks.size()) {
+			if (current == null) {
+				current = open(segmentNo);
+			}
+			// an empty segment takes at least one chunk, however large
+			final long room = maxSegmentBytes - current.size();
+			long size = 0;
+			int end = start;
+			while (end < chunks.size() && (size + chunks.get(end).length <= room ||
+					(end == start && current.size() == 0))) {
+				size += chunks.get(end).length;
+				end++;
+			}
+			if (end == start) {
+				current.close();
+				segmentNo++;
+				current = open(segmentNo);
+				continue;
+			}
+			// the segment is opened in append mode, so even if another process writes to it
+			// the chunks land at the end. Offsets are taken from the position after the write.
+			final ByteBuffer b = ByteBuffer.allocate((int) size);
+			for (int i = start; i < end; i++) {
+				b.put(chunks.get(i));
+			}
+			b.flip();
+			while (b.hasRemaining()) {
+				current.write(b);
+			}
+			current.force(false);
+			long pos = current.position() - size;
+			for (int i = start; i < end; i++) {
+				segments[i] = segmentName(segmentNo);
+				offsets[i] = pos;
+				pos += chunks.get(i).length;
+			}
+			start = end;
+		}
+		return new Location(segments, offsets);
+	}
+
+	private FileChannel open(final int segmentNo) throws IOException {
+		return FileChannel.open(dir.resolve(segmentName(segmentNo)),
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	/** Check that appended chunks were written correctly by reading them back from the
+	 * segment file.
+	 * @param location the location returned when the chunks were appended.
+	 * @param chunks the appended chunks.
+	 * @throws IOException if the segment couldn't be read or holds different bytes.
+	 */
+	public void verify(final Location location, final List<byte[]> chunks) throws IOException {
+		FileChannel fc = null;
+		try {
+			for (int i = 0; i < chunks.size(); i++) {
+				if (i == 0 || !location.segments[i].equals(location.segments[i - 1])) {
+					if (fc != null) {
+						fc.close();
+					}
+					fc = FileChannel.open(dir.resolve(checkSegment(location.segments[i])),
+							StandardOpenOption.READ);
+				}
+				final ByteBuffer b = ByteBuffer.allocate(chunks.get(i).length);
+				long pos = location.offsets[i];
+				while (b.hasRemaining()) {
+					final int n = fc.read(b, pos);
+					if (n < 0) {
+						break;
+					}
+					pos += n;
+				}
+				if (b.hasRemaining() || !Arrays.equals(b.array(), chunks.get(i))) {
+					throw new IOException(String.format(
+							"Log archive segment %s doesn't hold the chunk written at offset %s",
+							location.segments[i], location.offsets[i]));
+				}
+			}
+		} finally {
+			if (fc != null) {
+				fc.close();
+			}
+		}
+	}
+
+	private static String checkSegment(final String segment) {
+		if (!segment.startsWith(SEGMENT_PREFIX) || !segment.endsWith(SEGMENT_SUFFIX) ||
+				segment.contains("/")) {
+			throw new IllegalArgumentException("Illegal segment name: " + segment);
+		}
+		return segment;
+	}
+
+	/** Read a chunk from the archive.
+	 * @param segment the name of the segment containing the chunk.
+	 * @param offset the offset of the chunk in the segment.
+	 * @param length the length of the chunk.
+	 * @return the packed chunk.
+	 * @throws IOException if the segment couldn't be read.
+	 */
+	public byte[] read(final String segment, final long offset, final int length)
+			throws IOException {
+		checkSegment(segment);
+		final ByteBuffer b = getMap(segment, offset + length).duplicate();
+		b.position((int) offset);
+		final byte[] ret = new byte[length];
+		b.get(ret);
+		return ret;
+	}
+
+	private MappedByteBuffer getMap(final String segment, final long minSize)
+			throws IOException {
+		synchronized (maps) {
+			MappedByteBuffer map = maps.get(segment);
+			// the current segment grows, so it may need mapping again
+			if (map == null || map.capacity() < minSize) {
+				try (final FileChannel fc = FileChannel.open(
+						dir.resolve(segment), StandardOpenOption.READ)) {
+					if (fc.size() < minSize) {
+						throw new IOException(String.format(
+								"Log archive segment %s is truncated, expected at least %s bytes",
+								segment, minSize));
+					}
+					map = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+				}
+				maps.put(segment, map);
+			}
+			return map;
+		}
+	}
+
+	/** Close the segment that is currently being appended to, and drop the segment maps. */
+	public synchronized void close() throws IOException {
+		synchronized (maps) {
+			maps.clear();
+		}
+		if (current != null) {
+			current.close();
+			current = null;
+		}
+	}
+}
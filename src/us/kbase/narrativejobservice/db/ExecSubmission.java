@@ -0,0 +1,195 @@
+package us.kbase.narrativejobservice.db;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+/** A job waiting in the submission queue to be submitted to the scheduler. The entry holds
+ * everything needed to submit the job, including the user's token, and is removed once the
+ * job is submitted, canceled or fails its last submission attempt.
+ */
+public class ExecSubmission {
+
+    /** The outcome of recording the scheduler ID of a submitted job. */
+    public enum Completion {
+        /** The ID was recorded and the job removed from the queue. */
+        COMPLETED,
+        /** Another submitter already submitted the job and removed it from the queue, so the
+         * job is running under that submission. */
+        ALREADY_COMPLETED,
+        /** The job finished, usually because it was canceled while it was being submitted,
+         * and should be removed from the scheduler. */
+        CANCELED
+    }
+
+    @JsonProperty("ujs_job_id")
+    private String ujsJobId;
+    @JsonProperty("user")
+    private String user;
+    @JsonProperty("token")
+    private String token;
+    @JsonProperty("method")
+    private String method;
+    @JsonProperty("client_groups")
+    private String clientGroups;
+    @JsonProperty("class_ads")
+    private Map<String, String> classAds;
+    @JsonProperty("base_dir")
+    private String baseDir;
+    @JsonProperty("external_url")
+    private String externalUrl;
+    @JsonProperty("state")
+    private String state;
+    @JsonProperty("attempts")
+    private Integer attempts;
+    @JsonProperty("creation_time")
+    private Long creationTime;
+    @JsonProperty("next_attempt_time")
+    private Long nextAttemptTime;
+    @JsonProperty("lease_expires")
+    private Long leaseExpires;
+    @JsonProperty("last_error")
+    private String lastError;
+
+    @JsonProperty("ujs_job_id")
+    public String getUjsJobId() {
+        return ujsJobId;
+    }
+
+    @JsonProperty("ujs_job_id")
+    public void setUjsJobId(String ujsJobId) {
+        this.ujsJobId = ujsJobId;
+    }
+
+    @JsonProperty("user")
+    public String getUser() {
+        return user;
+    }
+
+    @JsonProperty("user")
+    public void setUser(String user) {
+        this.user = user;
+    }
+
+    @JsonProperty("token")
+    public String getToken() {
+        return token;
+    }
+
+    @JsonProperty("token")
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    @JsonProperty("method")
+    public String getMethod() {
+        return method;
+    }
+
+    @JsonProperty("method")
+    public void setMethod(String method) {
+        this.method = method;
+    }
+
+    @JsonProperty("client_groups")
+    public String getClientGroups() {
+        return clientGroups;
+    }
+
+    @JsonProperty("client_groups")
+    public void setClientGroups(String clientGroups) {
+        this.clientGroups = clientGroups;
+    }
+
+    @JsonProperty("class_ads")
+    public Map<String, String> getClassAds() {
+        return classAds;
+    }
+
+    @JsonProperty("class_ads")
+    public void setClassAds(Map<String, String> classAds) {
+        this.classAds = classAds;
+    }
+
+    @JsonProperty("base_dir")
+    public String getBaseDir() {
+        return baseDir;
+    }
+
+    @JsonProperty("base_dir")
+    public void setBaseDir(String baseDir) {
+        this.baseDir = baseDir;
+    }
+
+    @JsonProperty("external_url")
+    public String getExternalUrl() {
+        return externalUrl;
+    }
+
+    @JsonProperty("external_url")
+    public void setExternalUrl(String externalUrl) {
+        this.externalUrl = externalUrl;
+    }
+
+    /** Get the state of the entry, pending or submitting. */
+    @JsonProperty("state")
+    public String getState() {
+        return state;
+    }
+
+    @JsonProperty("state")
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    /** Get the number of submission attempts, including the one in progress. */
+    @JsonProperty("attempts")
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    @JsonProperty("attempts")
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    @JsonProperty("creation_time")
+    public Long getCreationTime() {
+        return creationTime;
+    }
+
+    @JsonProperty("creation_time")
+    public void setCreationTime(Long creationTime) {
+        this.creationTime = creationTime;
+    }
+
+    @JsonProperty("next_attempt_time")
+    public Long getNextAttemptTime() {
+        return nextAttemptTime;
+    }
+
+    @JsonProperty("next_attempt_time")
+    public void setNextAttemptTime(Long nextAttemptTime) {
+        this.nextAttemptTime = nextAttemptTime;
+    }
+
+    @JsonProperty("lease_expires")
+    public Long getLeaseExpires() {
+        return leaseExpires;
+    }
+
+    @JsonProperty("lease_expires")
+    public void setLeaseExpires(Long leaseExpires) {
+        this.leaseExpires = leaseExpires;
+    }
+
+    @JsonProperty("last_error")
+    public String getLastError() {
+        return lastError;
+    }
+
+    @JsonProperty("last_error")
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+}
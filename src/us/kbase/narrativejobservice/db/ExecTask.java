@@ -34,9 +34,19 @@ public class ExecTask {
     private String taskId;
     @JsonProperty("last_job_state")
     private String lastJobState;
+    @JsonProperty("last_job_status")
+    private String lastJobStatus;
+    @JsonProperty("last_job_state_time")
+    private Long lastJobStateTime;
+    @JsonProperty("wsid")
+    private Long wsid;
+    @JsonProperty("state_version")
+    private Long stateVersion;
 
     @JsonProperty("parent_job_id")
     private String parentJobId;
+    @JsonProperty("submit_timings")
+    private Map<String, Long> submitTimings;
 
     @JsonProperty("ujs_job_id")
     public String getUjsJobId() {
@@ -178,6 +188,46 @@ public class ExecTask {
         this.lastJobState = lastJobState;
     }
 
+    @JsonProperty("last_job_status")
+    public String getLastJobStatus() {
+        return lastJobStatus;
+    }
+
+    @JsonProperty("last_job_status")
+    public void setLastJobStatus(String lastJobStatus) {
+        this.lastJobStatus = lastJobStatus;
+    }
+
+    @JsonProperty("last_job_state_time")
+    public Long getLastJobStateTime() {
+        return lastJobStateTime;
+    }
+
+    @JsonProperty("last_job_state_time")
+    public void setLastJobStateTime(Long lastJobStateTime) {
+        this.lastJobStateTime = lastJobStateTime;
+    }
+
+    @JsonProperty("wsid")
+    public Long getWsid() {
+        return wsid;
+    }
+
+    @JsonProperty("wsid")
+    public void setWsid(Long wsid) {
+        this.wsid = wsid;
+    }
+
+    @JsonProperty("state_version")
+    public Long getStateVersion() {
+        return stateVersion;
+    }
+
+    @JsonProperty("state_version")
+    public void setStateVersion(Long stateVersion) {
+        this.stateVersion = stateVersion;
+    }
+
     @JsonProperty("parent_job_id")
     public String getParentJobId() {
         return parentJobId;
@@ -187,4 +237,15 @@ public class ExecTask {
     public void setParentJobId(String parentJobId) {
         this.parentJobId = parentJobId;
     }
+
+    /** Get how long each stage of starting the job took, in milliseconds. */
+    @JsonProperty("submit_timings")
+    public Map<String, Long> getSubmitTimings() {
+        return submitTimings;
+    }
+
+    @JsonProperty("submit_timings")
+    public void setSubmitTimings(Map<String, Long> submitTimings) {
+        this.submitTimings = submitTimings;
+    }
 }
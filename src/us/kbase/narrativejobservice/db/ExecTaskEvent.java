@@ -0,0 +1,78 @@
+package us.kbase.narrativejobservice.db;
+
+/** A change of the state of a job, as recorded in the task event log. */
+public class ExecTaskEvent {
+
+	private final String id;
+	private final String ujsJobId;
+	private final Long wsid;
+	private final ExecTaskState state;
+	private final String status;
+	private final long time;
+
+	/** Create an event.
+	 * @param id the event ID, a number that increases with each event.
+	 * @param ujsJobId the job ID.
+	 * @param wsid the ID of the workspace the job runs in, or null.
+	 * @param state the new state of the job.
+	 * @param status the status message for the new state.
+	 * @param time the time of the change in epoch milliseconds.
+	 */
+	public ExecTaskEvent(
+			final String id,
+			final String ujsJobId,
+			final Long wsid,
+			final ExecTaskState state,
+			final String status,
+			final long time) {
+		this.id = id;
+		this.ujsJobId = ujsJobId;
+		this.wsid = wsid;
+		this.state = state;
+		this.status = status;
+		this.time = time;
+	}
+
+	/** Get the ID of the event. IDs increase with time, but events written at about the same
+	 * time by different servers may be out of order.
+	 * @return the event ID.
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/** Get the job ID.
+	 * @return the job ID.
+	 */
+	public String getUjsJobId() {
+		return ujsJobId;
+	}
+
+	/** Get the ID of the workspace the job runs in.
+	 * @return the workspace ID, or null if the job isn't associated with a workspace.
+	 */
+	public Long getWsid() {
+		return wsid;
+	}
+
+	/** Get the new state of the job.
+	 * @return the job state.
+	 */
+	public ExecTaskState getState() {
+		return state;
+	}
+
+	/** Get the status message for the new state.
+	 * @return the status message.
+	 */
+	public String getStatus() {
+		return status;
+	}
+
+	/** Get the time of the change in epoch milliseconds.
+	 * @return the time.
+	 */
+	public long getTime() {
+		return time;
+	}
+}
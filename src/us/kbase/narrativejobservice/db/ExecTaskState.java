@@ -0,0 +1,61 @@
+package us.kbase.narrativejobservice.db;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/** The state of a job as recorded in its exec task. */
+public enum ExecTaskState {
+
+	/** The job was submitted and is waiting to run. */
+	QUEUED("queued"),
+	/** The job is running. */
+	STARTED("started"),
+	/** The job finished successfully. */
+	COMPLETED("completed"),
+	/** The job failed. */
+	ERROR("error"),
+	/** The job was canceled. */
+	CANCELED("canceled");
+
+	/** The states of jobs that haven't finished. */
+	public static final Set<ExecTaskState> UNFINISHED =
+			Collections.unmodifiableSet(EnumSet.of(QUEUED, STARTED));
+
+	private final String value;
+
+	private ExecTaskState(final String value) {
+		this.value = value;
+	}
+
+	/** Get the value of the state as stored in the database.
+	 * @return the state value.
+	 */
+	public String getValue() {
+		return value;
+	}
+
+	/** Check whether the job has finished.
+	 * @return true if the job has finished, successfully or not.
+	 */
+	public boolean isFinished() {
+		return !UNFINISHED.contains(this);
+	}
+
+	/** Get a state from its database value.
+	 * @param value the state value.
+	 * @return the state, or null if the value is null, as it is for tasks created before
+	 * states were recorded.
+	 */
+	public static ExecTaskState fromValue(final String value) {
+		if (value == null) {
+			return null;
+		}
+		for (final ExecTaskState s: values()) {
+			if (s.value.equals(value)) {
+				return s;
+			}
+		}
+		throw new IllegalArgumentException("Unknown job state: " + value);
+	}
+}
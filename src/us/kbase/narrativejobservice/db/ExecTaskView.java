@@ -0,0 +1,33 @@
+package us.kbase.narrativejobservice.db;
+
+import java.util.Collections;
+import java.util.List;
+
+/** The parts of an exec task needed to report the state of its job, along with the IDs of
+ * the job's sub jobs. The task only holds the job IDs and times, plus the job input and output
+ * if they were requested.
+ */
+public class ExecTaskView {
+
+	private final ExecTask task;
+	private final List<String> subJobIds;
+
+	ExecTaskView(final ExecTask task, final List<String> subJobIds) {
+		this.task = task;
+		this.subJobIds = Collections.unmodifiableList(subJobIds);
+	}
+
+	/** Get the task.
+	 * @return the partial task, or null if the job has sub jobs but no task.
+	 */
+	public ExecTask getTask() {
+		return task;
+	}
+
+	/** Get the IDs of the sub jobs of the job.
+	 * @return the sub job IDs.
+	 */
+	public List<String> getSubJobIds() {
+		return subJobIds;
+	}
+}
@@ -0,0 +1,128 @@
+package us.kbase.narrativejobservice.db;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/** A UJS job state update that hasn't been sent yet, kept in the job's exec task so the update
+ * survives failures and restarts. Only the latest update of a job is kept, since it describes
+ * the state UJS should be brought to. The update holds the user's token, which UJS requires,
+ * and is removed once it's sent.
+ */
+public class ExecUjsUpdate {
+    /** Bring the UJS job to the started stage with a queued status. */
+    public static final String STAGE_QUEUED = "queued";
+    /** Bring the UJS job to the started stage with an in-progress status. */
+    public static final String STAGE_STARTED = "started";
+    /** Complete the UJS job, with an error if one is set. */
+    public static final String STAGE_COMPLETED = "completed";
+    /** Cancel the UJS job. */
+    public static final String STAGE_CANCELED = "canceled";
+
+    @JsonProperty("id")
+    private String id;
+    @JsonProperty("ujs_job_id")
+    private String ujsJobId;
+    @JsonProperty("stage")
+    private String stage;
+    @JsonProperty("status")
+    private String status;
+    @JsonProperty("error")
+    private String error;
+    @JsonProperty("user")
+    private String user;
+    @JsonProperty("token")
+    private String token;
+    @JsonProperty("attempts")
+    private Integer attempts;
+    @JsonProperty("next_attempt_time")
+    private Long nextAttemptTime;
+
+    @JsonProperty("id")
+    public String getId() {
+        return id;
+    }
+
+    @JsonProperty("id")
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    @JsonProperty("ujs_job_id")
+    public String getUjsJobId() {
+        return ujsJobId;
+    }
+
+    @JsonProperty("ujs_job_id")
+    public void setUjsJobId(String ujsJobId) {
+        this.ujsJobId = ujsJobId;
+    }
+
+    @JsonProperty("stage")
+    public String getStage() {
+        return stage;
+    }
+
+    @JsonProperty("stage")
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    @JsonProperty("status")
+    public String getStatus() {
+        return status;
+    }
+
+    @JsonProperty("status")
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    @JsonProperty("error")
+    public String getError() {
+        return error;
+    }
+
+    @JsonProperty("error")
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @JsonProperty("user")
+    public String getUser() {
+        return user;
+    }
+
+    @JsonProperty("user")
+    public void setUser(String user) {
+        this.user = user;
+    }
+
+    @JsonProperty("token")
+    public String getToken() {
+        return token;
+    }
+
+    @JsonProperty("token")
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    @JsonProperty("attempts")
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    @JsonProperty("attempts")
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    @JsonProperty("next_attempt_time")
+    public Long getNextAttemptTime() {
+        return nextAttemptTime;
+    }
+
+    @JsonProperty("next_attempt_time")
+    public void setNextAttemptTime(Long nextAttemptTime) {
+        this.nextAttemptTime = nextAttemptTime;
+    }
+}
@@ -0,0 +1,153 @@
+package us.kbase.narrativejobservice.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** Packs the lines of a log chunk into a single compressed binary value.
+ *
+ * The packed form is a format byte followed by a deflated block of:
+ * the line count, the position of the first line, a bitset of the is_error flags, the end
+ * offset of each line in the text and the UTF-8 text of all the lines. Lines must have
+ * consecutive positions.
+ *
+ * Compared to one BSON subdocument per line this drops the repeated field names and the
+ * per-line type and length bytes, and tool output compresses well.
+ */
+public class LogChunkCodec {
+
+	/** The format of the packed chunks produced by this codec. */
+	public static final String ENCODING = "deflate-v1";
+
+	private static final byte FORMAT = 1;
+
+	private LogChunkCodec() {}
+
+	/** Pack log lines.
+	 * @param lines the lines, ordered with consecutive positions.
+	 * @return the packed lines.
+	 */
+	public static byte[] encode(final List<ExecLogLine> lines) {
+		if (lines == null || lines.isEmpty()) {
+			throw new IllegalArgumentException("No lines to encode");
+		}
+		final int first = lines.get(0).getLinePos();
+		final byte[] errors = new byte[(lines.size() + 7) / 8];
+		final int[] offsets = new int[lines.size()];
+		final ByteArrayOutputStream text = new ByteArrayOutputStream();
+		for (int i = 0; i < lines.size(); i++) {
+			final ExecLogLine l = lines.get(i);
+			if (l.getLinePos() != first + i) {
+				throw new IllegalArgumentException(
+						"Log line positions must be consecutive, expected " + (first + i) +
+						", got " + l.getLinePos());
+			}
+			if (Boolean.TRUE.equals(l.getIsError())) {
+				errors[i / 8] |= 1 << (i % 8);
+			}
+			final byte[] b = l.getLine() == null ? new byte[0] :
+					l.getLine().getBytes(StandardCharsets.UTF_8);
+			text.write(b, 0, b.length);
+			offsets[i] = text.size();
+		}
+		final ByteArrayOutputStream raw = new ByteArrayOutputStream(text.size() +
+				errors.length + 4 * offsets.length + 8);
+		try {
+			final DataOutputStream dos = new DataOutputStream(raw);
+			dos.writeInt(lines.size());
+			dos.writeInt(first);
+			dos.write(errors);
+			for (final int o: offsets) {
+				dos.writeInt(o);
+			}
+			text.writeTo(dos);
+			dos.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException("Can't happen", e);
+		}
+		final Deflater d = new Deflater(Deflater.BEST_SPEED);
+		try {
+			d.setInput(raw.toByteArray());
+			d.finish();
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(raw.size() / 4 + 16);
+			out.write(FORMAT);
+			final byte[] buf = new byte[64 * 1024];
+			while (!d.finished()) {
+				final int n = d.deflate(buf);
+				out.write(buf, 0, n);
+			}
+			return out.toByteArray();
+		} finally {
+			d.end();
+		}
+	}
+
+	/** Unpack the lines in a position range.
+	 * @param packed the packed lines.
+	 * @param from the first position to return.
+	 * @param to the position after the last position to return.
+	 * @return the lines in the range in position order.
+	 */
+	public static List<ExecLogLine> decode(final byte[] packed, final int from, final int to) {
+		if (packed == null || packed.length < 1 || packed[0] != FORMAT) {
+			throw new IllegalArgumentException("Unknown packed log chunk format");
+		}
+		final byte[] raw = inflate(packed);
+		try {
+			final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(raw));
+			final int count = dis.readInt();
+			final int first = dis.readInt();
+			final byte[] errors = new byte[(count + 7) / 8];
+			dis.readFully(errors);
+			final int[] offsets = new int[count];
+			for (int i = 0; i < count; i++) {
+				offsets[i] = dis.readInt();
+			}
+			final int textStart = 8 + errors.length + 4 * count;
+			final int start = Math.max(from - first, 0);
+			final int end = Math.min(to - first, count);
+			final List<ExecLogLine> ret = new ArrayList<>(Math.max(end - start, 0));
+			for (int i = start; i < end; i++) {
+				final int lineStart = i == 0 ? 0 : offsets[i - 1];
+				final ExecLogLine l = new ExecLogLine();
+				l.setLinePos(first + i);
+				l.setIsError((errors[i / 8] & (1 << (i % 8))) != 0);
+				l.setLine(new String(raw, textStart + lineStart, offsets[i] - lineStart,
+						StandardCharsets.UTF_8));
+				ret.add(l);
+			}
+			return ret;
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Corrupt packed log chunk", e);
+		}
+	}
+
+	private static byte[] inflate(final byte[] packed) {
+		final Inflater inf = new Inflater();
+		try {
+			inf.setInput(packed, 1, packed.length - 1);
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(packed.length * 4);
+			final byte[] buf = new byte[64 * 1024];
+			while (!inf.finished()) {
+				final int n = inf.inflate(buf);
+				if (n == 0 && (inf.needsInput() || inf.needsDictionary())) {
+					throw new IllegalArgumentException("Truncated packed log chunk");
+				}
+				out.write(buf, 0, n);
+			}
+			return out.toByteArray();
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException("Corrupt packed log chunk", e);
+		} finally {
+			inf.end();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package us.kbase.narrativejobservice.sdkjobs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import us.kbase.auth.AuthToken;
+import us.kbase.common.service.UObject;
+import us.kbase.common.utils.AweUtils;
+import us.kbase.narrativejobservice.NarrativeJobServiceServer;
+import us.kbase.narrativejobservice.db.ExecSubmission;
+
+/** Runs jobs with AWE. AWE has no bulk operations, so jobs are submitted and checked one at a
+ * time. The job runner doesn't keep the states of AWE jobs in the exec tasks.
+ */
+public class AweScheduler implements Scheduler {
+
+	public static final String TYPE = "awe";
+
+	private final String aweServerUrl;
+	private final Callable<AuthToken> catalogAdminToken;
+	private final Callable<AuthToken> aweAdminToken;
+
+	/** Create the scheduler.
+	 * @param aweServerUrl the AWE server URL.
+	 * @param catalogAdminToken provides the admin token passed to jobs for bind mounts.
+	 * @param aweAdminToken provides the token used to read AWE jobs.
+	 */
+	public AweScheduler(
+			final String aweServerUrl,
+			final Callable<AuthToken> catalogAdminToken,
+			final Callable<AuthToken> aweAdminToken) {
+		this.aweServerUrl = aweServerUrl;
+		this.catalogAdminToken = catalogAdminToken;
+		this.aweAdminToken = aweAdminToken;
+	}
+
+	@Override
+	public String getType() {
+		return TYPE;
+	}
+
+	@Override
+	public List<String> submit(final List<ExecSubmission> batch) throws Exception {
+		final List<String> ret = new ArrayList<String>();
+		for (final ExecSubmission s : batch) {
+			ret.add(AweUtils.runTask(aweServerUrl, "ExecutionEngine", s.getMethod(),
+					s.getUjsJobId() + " " + s.getExternalUrl(),
+					NarrativeJobServiceServer.AWE_CLIENT_SCRIPT_NAME,
+					new AuthToken(s.getToken(), s.getUser()), s.getClientGroups(),
+					catalogAdminToken.call()));
+		}
+		return ret;
+	}
+
+	@Override
+	public boolean isStateInTasks() {
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public JobStatus getJobStatus(final String ujsJobId, final String schedulerJobId)
+			throws Exception {
+		if (schedulerJobId == null) {
+			return null;
+		}
+		final AuthToken token = aweAdminToken.call();
+		final Map<String, Object> aweJob = AweUtils.getAweJobDescr(
+				aweServerUrl, schedulerJobId, token);
+		final Map<String, Object> aweData = (Map<String, Object>) aweJob.get("data");
+		final String aweState = aweData == null ? null : (String) aweData.get("state");
+		if (aweState == null) {
+			throw new IllegalStateException("state is null. AWE returned:\n " +
+					new ObjectMapper().writeValueAsString(aweData));
+		}
+		final String state = toAppState(aweState);
+		Long position = null;
+		if (SDKMethodRunner.APP_STATE_QUEUED.equals(state)) {
+			try {
+				final Map<String, Object> posData = (Map<String, Object>) AweUtils
+						.getAweJobPosition(aweServerUrl, schedulerJobId, token).get("data");
+				if (posData != null && posData.containsKey("position")) {
+					position = UObject.transformObjectToObject(
+							posData.get("position"), Long.class);
+				}
+			} catch (Exception ignore) {
+				// the position is only informative
+			}
+		}
+		return new JobStatus(aweState, state, position);
+	}
+
+	private static String toAppState(final String aweState) {
+		switch (aweState) {
+			case "init":
+			case "queued":
+				return SDKMethodRunner.APP_STATE_QUEUED;
+			case "in-progress":
+				return SDKMethodRunner.APP_STATE_STARTED;
+			case "completed":
+				return SDKMethodRunner.APP_STATE_DONE;
+			case "deleted":
+				return SDKMethodRunner.APP_STATE_CANCELED;
+			default:
+				return SDKMethodRunner.APP_STATE_ERROR;
+		}
+	}
+
+	@Override
+	public void cancel(final List<String> ujsJobIds) {
+		// the job script checks whether its job was canceled and stops itself
+	}
+
+	@Override
+	public void close() {
+		// nothing to release
+	}
+}
@@ -0,0 +1,139 @@
+package us.kbase.narrativejobservice.sdkjobs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import us.kbase.auth.AuthToken;
+import us.kbase.common.utils.CondorUtils;
+import us.kbase.narrativejobservice.db.ExecSubmission;
+
+/** Runs jobs with the HTCondor command line tools. The UJS job ID is the condor batch name of
+ * a job. The job runner keeps the states of condor jobs in the exec tasks.
+ */
+public class CondorScheduler implements Scheduler {
+
+	public static final String TYPE = "condor";
+
+	// condor_q sometimes returns nothing for a job it knows
+	private static final int STATUS_ATTEMPTS = 11;
+
+	private final Callable<AuthToken> adminToken;
+	private final int submitAttempts;
+
+	/** Create the scheduler.
+	 * @param adminToken provides the admin token used for bind mounts.
+	 * @param submitAttempts the number of times condor_submit is tried for each submission.
+	 * Callers that retry failed submissions themselves should try once.
+	 */
+	public CondorScheduler(final Callable<AuthToken> adminToken, final int submitAttempts) {
+		if (submitAttempts < 1) {
+			throw new IllegalArgumentException("Condor submit attempts must be at least 1");
+		}
+		this.adminToken = adminToken;
+		this.submitAttempts = submitAttempts;
+	}
+
+	@Override
+	public String getType() {
+		return TYPE;
+	}
+
+	@Override
+	public List<String> submit(final List<ExecSubmission> batch) throws Exception {
+		if (batch.isEmpty()) {
+			return new ArrayList<String>();
+		}
+		final ExecSubmission first = batch.get(0);
+		final List<String> allIds = new ArrayList<String>();
+		boolean retry = false;
+		for (final ExecSubmission s : batch) {
+			// every job in a submission runs with the same token
+			if (!first.getToken().equals(s.getToken())) {
+				throw new IllegalArgumentException(
+						"All the jobs submitted to condor at once must share a token");
+			}
+			allIds.add(s.getUjsJobId());
+			retry |= s.getAttempts() != null && s.getAttempts() > 1;
+		}
+		// an earlier attempt may have queued jobs even though it failed, or its condor IDs may
+		// not have been recorded, so those jobs aren't queued twice
+		final Map<String, String> queued = retry ?
+				CondorUtils.getJobIdsByBatchName(allIds) : new HashMap<String, String>();
+		final List<String> ujsJobIds = new ArrayList<String>();
+		final List<String> groups = new ArrayList<String>();
+		final List<HashMap<String, String>> classAds = new ArrayList<HashMap<String, String>>();
+		for (final ExecSubmission s : batch) {
+			if (!queued.containsKey(s.getUjsJobId())) {
+				ujsJobIds.add(s.getUjsJobId());
+				groups.add(s.getClientGroups());
+				classAds.add(s.getClassAds() == null ? new HashMap<String, String>() :
+						new HashMap<String, String>(s.getClassAds()));
+			}
+		}
+		// the jobs of a token's user share a base directory
+		final List<String> submitted = CondorUtils.submitToCondorCLIBulk(ujsJobIds,
+				new AuthToken(first.getToken(), first.getUser()), groups,
+				first.getExternalUrl(), first.getBaseDir(), classAds, adminToken.call(),
+				submitAttempts);
+		final List<String> ret = new ArrayList<String>();
+		int k = 0;
+		for (final String id : allIds) {
+			ret.add(queued.containsKey(id) ? queued.get(id) : submitted.get(k++));
+		}
+		return ret;
+	}
+
+	@Override
+	public boolean isStateInTasks() {
+		return true;
+	}
+
+	@Override
+	public JobStatus getJobStatus(final String ujsJobId, final String schedulerJobId)
+			throws Exception {
+		String jobStatus = null;
+		for (int i = 0; i < STATUS_ATTEMPTS && jobStatus == null; i++) {
+			jobStatus = CondorUtils.getJobState(ujsJobId);
+		}
+		return jobStatus == null ? null : new JobStatus(jobStatus, toAppState(jobStatus), null);
+	}
+
+	@Override
+	public void cancel(final List<String> ujsJobIds) throws Exception {
+		for (final String id : ujsJobIds) {
+			CondorUtils.condorRemoveJobRangeAsync(id);
+		}
+	}
+
+	/** Get the job state for a condor JobStatus code, see
+	 * http://pages.cs.wisc.edu/~adesmet/status.html
+	 * @param jobStatus the condor JobStatus code.
+	 * @return the job state.
+	 */
+	public static String toAppState(final String jobStatus) {
+		switch (jobStatus) {
+			case "0":
+				return SDKMethodRunner.APP_STATE_QUEUED; //Maybe need to return a new state here?
+			case "1":
+				return SDKMethodRunner.APP_STATE_QUEUED; //Maybe need to return a new state here?
+			case "2":
+				return SDKMethodRunner.APP_STATE_STARTED;
+			case "3":
+				return SDKMethodRunner.APP_STATE_CANCELED;
+			case "4":
+				return SDKMethodRunner.APP_STATE_DONE;
+			case "5":
+				return SDKMethodRunner.APP_STATE_QUEUED; //Maybe need to return a new state here?
+			default:
+				return SDKMethodRunner.APP_STATE_ERROR;
+		}
+	}
+
+	@Override
+	public void close() {
+		// nothing to release
+	}
+}
@@ -0,0 +1,58 @@
+package us.kbase.narrativejobservice.sdkjobs;
+
+import org.ini4j.Ini;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import us.kbase.narrativejobservice.db.DbMigrator;
+import us.kbase.narrativejobservice.db.ExecEngineMongoDb;
+
+import java.io.File;
+
+
+/**********************************************************************************
+ Usage
+ Log into the NJS_WRAPPER Docker Container
+
+ Run the following commands to see the pending database migrations, the indexes they build
+ and the sizes of the indexed collections, without changing anything
+
+ su kbase
+ $NJSW_JAR = "/kb/deployment/lib/NJSWrapper-all.jar"
+ java -cp $NJSW_JAR us.kbase.narrativejobservice.sdkjobs.DbMigrationScript
+
+ To run the migrations now rather than waiting for a server to start them
+ java -cp $NJSW_JAR us.kbase.narrativejobservice.sdkjobs.DbMigrationScript -migrate
+
+ ***********************************************************************************/
+
+public class DbMigrationScript {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DbMigrationScript.class);
+
+    public static void main(String[] args) throws Exception {
+        Logger mongoLog = LoggerFactory.getLogger("org.mongodb");
+        if (mongoLog instanceof ch.qos.logback.classic.Logger) {
+            ((ch.qos.logback.classic.Logger) mongoLog).setLevel(
+                    ch.qos.logback.classic.Level.WARN);
+        }
+        Ini config = new Ini(new File(System.getenv("KB_DEPLOYMENT_CONFIG")));
+        ExecEngineMongoDb db = new ExecEngineMongoDb(
+                config.get("NarrativeJobService", "mongodb-host"),
+                config.get("NarrativeJobService", "mongodb-database"),
+                config.get("NarrativeJobService", "mongodb-user"),
+                config.get("NarrativeJobService", "mongodb-pwd"));
+        DbMigrator migrator = db.getMigrator();
+        for (String line : migrator.getDryRunReport()) {
+            LOG.info(line);
+        }
+        if (args.length == 1 && args[0].equals("-migrate")) {
+            int count = migrator.migrate(LOG::info);
+            if (count < 0) {
+                LOG.warn("Another server holds the migration lock, try again later");
+            } else {
+                LOG.info("Applied {} migration(s), the database schema version is now {}",
+                        count, migrator.getVersion());
+            }
+        }
+    }
+}
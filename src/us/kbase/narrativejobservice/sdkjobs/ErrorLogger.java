@@ -1,6 +1,26 @@
 package us.kbase.narrativejobservice.sdkjobs;
 
 public interface ErrorLogger {
+
+    /** Logs to standard error, for code that runs without a server, e.g. tools and tests. */
+    public static final ErrorLogger STDERR = new ErrorLogger() {
+        @Override
+        public void logErr(String message) {
+            System.err.println(message);
+        }
+
+        @Override
+        public void logErr(Throwable err) {
+            err.printStackTrace();
+        }
+
+        @Override
+        public void logInfo(String message) {
+            System.err.println(message);
+        }
+    };
+
     public void logErr(String message);
     public void logErr(Throwable err);
+    public void logInfo(String message);
 }
@@ -0,0 +1,221 @@
+package us.kbase.narrativejobservice.sdkjobs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import us.kbase.common.service.UObject;
+import us.kbase.narrativejobservice.JobState;
+
+/** A bounded LRU cache of the states of finished jobs. The state of a finished job rarely
+ * changes, so entries don't expire and are only removed to make space, when an admin changes
+ * a job on this server, or when they're found to be stale. Each entry records the state
+ * version of the job's exec task, and a lookup with a different current version drops the
+ * entry, which catches changes made by other servers. Entries without a version, e.g. for AWE
+ * jobs, are only dropped in process.
+ *
+ * States are stored serialized, so every hit returns a fresh copy that callers are free to
+ * modify. States larger than the off heap threshold are stored in direct buffers outside the
+ * Java heap, which keeps large job results from crowding out the rest of the heap. The heap
+ * and off heap parts of the cache have separate size limits.
+ *
+ * The cache does not check access to jobs.
+ */
+public class FinishedJobStateCache {
+
+	private static class Entry {
+		private final byte[] heap;
+		private final ByteBuffer offHeap;
+		private final Long version;
+
+		private Entry(final byte[] heap, final ByteBuffer offHeap, final Long version) {
+			this.heap = heap;
+			this.offHeap = offHeap;
+			this.version = version;
+		}
+
+		private int size() {
+			return heap != null ? heap.length : offHeap.capacity();
+		}
+	}
+
+	private final long maxHeapBytes;
+	private final long maxOffHeapBytes;
+	private final int offHeapThreshold;
+	// guarded by itself
+	private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+	private long heapBytes = 0;
+	private long offHeapBytes = 0;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/** Create the cache.
+	 * @param maxHeapBytes the maximum size of the states stored on the heap.
+	 * @param maxOffHeapBytes the maximum size of the states stored off the heap. 0 stores
+	 * all states on the heap.
+	 * @param offHeapThreshold the serialized size above which states are stored off the heap.
+	 */
+	public FinishedJobStateCache(
+			final long maxHeapBytes,
+			final long maxOffHeapBytes,
+			final int offHeapThreshold) {
+		if (maxHeapBytes < 0 || maxOffHeapBytes < 0 || offHeapThreshold < 0) {
+			throw new IllegalArgumentException("Job state cache sizes cannot be negative");
+		}
+		this.maxHeapBytes = maxHeapBytes;
+		this.maxOffHeapBytes = maxOffHeapBytes;
+		this.offHeapThreshold = offHeapThreshold;
+	}
+
+	/** Get the state of a finished job cached without a state version.
+	 * @param jobId the job ID.
+	 * @return a copy of the cached state, or null if the state isn't cached.
+	 */
+	public JobState get(final String jobId) {
+		return get(jobId, null);
+	}
+
+	/** Get the state of a finished job, unless the job's state changed since it was cached.
+	 * @param jobId the job ID.
+	 * @param version the current state version of the job, or null if it has none.
+	 * @return a copy of the cached state, or null if the state isn't cached or is stale.
+	 */
+	public JobState get(final String jobId, final Long version) {
+		Entry e;
+		synchronized (cache) {
+			e = cache.get(jobId);
+			if (e != null && e.version != null && !e.version.equals(version)) {
+				remove(cache.remove(jobId));
+				e = null;
+			}
+		}
+		if (e == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		final byte[] b;
+		if (e.heap != null) {
+			b = e.heap;
+		} else {
+			b = new byte[e.offHeap.capacity()];
+			e.offHeap.duplicate().get(b);
+		}
+		try {
+			return UObject.getMapper().readValue(b, JobState.class);
+		} catch (IOException ex) {
+			throw new IllegalStateException("Can't deserialize a cached job state", ex);
+		}
+	}
+
+	/** Cache the state of a finished job without a state version. States too large for the
+	 * cache are ignored.
+	 * @param jobId the job ID.
+	 * @param state the job state.
+	 */
+	public void put(final String jobId, final JobState state) {
+		put(jobId, state, null);
+	}
+
+	/** Cache the state of a finished job. States too large for the cache are ignored.
+	 * @param jobId the job ID.
+	 * @param state the job state.
+	 * @param version the state version of the job's exec task the state was read from, or null
+	 * if it has none.
+	 */
+	public void put(final String jobId, final JobState state, final Long version) {
+		final byte[] b;
+		try {
+			b = UObject.getMapper().writeValueAsBytes(state);
+		} catch (IOException ex) {
+			throw new IllegalStateException("Can't serialize a job state", ex);
+		}
+		final Entry e;
+		if (maxOffHeapBytes > 0 && b.length > offHeapThreshold) {
+			if (b.length > maxOffHeapBytes) {
+				return;
+			}
+			final ByteBuffer buf = ByteBuffer.allocateDirect(b.length);
+			buf.put(b);
+			buf.flip();
+			e = new Entry(null, buf, version);
+		} else {
+			if (b.length > maxHeapBytes) {
+				return;
+			}
+			e = new Entry(b, null, version);
+		}
+		synchronized (cache) {
+			remove(cache.put(jobId, e));
+			add(e);
+			final Iterator<Entry> it = cache.values().iterator();
+			while ((heapBytes > maxHeapBytes || offHeapBytes > maxOffHeapBytes) && it.hasNext()) {
+				final Entry eldest = it.next();
+				// only evict from the part of the cache that is over its limit
+				if (eldest.heap != null ? heapBytes > maxHeapBytes : offHeapBytes > maxOffHeapBytes) {
+					it.remove();
+					remove(eldest);
+				}
+			}
+		}
+	}
+
+	// must hold the cache lock
+	private void add(final Entry e) {
+		if (e.heap != null) {
+			heapBytes += e.size();
+		} else {
+			offHeapBytes += e.size();
+		}
+	}
+
+	// must hold the cache lock
+	private void remove(final Entry e) {
+		if (e == null) {
+			return;
+		} else if (e.heap != null) {
+			heapBytes -= e.size();
+		} else {
+			offHeapBytes -= e.size();
+		}
+	}
+
+	/** Remove job states from the cache.
+	 * @param jobIds the IDs of the jobs.
+	 */
+	public void invalidate(final Collection<String> jobIds) {
+		synchronized (cache) {
+			for (final String jobId: jobIds) {
+				remove(cache.remove(jobId));
+			}
+		}
+	}
+
+	/** Remove all job states from the cache. */
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+			heapBytes = 0;
+			offHeapBytes = 0;
+		}
+	}
+
+	/** Get the hit and miss counts and current size of the cache.
+	 * @return the cache statistics.
+	 */
+	public Map<String, Long> getStats() {
+		final Map<String, Long> ret = new LinkedHashMap<>();
+		ret.put("hits", hits.get());
+		ret.put("misses", misses.get());
+		synchronized (cache) {
+			ret.put("size", (long) cache.size());
+			ret.put("heap_bytes", heapBytes);
+			ret.put("off_heap_bytes", offHeapBytes);
+		}
+		return ret;
+	}
+}
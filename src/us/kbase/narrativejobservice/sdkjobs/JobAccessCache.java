@@ -0,0 +1,128 @@
+package us.kbase.narrativejobservice.sdkjobs;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import us.kbase.common.service.ServerException;
+
+/** A bounded LRU cache of job access decisions keyed by (user, job ID), so that hot calls
+ * like add_job_logs don't need a UJS round trip just to prove the caller can see the job.
+ *
+ * Granted access is cached for the access TTL. Denials, which are the ServerExceptions
+ * thrown by UJS, are cached for the usually much shorter negative TTL and rethrown on a hit.
+ * Any other failure, for example a network error, is not cached.
+ */
+public class JobAccessCache {
+
+	/** Checks access to a job with the job service. */
+	public interface AccessCheck {
+		/** Throw an exception if the user may not access the job. */
+		void check() throws Exception;
+	}
+
+	private static class Decision {
+		private final long expires;
+		private final ServerException denial;
+
+		private Decision(final long expires, final ServerException denial) {
+			this.expires = expires;
+			this.denial = denial;
+		}
+	}
+
+	private final long ttlMs;
+	private final long negativeTtlMs;
+	private final Map<String, Decision> cache;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/** Create the cache.
+	 * @param maxSize the maximum number of cached decisions.
+	 * @param ttlMs how long granted access is cached.
+	 * @param negativeTtlMs how long denied access is cached. 0 disables negative caching.
+	 */
+	public JobAccessCache(final int maxSize, final long ttlMs, final long negativeTtlMs) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Cache size must be at least 1");
+		}
+		if (ttlMs < 0 || negativeTtlMs < 0) {
+			throw new IllegalArgumentException("Cache TTLs cannot be negative");
+		}
+		this.ttlMs = ttlMs;
+		this.negativeTtlMs = negativeTtlMs;
+		cache = new LinkedHashMap<String, Decision>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Decision> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	private static String key(final String user, final String jobId) {
+		return user + "\n" + jobId;
+	}
+
+	/** Check that a user may access a job, using the cached decision if there is one.
+	 * @param user the user name.
+	 * @param jobId the job ID.
+	 * @param check the uncached access check, run on a cache miss.
+	 * @throws Exception the cached denial, or any exception thrown by the check.
+	 */
+	public void checkAccess(final String user, final String jobId, final AccessCheck check)
+			throws Exception {
+		final String key = key(user, jobId);
+		final Decision d;
+		synchronized (cache) {
+			d = cache.get(key);
+		}
+		if (d != null && d.expires > System.currentTimeMillis()) {
+			hits.incrementAndGet();
+			if (d.denial != null) {
+				throw d.denial;
+			}
+			return;
+		}
+		misses.incrementAndGet();
+		try {
+			check.check();
+		} catch (ServerException e) {
+			if (negativeTtlMs > 0) {
+				put(key, new Decision(System.currentTimeMillis() + negativeTtlMs, e));
+			}
+			throw e;
+		}
+		grant(user, jobId);
+	}
+
+	/** Record that a user may access a job, for example because they own it.
+	 * @param user the user name.
+	 * @param jobId the job ID.
+	 */
+	public void grant(final String user, final String jobId) {
+		if (ttlMs > 0) {
+			put(key(user, jobId), new Decision(System.currentTimeMillis() + ttlMs, null));
+		}
+	}
+
+	private void put(final String key, final Decision d) {
+		synchronized (cache) {
+			cache.put(key, d);
+		}
+	}
+
+	/** Get the hit and miss counts and current size of the cache.
+	 * @return the cache statistics.
+	 */
+	public Map<String, Long> getStats() {
+		final Map<String, Long> ret = new LinkedHashMap<>();
+		ret.put("hits", hits.get());
+		ret.put("misses", misses.get());
+		synchronized (cache) {
+			ret.put("size", (long) cache.size());
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,423 @@
+package us.kbase.narrativejobservice.sdkjobs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import us.kbase.narrativejobservice.LogLine;
+
+/** Sends the log lines of a running job to the job service in batches.
+ *
+ * Lines are added to a lock-free queue, so the threads reading container output never wait
+ * on the job service. A flusher thread sends the queued lines when enough lines or bytes are
+ * waiting, or when the oldest queued line has waited for the maximum delay. The number of
+ * lines that triggers a send adapts to the round trip time of the previous sends: it grows
+ * while the service is slow, so that fewer and larger requests are made, and shrinks back
+ * while it is fast, so that lines show up quickly.
+ *
+ * A batch that fails to send is retried, ahead of any newer lines, on the next send.
+ *
+ * If a spool is set, lines beyond a memory watermark are moved to the spool file instead of
+ * piling up in memory while the job service is slow or unreachable. Spooled lines are sent
+ * before any lines still in memory, so lines are always sent in order. Spilling is done by
+ * whichever adding thread crosses the watermark, and the other adding threads carry on
+ * without waiting for it.
+ */
+public class JobLogSender {
+
+	/** Sends a batch of log lines to the job service. */
+	public interface LogSink {
+
+		/** Send log lines.
+		 * @param lines the lines.
+		 * @throws Exception if the lines couldn't be sent.
+		 */
+		void send(List<LogLine> lines) throws Exception;
+	}
+
+	/** The default maximum time a line waits before it is sent. */
+	public static final long DEFAULT_MAX_DELAY_MS = 1000;
+	/** The default maximum number of lines in one request. */
+	public static final int DEFAULT_MAX_BATCH_LINES = 10000;
+	/** The default maximum number of bytes of line text in one request. */
+	public static final long DEFAULT_MAX_BATCH_BYTES = 4 * 1024 * 1024;
+	/** The default number of queued lines above which lines are moved to the spool. */
+	public static final int DEFAULT_SPILL_LINES = 50000;
+	/** The default number of bytes of queued line text above which lines are moved to the
+	 * spool.
+	 */
+	public static final long DEFAULT_SPILL_BYTES = 16 * 1024 * 1024;
+
+	private static final int MIN_FLUSH_LINES = 100;
+	// round trip times outside this range change the early send threshold
+	private static final long FAST_RTT_MS = 200;
+	private static final long SLOW_RTT_MS = 1000;
+
+	private final LogSink sink;
+	private final long maxDelayNs;
+	private final int maxBatchLines;
+	private final long maxBatchBytes;
+	private final int spillLines;
+	private final long spillBytes;
+
+	private final ConcurrentLinkedQueue<LogLine> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger queuedLines = new AtomicInteger();
+	private final AtomicLong queuedBytes = new AtomicLong();
+	// the time the oldest queued line was added, or 0 if the queue was empty
+	private final AtomicLong oldestQueuedNs = new AtomicLong();
+	private volatile int flushLines;
+	private volatile long avgRttMs = 0;
+
+	// held by the threads sending lines, never by the threads adding them
+	private final ReentrantLock sendLock = new ReentrantLock();
+	// a batch that failed to send. Only written under sendLock
+	private volatile List<LogLine> failed = null;
+	// set if the failed batch was read from the spool, along with the spool it was read from
+	private JobLogSpool.Batch failedSpooled = null;
+	private JobLogSpool failedSpool = null;
+	// held while lines are taken from the queue, so spooled and sent lines stay in order
+	private final ReentrantLock spillLock = new ReentrantLock();
+	private volatile JobLogSpool spool = null;
+	private volatile Thread flusher = null;
+	private volatile boolean closed = false;
+	private volatile ErrorLogger log = ErrorLogger.STDERR;
+
+	/** Create a sender with the default limits.
+	 * @param sink where the lines are sent.
+	 */
+	public JobLogSender(final LogSink sink) {
+		this(sink, DEFAULT_MAX_DELAY_MS, DEFAULT_MAX_BATCH_LINES, DEFAULT_MAX_BATCH_BYTES);
+	}
+
+	/** Create a sender that spills lines to the spool at the default watermarks.
+	 * @param sink where the lines are sent.
+	 * @param maxDelayMs the maximum time a line waits in the queue before it is sent.
+	 * @param maxBatchLines the maximum number of lines in one request.
+	 * @param maxBatchBytes the maximum number of bytes of line text in one request.
+	 */
+	public JobLogSender(
+			final LogSink sink,
+			final long maxDelayMs,
+			final int maxBatchLines,
+			final long maxBatchBytes) {
+		this(sink, maxDelayMs, maxBatchLines, maxBatchBytes, DEFAULT_SPILL_LINES,
+				DEFAULT_SPILL_BYTES);
+	}
+
+	/** Create a sender. No lines are sent in the background until start() is called.
+	 * @param sink where the lines are sent.
+	 * @param maxDelayMs the maximum time a line waits in the queue before it is sent.
+	 * @param maxBatchLines the maximum number of lines in one request.
+	 * @param maxBatchBytes the maximum number of bytes of line text in one request.
+	 * @param spillLines the number of queued lines above which lines are moved to the spool.
+	 * @param spillBytes the number of bytes of queued line text above which lines are moved
+	 * to the spool.
+	 */
+	public JobLogSender(
+			final LogSink sink,
+			final long maxDelayMs,
+			final int maxBatchLines,
+			final long maxBatchBytes,
+			final int spillLines,
+			final long spillBytes) {
+		if (sink == null) {
+			throw new NullPointerException("sink");
+		}
+		if (maxDelayMs < 1 || maxBatchLines < 1 || maxBatchBytes < 1 || spillLines < 1 ||
+				spillBytes < 1) {
+			throw new IllegalArgumentException("Log sender delay and batch sizes must be positive");
+		}
+		this.sink = sink;
+		this.maxDelayNs = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+		this.maxBatchLines = maxBatchLines;
+		this.maxBatchBytes = maxBatchBytes;
+		this.spillLines = spillLines;
+		this.spillBytes = spillBytes;
+		this.flushLines = Math.min(MIN_FLUSH_LINES, maxBatchLines);
+	}
+
+	/** Set the spool to which lines are moved when too many are queued. Any unsent lines
+	 * already in the spool are sent before the queued lines.
+	 * @param spool the spool.
+	 */
+	public void setSpool(final JobLogSpool spool) {
+		spillLock.lock();
+		try {
+			this.spool = spool;
+		} finally {
+			spillLock.unlock();
+		}
+	}
+
+	/** Set the logger for errors sending or spooling lines. Errors are printed to standard
+	 * error by default.
+	 * @param log the logger.
+	 */
+	public void setErrorLogger(final ErrorLogger log) {
+		if (log == null) {
+			throw new NullPointerException("log");
+		}
+		this.log = log;
+	}
+
+	/** Start the flusher thread. */
+	public synchronized void start() {
+		if (flusher != null || closed) {
+			return;
+		}
+		final Thread t = new Thread(() -> run(), "job-log-sender");
+		t.setDaemon(true);
+		flusher = t;
+		t.start();
+	}
+
+	/** Queue a line to be sent. Never blocks.
+	 * @param line the line.
+	 */
+	public void add(final LogLine line) {
+		queue.offer(line);
+		oldestQueuedNs.compareAndSet(0, System.nanoTime());
+		final int lines = queuedLines.incrementAndGet();
+		final long bytes = queuedBytes.addAndGet(size(line));
+		if (lines >= flushLines || bytes >= maxBatchBytes) {
+			final Thread t = flusher;
+			if (t != null) {
+				LockSupport.unpark(t);
+			}
+		}
+		if ((lines >= spillLines || bytes >= spillBytes) && spool != null &&
+				spillLock.tryLock()) {
+			try {
+				spill();
+			} finally {
+				spillLock.unlock();
+			}
+		}
+	}
+
+	// must hold spillLock. Returns false if the lines couldn't be written
+	private boolean spill() {
+		final JobLogSpool s = spool;
+		if (s == null) {
+			return false;
+		}
+		while (true) {
+			// only holders of spillLock take lines from the queue, so these stay at its head
+			final List<LogLine> lines = new ArrayList<>();
+			long bytes = 0;
+			final Iterator<LogLine> it = queue.iterator();
+			while (it.hasNext() && lines.size() < maxBatchLines) {
+				final LogLine l = it.next();
+				lines.add(l);
+				bytes += size(l);
+			}
+			if (lines.isEmpty()) {
+				return true;
+			}
+			try {
+				s.append(lines);
+			} catch (IOException e) {
+				// keep the lines in memory, and don't keep trying to write to a bad disk
+				log.logErr(e);
+				spool = null;
+				return false;
+			}
+			for (int i = 0; i < lines.size(); i++) {
+				queue.poll();
+			}
+			queuedLines.addAndGet(-lines.size());
+			queuedBytes.addAndGet(-bytes);
+		}
+	}
+
+	private static int size(final LogLine line) {
+		// close enough for ASCII heavy tool output, and much cheaper than encoding
+		return line.getLine() == null ? 0 : line.getLine().length();
+	}
+
+	/** Get the number of lines waiting to be sent, not counting a failed batch.
+	 * @return the number of queued lines.
+	 */
+	public int getQueuedLines() {
+		return queuedLines.get();
+	}
+
+	/** Get the number of queued lines that triggers a send before the maximum delay.
+	 * @return the current send threshold.
+	 */
+	public int getFlushLines() {
+		return flushLines;
+	}
+
+	private void run() {
+		while (!closed) {
+			final long oldest = oldestQueuedNs.get();
+			final long waitNs = oldest == 0 ? maxDelayNs : oldest + maxDelayNs - System.nanoTime();
+			if (failed == null && waitNs > 0 && queuedLines.get() < flushLines &&
+					queuedBytes.get() < maxBatchBytes) {
+				LockSupport.parkNanos(this, waitNs);
+				if (Thread.interrupted()) {
+					break;
+				}
+				continue;
+			}
+			boolean sent;
+			try {
+				sent = flush();
+			} catch (RuntimeException e) {
+				// keep the flusher alive, the lines are still queued or spooled
+				log.logErr(e);
+				sent = false;
+			}
+			if (!sent) {
+				// the service is unavailable, don't retry in a tight loop
+				LockSupport.parkNanos(this, maxDelayNs);
+				if (Thread.interrupted()) {
+					break;
+				}
+			}
+		}
+	}
+
+	/** Send all queued lines, waiting for any send in progress to finish first. Failures
+	 * are logged and the lines are kept for the next send.
+	 * @return true if all the lines were sent.
+	 */
+	public boolean flush() {
+		sendLock.lock();
+		try {
+			while (true) {
+				if (failed == null) {
+					failed = takeBatch();
+					if (failed.isEmpty()) {
+						failed = null;
+						return true;
+					}
+				}
+				final long start = System.nanoTime();
+				try {
+					sink.send(failed);
+				} catch (Exception e) {
+					log.logErr(e);
+					return false;
+				}
+				failed = null;
+				if (failedSpooled != null) {
+					// not spool, which is dropped after a disk error
+					try {
+						failedSpool.commit(failedSpooled);
+					} catch (IOException e) {
+						// the lines will be sent again if the spool is replayed
+						log.logErr(e);
+					}
+					failedSpooled = null;
+					failedSpool = null;
+				}
+				adapt(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			}
+		} finally {
+			sendLock.unlock();
+		}
+	}
+
+	// must hold sendLock
+	private List<LogLine> takeBatch() {
+		spillLock.lock();
+		try {
+			final JobLogSpool s = spool;
+			if (s != null && s.hasUnsent()) {
+				try {
+					failedSpooled = s.read(maxBatchLines, maxBatchBytes);
+					failedSpool = s;
+					return failedSpooled.lines;
+				} catch (IOException e) {
+					// the lines in the spool are lost to this process, but may be replayed
+					log.logErr(e);
+					spool = null;
+				}
+			}
+			final List<LogLine> batch = new ArrayList<>();
+			long bytes = 0;
+			// reset before draining, so lines added while draining restart the delay clock
+			oldestQueuedNs.set(0);
+			while (batch.size() < maxBatchLines && bytes < maxBatchBytes) {
+				final LogLine l = queue.poll();
+				if (l == null) {
+					break;
+				}
+				batch.add(l);
+				bytes += size(l);
+			}
+			queuedLines.addAndGet(-batch.size());
+			queuedBytes.addAndGet(-bytes);
+			if (!queue.isEmpty()) {
+				oldestQueuedNs.compareAndSet(0, System.nanoTime());
+			}
+			return batch;
+		} finally {
+			spillLock.unlock();
+		}
+	}
+
+	private void adapt(final long rttMs) {
+		final long avg = avgRttMs == 0 ? rttMs : (avgRttMs * 3 + rttMs) / 4;
+		avgRttMs = avg;
+		if (avg > SLOW_RTT_MS) {
+			flushLines = Math.min(maxBatchLines, flushLines * 2);
+		} else if (avg < FAST_RTT_MS) {
+			flushLines = Math.max(Math.min(MIN_FLUSH_LINES, maxBatchLines), flushLines / 2);
+		}
+	}
+
+	/** Stop the flusher thread and send any remaining lines, waiting for any send in
+	 * progress to finish first. Lines that can't be sent are saved to the spool, if there
+	 * is one, so they can be replayed later.
+	 * @return true if all the lines were sent.
+	 */
+	public boolean close() {
+		final Thread t;
+		synchronized (this) {
+			closed = true;
+			t = flusher;
+		}
+		if (t != null) {
+			// don't interrupt, a send in progress is left to finish
+			LockSupport.unpark(t);
+		}
+		if (flush()) {
+			return true;
+		}
+		sendLock.lock();
+		spillLock.lock();
+		try {
+			final JobLogSpool s = spool;
+			if (s == null) {
+				return false;
+			}
+			if (failed != null && failedSpooled == null) {
+				// the failed lines are older than any lines in the spool
+				try {
+					s.prepend(failed);
+					failed = null;
+				} catch (IOException e) {
+					log.logErr(e);
+					return false;
+				}
+			}
+			if (spill()) {
+				log.logInfo("Unsent log lines were saved to " + s.getFile());
+			}
+			return false;
+		} finally {
+			spillLock.unlock();
+			sendLock.unlock();
+		}
+	}
+}
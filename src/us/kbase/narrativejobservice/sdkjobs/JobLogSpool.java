@@ -0,0 +1,256 @@
+package us.kbase.narrativejobservice.sdkjobs;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import us.kbase.narrativejobservice.LogLine;
+
+/** An append-only file of job log lines that haven't been sent to the job service yet.
+ *
+ * Each line is stored as a flag byte, the length of the line and its UTF-8 text. The offset
+ * of the first line that hasn't been sent is kept in a second file, so the lines can be
+ * replayed by another process, such as the job cleaner, if the runner exits before the job
+ * service comes back. A line may be sent twice if the process dies between sending it and
+ * recording the new offset. Once every line has been sent the file is truncated.
+ *
+ * The file is only created when lines are first appended.
+ */
+public class JobLogSpool {
+
+	/** The name of the spool file in the job directory. */
+	public static final String SPOOL_FILE = "job_logs.spool";
+
+	private static final String OFFSET_SUFFIX = ".offset";
+	private static final int FLAG_ERROR = 1;
+
+	/** Lines read from the spool, and the offset after the last of them. */
+	public static class Batch {
+		/** The lines. */
+		public final List<LogLine> lines;
+		private final long end;
+
+		private Batch(final List<LogLine> lines, final long end) {
+			this.lines = lines;
+			this.end = end;
+		}
+	}
+
+	private final File file;
+	private final File offsetFile;
+	// the offset of the first unsent line
+	private long sent = 0;
+	private long length = 0;
+
+	/** Open the spool in a job directory. If a spool file already exists its unsent lines
+	 * are kept, except for a partially written line at the end left by a crash.
+	 * @param jobDir the job directory.
+	 * @throws IOException if an existing spool can't be read.
+	 */
+	public JobLogSpool(final File jobDir) throws IOException {
+		file = new File(jobDir, SPOOL_FILE);
+		offsetFile = new File(jobDir, SPOOL_FILE + OFFSET_SUFFIX);
+		if (!file.exists()) {
+			return;
+		}
+		if (offsetFile.length() >= 8) {
+			try (final RandomAccessFile raf = new RandomAccessFile(offsetFile, "r")) {
+				sent = raf.readLong();
+			}
+		}
+		if (sent < 0 || sent > file.length()) {
+			// can't trust the offset, better to send lines twice than lose them
+			sent = 0;
+		}
+		length = sent;
+		try (final DataInputStream in = open(sent)) {
+			while (true) {
+				final long recLen = skipLine(in);
+				if (recLen < 0) {
+					break;
+				}
+				length += recLen;
+			}
+		}
+		if (length < file.length()) {
+			try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(length);
+			}
+		}
+	}
+
+	private DataInputStream open(final long offset) throws IOException {
+		final FileInputStream fis = new FileInputStream(file);
+		fis.getChannel().position(offset);
+		return new DataInputStream(new BufferedInputStream(fis));
+	}
+
+	// returns the length of the skipped line, or -1 at the end of the file
+	private static long skipLine(final DataInputStream in) throws IOException {
+		try {
+			in.readByte();
+			final int len = in.readInt();
+			if (len < 0) {
+				return -1;
+			}
+			long left = len;
+			while (left > 0) {
+				final int n = in.skipBytes((int) left);
+				if (n <= 0) {
+					return -1;
+				}
+				left -= n;
+			}
+			return 5 + len;
+		} catch (EOFException e) {
+			return -1;
+		}
+	}
+
+	/** Get the spool file.
+	 * @return the spool file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/** Check whether the spool holds lines that haven't been sent.
+	 * @return true if there are unsent lines.
+	 */
+	public synchronized boolean hasUnsent() {
+		return sent < length;
+	}
+
+	/** Append lines to the end of the spool.
+	 * @param lines the lines.
+	 * @throws IOException if the lines couldn't be written, in which case the spool is
+	 * unchanged.
+	 */
+	public synchronized void append(final List<LogLine> lines) throws IOException {
+		final byte[] b = encode(lines);
+		try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(length);
+			try {
+				raf.write(b);
+			} catch (IOException e) {
+				raf.setLength(length);
+				throw e;
+			}
+		}
+		length += b.length;
+	}
+
+	/** Insert lines before the unsent lines in the spool. This rewrites the spool, so it is
+	 * only meant for saving the lines of a failed send when the runner exits.
+	 * @param lines the lines.
+	 * @throws IOException if the lines couldn't be written, in which case the spool is
+	 * unchanged.
+	 */
+	public synchronized void prepend(final List<LogLine> lines) throws IOException {
+		final File tmp = new File(file.getPath() + ".tmp");
+		try (final RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+			out.setLength(0);
+			out.write(encode(lines));
+			if (file.exists()) {
+				try (final FileInputStream in = new FileInputStream(file)) {
+					in.getChannel().position(sent);
+					final byte[] buf = new byte[64 * 1024];
+					long left = length - sent;
+					while (left > 0) {
+						final int n = in.read(buf, 0, (int) Math.min(buf.length, left));
+						if (n < 0) {
+							throw new EOFException("Log spool " + file + " is truncated");
+						}
+						out.write(buf, 0, n);
+						left -= n;
+					}
+				}
+			}
+			length = out.length();
+		}
+		writeOffset(0);
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		sent = 0;
+	}
+
+	private static byte[] encode(final List<LogLine> lines) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			for (final LogLine l: lines) {
+				final byte[] text = l.getLine() == null ? new byte[0] :
+						l.getLine().getBytes(StandardCharsets.UTF_8);
+				out.writeByte(l.getIsError() != null && l.getIsError() == 1L ? FLAG_ERROR : 0);
+				out.writeInt(text.length);
+				out.write(text);
+			}
+			out.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException("Can't happen", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/** Read the oldest unsent lines. The lines stay in the spool until commit() is called.
+	 * @param maxLines the maximum number of lines to read.
+	 * @param maxBytes the size of line text after which no more lines are read.
+	 * @return the lines.
+	 * @throws IOException if the spool couldn't be read.
+	 */
+	public synchronized Batch read(final int maxLines, final long maxBytes) throws IOException {
+		final List<LogLine> lines = new ArrayList<>();
+		long pos = sent;
+		if (pos >= length) {
+			return new Batch(lines, pos);
+		}
+		long bytes = 0;
+		try (final DataInputStream in = open(pos)) {
+			while (pos < length && lines.size() < maxLines && bytes < maxBytes) {
+				final boolean isError = (in.readByte() & FLAG_ERROR) != 0;
+				final byte[] text = new byte[in.readInt()];
+				in.readFully(text);
+				lines.add(new LogLine().withLine(new String(text, StandardCharsets.UTF_8))
+						.withIsError(isError ? 1L : 0L));
+				pos += 5 + text.length;
+				bytes += text.length;
+			}
+		}
+		return new Batch(lines, pos);
+	}
+
+	/** Mark lines as sent. When no unsent lines are left the spool is truncated.
+	 * @param batch the lines that were sent, which must be the last batch read.
+	 * @throws IOException if the new offset couldn't be recorded. The lines are still
+	 * marked as sent in this process.
+	 */
+	public synchronized void commit(final Batch batch) throws IOException {
+		sent = batch.end;
+		if (sent >= length) {
+			sent = 0;
+			length = 0;
+			try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(0);
+			}
+		}
+		writeOffset(sent);
+	}
+
+	private void writeOffset(final long offset) throws IOException {
+		try (final RandomAccessFile raf = new RandomAccessFile(offsetFile, "rw")) {
+			raf.seek(0);
+			raf.writeLong(offset);
+		}
+	}
+}
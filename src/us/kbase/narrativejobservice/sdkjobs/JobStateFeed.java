@@ -0,0 +1,279 @@
+package us.kbase.narrativejobservice.sdkjobs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import us.kbase.narrativejobservice.db.ExecTaskEvent;
+
+/** Pushes job state changes to clients subscribed to a set of jobs or a workspace, so they
+ * don't have to poll check_jobs. State changes made by this server are published directly,
+ * while changes made by other servers are read from the shared task event log.
+ *
+ * Each subscription has a bounded queue. A subscriber that falls behind is marked as
+ * overflowed rather than blocking the publisher, and should re-read the job states.
+ */
+public class JobStateFeed {
+
+	/** A shared log of job state changes written by all servers. */
+	public interface EventLog {
+
+		/** Get the ID of the newest event in the log.
+		 * @return the event ID, or null if the log is empty.
+		 * @throws Exception if the log couldn't be read.
+		 */
+		String getLastEventId() throws Exception;
+
+		/** Pass the events written by other servers after an event to a consumer as they
+		 * arrive.
+		 * @param afterId the ID of the event to start after, or null to start at the oldest
+		 * event.
+		 * @param consumer the event consumer.
+		 * @param running returning false stops the call.
+		 * @return the ID of the last event seen.
+		 * @throws Exception if the log couldn't be read.
+		 */
+		String tail(String afterId, Consumer<ExecTaskEvent> consumer, BooleanSupplier running)
+				throws Exception;
+
+		/** Get the number of times a server failed to write events to the log. A change in
+		 * the count means events are missing from the log.
+		 * @return the count.
+		 * @throws Exception if the count couldn't be read.
+		 */
+		long getGapCount() throws Exception;
+	}
+
+	/** A client's subscription to job state changes. */
+	public static class Subscription {
+
+		private final Set<String> ujsJobIds;
+		private final Long wsid;
+		private final BlockingQueue<ExecTaskEvent> queue;
+		private volatile boolean overflowed = false;
+
+		private Subscription(final Set<String> ujsJobIds, final Long wsid, final int queueSize) {
+			this.ujsJobIds = ujsJobIds;
+			this.wsid = wsid;
+			queue = new ArrayBlockingQueue<>(queueSize);
+		}
+
+		private boolean matches(final ExecTaskEvent event) {
+			return ujsJobIds.contains(event.getUjsJobId()) ||
+					(wsid != null && wsid.equals(event.getWsid()));
+		}
+
+		private void offer(final ExecTaskEvent event) {
+			if (!queue.offer(event)) {
+				overflowed = true;
+			}
+		}
+
+		/** Get the IDs of the jobs the subscription is for.
+		 * @return the job IDs.
+		 */
+		public Set<String> getUjsJobIds() {
+			return ujsJobIds;
+		}
+
+		/** Get the ID of the workspace the subscription is for.
+		 * @return the workspace ID, or null.
+		 */
+		public Long getWsid() {
+			return wsid;
+		}
+
+		/** Wait for the next event.
+		 * @param timeoutMs the maximum time to wait.
+		 * @return the event, or null if the wait timed out.
+		 * @throws InterruptedException if interrupted while waiting.
+		 */
+		public ExecTaskEvent poll(final long timeoutMs) throws InterruptedException {
+			return queue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+		}
+
+		/** Remove all queued events without waiting.
+		 * @return the events.
+		 */
+		public List<ExecTaskEvent> drain() {
+			final List<ExecTaskEvent> ret = new ArrayList<>();
+			queue.drainTo(ret);
+			return ret;
+		}
+
+		/** Check whether events were dropped because the queue was full, or lost because a
+		 * server couldn't write them. If so, the client has missed state changes and must
+		 * re-read the job states.
+		 * @return true if events were dropped or lost.
+		 */
+		public boolean isOverflowed() {
+			return overflowed;
+		}
+	}
+
+	// how often the tailing thread checks whether events are missing from the log
+	private static final long GAP_CHECK_INTERVAL_NS = TimeUnit.SECONDS.toNanos(5);
+
+	private final int maxSubscribers;
+	private final int queueSize;
+	private final ErrorLogger errorLog;
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+	private volatile boolean running = true;
+	private Thread tailer = null;
+	// only used by the tailing thread
+	private long gaps = 0;
+	private long lastGapCheckNs = 0;
+
+	/** Create the feed.
+	 * @param maxSubscribers the maximum number of subscriptions that may exist at once.
+	 * @param queueSize the number of events a subscription may hold before it overflows.
+	 * @param errorLog the logger for errors reading the event log.
+	 */
+	public JobStateFeed(final int maxSubscribers, final int queueSize,
+			final ErrorLogger errorLog) {
+		if (queueSize < 1) {
+			throw new IllegalArgumentException("Queue size must be positive");
+		}
+		this.maxSubscribers = maxSubscribers;
+		this.queueSize = queueSize;
+		this.errorLog = errorLog;
+	}
+
+	/** Subscribe to state changes of a set of jobs and/or the jobs in a workspace.
+	 * @param ujsJobIds the job IDs. May be empty.
+	 * @param wsid the workspace ID, or null.
+	 * @return the subscription. Must be passed to {@link #unsubscribe(Subscription)} when the
+	 * client leaves.
+	 * @throws IllegalStateException if there are too many subscriptions.
+	 */
+	public Subscription subscribe(final Set<String> ujsJobIds, final Long wsid) {
+		if (ujsJobIds.isEmpty() && wsid == null) {
+			throw new IllegalArgumentException("No jobs or workspace provided");
+		}
+		final Subscription s = new Subscription(
+				Collections.unmodifiableSet(new HashSet<>(ujsJobIds)), wsid, queueSize);
+		synchronized (subscriptions) {
+			if (subscriptions.size() >= maxSubscribers) {
+				throw new IllegalStateException(
+						"Too many job state subscriptions, please try again later");
+			}
+			subscriptions.add(s);
+		}
+		return s;
+	}
+
+	/** Remove a subscription.
+	 * @param subscription the subscription.
+	 */
+	public void unsubscribe(final Subscription subscription) {
+		subscriptions.remove(subscription);
+	}
+
+	/** Pass an event to the matching subscriptions.
+	 * @param event the event.
+	 */
+	public void publish(final ExecTaskEvent event) {
+		for (final Subscription s: subscriptions) {
+			if (s.matches(event)) {
+				s.offer(event);
+			}
+		}
+	}
+
+	/** Mark all subscriptions as overflowed, so the subscribers re-read the job states. Called
+	 * when state changes were made without writing their events.
+	 */
+	public void markEventsLost() {
+		for (final Subscription s: subscriptions) {
+			s.overflowed = true;
+		}
+	}
+
+	/** Get the number of subscriptions.
+	 * @return the number of subscriptions.
+	 */
+	public int getSubscriberCount() {
+		return subscriptions.size();
+	}
+
+	/** Start a background thread that publishes the events other servers write to the
+	 * shared event log. Events already in the log are skipped.
+	 * @param log the event log.
+	 */
+	public synchronized void startTailing(final EventLog log) {
+		if (tailer != null) {
+			throw new IllegalStateException("Already tailing an event log");
+		}
+		tailer = new Thread(() -> tail(log), "job-state-feed-tailer");
+		tailer.setDaemon(true);
+		tailer.start();
+	}
+
+	private void tail(final EventLog log) {
+		String last = null;
+		boolean started = false;
+		while (running) {
+			try {
+				if (!started) {
+					last = log.getLastEventId();
+					gaps = log.getGapCount();
+					lastGapCheckNs = System.nanoTime();
+					started = true;
+				}
+				last = log.tail(last, this::publish, () -> running && checkGaps(log));
+				checkGaps(log);
+			} catch (Exception e) {
+				errorLog.logErr("Error reading the job state event log: " + e);
+			}
+			// the log was empty or the cursor died, so wait a bit before reopening it
+			try {
+				Thread.sleep(1000);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	// always returns true, so it can be chained with the running check while tailing
+	private boolean checkGaps(final EventLog log) {
+		final long now = System.nanoTime();
+		if (now - lastGapCheckNs < GAP_CHECK_INTERVAL_NS) {
+			return true;
+		}
+		lastGapCheckNs = now;
+		try {
+			final long count = log.getGapCount();
+			if (count != gaps) {
+				gaps = count;
+				markEventsLost();
+			}
+		} catch (Exception e) {
+			errorLog.logErr("Error reading the job state event log gap count: " + e);
+		}
+		return true;
+	}
+
+	/** Stop the feed. Waiting subscribers are not woken and should time out.
+	 * @param timeoutMs the maximum time to wait for the tailing thread to stop.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public void close(final long timeoutMs) throws InterruptedException {
+		running = false;
+		final Thread t;
+		synchronized (this) {
+			t = tailer;
+		}
+		if (t != null) {
+			t.interrupt();
+			t.join(timeoutMs);
+		}
+	}
+}
@@ -0,0 +1,275 @@
+package us.kbase.narrativejobservice.sdkjobs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import us.kbase.narrativejobservice.db.ExecEngineMongoDb;
+import us.kbase.narrativejobservice.db.ExecSubmission;
+
+/** Drains the submission queue in the background, so run_job returns as soon as a job is
+ * recorded rather than waiting for the scheduler. Every server runs submitters, and they share
+ * the queue.
+ *
+ * Each submitter claims up to a batch of due jobs and submits the jobs that share a user token
+ * with a single call to the scheduler, so jobs that pile up while the scheduler is slow are
+ * submitted together. Jobs are grouped by token rather than user, since every job must run
+ * with the token it was started with. A failed batch is retried after an exponential
+ * backoff with jitter, so the retries of many jobs don't hit the scheduler at the same time.
+ * A job that fails every attempt is passed to the failure handler. A job canceled while it
+ * was being submitted is removed from the scheduler again.
+ */
+public class JobSubmitter {
+
+	/** Submits jobs to the scheduler. */
+	public interface BatchSubmit {
+
+		/** Submit jobs. Jobs that were tried before may already be in the scheduler, if an
+		 * earlier attempt failed after queueing them or their IDs weren't recorded, and must
+		 * not be queued again.
+		 * @param batch the jobs, which all share the same user token.
+		 * @return the IDs the scheduler assigned to the jobs, in order.
+		 * @throws Exception if the jobs couldn't be submitted.
+		 */
+		List<String> submit(List<ExecSubmission> batch) throws Exception;
+	}
+
+	/** Handles jobs that couldn't be submitted. */
+	public interface FailureHandler {
+
+		/** Handle a job that failed its last submission attempt. The job has already been
+		 * removed from the queue.
+		 * @param submission the queue entry of the job.
+		 * @param error the reason the last attempt failed.
+		 * @throws Exception if the failure couldn't be handled.
+		 */
+		void failed(ExecSubmission submission, String error) throws Exception;
+	}
+
+	private static final long POLL_INTERVAL_MS = 1000;
+
+	private final ExecEngineMongoDb db;
+	private final Scheduler scheduler;
+	private final FailureHandler onFailure;
+	private final int batchSize;
+	private final int maxAttempts;
+	private final long retryBaseMs;
+	private final long retryMaxMs;
+	private final long leaseMs;
+	private final ErrorLogger log;
+	private final List<Thread> submitters = new ArrayList<>();
+	private final Object wakeUp = new Object();
+	private volatile boolean running = true;
+
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong submitTimeMs = new AtomicLong();
+	private final AtomicLong maxSubmitTimeMs = new AtomicLong();
+	private final AtomicLong queueTimeMs = new AtomicLong();
+	private final AtomicLong maxQueueTimeMs = new AtomicLong();
+
+	/** Start the submitters.
+	 * @param db the database holding the submission queue.
+	 * @param scheduler the scheduler the jobs are submitted to.
+	 * @param onFailure handles jobs that couldn't be submitted.
+	 * @param threads the number of submitter threads.
+	 * @param batchSize the maximum number of jobs a submitter claims at once.
+	 * @param maxAttempts the number of times submitting a job is attempted.
+	 * @param retryBaseMs the backoff after the first failed attempt. The backoff doubles with
+	 * every further failed attempt.
+	 * @param retryMaxMs the maximum backoff.
+	 * @param leaseMs how long a claimed job is left to its submitter before another submitter
+	 * may claim it. Must be longer than a submission takes.
+	 * @param log the error logger, or null to print errors to standard error.
+	 */
+	public JobSubmitter(
+			final ExecEngineMongoDb db,
+			final Scheduler scheduler,
+			final FailureHandler onFailure,
+			final int threads,
+			final int batchSize,
+			final int maxAttempts,
+			final long retryBaseMs,
+			final long retryMaxMs,
+			final long leaseMs,
+			final ErrorLogger log) {
+		if (threads < 1 || batchSize < 1 || maxAttempts < 1) {
+			throw new IllegalArgumentException(
+					"Submitter threads, batch size and attempts must be at least 1");
+		}
+		if (retryBaseMs < 1 || retryMaxMs < retryBaseMs || leaseMs < 1) {
+			throw new IllegalArgumentException("Illegal submission retry or lease time");
+		}
+		this.db = db;
+		this.scheduler = scheduler;
+		this.onFailure = onFailure;
+		this.batchSize = batchSize;
+		this.maxAttempts = maxAttempts;
+		this.retryBaseMs = retryBaseMs;
+		this.retryMaxMs = retryMaxMs;
+		this.leaseMs = leaseMs;
+		this.log = log == null ? ErrorLogger.STDERR : log;
+		for (int i = 1; i <= threads; i++) {
+			final Thread t = new Thread(() -> run(), "njs-job-submitter-" + i);
+			t.setDaemon(true);
+			submitters.add(t);
+			t.start();
+		}
+	}
+
+	/** Wake up a waiting submitter, for example because this server just queued a job. Jobs
+	 * queued by other servers are picked up within a second without a wake up.
+	 */
+	public void wakeUp() {
+		synchronized (wakeUp) {
+			wakeUp.notify();
+		}
+	}
+
+	private void run() {
+		while (running) {
+			List<ExecSubmission> claimed = null;
+			try {
+				claimed = db.claimExecSubmissions(batchSize, leaseMs);
+			} catch (Exception e) {
+				logErr(e);
+			}
+			if (claimed == null || claimed.isEmpty()) {
+				synchronized (wakeUp) {
+					try {
+						wakeUp.wait(POLL_INTERVAL_MS);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				continue;
+			}
+			final Map<String, List<ExecSubmission>> byToken = new LinkedHashMap<>();
+			for (final ExecSubmission s: claimed) {
+				byToken.computeIfAbsent(s.getToken(), t -> new ArrayList<>()).add(s);
+			}
+			for (final List<ExecSubmission> batch: byToken.values()) {
+				submit(batch);
+			}
+		}
+	}
+
+	private void submit(final List<ExecSubmission> batch) {
+		final long start = System.currentTimeMillis();
+		final List<String> ids;
+		try {
+			ids = scheduler.submit(batch);
+			if (ids.size() != batch.size()) {
+				throw new IllegalStateException(String.format(
+						"The scheduler returned %s IDs for %s jobs", ids.size(), batch.size()));
+			}
+		} catch (Exception e) {
+			logErr(e);
+			for (final ExecSubmission s: batch) {
+				handleFailure(s, e.getMessage() == null ? e.toString() : e.getMessage());
+			}
+			return;
+		}
+		final long end = System.currentTimeMillis();
+		batches.incrementAndGet();
+		submitTimeMs.addAndGet(end - start);
+		maxSubmitTimeMs.accumulateAndGet(end - start, Math::max);
+		for (int i = 0; i < batch.size(); i++) {
+			final ExecSubmission s = batch.get(i);
+			try {
+				final ExecSubmission.Completion c =
+						db.completeExecSubmission(s.getUjsJobId(), ids.get(i));
+				if (c == ExecSubmission.Completion.CANCELED) {
+					// canceled while it was being submitted
+					scheduler.cancel(Arrays.asList(s.getUjsJobId()));
+					continue;
+				} else if (c == ExecSubmission.Completion.ALREADY_COMPLETED) {
+					// the job is live under the other submitter's record, leave it alone
+					continue;
+				}
+			} catch (Exception e) {
+				// if the job is still queued it's submitted again once its lease expires
+				logErr(e);
+				continue;
+			}
+			submitted.incrementAndGet();
+			final long queued = end - s.getCreationTime();
+			queueTimeMs.addAndGet(queued);
+			maxQueueTimeMs.accumulateAndGet(queued, Math::max);
+		}
+	}
+
+	private void handleFailure(final ExecSubmission s, final String error) {
+		try {
+			if (s.getAttempts() >= maxAttempts) {
+				failed.incrementAndGet();
+				db.removeExecSubmission(s.getUjsJobId());
+				onFailure.failed(s, error);
+			} else {
+				retries.incrementAndGet();
+				db.retryExecSubmission(s.getUjsJobId(),
+						System.currentTimeMillis() + getBackoffMs(s.getAttempts()), error);
+			}
+		} catch (Exception e) {
+			logErr(e);
+		}
+	}
+
+	// "equal jitter": half the backoff is fixed, the other half random
+	private long getBackoffMs(final int attempts) {
+		final long backoff = Math.min(retryMaxMs,
+				retryBaseMs << Math.min(attempts - 1, 30));
+		return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+	}
+
+	private void logErr(final Exception e) {
+		log.logErr(e);
+	}
+
+	/** Get the queue depth and the submission counts and latencies. The queue time of a job
+	 * is the time from queueing the job to its submission.
+	 * @return the submission statistics.
+	 */
+	public Map<String, Long> getStats() {
+		final Map<String, Long> ret = new LinkedHashMap<>();
+		long depth = -1;
+		try {
+			depth = db.getExecSubmissionQueueDepth();
+		} catch (Exception e) {
+			logErr(e);
+		}
+		ret.put("queue_depth", depth);
+		final long count = submitted.get();
+		final long batchCount = batches.get();
+		ret.put("submitted", count);
+		ret.put("batches", batchCount);
+		ret.put("retries", retries.get());
+		ret.put("failed", failed.get());
+		ret.put("submit_ms_avg", batchCount == 0 ? 0 : submitTimeMs.get() / batchCount);
+		ret.put("submit_ms_max", maxSubmitTimeMs.get());
+		ret.put("queue_ms_avg", count == 0 ? 0 : queueTimeMs.get() / count);
+		ret.put("queue_ms_max", maxQueueTimeMs.get());
+		return ret;
+	}
+
+	/** Stop the submitters. Jobs being submitted are submitted by another server or after a
+	 * restart once their leases expire.
+	 * @param timeoutMs the maximum time to wait for each submitter to stop.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public void close(final long timeoutMs) throws InterruptedException {
+		running = false;
+		for (final Thread t: submitters) {
+			t.interrupt();
+		}
+		for (final Thread t: submitters) {
+			t.join(timeoutMs);
+		}
+	}
+}
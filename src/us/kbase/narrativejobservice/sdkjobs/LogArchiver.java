@@ -0,0 +1,84 @@
+package us.kbase.narrativejobservice.sdkjobs;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import us.kbase.narrativejobservice.db.ExecEngineMongoDb;
+
+/** Periodically moves the logs of jobs that finished a while ago out of Mongo and into the
+ * log archive, so Mongo only holds the logs of running and recently finished jobs. Each job
+ * is claimed with a lease before it's archived, so servers sharing the database split the
+ * work between them.
+ */
+public class LogArchiver {
+
+	private static final int BATCH_SIZE = 1000;
+	// a failed or deferred job is retried once its lease expires
+	private static final long LEASE_MS = 10 * 60 * 1000;
+
+	private final ExecEngineMongoDb db;
+	private final long delayMs;
+	private final ErrorLogger log;
+	private final ScheduledExecutorService executor;
+
+	/** Start archiving logs.
+	 * @param db the database, which must have a log archive set.
+	 * @param delayMs how long after a job finishes its log is archived.
+	 * @param intervalMs the time between searches for logs to archive.
+	 * @param log the error logger, or null to print errors to standard error.
+	 */
+	public LogArchiver(
+			final ExecEngineMongoDb db,
+			final long delayMs,
+			final long intervalMs,
+			final ErrorLogger log) {
+		this.db = db;
+		this.delayMs = delayMs;
+		this.log = log == null ? ErrorLogger.STDERR : log;
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread t = new Thread(r, "njs-log-archiver");
+			t.setDaemon(true);
+			return t;
+		});
+		executor.scheduleWithFixedDelay(() -> archive(), intervalMs, intervalMs,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/** Archive the logs of all jobs that finished before the archival delay.
+	 * @return the number of archived logs.
+	 */
+	public int archive() {
+		int count = 0;
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			final String jobId;
+			try {
+				jobId = db.claimUnarchivedFinishedJob(
+						System.currentTimeMillis() - delayMs, LEASE_MS);
+			} catch (Exception e) {
+				logErr(e);
+				return count;
+			}
+			if (jobId == null) {
+				break;
+			}
+			try {
+				if (db.archiveExecLog(jobId)) {
+					count++;
+				}
+			} catch (Exception e) {
+				logErr(e);
+			}
+		}
+		return count;
+	}
+
+	private void logErr(final Exception e) {
+		log.logErr(e);
+	}
+
+	/** Stop archiving logs. */
+	public void close() {
+		executor.shutdownNow();
+	}
+}
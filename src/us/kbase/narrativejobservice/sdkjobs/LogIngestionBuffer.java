@@ -0,0 +1,347 @@
+package us.kbase.narrativejobservice.sdkjobs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import us.kbase.narrativejobservice.db.ExecEngineMongoDb;
+import us.kbase.narrativejobservice.db.ExecLogLine;
+
+/** A write-behind buffer for job log lines. add_job_logs calls return as soon as the lines
+ * are queued in memory, and a background thread writes the lines of all jobs to Mongo in one
+ * bulk write every flush interval, or earlier if enough lines are waiting. Line positions are
+ * reserved in the database when the lines are written, so the line count returned from add()
+ * is an estimate if other servers write to the same log. The first lines of a job that isn't
+ * buffered yet are written directly, and the line count that write returns seeds the
+ * estimate, so the buffer never reads the log document.
+ *
+ * Memory is bounded by the maximum number of buffered lines. When the buffer is full, adds
+ * wait for the flusher to catch up and fail if it doesn't within a few seconds, at which
+ * point the job runner keeps its lines and retries on its next flush.
+ *
+ * If a write fails before any line positions were reserved, the lines go back into the
+ * buffer and are retried. Once positions were reserved, retrying would duplicate or reorder
+ * lines, so the log of the job is marked failed instead. Adds to it then fail, so the job
+ * runner keeps its lines, until the job is evicted from the buffer for being idle.
+ *
+ * Lines that have been acknowledged but not yet written are lost if the server dies
+ * without running close(), which is why the buffer is off unless enabled in the deployment
+ * configuration.
+ */
+public class LogIngestionBuffer {
+
+	private static final long MAX_WAIT_FOR_SPACE_MS = 10 * 1000;
+	private static final long IDLE_JOB_EVICTION_MS = 10 * 60 * 1000;
+
+	private final ExecEngineMongoDb db;
+	private final LogTailNotifier notifier;
+	private final int maxLines;
+	private final int flushLines;
+	private final long flushIntervalMs;
+	private final ErrorLogger log;
+
+	private final Map<String, JobLog> jobs = new ConcurrentHashMap<>();
+	// held for the duration of every Mongo write so flushes never interleave
+	private final ReentrantLock flushLock = new ReentrantLock();
+	private final Object space = new Object();
+	private int bufferedLines = 0;
+	private volatile boolean closed = false;
+	private final Thread flusher;
+
+	private static class JobLog {
+		// the expected line count once all pending lines are written
+		private int lineCount;
+		private List<ExecLogLine> pending = new ArrayList<>();
+		private long lastAdd = System.currentTimeMillis();
+		private boolean evicted = false;
+		// why writing lines of the job failed after their positions were reserved
+		private String failed = null;
+
+		private JobLog(final int lineCount) {
+			this.lineCount = lineCount;
+		}
+	}
+
+	/** Create the buffer and start the flusher thread.
+	 * @param db the database to which lines will be written.
+	 * @param notifier notified when lines have been written for a job.
+	 * @param maxLines the maximum number of lines held in memory.
+	 * @param flushLines the number of buffered lines that triggers an early flush.
+	 * @param flushIntervalMs the maximum time between flushes.
+	 * @param log the error logger.
+	 */
+	public LogIngestionBuffer(
+			final ExecEngineMongoDb db,
+			final LogTailNotifier notifier,
+			final int maxLines,
+			final int flushLines,
+			final long flushIntervalMs,
+			final ErrorLogger log) {
+		if (db == null) {
+			throw new NullPointerException("db");
+		}
+		if (notifier == null) {
+			throw new NullPointerException("notifier");
+		}
+		if (maxLines < 1 || flushLines < 1 || flushIntervalMs < 1) {
+			throw new IllegalArgumentException(
+					"Log buffer sizes and flush interval must be positive");
+		}
+		this.db = db;
+		this.notifier = notifier;
+		this.maxLines = maxLines;
+		this.flushLines = flushLines;
+		this.flushIntervalMs = flushIntervalMs;
+		this.log = log;
+		flusher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flushLoop();
+			}
+		}, "njs-log-flusher");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/** Queue log lines for a job.
+	 * @param ujsJobId the job ID.
+	 * @param lines the lines. Any line positions are overwritten when the lines are written.
+	 * @return the expected number of lines in the job log once the lines are written, or null
+	 * if the buffer is closed and the lines should be written directly.
+	 * @throws Exception if the lines couldn't be written directly or the buffer stayed full.
+	 */
+	public Integer add(final String ujsJobId, final List<ExecLogLine> lines)
+			throws Exception {
+		if (closed) {
+			return null;
+		}
+		reserveSpace(lines.size());
+		boolean queued = false;
+		try {
+			while (true) {
+				final JobLog jl = jobs.get(ujsJobId);
+				if (jl == null) {
+					break;
+				}
+				synchronized (jl) {
+					if (jl.evicted) {
+						continue;
+					}
+					// close() sets closed before its final flush takes the pending lines
+					// under this lock, so lines are never queued after the final flush
+					if (closed) {
+						return null;
+					}
+					if (jl.failed != null) {
+						throw new IllegalStateException(String.format(
+								"Writing earlier lines of the log of job %s failed, please " +
+								"try again later: %s", ujsJobId, jl.failed));
+					}
+					jl.pending.addAll(lines);
+					jl.lineCount += lines.size();
+					jl.lastAdd = System.currentTimeMillis();
+					queued = true;
+					return jl.lineCount;
+				}
+			}
+		} finally {
+			if (!queued) {
+				releaseSpace(lines.size());
+			}
+		}
+		// the job isn't buffered yet, so write the lines directly and buffer later lines
+		// from the line count the write returns
+		final int lineCount = db.appendExecLogLines(ujsJobId, lines);
+		notifier.notifyLines(ujsJobId);
+		jobs.putIfAbsent(ujsJobId, new JobLog(lineCount));
+		return lineCount;
+	}
+
+	private void reserveSpace(final int count) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + MAX_WAIT_FOR_SPACE_MS;
+		synchronized (space) {
+			// a single batch bigger than the buffer is let through when the buffer is empty
+			while (bufferedLines > 0 && bufferedLines + count > maxLines) {
+				space.notifyAll();
+				final long wait = deadline - System.currentTimeMillis();
+				if (wait <= 0) {
+					throw new IllegalStateException(
+							"The job log buffer is full, please try again later");
+				}
+				space.wait(wait);
+			}
+			bufferedLines += count;
+			if (bufferedLines >= flushLines) {
+				space.notifyAll();
+			}
+		}
+	}
+
+	private void releaseSpace(final int count) {
+		synchronized (space) {
+			bufferedLines -= count;
+			space.notifyAll();
+		}
+	}
+
+	/** Write any buffered lines for a job before returning.
+	 * @param ujsJobId the job ID.
+	 */
+	public void flush(final String ujsJobId) {
+		final JobLog jl = jobs.get(ujsJobId);
+		if (jl == null) {
+			return;
+		}
+		flushLock.lock();
+		try {
+			final Map<String, List<ExecLogLine>> batch = new HashMap<>();
+			takePending(ujsJobId, jl, batch);
+			write(batch);
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/** Write all buffered lines. */
+	public void flush() {
+		flushLock.lock();
+		try {
+			final Map<String, List<ExecLogLine>> batch = new HashMap<>();
+			final long now = System.currentTimeMillis();
+			for (final Map.Entry<String, JobLog> e: jobs.entrySet()) {
+				final JobLog jl = e.getValue();
+				synchronized (jl) {
+					if (jl.pending.isEmpty() && now - jl.lastAdd > IDLE_JOB_EVICTION_MS) {
+						jl.evicted = true;
+						jobs.remove(e.getKey());
+						continue;
+					}
+				}
+				takePending(e.getKey(), jl, batch);
+			}
+			write(batch);
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	private void takePending(
+			final String ujsJobId,
+			final JobLog jl,
+			final Map<String, List<ExecLogLine>> batch) {
+		synchronized (jl) {
+			if (!jl.pending.isEmpty()) {
+				batch.put(ujsJobId, jl.pending);
+				jl.pending = new ArrayList<>();
+			}
+		}
+	}
+
+	private void write(final Map<String, List<ExecLogLine>> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		int count = 0;
+		for (final List<ExecLogLine> lines: batch.values()) {
+			count += lines.size();
+			// a position shows the write reserved positions for the lines
+			for (final ExecLogLine l: lines) {
+				l.setLinePos(null);
+			}
+		}
+		final Map<String, Integer> lineCounts;
+		try {
+			lineCounts = db.appendExecLogLines(batch);
+		} catch (RuntimeException e) {
+			releaseSpace(count - keepFailedWrite(batch, e));
+			throw e;
+		}
+		try {
+			// catch up with lines written to the same logs by other servers
+			for (final Map.Entry<String, Integer> lc: lineCounts.entrySet()) {
+				final JobLog jl = jobs.get(lc.getKey());
+				if (jl != null) {
+					synchronized (jl) {
+						jl.lineCount = lc.getValue() + jl.pending.size();
+					}
+				}
+				notifier.notifyLines(lc.getKey());
+			}
+		} finally {
+			releaseSpace(count);
+		}
+	}
+
+	/* Puts the lines of a failed write whose positions weren't reserved back into the buffer
+	 * and marks the logs of the other jobs failed. Returns the number of lines kept.
+	 */
+	private int keepFailedWrite(
+			final Map<String, List<ExecLogLine>> batch,
+			final RuntimeException err) {
+		int kept = 0;
+		for (final Map.Entry<String, List<ExecLogLine>> e: batch.entrySet()) {
+			final List<ExecLogLine> lines = e.getValue();
+			// the flush lock is held, so no other flush can have evicted the job
+			final JobLog jl = jobs.get(e.getKey());
+			if (jl != null) {
+				synchronized (jl) {
+					if (lines.get(0).getLinePos() == null) {
+						lines.addAll(jl.pending);
+						jl.pending = lines;
+						kept += lines.size();
+						continue;
+					}
+					jl.failed = String.valueOf(err.getMessage());
+				}
+			}
+			log.logErr(String.format("Lost %s buffered log lines of job %s: %s",
+					lines.size(), e.getKey(), err.getMessage()));
+		}
+		return kept;
+	}
+
+	private void flushLoop() {
+		while (!closed) {
+			try {
+				synchronized (space) {
+					if (bufferedLines < flushLines) {
+						space.wait(flushIntervalMs);
+					}
+				}
+				flush();
+			} catch (InterruptedException e) {
+				// closing
+			} catch (Throwable e) {
+				log.logErr("Error writing buffered job logs: " + e.getMessage());
+				log.logErr(e);
+				try {
+					Thread.sleep(flushIntervalMs);
+				} catch (InterruptedException ie) {
+					// closing
+				}
+			}
+		}
+	}
+
+	/** Stop the flusher thread and write all remaining buffered lines. Adds after this call
+	 * return null.
+	 */
+	public void close() {
+		flushLock.lock();
+		try {
+			closed = true;
+		} finally {
+			flushLock.unlock();
+		}
+		flusher.interrupt();
+		try {
+			flusher.join(flushIntervalMs * 10);
+		} catch (InterruptedException e) {
+			// continue with the final flush
+		}
+		flush();
+	}
+}
@@ -0,0 +1,118 @@
+package us.kbase.narrativejobservice.sdkjobs;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Lets get_job_logs calls wait for new log lines. Writers in this server wake waiting
+ * readers of the job immediately. Lines written by other servers are noticed by re-reading
+ * the line count every poll interval.
+ */
+public class LogTailNotifier {
+
+	/** Gets the current number of lines in a job log. */
+	public interface LineCounter {
+		/** Get the line count. */
+		int getLineCount() throws Exception;
+	}
+
+	private static class JobMonitor {
+		private int waiters = 0;
+		private long version = 0;
+	}
+
+	private final long maxWaitMs;
+	private final long pollIntervalMs;
+	private final int maxWaiters;
+	private final AtomicInteger waiters = new AtomicInteger();
+	private final Map<String, JobMonitor> monitors = new HashMap<>();
+
+	/** Create the notifier.
+	 * @param maxWaitMs the maximum time any call may wait.
+	 * @param pollIntervalMs how often the line count is re-read while waiting.
+	 * @param maxWaiters the maximum number of calls that may wait at once. Calls over this
+	 * limit return immediately.
+	 */
+	public LogTailNotifier(final long maxWaitMs, final long pollIntervalMs, final int maxWaiters) {
+		if (pollIntervalMs < 1) {
+			throw new IllegalArgumentException("Poll interval must be positive");
+		}
+		this.maxWaitMs = maxWaitMs;
+		this.pollIntervalMs = pollIntervalMs;
+		this.maxWaiters = maxWaiters;
+	}
+
+	/** Wake any calls waiting for lines in a job log.
+	 * @param ujsJobId the job ID.
+	 */
+	public void notifyLines(final String ujsJobId) {
+		final JobMonitor m;
+		synchronized (monitors) {
+			m = monitors.get(ujsJobId);
+		}
+		if (m != null) {
+			synchronized (m) {
+				m.version++;
+				m.notifyAll();
+			}
+		}
+	}
+
+	/** Wait until a job log has more than a given number of lines or the wait time runs out.
+	 * @param ujsJobId the job ID.
+	 * @param skipLines the number of lines the caller already has.
+	 * @param waitMs how long to wait. Capped at the notifier's maximum wait time.
+	 * @param counter reads the line count from the database.
+	 * @return the last line count read.
+	 * @throws Exception if the line count couldn't be read.
+	 */
+	public int awaitLines(
+			final String ujsJobId,
+			final int skipLines,
+			final long waitMs,
+			final LineCounter counter)
+			throws Exception {
+		final long deadline = System.currentTimeMillis() + Math.min(waitMs, maxWaitMs);
+		if (waiters.incrementAndGet() > maxWaiters) {
+			waiters.decrementAndGet();
+			return counter.getLineCount();
+		}
+		final JobMonitor m;
+		synchronized (monitors) {
+			m = monitors.computeIfAbsent(ujsJobId, k -> new JobMonitor());
+			m.waiters++;
+		}
+		try {
+			while (true) {
+				final long version;
+				synchronized (m) {
+					version = m.version;
+				}
+				final int count = counter.getLineCount();
+				final long remaining = deadline - System.currentTimeMillis();
+				if (count > skipLines || remaining <= 0) {
+					return count;
+				}
+				synchronized (m) {
+					if (m.version == version) {
+						m.wait(Math.min(remaining, pollIntervalMs));
+					}
+				}
+			}
+		} finally {
+			synchronized (monitors) {
+				if (--m.waiters == 0) {
+					monitors.remove(ujsJobId);
+				}
+			}
+			waiters.decrementAndGet();
+		}
+	}
+
+	/** Get the number of calls currently waiting for lines.
+	 * @return the number of waiting calls.
+	 */
+	public int getWaiterCount() {
+		return waiters.get();
+	}
+}
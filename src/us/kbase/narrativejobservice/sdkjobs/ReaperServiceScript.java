@@ -3,6 +3,7 @@ package us.kbase.narrativejobservice.sdkjobs;
 import com.mongodb.BulkWriteResult;
 import org.ini4j.Ini;
 import us.kbase.narrativejobservice.ReaperService;
+import us.kbase.narrativejobservice.db.ExecEngineMongoDb;
 
 import java.io.File;
 import java.nio.charset.Charset;
@@ -46,7 +47,13 @@ public class ReaperServiceScript {
         String dbName = config.get("NarrativeJobService", "ujs-mongodb-database");
         String user = config.get("NarrativeJobService", "ujs-mongodb-user");
         String pwd = config.get("NarrativeJobService", "ujs-mongodb-pwd");
-        return new ReaperService(user, pwd, host, dbName);
+        ReaperService rs = new ReaperService(user, pwd, host, dbName);
+        rs.setExecEngineDb(new ExecEngineMongoDb(
+                config.get("NarrativeJobService", "mongodb-host"),
+                config.get("NarrativeJobService", "mongodb-database"),
+                config.get("NarrativeJobService", "mongodb-user"),
+                config.get("NarrativeJobService", "mongodb-pwd")));
+        return rs;
     }
 
 
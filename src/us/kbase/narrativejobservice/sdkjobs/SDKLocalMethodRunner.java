@@ -271,20 +271,19 @@ public class SDKLocalMethodRunner {
                 jobSrvUrl, tempToken);
 
 
-        Thread logFlusher = null;
         Thread tokenExpiryChecker = null;
         Thread timedJobShutdown = null;
         Thread shutdownHook = null;
         Map<String, String> config = null;
 
 
-        final List<LogLine> logLines = new ArrayList<LogLine>();
+        final JobLogSender logSender = new JobLogSender(
+                lines -> jobSrvClient.addJobLogs(jobId, lines));
         final LineLogger log = new LineLogger() {
             @Override
             public void logNextLine(String line, boolean isError) {
-                addLogLine(jobSrvClient, jobId, logLines,
-                        new LogLine().withLine(line)
-                                .withIsError(isError ? 1L : 0L));
+                addLogLine(logSender, new LogLine().withLine(line)
+                        .withIsError(isError ? 1L : 0L));
             }
         };
         Server callbackServer = null;
@@ -296,7 +295,7 @@ public class SDKLocalMethodRunner {
                 } else {
                     log.logNextLine("Job was already done before", true);
                 }
-                flushLog(jobSrvClient, jobId, logLines);
+                logSender.flush();
                 return;
             }
             Tuple2<RunJobParams, Map<String, String>> jobInput = jobSrvClient.getJobParams(jobId);
@@ -319,6 +318,8 @@ public class SDKLocalMethodRunner {
                 log.logNextLine(msg, false);
             }
             File jobDir = getJobDir(jobInput.getE2(), jobId);
+            // lines that can't be sent while NJS is down go to disk rather than the heap
+            logSender.setSpool(new JobLogSpool(jobDir));
 
             if (!mountExists()) {
                 log.logNextLine("Cannot find mount point as defined in condor-submit-workdir", true);
@@ -388,9 +389,8 @@ public class SDKLocalMethodRunner {
                     .getAdditionalProperties().get(SDKMethodRunner.REQ_REL);
             final ModuleVersion mv;
             try {
-                mv = catClient.getModuleVersion(new SelectModuleVersion()
-                        .withModuleName(modMeth.getModule())
-                        .withVersion(imageVersion));
+                mv = SubsequentCallRunner.getCatalogCache().getModuleVersion(
+                        catClient, modMeth.getModule(), imageVersion);
             } catch (ServerException se) {
                 throw new IllegalArgumentException(String.format(
                         "Error looking up module %s with version %s: %s",
@@ -413,23 +413,7 @@ public class SDKLocalMethodRunner {
             } else {
                 log.logNextLine("Image name received from catalog: " + imageName, false);
             }
-            logFlusher = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    while (true) {
-                        try {
-                            Thread.sleep(1000);
-                        } catch (InterruptedException ex) {
-                            break;
-                        }
-                        flushLog(jobSrvClient, jobId, logLines);
-                        if (Thread.currentThread().isInterrupted())
-                            break;
-                    }
-                }
-            });
-            logFlusher.setDaemon(true);
-            logFlusher.start();
+            logSender.start();
             // Let's check if there are some volume mount rules or secure configuration parameters
             // set up for this module
             List<Bind> additionalBinds = null;
@@ -452,9 +436,9 @@ public class SDKLocalMethodRunner {
                 adminCatClient.setAllSSLCertificatesTrusted(true);
                 List<VolumeMountConfig> vmc = null;
                 try {
-                    vmc = adminCatClient.listVolumeMounts(new VolumeMountFilter().withModuleName(
-                            modMeth.getModule()).withClientGroup(clientGroup)
-                            .withFunctionName(modMeth.getMethod()));
+                    vmc = SubsequentCallRunner.getCatalogCache().listVolumeMounts(
+                            adminCatClient, modMeth.getModule(), modMeth.getMethod(),
+                            clientGroup);
                 } catch (Exception ex) {
                     log.logNextLine("Error requesing volume mounts from Catalog: " + ex.getMessage(), true);
                 }
@@ -529,7 +513,7 @@ public class SDKLocalMethodRunner {
                                 log.logNextLine("Job was registered as finished by another worker",
                                         true);
                             }
-                            flushLog(jobSrvClient, jobId, logLines);
+                            logSender.flush();
                             return true;
                         }
                     } catch (Exception ex) {
@@ -648,7 +632,7 @@ public class SDKLocalMethodRunner {
 
             if (cancellationChecker.isJobCanceled()) {
                 log.logNextLine("Job was canceled", false);
-                flushLog(jobSrvClient, jobId, logLines);
+                logSender.flush();
 
                 return;
             }
@@ -691,13 +675,13 @@ public class SDKLocalMethodRunner {
             } else {
                 log.logNextLine("Job is done", false);
             }
-            flushLog(jobSrvClient, jobId, logLines);
+            logSender.flush();
             // push results to execution engine
             jobSrvClient.finishJob(jobId, result);
         } catch (Exception ex) {
             ex.printStackTrace();
             try {
-                flushLog(jobSrvClient, jobId, logLines);
+                logSender.flush();
             } catch (Exception ignore) {
             }
             StringWriter sw = new StringWriter();
@@ -711,8 +695,8 @@ public class SDKLocalMethodRunner {
             }
             try {
                 log.logNextLine(err, true);
-                flushLog(jobSrvClient, jobId, logLines);
-                logFlusher.interrupt();
+                logSender.flush();
+                logSender.close();
             } catch (Exception ignore) {
             }
             try {
@@ -743,7 +727,7 @@ public class SDKLocalMethodRunner {
             tokenExpiryChecker.interrupt();
             timedJobShutdown.interrupt();
             Runtime.getRuntime().removeShutdownHook(shutdownHook);
-            logFlusher.interrupt();
+            logSender.close();
         }
 
     }
@@ -756,9 +740,8 @@ public class SDKLocalMethodRunner {
         return s != null && !s.isEmpty();
     }
 
-    private static synchronized void addLogLine(NarrativeJobServiceClient jobSrvClient,
-                                                String jobId, List<LogLine> logLines, LogLine line) {
-        logLines.add(line);
+    private static void addLogLine(JobLogSender logSender, LogLine line) {
+        logSender.add(line);
         if (line.getIsError() != null && line.getIsError() == 1L) {
             System.err.println(line.getLine());
         } else {
@@ -766,18 +749,6 @@ public class SDKLocalMethodRunner {
         }
     }
 
-    private static synchronized void flushLog(NarrativeJobServiceClient jobSrvClient,
-                                              String jobId, List<LogLine> logLines) {
-        if (logLines.isEmpty())
-            return;
-        try {
-            jobSrvClient.addJobLogs(jobId, logLines);
-            logLines.clear();
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
-    }
-
     public static String decamelize(final String s) {
         final Matcher m = Pattern.compile("([A-Z])").matcher(s.substring(1));
         return (s.substring(0, 1) + m.replaceAll("_$1")).toLowerCase();
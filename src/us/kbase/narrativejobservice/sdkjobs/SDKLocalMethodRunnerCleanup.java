@@ -24,8 +24,6 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -40,6 +38,10 @@ public class SDKLocalMethodRunnerCleanup {
     public static final String RELEASE = JobRunnerConstants.RELEASE;
     public static final Set<String> RELEASE_TAGS = JobRunnerConstants.RELEASE_TAGS;
     private static final long MAX_OUTPUT_SIZE = JobRunnerConstants.MAX_IO_BYTE_SIZE;
+    // the cleaner runs once per job, so unsent log lines are retried here rather than later
+    private static final int LOG_SEND_ATTEMPTS = 6;
+    private static final long LOG_SEND_FIRST_DELAY_MS = 1000;
+    private static final long LOG_SEND_MAX_DELAY_MS = 16000;
 
     public static final String JOB_CONFIG_FILE = JobRunnerConstants.JOB_CONFIG_FILE;
     public static final String CFG_PROP_EE_SERVER_VERSION =
@@ -117,15 +119,19 @@ public class SDKLocalMethodRunnerCleanup {
         File outputFile = new File(workDir, "output.json");
 
 
-        final List<LogLine> logLines = new ArrayList<LogLine>();
+        // send any lines the runner couldn't send before our own
+        final JobLogSender logSender = new JobLogSender(
+                lines -> jobSrvClient.addJobLogs(jobId, lines));
+        final JobLogSpool spool = new JobLogSpool(jobDir);
+        logSender.setSpool(spool);
         final LineLogger log = new LineLogger() {
             @Override
             public void logNextLine(String line, boolean isError) {
-                addLogLine(jobSrvClient, jobId, logLines,
-                        new LogLine().withLine(line)
-                                .withIsError(isError ? 1L : 0L));
+                addLogLine(logSender, new LogLine().withLine(line)
+                        .withIsError(isError ? 1L : 0L));
             }
         };
+        logSender.flush();
 
 
         JobState jobState = jobSrvClient.checkJob(jobId);
@@ -134,6 +140,9 @@ public class SDKLocalMethodRunnerCleanup {
             String msg = "Cleaning up " + jobDir.toPath().toString();
             log.logNextLine(msg, false);
             System.out.println(msg);
+            if (!closeLogSender(logSender)) {
+                keepSpool(spool);
+            }
             new DockerRunner(dockerURI).runAlpineCleaner(jobDir);
             FileUtils.forceDelete(jobDir);
             return;
@@ -158,29 +167,59 @@ public class SDKLocalMethodRunnerCleanup {
             log.logNextLine("Post Job Cleanup Detected Job Didn't Properly Finish", false);
             SDKLocalMethodRunner.finishJobPrematurely(error, jobId, log, dockerURI, jobSrvClient);
         }
-        flushLog(jobSrvClient, jobId, logLines);
+        closeLogSender(logSender);
 
     }
 
-    private static synchronized void addLogLine(NarrativeJobServiceClient jobSrvClient,
-                                                String jobId, List<LogLine> logLines, LogLine line) {
-        logLines.add(line);
-        if (line.getIsError() != null && line.getIsError() == 1L) {
-            System.err.println(line.getLine());
-        } else {
-            System.out.println(line.getLine());
+    /**
+     * Close the log sender, retrying with backoff while lines can't be sent.
+     *
+     * @param logSender the sender.
+     * @return true if all the lines were sent.
+     * @throws InterruptedException if interrupted while waiting to retry.
+     */
+    private static boolean closeLogSender(JobLogSender logSender) throws InterruptedException {
+        if (logSender.close()) {
+            return true;
         }
+        long delay = LOG_SEND_FIRST_DELAY_MS;
+        for (int i = 1; i < LOG_SEND_ATTEMPTS; i++) {
+            Thread.sleep(delay);
+            if (logSender.flush()) {
+                return true;
+            }
+            delay = Math.min(delay * 2, LOG_SEND_MAX_DELAY_MS);
+        }
+        return false;
     }
 
-    private static synchronized void flushLog(NarrativeJobServiceClient jobSrvClient,
-                                              String jobId, List<LogLine> logLines) {
-        if (logLines.isEmpty())
+    /**
+     * Copy the spool to the working directory, which the wrapper script copies to the log
+     * directory, so lines that couldn't be sent survive the removal of the job directory.
+     *
+     * @param spool the spool.
+     */
+    private static void keepSpool(JobLogSpool spool) {
+        final File file = spool.getFile();
+        if (!file.exists()) {
+            System.err.println("Some log lines couldn't be sent and were lost");
             return;
+        }
         try {
-            jobSrvClient.addJobLogs(jobId, logLines);
-            logLines.clear();
-        } catch (Exception ex) {
-            ex.printStackTrace();
+            FileUtils.copyFileToDirectory(file, new File("."));
+            System.err.println("Unsent log lines were kept in " +
+                    new File(file.getName()).getAbsolutePath());
+        } catch (IOException e) {
+            System.err.println("Unsent log lines in " + file + " were lost: " + e.getMessage());
+        }
+    }
+
+    private static void addLogLine(JobLogSender logSender, LogLine line) {
+        logSender.add(line);
+        if (line.getIsError() != null && line.getIsError() == 1L) {
+            System.err.println(line.getLine());
+        } else {
+            System.out.println(line.getLine());
         }
     }
 
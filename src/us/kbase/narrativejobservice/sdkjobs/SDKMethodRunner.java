@@ -7,10 +7,29 @@ import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.mongodb.WriteConcernException;
 
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
@@ -21,36 +40,49 @@ import us.kbase.auth.AuthToken;
 import us.kbase.auth.ConfigurableAuthService;
 import us.kbase.catalog.CatalogClient;
 import us.kbase.catalog.ClientGroupConfig;
-import us.kbase.catalog.ClientGroupFilter;
 import us.kbase.catalog.LogExecStatsParams;
 import us.kbase.catalog.ModuleVersion;
-import us.kbase.catalog.SelectModuleVersion;
+import us.kbase.common.executionengine.CatalogCache;
 import us.kbase.common.executionengine.JobRunnerConstants;
 import us.kbase.common.service.*;
-import us.kbase.common.utils.AweUtils;
-import us.kbase.common.utils.CondorUtils;
 import us.kbase.common.utils.CountingOutputStream;
 import us.kbase.narrativejobservice.CancelJobParams;
 import us.kbase.narrativejobservice.CheckJobCanceledResult;
 import us.kbase.narrativejobservice.CheckJobsParams;
 import us.kbase.narrativejobservice.CheckJobsResults;
+import us.kbase.narrativejobservice.CheckJobsSinceParams;
+import us.kbase.narrativejobservice.CheckJobsSinceResults;
+import us.kbase.narrativejobservice.GetJobTreeParams;
+import us.kbase.narrativejobservice.JobTree;
+import us.kbase.narrativejobservice.JobTreeNode;
+import us.kbase.narrativejobservice.ListWorkspaceJobsParams;
+import us.kbase.narrativejobservice.ListWorkspaceJobsResults;
 import us.kbase.narrativejobservice.FinishJobParams;
+import us.kbase.narrativejobservice.GetJobLogsParams;
 import us.kbase.narrativejobservice.GetJobLogsResults;
 import us.kbase.narrativejobservice.JobState;
 import us.kbase.narrativejobservice.JsonRpcError;
 import us.kbase.narrativejobservice.LogLine;
 import us.kbase.narrativejobservice.NarrativeJobServiceServer;
 import us.kbase.narrativejobservice.RunJobParams;
+import us.kbase.narrativejobservice.RunJobsParams;
+import us.kbase.narrativejobservice.RunJobsResults;
 import us.kbase.narrativejobservice.UpdateJobParams;
 import us.kbase.narrativejobservice.db.ExecEngineMongoDb;
 import us.kbase.narrativejobservice.db.ExecLog;
 import us.kbase.narrativejobservice.db.ExecLogLine;
+import us.kbase.narrativejobservice.db.ExecSubmission;
 import us.kbase.narrativejobservice.db.ExecTask;
+import us.kbase.narrativejobservice.db.ExecTaskEvent;
+import us.kbase.narrativejobservice.db.ExecTaskState;
+import us.kbase.narrativejobservice.db.ExecTaskView;
+import us.kbase.narrativejobservice.db.ExecUjsUpdate;
 import us.kbase.narrativejobservice.db.SanitizeMongoObject;
 import us.kbase.userandjobstate.*;
 import us.kbase.workspace.GetObjectInfoNewParams;
 import us.kbase.workspace.ObjectSpecification;
 import us.kbase.workspace.WorkspaceClient;
+import us.kbase.workspace.WorkspaceIdentity;
 
 public class SDKMethodRunner {
 
@@ -67,13 +99,37 @@ public class SDKMethodRunner {
 	public static final Set<String> RELEASE_TAGS =
 			JobRunnerConstants.RELEASE_TAGS;
 	public static final int MAX_LOG_LINE_LENGTH = 1000;
+	public static final int MAX_FILTERED_LOG_LINES = 10000;
+	public static final int MAX_LOG_MATCH_LENGTH = 1000;
+	public static final long MAX_LOG_MATCH_MS = 5000;
 	public static final String REQ_REL = "requested_release";
 	private static final int MAX_IO_BYTE_SIZE = JobRunnerConstants.MAX_IO_BYTE_SIZE;
+	private static final int MAX_WORKSPACE_JOBS_PAGE = 1000;
+	private static final int DEFAULT_LOG_TAIL_MAX_WAITERS = 5;
+	private static final int DEFAULT_JOB_STATUS_STREAM_MAX_SUBSCRIBERS = 5;
+	private static final int CHECK_JOBS_QUEUE_PER_THREAD = 50;
 
 	private static AuthToken cachedCatalogAdminAuth = null;
 	private static AuthToken cachedAweAdminAuth = null;
 
 	private static ExecEngineMongoDb db = null;
+	private static LogIngestionBuffer logBuffer = null;
+	// set by the server, tools and tests run without one
+	private static volatile ErrorLogger errorLogger = null;
+	private static JobAccessCache accessCache = null;
+	private static WorkspaceObjectCache wsObjectCache = null;
+	private static LogTailNotifier tailNotifier = null;
+	private static LogArchiver logArchiver = null;
+	private static ExecutorService checkJobsExecutor = null;
+	private static ExecutorService runJobsExecutor = null;
+	private static ExecutorService runJobExecutor = null;
+	private static FinishedJobStateCache finishedJobCache = null;
+	private static UjsStateUpdater ujsUpdater = null;
+	private static UjsUpdateSweeper ujsUpdateSweeper = null;
+	private static JobStateFeed jobStateFeed = null;
+	private static CatalogCache catalogCache = null;
+	private static JobSubmitter jobSubmitter = null;
+	private static Scheduler scheduler = null;
 
 	public static String requestClientGroups(Map<String, String> config, String srvMethod)
 			throws UnauthorizedException, IOException, AuthException, JsonClientException {
@@ -81,8 +137,8 @@ public class SDKMethodRunner {
 		String[] modMeth = srvMethod.split(Pattern.quote("."));
 		if (modMeth.length == 2) {
 			CatalogClient catCl = getCatalogClient(config, false);
-			List<ClientGroupConfig> ret = catCl.listClientGroupConfigs(
-					new ClientGroupFilter().withModuleName(modMeth[0]).withFunctionName(modMeth[1]));
+			List<ClientGroupConfig> ret = getCatalogCache(config).listClientGroupConfigs(
+					catCl, modMeth[0], modMeth[1]);
 			if (ret != null && ret.size() == 1) {
 				ClientGroupConfig cgc = ret.get(0);
 				List<String> groupList = cgc.getClientGroups();
@@ -98,12 +154,50 @@ public class SDKMethodRunner {
 		return aweClientGroups;
 	}
 
+	/** Start a job, looking up the client groups of its method in the catalog.
+	 * @param params the job.
+	 * @param authPart the user's token.
+	 * @param appJobId the ID of the app the job belongs to, or null.
+	 * @param config the server configuration.
+	 * @return the job ID.
+	 */
+	public static String runJob(RunJobParams params, AuthToken authPart,
+								String appJobId, Map<String, String> config) throws Exception {
+		return runJob(params, authPart, appJobId, config, null, true);
+	}
+
 	public static String runJob(RunJobParams params, AuthToken authPart,
 								String appJobId, Map<String, String> config, String aweClientGroups) throws Exception {
-		//perform sanity checks before creating job
-		checkWSObjects(authPart, config, params.getSourceWsObjects());
+		return runJob(params, authPart, appJobId, config, aweClientGroups, false);
+	}
+
+	private static String runJob(RunJobParams params, AuthToken authPart,
+								String appJobId, Map<String, String> config, String aweClientGroups,
+								boolean lookUpClientGroups) throws Exception {
+		final long start = System.currentTimeMillis();
+		//perform sanity checks before creating job. The checks are independent remote calls,
+		//so they run in parallel
+		final String method = params.getMethod();
+		final List<String> wsObjects = params.getSourceWsObjects();
+		final AtomicReference<String> clientGroups = new AtomicReference<String>(aweClientGroups);
+		final Map<String, Callable<Void>> stages = new LinkedHashMap<String, Callable<Void>>();
+		if (lookUpClientGroups) {
+			stages.put("client_groups", () -> {
+				clientGroups.set(requestClientGroups(config, method));
+				return null;
+			});
+		}
+		stages.put("ws_objects", () -> {
+			checkWSObjects(authPart, config, wsObjects);
+			return null;
+		});
 		//need to update the params before transforming to a Map
-		checkModuleAndUpdateRunJobParams(params, config);
+		stages.put("module_version", () -> {
+			checkModuleAndUpdateRunJobParams(params, config);
+			return null;
+		});
+		final Map<String, Long> timings = runStages(stages, config);
+		aweClientGroups = clientGroups.get();
 		@SuppressWarnings("unchecked") final Map<String, Object> jobInput =
 				UObject.transformObjectToObject(params, Map.class);
 		checkObjectLength(jobInput, MAX_IO_BYTE_SIZE, "Input", null);
@@ -118,67 +212,391 @@ public class SDKMethodRunner {
 			kbaseEndpoint = wsUrl.replace("/ws", "");
 		}
 		final UserAndJobStateClient ujsClient = getUjsClient(authPart, config);
-		final CreateJobParams cjp = new CreateJobParams()
-				.withMeta(params.getMeta());
-		if (params.getWsid() != null) {
-			cjp.withAuthstrat("kbaseworkspace")
-					.withAuthparam("" + params.getWsid());
-		}
-		String ujsJobId = ujsClient.createJob2(cjp);
-		// final String ujsJobId = ujsClient.createJob2(cjp);
+		final long ujsStart = System.currentTimeMillis();
+		String ujsJobId = createUjsJob(ujsClient, params, authPart, config);
+		timings.put("ujs_job", System.currentTimeMillis() - ujsStart);
+		timings.put("pre_submit", System.currentTimeMillis() - start);
 		String selfExternalUrl = config.get(NarrativeJobServiceServer.CFG_PROP_SELF_EXTERNAL_URL);
 		if (selfExternalUrl == null)
 			selfExternalUrl = kbaseEndpoint + "/njs_wrapper";
-		if (aweClientGroups == null || aweClientGroups.isEmpty())
-			aweClientGroups = config.get(NarrativeJobServiceServer.CFG_PROP_DEFAULT_AWE_CLIENT_GROUPS);
-		if (aweClientGroups == null || aweClientGroups.equals("*"))
-			aweClientGroups = "";
+		aweClientGroups = getAweClientGroups(aweClientGroups, config);
 
-		// Config switch to switch to calling new Condor Utils method submitToCondor
-		if (config.get(NarrativeJobServiceServer.CFG_PROP_CONDOR_MODE).equals("1")) {
+		final Scheduler jobScheduler = getScheduler(config);
+		if (!isAwe(config)) {
 			System.out.println("UJS JOB ID FOR SUBMITTED JOB IS:" + ujsJobId);
-			HashMap<String, String> optClassAds = new HashMap<String, String>();
-			String[] modNameFuncName = params.getMethod().split(Pattern.quote("."));
-			optClassAds.put("kb_parent_job_id", params.getParentJobId());
-			optClassAds.put("kb_module_name", modNameFuncName[0]);
-			optClassAds.put("kb_function_name", modNameFuncName[0]);
-			optClassAds.put("kb_app_id", params.getAppId());
-
-			if (params.getWsid() != null) {
-				optClassAds.put("kb_wsid", "" + params.getWsid());
-			}
+			HashMap<String, String> optClassAds = getCondorClassAds(params);
 
 			String baseDir = String.format("%s/%s", config.get(NarrativeJobServiceServer.CFG_PROP_CONDOR_JOB_DATA_DIR), authPart.getUserName());
 			String newExternalURL = config.get(NarrativeJobServiceServer.CFG_PROP_SELF_EXTERNAL_URL);
 			String parentJobId = params.getParentJobId();
-			String schedulerType = "condor";
+			String schedulerType = jobScheduler.getType();
 			try {
-				String condorId = CondorUtils.submitToCondorCLI(ujsJobId, authPart, aweClientGroups, newExternalURL, baseDir, optClassAds, getCatalogAdminAuth(config));
-				saveTask(ujsJobId, condorId, jobInput, appJobId, schedulerType, parentJobId, config);
+				final List<ExecTask> tasks = Arrays.asList(newExecTask(ujsJobId, null, jobInput,
+						appJobId, schedulerType, parentJobId));
+				tasks.get(0).setSubmitTimings(timings);
+				final List<ExecSubmission> submissions = Arrays.asList(newExecSubmission(
+						ujsJobId, params.getMethod(), authPart, aweClientGroups, optClassAds,
+						baseDir, newExternalURL));
+				if (jobSubmitter != null) {
+					queueJobs(tasks, submissions, config);
+				} else {
+					submitJobs(tasks, submissions, config);
+				}
 
 				//Start job in UJS to become available in ujs.list_jobs2(ws)
-				try {
-					ujsClient.startJob(ujsJobId, authPart.getToken(),
-							APP_STATE_QUEUED,
-							APP_STATE_QUEUED, new InitProgress().withPtype("none"),
-							null);
-				} catch (ServerException se) {
-					// ignore and continue if the job was just started
-				}
+				startUjsJobs(Arrays.asList(ujsJobId), authPart, config);
 
 			} catch (Exception e) {
-				throw new IllegalStateException("Couldn't submit condor job: " + e);
+				final String msg = "Couldn't submit " + schedulerType + " job: " + e;
+				failUjsJobs(Arrays.asList(ujsJobId), msg, e.toString(), authPart, config);
+				throw new IllegalStateException(msg);
 			}
 
 		} else {
-			String aweJobId = AweUtils.runTask(getAweServerURL(config), "ExecutionEngine", params.getMethod(), ujsJobId + " " + selfExternalUrl, NarrativeJobServiceServer.AWE_CLIENT_SCRIPT_NAME, authPart, aweClientGroups, getCatalogAdminAuth(config));
+			final long submitStart = System.currentTimeMillis();
+			String aweJobId = jobScheduler.submit(Arrays.asList(newExecSubmission(ujsJobId,
+					params.getMethod(), authPart, aweClientGroups, null, null,
+					selfExternalUrl))).get(0);
+			timings.put("submit", System.currentTimeMillis() - submitStart);
 			if (appJobId != null && appJobId.isEmpty()) appJobId = ujsJobId;
-			addAweTaskDescription(ujsJobId, aweJobId, jobInput, appJobId, config);
+			addAweTaskDescription(ujsJobId, aweJobId, jobInput, appJobId, timings, config);
 			//CALL THIS AND LOOK INSIDE OF THE DOCUMENT
 		}
 		return ujsJobId;
 	}
 
+	/** Start several jobs for a user at once. Unless jobs run with AWE, the workspace objects of
+	 * all the jobs are checked with one call, the UJS jobs are created concurrently and all the
+	 * jobs are submitted to the scheduler with a single call. A job that can't be started
+	 * doesn't keep the other jobs from starting.
+	 * @param params the jobs to start.
+	 * @param authPart the user's token.
+	 * @param config the server configuration.
+	 * @return the IDs of the started jobs and the errors of the other jobs, in order.
+	 */
+	public static RunJobsResults runJobs(
+			final RunJobsParams params,
+			final AuthToken authPart,
+			final Map<String, String> config) throws Exception {
+		final List<RunJobParams> jobs = params.getJobs() == null ?
+				Collections.<RunJobParams>emptyList() : params.getJobs();
+		final int maxJobs = getIntConfigParam(config,
+				NarrativeJobServiceServer.CFG_PROP_RUN_JOBS_MAX_JOBS, 1000);
+		if (jobs.size() > maxJobs) {
+			throw new IllegalArgumentException(String.format(
+					"At most %s jobs may be started at once", maxJobs));
+		}
+		final List<String> jobIds = new ArrayList<String>(
+				Collections.<String>nCopies(jobs.size(), null));
+		final List<String> errors = new ArrayList<String>(
+				Collections.<String>nCopies(jobs.size(), null));
+		final RunJobsResults ret = new RunJobsResults().withJobIds(jobIds).withErrors(errors);
+		if (isAwe(config)) {
+			// AWE has no bulk submission
+			for (int i = 0; i < jobs.size(); i++) {
+				try {
+					final RunJobParams job = checkRunJobsEntry(jobs.get(i));
+					jobIds.set(i, runJob(job, authPart, null, config));
+				} catch (Exception e) {
+					errors.set(i, getRunJobsError(e));
+				}
+			}
+			return ret;
+		}
+		// checking the objects of all the jobs at once is enough unless some are inaccessible,
+		// in which case each job's objects are checked to find the jobs that can't be started
+		final Set<String> wsObjects = new LinkedHashSet<String>();
+		for (final RunJobParams job : jobs) {
+			if (job != null && job.getSourceWsObjects() != null) {
+				wsObjects.addAll(job.getSourceWsObjects());
+			}
+		}
+		boolean wsObjectsChecked;
+		try {
+			checkWSObjects(authPart, config, new ArrayList<String>(wsObjects));
+			wsObjectsChecked = true;
+		} catch (IllegalArgumentException | ServerException e) {
+			wsObjectsChecked = false;
+		}
+		// module versions and client groups are cached, so jobs of the same method share
+		// the catalog lookups
+		final Map<Integer, Map<String, Object>> jobInputs =
+				new LinkedHashMap<Integer, Map<String, Object>>();
+		final Map<Integer, String> clientGroups = new HashMap<Integer, String>();
+		for (int i = 0; i < jobs.size(); i++) {
+			try {
+				final RunJobParams job = checkRunJobsEntry(jobs.get(i));
+				if (!wsObjectsChecked) {
+					checkWSObjects(authPart, config, job.getSourceWsObjects());
+				}
+				checkModuleAndUpdateRunJobParams(job, config);
+				@SuppressWarnings("unchecked") final Map<String, Object> jobInput =
+						UObject.transformObjectToObject(job, Map.class);
+				checkObjectLength(jobInput, MAX_IO_BYTE_SIZE, "Input", null);
+				clientGroups.put(i, getAweClientGroups(
+						requestClientGroups(config, job.getMethod()), config));
+				jobInputs.put(i, jobInput);
+			} catch (Exception e) {
+				errors.set(i, getRunJobsError(e));
+			}
+		}
+		// UJS can't create jobs in bulk, so they're created concurrently instead
+		final UserAndJobStateClient ujsClient = getUjsClient(authPart, config);
+		final ExecutorService executor = getRunJobsExecutor(config);
+		final Map<Integer, Future<String>> creates = new LinkedHashMap<Integer, Future<String>>();
+		for (final int i : jobInputs.keySet()) {
+			creates.put(i, executor.submit(
+					() -> createUjsJob(ujsClient, jobs.get(i), authPart, config)));
+		}
+		final List<Integer> created = new ArrayList<Integer>();
+		for (final int i : creates.keySet()) {
+			try {
+				jobIds.set(i, creates.get(i).get());
+				created.add(i);
+			} catch (ExecutionException e) {
+				errors.set(i, getRunJobsError(e.getCause()));
+			}
+		}
+		if (created.isEmpty()) {
+			return ret;
+		}
+		final List<String> ujsJobIds = new ArrayList<String>();
+		final List<String> groups = new ArrayList<String>();
+		final List<HashMap<String, String>> classAds = new ArrayList<HashMap<String, String>>();
+		for (final int i : created) {
+			ujsJobIds.add(jobIds.get(i));
+			groups.add(clientGroups.get(i));
+			classAds.add(getCondorClassAds(jobs.get(i)));
+		}
+		final String baseDir = String.format("%s/%s", config.get(
+				NarrativeJobServiceServer.CFG_PROP_CONDOR_JOB_DATA_DIR), authPart.getUserName());
+		final String externalUrl = config.get(NarrativeJobServiceServer.CFG_PROP_SELF_EXTERNAL_URL);
+		final String schedulerType = getScheduler(config).getType();
+		final List<ExecTask> tasks = new ArrayList<ExecTask>();
+		final List<ExecSubmission> submissions = new ArrayList<ExecSubmission>();
+		for (int k = 0; k < created.size(); k++) {
+			final RunJobParams job = jobs.get(created.get(k));
+			tasks.add(newExecTask(ujsJobIds.get(k), null, jobInputs.get(created.get(k)), null,
+					schedulerType, job.getParentJobId()));
+			submissions.add(newExecSubmission(ujsJobIds.get(k), job.getMethod(), authPart,
+					groups.get(k), classAds.get(k), baseDir, externalUrl));
+		}
+		try {
+			if (jobSubmitter != null) {
+				queueJobs(tasks, submissions, config);
+			} else {
+				submitJobs(tasks, submissions, config);
+			}
+		} catch (Exception e) {
+			final String msg = "Couldn't submit " + schedulerType + " job: " + e;
+			for (final int i : created) {
+				jobIds.set(i, null);
+				errors.set(i, msg);
+			}
+			failUjsJobs(ujsJobIds, msg, e.toString(), authPart, config);
+			return ret;
+		}
+		startUjsJobs(ujsJobIds, authPart, config);
+		return ret;
+	}
+
+	/** Run independent stages of starting a job in parallel. Fails as soon as a stage fails,
+	 * canceling the stages that are still running. A stage runs in the calling thread when
+	 * every thread of the executor is busy.
+	 * @return how long each stage took in milliseconds.
+	 */
+	private static Map<String, Long> runStages(
+			final Map<String, Callable<Void>> stages,
+			final Map<String, String> config) throws Exception {
+		final Map<String, Long> timings = new ConcurrentHashMap<String, Long>();
+		final CompletionService<Void> done =
+				new ExecutorCompletionService<Void>(getRunJobExecutor(config));
+		final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		try {
+			for (final Map.Entry<String, Callable<Void>> stage : stages.entrySet()) {
+				futures.add(done.submit(() -> {
+					final long start = System.currentTimeMillis();
+					stage.getValue().call();
+					timings.put(stage.getKey(), System.currentTimeMillis() - start);
+					return null;
+				}));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					done.take().get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+			}
+		} finally {
+			for (final Future<Void> f : futures) {
+				f.cancel(true);
+			}
+		}
+		return timings;
+	}
+
+	private static RunJobParams checkRunJobsEntry(final RunJobParams job) {
+		if (job == null || job.getMethod() == null) {
+			throw new IllegalArgumentException("No method provided");
+		}
+		return job;
+	}
+
+	private static String getRunJobsError(final Throwable e) {
+		return e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+	}
+
+	private static String createUjsJob(
+			final UserAndJobStateClient ujsClient,
+			final RunJobParams params,
+			final AuthToken authPart,
+			final Map<String, String> config) throws Exception {
+		final CreateJobParams cjp = new CreateJobParams()
+				.withMeta(params.getMeta());
+		if (params.getWsid() != null) {
+			cjp.withAuthstrat("kbaseworkspace")
+					.withAuthparam("" + params.getWsid());
+		}
+		final String ujsJobId = ujsClient.createJob2(cjp);
+		getAccessCache(config).grant(authPart.getUserName(), ujsJobId);
+		return ujsJobId;
+	}
+
+	private static String getAweClientGroups(
+			String aweClientGroups,
+			final Map<String, String> config) {
+		if (aweClientGroups == null || aweClientGroups.isEmpty())
+			aweClientGroups = config.get(NarrativeJobServiceServer.CFG_PROP_DEFAULT_AWE_CLIENT_GROUPS);
+		if (aweClientGroups == null || aweClientGroups.equals("*"))
+			aweClientGroups = "";
+		return aweClientGroups;
+	}
+
+	private static HashMap<String, String> getCondorClassAds(final RunJobParams params) {
+		HashMap<String, String> optClassAds = new HashMap<String, String>();
+		String[] modNameFuncName = params.getMethod().split(Pattern.quote("."));
+		optClassAds.put("kb_parent_job_id", params.getParentJobId());
+		optClassAds.put("kb_module_name", modNameFuncName[0]);
+		optClassAds.put("kb_function_name", modNameFuncName[0]);
+		optClassAds.put("kb_app_id", params.getAppId());
+
+		if (params.getWsid() != null) {
+			optClassAds.put("kb_wsid", "" + params.getWsid());
+		}
+		return optClassAds;
+	}
+
+	/** Start jobs in UJS in the background, so they show up in ujs.list_jobs2(ws). */
+	private static void startUjsJobs(
+			final List<String> ujsJobIds,
+			final AuthToken authPart,
+			final Map<String, String> config) {
+		final List<ExecUjsUpdate> updates = new ArrayList<ExecUjsUpdate>();
+		for (final String ujsJobId : ujsJobIds) {
+			updates.add(newUjsUpdate(ujsJobId, ExecUjsUpdate.STAGE_QUEUED, APP_STATE_QUEUED,
+					null, authPart, config));
+		}
+		try {
+			getDb(config).addExecTaskUjsUpdates(updates);
+		} catch (Exception e) {
+			// the jobs are queued, so still send the updates, they just aren't resent
+			getErrorLogger().logErr(e);
+		}
+		for (final ExecUjsUpdate u : updates) {
+			queueUjsUpdate(u, config);
+		}
+	}
+
+	/** Complete jobs in UJS with an error after their submission failed, so they don't stay
+	 * in the created state. The updates are only resent for jobs that have an exec task.
+	 */
+	private static void failUjsJobs(
+			final List<String> ujsJobIds,
+			final String message,
+			final String error,
+			final AuthToken authPart,
+			final Map<String, String> config) {
+		final String status = message.length() > 200 ?
+				message.substring(0, 197) + "..." : message;
+		final List<ExecUjsUpdate> updates = new ArrayList<ExecUjsUpdate>();
+		for (final String ujsJobId : ujsJobIds) {
+			updates.add(newUjsUpdate(ujsJobId, ExecUjsUpdate.STAGE_COMPLETED, status, error,
+					authPart, config));
+		}
+		try {
+			getDb(config).addExecTaskUjsUpdates(updates);
+		} catch (Exception e) {
+			getErrorLogger().logErr(e);
+		}
+		for (final ExecUjsUpdate u : updates) {
+			queueUjsUpdate(u, config);
+		}
+	}
+
+	/** Make an update of a job in UJS. The update is sent in the background, and is left to the
+	 * UJS update sweeper if it isn't sent before the sweep interval passes.
+	 */
+	private static ExecUjsUpdate newUjsUpdate(
+			final String ujsJobId,
+			final String stage,
+			final String status,
+			final String error,
+			final AuthToken auth,
+			final Map<String, String> config) {
+		final ExecUjsUpdate u = new ExecUjsUpdate();
+		u.setId(UUID.randomUUID().toString());
+		u.setUjsJobId(ujsJobId);
+		u.setStage(stage);
+		u.setStatus(status);
+		u.setError(error);
+		u.setUser(auth.getUserName());
+		u.setToken(auth.getToken());
+		u.setAttempts(0);
+		u.setNextAttemptTime(System.currentTimeMillis() + getUjsUpdateSweepIntervalMs(config));
+		return u;
+	}
+
+	private static void queueUjsUpdate(final ExecUjsUpdate u, final Map<String, String> config) {
+		getUjsUpdater(config).submit(u.getUjsJobId(), () -> sendUjsUpdate(u, config));
+	}
+
+	/** Send an update to UJS and remove it from the exec task. An update UJS rejects is
+	 * removed too, since sending it again won't help.
+	 */
+	private static void sendUjsUpdate(final ExecUjsUpdate u, final Map<String, String> config)
+			throws Exception {
+		final String ujsJobId = u.getUjsJobId();
+		final AuthToken auth = new AuthToken(u.getToken(), u.getUser());
+		final UserAndJobStateClient ujsClient = getUjsClient(auth, config);
+		try {
+			if (ExecUjsUpdate.STAGE_QUEUED.equals(u.getStage())) {
+				try {
+					ujsClient.startJob(ujsJobId, auth.getToken(), u.getStatus(),
+							u.getStatus(), new InitProgress().withPtype("none"), null);
+				} catch (ServerException se) {
+					// ignore and continue if the job was just started
+				}
+			} else if (ExecUjsUpdate.STAGE_STARTED.equals(u.getStage())) {
+				startUjsJobIfCreated(ujsClient, ujsJobId, auth);
+				ujsClient.updateJob(ujsJobId, auth.getToken(), u.getStatus(), null);
+			} else if (ExecUjsUpdate.STAGE_CANCELED.equals(u.getStage())) {
+				ujsClient.cancelJob(ujsJobId, u.getStatus());
+			} else {
+				startUjsJobIfCreated(ujsClient, ujsJobId, auth);
+				ujsClient.completeJob(ujsJobId, auth.getToken(), u.getStatus(), u.getError(),
+						u.getError() == null ? new Results() : null);
+			}
+		} catch (ServerException se) {
+			getDb(config).removeExecTaskUjsUpdate(ujsJobId, u.getId());
+			throw se;
+		}
+		getDb(config).removeExecTaskUjsUpdate(ujsJobId, u.getId());
+	}
+
 	private static AuthToken getCatalogAdminAuth(Map<String, String> config)
 			throws IOException, AuthException {
 		if (cachedCatalogAdminAuth == null) {
@@ -227,9 +645,7 @@ public class SDKMethodRunner {
 		}
 		final ModuleVersion mv;
 		try {
-			mv = catClient.getModuleVersion(new SelectModuleVersion()
-					.withModuleName(moduleName)
-					.withVersion(servVer));
+			mv = getCatalogCache(config).getModuleVersion(catClient, moduleName, servVer);
 		} catch (ServerException se) {
 			throw new IllegalArgumentException(String.format(
 					"Error looking up module %s with version %s: %s",
@@ -240,14 +656,10 @@ public class SDKMethodRunner {
 				RELEASE_TAGS.contains(servVer) ? servVer : null);
 	}
 
-	private static void checkWSObjects(
+	private static WorkspaceClient getWorkspaceClient(
 			final AuthToken token,
-			final Map<String, String> config,
-			final List<String> objrefs)
-			throws UnauthorizedException, IOException, JsonClientException {
-		if (objrefs == null || objrefs.isEmpty()) {
-			return;
-		}
+			final Map<String, String> config)
+			throws UnauthorizedException, IOException {
 		final String wsUrlstr = config.get(
 				NarrativeJobServiceServer.CFG_PROP_WORKSPACE_SRV_URL);
 		if (wsUrlstr == null || wsUrlstr.isEmpty())
@@ -262,7 +674,33 @@ public class SDKMethodRunner {
 					NarrativeJobServiceServer.CFG_PROP_WORKSPACE_SRV_URL +
 					" is invalid: " + wsUrlstr);
 		}
-		final WorkspaceClient wscli = new WorkspaceClient(wsURL, token);
+		return new WorkspaceClient(wsURL, token);
+	}
+
+	private static void checkWSObjects(
+			final AuthToken token,
+			final Map<String, String> config,
+			final List<String> objrefs)
+			throws UnauthorizedException, IOException, JsonClientException {
+		if (objrefs == null || objrefs.isEmpty()) {
+			return;
+		}
+		final Set<String> inaccessible = getWsObjectCache(config).getInaccessible(
+				token.getUserName(), objrefs, refs -> lookupWSObjects(token, config, refs));
+		if (!inaccessible.isEmpty()) {
+			throw new IllegalArgumentException(String.format(
+					"The workspace objects %s either don't exist or were " +
+							"inaccessible to the user %s.",
+					inaccessible, token.getUserName()));
+		}
+	}
+
+	private static List<Boolean> lookupWSObjects(
+			final AuthToken token,
+			final Map<String, String> config,
+			final List<String> objrefs)
+			throws UnauthorizedException, IOException, JsonClientException {
+		final WorkspaceClient wscli = getWorkspaceClient(token, config);
 		final List<ObjectSpecification> ois =
 				new LinkedList<ObjectSpecification>();
 		for (final String obj : objrefs) {
@@ -283,24 +721,17 @@ public class SDKMethodRunner {
 				throw se;
 			}
 		}
-		final Set<String> inaccessible = new LinkedHashSet<String>();
-		for (int i = 0; i < objinfo.size(); i++) {
-			if (objinfo.get(i) == null) {
-				inaccessible.add(objrefs.get(i));
-			}
-		}
-		if (!inaccessible.isEmpty()) {
-			throw new IllegalArgumentException(String.format(
-					"The workspace objects %s either don't exist or were " +
-							"inaccessible to the user %s.",
-					inaccessible, token.getUserName()));
+		final List<Boolean> ret = new ArrayList<Boolean>();
+		for (final Tuple11<Long, String, String, String, Long, String, Long,
+				String, String, Long, Map<String, String>> info : objinfo) {
+			ret.add(info != null);
 		}
+		return ret;
 	}
 
 	public static RunJobParams getJobInputParams(String ujsJobId, AuthToken auth,
 												 Map<String, String> config, Map<String, String> resultConfig) throws Exception {
-		UserAndJobStateClient ujsClient = getUjsClient(auth, config);
-		ujsClient.getJobStatus(ujsJobId);
+		checkJobAccess(ujsJobId, auth, config);
 		final RunJobParams input = getJobInput(ujsJobId, config);
 		if (resultConfig != null) {
 			String[] propsToSend = {
@@ -365,15 +796,27 @@ public class SDKMethodRunner {
 		String ujsJobId = params.getJobId();
 		UserAndJobStateClient ujsClient = getUjsClient(auth, config);
 		String jobOwner = ujsClient.getJobOwner(ujsJobId);
+		getAccessCache(config).grant(jobOwner, ujsJobId);
 		if (auth == null || !jobOwner.equals(auth.getUserName()))
 			throw new IllegalStateException("Only owner of the job can update it");
-		Tuple7<String, String, String, Long, String, Long, Long> jobStatus =
-				ujsClient.getJobStatus(ujsJobId);
 		if (params.getIsStarted() == null || params.getIsStarted() != 1L)
 			throw new IllegalStateException("Method is currently supported only for " +
 					"switching jobs into stated state");
 		List<String> ret = new ArrayList<String>();
         final RunJobParams input = getJobInput(ujsJobId, config);
+        if (getTaskState(ujsJobId, config) != null) {
+            final ExecUjsUpdate ujsUpdate = newUjsUpdate(ujsJobId,
+                    ExecUjsUpdate.STAGE_STARTED, "in-progress", null, auth, config);
+            if (getDb(config).setExecTaskState(ujsJobId, EnumSet.of(ExecTaskState.QUEUED),
+                    ExecTaskState.STARTED, APP_STATE_STARTED, null, ujsUpdate)) {
+                updateTaskExecTime(ujsJobId, config, false);
+                queueUjsUpdate(ujsUpdate, config);
+            }
+            return ret;
+        }
+        // the job was submitted before job states were kept in the exec tasks
+        Tuple7<String, String, String, Long, String, Long, Long> jobStatus =
+                ujsClient.getJobStatus(ujsJobId);
         final String jobstage = jobStatus.getE2();
         final String status = jobStatus.getE3();
         if ("started".equals(jobstage)) {
@@ -427,70 +870,102 @@ public class SDKMethodRunner {
 		if (params.getIsCanceled() == null && params.getIsCancelled() != null) {
 			params.setIsCanceled(params.getIsCancelled());
 		}
+		final boolean cancel = params.getIsCanceled() != null && params.getIsCanceled() == 1L;
 		final UserAndJobStateClient ujsClient = getUjsClient(auth, config);
-		final Tuple7<String, String, String, Long, String, Long,
-				Long> jobStatus = ujsClient.getJobStatus(ujsJobId);
-
-		if (jobStatus.getE6() != null && jobStatus.getE6() == 1L) {
-			// Job was already done
-			final List<LogLine> lines = new ArrayList<LogLine>();
-			lines.add(new LogLine().withLine(
-					"Attempt to finish already completed job")
-					.withIsError(1L));
-			addJobLogs(ujsJobId, lines, auth, config);
+		// check the user may finish the job before touching its state or log
+		final String jobOwner = ujsClient.getJobOwner(ujsJobId);
+		getAccessCache(config).grant(jobOwner, ujsJobId);
+		if (auth == null || !jobOwner.equals(auth.getUserName())) {
+			if (!cancel) {
+				throw new IllegalStateException(
+						"Only the owner of a job can complete it");
+			}
+			checkCanCancel(ujsJobId, auth, config);
+		}
+		final ExecTaskState state = getTaskState(ujsJobId, config);
+		final boolean finished;
+		if (state != null) {
+			finished = state.isFinished();
+		} else {
+			// the job was submitted before job states were kept in the exec tasks
+			final Tuple7<String, String, String, Long, String, Long,
+					Long> jobStatus = ujsClient.getJobStatus(ujsJobId);
+			finished = jobStatus.getE6() != null && jobStatus.getE6() == 1L;
+		}
+		if (finished) {
+			logAlreadyFinished(ujsJobId, auth, config);
 			return;
 		}
+		// make the whole log readable before the job is seen as complete
+		final LogIngestionBuffer buffer = getLogBuffer(config);
+		if (buffer != null) {
+			buffer.flush(ujsJobId);
+		}
+		final ErrorLogger errLog = log == null ? getErrorLogger() : log;
+		try {
+			getDb(config).packExecLogChunks(ujsJobId);
+		} catch (Exception ex) {
+			// the log is still readable unpacked
+			errLog.logErr(ex);
+		}
 		@SuppressWarnings("unchecked") final Map<String, Object> jobOutput =
 				UObject.transformObjectToObject(params, Map.class);
 		//should never trigger since the local method runner limits uploads to
 		//15k
 		checkObjectLength(jobOutput, MAX_IO_BYTE_SIZE, "Output", ujsJobId);
 		SanitizeMongoObject.sanitize(jobOutput);
+		final Map<String, Object> finishFields = new HashMap<String, Object>();
+		finishFields.put("job_output", jobOutput);
+		finishFields.put("finish_time", System.currentTimeMillis());
 		// Updating UJS job state
-		if (params.getIsCanceled() != null &&
-				params.getIsCanceled() == 1L) {
-			// will throw an error here if user doesn't have rights to cancel
-			ujsClient.cancelJob(ujsJobId, "canceled by user");
-			getDb(config).addExecTaskResult(ujsJobId, jobOutput);
-
+		if (cancel) {
+			// UJS is canceled through the pending update, which replaces any older update, so
+			// UJS is only canceled if the task is
+			final ExecUjsUpdate ujsUpdate = newUjsUpdate(ujsJobId,
+					ExecUjsUpdate.STAGE_CANCELED, "canceled by user", null, auth, config);
+			if (!getDb(config).setExecTaskState(ujsJobId, ExecTaskState.UNFINISHED,
+					ExecTaskState.CANCELED, "canceled by user", finishFields, ujsUpdate)) {
+				// finished by another call in the meantime
+				logAlreadyFinished(ujsJobId, auth, config);
+				return;
+			}
 			try{
 				updateTaskExecTime(ujsJobId, config, true);
 			}
 			catch (NullPointerException e){
 			}
+			queueUjsUpdate(ujsUpdate, config);
 			return;
 		}
-		final String jobOwner = ujsClient.getJobOwner(ujsJobId);
-		if (auth == null || !jobOwner.equals(auth.getUserName())) {
-			throw new IllegalStateException(
-					"Only the owner of a job can complete it");
-		}
-		getDb(config).addExecTaskResult(ujsJobId, jobOutput);
-		updateTaskExecTime(ujsJobId, config, true);
-		if (jobStatus.getE2().equals("created")) {
-			// job hasn't started yet. Need to put it in started state to
-			// complete it
-			try {
-				ujsClient.startJob(ujsJobId, auth.getToken(),
-						"starting job so that it can be finished",
-						"as state", new InitProgress().withPtype("none"),
-						null);
-			} catch (ServerException se) {
-				// ignore and continue if the job was just started
-			}
+		final String status;
+		if (params.getError() != null) {
+			String msg = params.getError().getMessage();
+			if (msg == null)
+				msg = "Unknown error";
+			if (msg.length() > 200)
+				msg = msg.substring(0, 197) + "...";
+			status = msg;
+		} else {
+			status = "done";
 		}
+		final ExecUjsUpdate ujsUpdate;
 		if (params.getError() != null) {
-			String status = params.getError().getMessage();
-			if (status == null)
-				status = "Unknown error";
-			if (status.length() > 200)
-				status = status.substring(0, 197) + "...";
-			ujsClient.completeJob(ujsJobId, auth.getToken(), status,
-					params.getError().getError(), null);
+			final String error = params.getError().getError();
+			ujsUpdate = newUjsUpdate(ujsJobId, ExecUjsUpdate.STAGE_COMPLETED, status,
+					error == null ? status : error, auth, config);
 		} else {
-			ujsClient.completeJob(ujsJobId, auth.getToken(), "done", null,
-					new Results());
+			ujsUpdate = newUjsUpdate(ujsJobId, ExecUjsUpdate.STAGE_COMPLETED, "done", null,
+					auth, config);
+		}
+		if (!getDb(config).setExecTaskState(ujsJobId, ExecTaskState.UNFINISHED,
+				params.getError() != null ? ExecTaskState.ERROR : ExecTaskState.COMPLETED,
+				status, finishFields, ujsUpdate)) {
+			// finished by another call in the meantime
+			logAlreadyFinished(ujsJobId, auth, config);
+			return;
 		}
+		updateTaskExecTime(ujsJobId, config, true);
+		queueUjsUpdate(ujsUpdate, config);
 		// let's make a call to catalog sending execution stats
 		try {
 			final AppInfo info = getAppInfo(ujsJobId, config);
@@ -537,15 +1012,62 @@ public class SDKMethodRunner {
 						", " + funcModuleName + ", " + funcName + ", " + gitCommitHash + ", " +
 						creationTime + ", " + execStartTime + ", " + finishTime + ", " + isError +
 						"): " + errorMessage;
-				System.err.println(message);
-				if (log != null)
-					log.logErr(message);
+				errLog.logErr(message);
 			}
 		} catch (Exception ex) {
-			ex.printStackTrace();
-			if (log != null)
-				log.logErr(ex);
+			errLog.logErr(ex);
+		}
+	}
+
+	private static void startUjsJobIfCreated(
+			final UserAndJobStateClient ujsClient,
+			final String ujsJobId,
+			final AuthToken auth) throws Exception {
+		if (ujsClient.getJobStatus(ujsJobId).getE2().equals("created")) {
+			// job hasn't started yet. Need to put it in started state to
+			// complete it
+			try {
+				ujsClient.startJob(ujsJobId, auth.getToken(),
+						"starting job so that it can be finished",
+						"as state", new InitProgress().withPtype("none"),
+						null);
+			} catch (ServerException se) {
+				// ignore and continue if the job was just started
+			}
+		}
+	}
+
+	// mirrors UJS, which lets users who can write to the workspace of a job cancel it
+	private static void checkCanCancel(
+			final String ujsJobId,
+			final AuthToken auth,
+			final Map<String, String> config)
+			throws Exception {
+		final ExecTaskView view = auth == null ? null :
+				getDb(config).getExecTaskView(ujsJobId, false);
+		final Long wsid = view == null || view.getTask() == null ? null :
+				view.getTask().getWsid();
+		if (wsid != null) {
+			final String perm = getWorkspaceClient(auth, config).getWorkspaceInfo(
+					new WorkspaceIdentity().withId(wsid)).getE6();
+			if ("w".equals(perm) || "a".equals(perm)) {
+				return;
+			}
 		}
+		throw new IllegalStateException("Only the owner of a job or users who can write to " +
+				"its workspace can cancel it");
+	}
+
+	private static void logAlreadyFinished(
+			final String ujsJobId,
+			final AuthToken auth,
+			final Map<String, String> config)
+			throws Exception {
+		final List<LogLine> lines = new ArrayList<LogLine>();
+		lines.add(new LogLine().withLine(
+				"Attempt to finish already completed job")
+				.withIsError(1L));
+		addJobLogs(ujsJobId, lines, auth, config);
 	}
 
 	private static void sendExecStatsToCatalog(String userId, String uiModuleName,
@@ -563,79 +1085,159 @@ public class SDKMethodRunner {
 
 	public static int addJobLogs(String ujsJobId, List<LogLine> lines,
 								 AuthToken authPart, Map<String, String> config) throws Exception {
-		UserAndJobStateClient ujsClient = getUjsClient(authPart, config);
-		ujsClient.getJobStatus(ujsJobId);
-		ExecEngineMongoDb db = getDb(config);
-		ExecLog dbLog = db.getExecLog(ujsJobId);
-
-
-
-		if (dbLog == null) {
-			dbLog = new ExecLog();
-			dbLog.setUjsJobId(ujsJobId);
-			dbLog.setOriginalLineCount(0);
-			dbLog.setStoredLineCount(0);
-			dbLog.setLines(new ArrayList<ExecLogLine>());
-			db.insertExecLog(dbLog);
+		checkJobAccess(ujsJobId, authPart, config);
+		List<ExecLogLine> dbLines = new ArrayList<ExecLogLine>();
+		for (LogLine line : lines) {
+			String text = line.getLine();
+			if (text.length() > MAX_LOG_LINE_LENGTH)
+				text = text.substring(0, MAX_LOG_LINE_LENGTH - 3) + "...";
+			ExecLogLine dbLine = new ExecLogLine();
+			dbLine.setLine(text);
+			dbLine.setIsError((long) line.getIsError() == 1L);
+			dbLines.add(dbLine);
 		}
-		if (dbLog.getOriginalLineCount() > dbLog.getStoredLineCount()) {
-			// Error with out of space happened previously. So we just update line count.
-			db.updateExecLogOriginalLineCount(ujsJobId, dbLog.getOriginalLineCount() + lines.size());
-			return dbLog.getStoredLineCount();
-		}
-		int linePos = dbLog.getOriginalLineCount();
-		try {
-			int partSize = 1000;
-			int partCount = (lines.size() + partSize - 1) / partSize;
-			for (int i = 0; i < partCount; i++) {
-				int newLineCount = Math.min((i + 1) * partSize, lines.size());
-				List<ExecLogLine> dbLines = new ArrayList<ExecLogLine>();
-				for (int j = i * partSize; j < newLineCount; j++) {
-					LogLine line = lines.get(j);
-					String text = line.getLine();
-					if (text.length() > MAX_LOG_LINE_LENGTH)
-						text = text.substring(0, MAX_LOG_LINE_LENGTH - 3) + "...";
-					ExecLogLine dbLine = new ExecLogLine();
-					dbLine.setLinePos(linePos);
-					dbLine.setLine(text);
-					dbLine.setIsError((long) line.getIsError() == 1L);
-					dbLines.add(dbLine);
-					linePos++;
-				}
-				db.updateExecLogLines(ujsJobId, linePos, dbLines);
-			}
-			return linePos;
-		} catch (WriteConcernException ex) {
-			ex.getCode();
-			db.updateExecLogOriginalLineCount(ujsJobId, dbLog.getOriginalLineCount() + lines.size());
-			return dbLog.getStoredLineCount();
+		LogIngestionBuffer buffer = getLogBuffer(config);
+		if (buffer != null) {
+			Integer lineCount = buffer.add(ujsJobId, dbLines);
+			if (lineCount != null)
+				return lineCount;
 		}
+		int lineCount = getDb(config).appendExecLogLines(ujsJobId, dbLines);
+		getTailNotifier(config).notifyLines(ujsJobId);
+		return lineCount;
 	}
 
-	public static GetJobLogsResults getJobLogs(String ujsJobId, Long skipLines,
-											   AuthToken authPart, Set<String> admins, Map<String, String> config) throws Exception {
+	public static GetJobLogsResults getJobLogs(GetJobLogsParams params,
+			AuthToken authPart, Set<String> admins, Map<String, String> config) throws Exception {
+		final String ujsJobId = params.getJobId();
+		final Long skipLines = params.getSkipLines();
 		boolean isAdmin = admins != null && admins.contains(authPart.getUserName());
 		if (!isAdmin) {
 			// If it's not admin then let's check if there is permission in UJS
-			UserAndJobStateClient ujsClient = getUjsClient(authPart, config);
-			ujsClient.getJobStatus(ujsJobId);
+			checkJobAccess(ujsJobId, authPart, config);
+		}
+		final Predicate<ExecLogLine> filter = getLogLineFilter(params);
+		final ExecEngineMongoDb db = getDb(config);
+		if (params.getWaitMs() != null && params.getWaitMs() > 0) {
+			// tail mode, wait for lines past skip_lines
+			getTailNotifier(config).awaitLines(ujsJobId,
+					skipLines == null ? 0 : (int) (long) skipLines, params.getWaitMs(), () -> {
+						ExecLog log = db.getExecLog(ujsJobId);
+						return log == null ? 0 : log.getStoredLineCount();
+					});
 		}
-		ExecEngineMongoDb db = getDb(config);
 		ExecLog dbLog = db.getExecLog(ujsJobId);
-		List<LogLine> lines;
-		if (dbLog == null || (skipLines != null && dbLog.getStoredLineCount() <= skipLines)) {
-			lines = Collections.<LogLine>emptyList();
-		} else {
-			lines = new ArrayList<LogLine>();
-			int from = skipLines == null ? 0 : (int) (long) skipLines;
-			int count = dbLog.getStoredLineCount() - from;
-			for (ExecLogLine dbLine : db.getExecLogLines(ujsJobId, from, count)) {
-				lines.add(new LogLine().withLine(dbLine.getLine())
-						.withIsError(dbLine.getIsError() ? 1L : 0L));
-			}
+		final int from = skipLines == null ? 0 : (int) (long) skipLines;
+		if (from < 0) {
+			throw new IllegalArgumentException("skip_lines cannot be negative");
+		}
+		List<LogLine> lines = new ArrayList<LogLine>();
+		int next = from;
+		if (dbLog != null && dbLog.getStoredLineCount() > from) {
+			int to = dbLog.getStoredLineCount();
+			if (params.getToLine() != null) {
+				to = (int) Math.min(to, Math.max(from, params.getToLine()));
+			}
+			int limit = filter == null ? Integer.MAX_VALUE : MAX_FILTERED_LOG_LINES;
+			if (params.getLimit() != null) {
+				if (params.getLimit() < 1) {
+					throw new IllegalArgumentException("limit must be at least 1");
+				}
+				limit = (int) Math.min(limit, params.getLimit());
+			}
+			final List<ExecLogLine> dbLines = new ArrayList<>();
+			next = db.scanExecLogLines(ujsJobId, from, to, filter, limit, dbLines);
+			for (ExecLogLine dbLine : dbLines) {
+				final LogLine line = new LogLine().withLine(dbLine.getLine())
+						.withIsError(dbLine.getIsError() ? 1L : 0L);
+				if (filter != null) {
+					line.setLineNumber((long) dbLine.getLinePos());
+				}
+				lines.add(line);
+			}
+		}
+		return new GetJobLogsResults().withLines(lines).withLastLineNumber((long) next);
+	}
+
+	private static Predicate<ExecLogLine> getLogLineFilter(GetJobLogsParams params) {
+		Predicate<ExecLogLine> filter = null;
+		if (params.getErrorsOnly() != null && params.getErrorsOnly() != 0L) {
+			filter = l -> Boolean.TRUE.equals(l.getIsError());
+		}
+		final String match = params.getMatch();
+		if (match != null && !match.isEmpty()) {
+			final Predicate<ExecLogLine> matcher;
+			if (params.getMatchRegex() != null && params.getMatchRegex() != 0L) {
+				if (match.length() > MAX_LOG_MATCH_LENGTH) {
+					throw new IllegalArgumentException(
+							"match regex is longer than " + MAX_LOG_MATCH_LENGTH + " characters");
+				}
+				final Pattern p;
+				try {
+					p = Pattern.compile(match);
+				} catch (PatternSyntaxException e) {
+					throw new IllegalArgumentException("Invalid match regex: " +
+							e.getMessage(), e);
+				}
+				// a pathological regex can backtrack for a very long time, so the matching
+				// for the whole request is bounded by a deadline set when the scan starts
+				final long[] deadline = {0};
+				matcher = l -> {
+					if (l.getLine() == null) {
+						return false;
+					}
+					if (deadline[0] == 0) {
+						deadline[0] = System.currentTimeMillis() + MAX_LOG_MATCH_MS;
+					}
+					return p.matcher(new DeadlineCharSequence(l.getLine(), deadline[0])).find();
+				};
+			} else {
+				matcher = l -> l.getLine() != null && l.getLine().contains(match);
+			}
+			filter = filter == null ? matcher : filter.and(matcher);
+		}
+		return filter;
+	}
+
+	/* A CharSequence that fails reads once a deadline has passed, which stops a regex match
+	 * that backtracks too long.
+	 */
+	private static class DeadlineCharSequence implements CharSequence {
+
+		private final String s;
+		private final long deadline;
+		private int reads = 0;
+
+		private DeadlineCharSequence(final String s, final long deadline) {
+			this.s = s;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public char charAt(final int index) {
+			// checking the clock on every read would slow down normal matches
+			if (++reads % 1000 == 0 && System.currentTimeMillis() > deadline) {
+				throw new IllegalArgumentException(String.format(
+						"match regex took longer than %s ms, use a simpler regex",
+						MAX_LOG_MATCH_MS));
+			}
+			return s.charAt(index);
+		}
+
+		@Override
+		public int length() {
+			return s.length();
+		}
+
+		@Override
+		public CharSequence subSequence(final int start, final int end) {
+			return new DeadlineCharSequence(s.substring(start, end), deadline);
+		}
+
+		@Override
+		public String toString() {
+			return s;
 		}
-		return new GetJobLogsResults().withLines(lines)
-				.withLastLineNumber((long) lines.size() + (skipLines == null ? 0L : skipLines));
 	}
 
 	private static ConfigurableAuthService getAuth(Map<String, String> config)
@@ -692,6 +1294,13 @@ public class SDKMethodRunner {
 		if (jobId == null || jobId.trim().isEmpty()) {
 			throw new IllegalArgumentException("No job id supplied");
 		}
+		final ExecTaskState state = getTaskState(jobId, config);
+		if (state != null) {
+			checkJobAccess(jobId, authPart, config);
+			return new CheckJobCanceledResult().withJobId(jobId).withUjsUrl(ujsUrl)
+					.withFinished(state.isFinished() ? 1L : 0L)
+					.withCanceled(state == ExecTaskState.CANCELED ? 1L : 0L);
+		}
 		final UserAndJobStateClient ujsClient = getUjsClient(authPart, config);
 		final Tuple7<String, String, String, Long, String, Long, Long> jobStatus =
 				ujsClient.getJobStatus(jobId);
@@ -701,138 +1310,190 @@ public class SDKMethodRunner {
 				.withCanceled(APP_STATE_CANCELED.equals(jobStatus.getE2()) ? 1L : 0L);
 	}
 
-	public static String getJobState(String ujsJobId) throws Exception {
-		/**
-		 * Get job state from a condor status based on
-		 * http://pages.cs.wisc.edu/~adesmet/status.html
-		 * @param jobID ujsJobId to get job state for
-		 * @return Return an appropriate status constant based on condor status code
-		 */
-		String jobState = CondorUtils.getJobState(ujsJobId);
-		int retries = 10;
-		if (jobState == null) {
-			while (retries > 0 && jobState == null) {
-				retries--;
-				jobState = CondorUtils.getJobState(ujsJobId);
-			}
-		}
-		if (jobState == null) {
-			return "unavailable";
-		}
-		switch (jobState) {
-			case "0":
-				return APP_STATE_QUEUED; //Maybe need to return a new state here?
-			case "1":
-				return APP_STATE_QUEUED; //Maybe need to return a new state here?
-			case "2":
-				return APP_STATE_STARTED;
-			case "3":
-				return APP_STATE_CANCELED;
-			case "4":
-				return APP_STATE_DONE;
-			case "5":
-				return APP_STATE_QUEUED; //Maybe need to return a new state here?
-			default:
-				return APP_STATE_ERROR;
-		}
-	}
-
 	@SuppressWarnings("unchecked")
 	public static JobState checkJob(String jobId, AuthToken authPart,
 									Map<String, String> config) throws Exception {
-		if (config.get(NarrativeJobServiceServer.CFG_PROP_CONDOR_MODE).equals("1")) {
-			return checkJobCondor(jobId, authPart, config);
+		ExecTaskView view = getDb(config).getExecTaskView(jobId, false);
+		final ExecTask task = view == null ? null : view.getTask();
+		// another server may have changed the job since its state was cached
+		JobState cached = getFinishedJobCache(config).get(jobId,
+				task == null ? null : task.getStateVersion());
+		if (cached != null) {
+			checkJobAccess(jobId, authPart, config);
+			return cached;
+		}
+		if (getScheduler(config).isStateInTasks()) {
+			ExecTaskState state = task == null ? null :
+					ExecTaskState.fromValue(task.getLastJobState());
+			if (state == null) {
+				// the job was submitted before job states were kept in the exec tasks
+				return checkJobCondor(jobId, authPart, config);
+			}
+			checkJobAccess(jobId, authPart, config);
+			if (state.isFinished()) {
+				view = getDb(config).getExecTaskView(jobId, true);
+			}
+			return checkJobCondor(jobId, getTaskStatus(view.getTask()), view, config);
 		} else {
-			return checkJobAwe(jobId, authPart, config);
+			return checkJobInScheduler(jobId, authPart, config);
 		}
 	}
 
-	@SuppressWarnings("unchecked")
 	public static List<JobState> listStatusByWorkspace(String workspace, AuthToken authPart,
 													   Map<String, String> config) throws Exception {
+		// the tasks only record numeric workspace IDs, and tasks created before they recorded
+		// them are missing from the task listing until the 1.1 migration copies their IDs
+		if (workspace == null || !workspace.trim().matches("\\d+") ||
+				!getDb(config).isExecTaskWsidsCopied()) {
+			return listStatusByWorkspaceUjs(workspace, authPart, config);
+		}
+		List<JobState> js = new ArrayList<>();
+		ListWorkspaceJobsParams params = new ListWorkspaceJobsParams()
+				.withWorkspaceId(workspace).withLimit((long) MAX_WORKSPACE_JOBS_PAGE);
+		do {
+			ListWorkspaceJobsResults page = listWorkspaceJobs(params, authPart, config);
+			js.addAll(page.getJobStates());
+			params.setCursor(page.getNextCursor());
+		} while (params.getCursor() != null);
+		return js;
+	}
 
+	private static List<JobState> listStatusByWorkspaceUjs(String workspace, AuthToken authPart,
+			Map<String, String> config) throws Exception {
 		List<JobState> js = new ArrayList<>();
 		UserAndJobStateClient ujsClient = getUjsClient(authPart, config);
-
 		List<String> authParams = new ArrayList<>();
 		authParams.add(workspace);
-
 		for (Tuple13<String, Tuple2<String, String>, String, String, String,
 				Tuple3<String, String, String>, Tuple3<Long, Long, String>,
 				Long, Long, Tuple2<String, String>, Map<String, String>,
-				String, Results> j : ujsClient.listJobs2(new ListJobsParams().withAuthstrat("kbaseworkspace").withAuthparams(authParams))) {
-					Tuple7<String, String, String, Long, String, Long, Long> jobStatus = new Tuple7<String, String, String, Long, String, Long, Long>();
-					jobStatus.setE1(j.getE6().getE2());
-					jobStatus.setE2(j.getE4());
-					jobStatus.setE3(j.getE5());
-					jobStatus.setE4(j.getE7().getE1());
-					jobStatus.setE5(j.getE6().getE3());
-					jobStatus.setE6(j.getE8());
-					jobStatus.setE7(j.getE9());
-					JobState njsJobState = checkJobCondor(j.getE1(), jobStatus, authPart, config);
-					js.add(njsJobState);
+				String, Results> j : ujsClient.listJobs2(new ListJobsParams()
+						.withAuthstrat("kbaseworkspace").withAuthparams(authParams))) {
+			Tuple7<String, String, String, Long, String, Long, Long> jobStatus =
+					new Tuple7<String, String, String, Long, String, Long, Long>();
+			jobStatus.setE1(j.getE6().getE2());
+			jobStatus.setE2(j.getE4());
+			jobStatus.setE3(j.getE5());
+			jobStatus.setE4(j.getE7().getE1());
+			jobStatus.setE5(j.getE6().getE3());
+			jobStatus.setE6(j.getE8());
+			jobStatus.setE7(j.getE9());
+			js.add(checkJobCondor(j.getE1(), jobStatus, authPart, config));
 		}
 		return js;
 	}
 
+	/** List a page of the jobs in a workspace. The jobs are read from the exec tasks in one
+	 * query, so listing doesn't touch UJS other than for jobs started before job states were
+	 * kept in the tasks. The user must be able to read the workspace.
+	 */
+	public static ListWorkspaceJobsResults listWorkspaceJobs(ListWorkspaceJobsParams params,
+			AuthToken authPart, Map<String, String> config) throws Exception {
+		final long wsid;
+		try {
+			wsid = Long.parseLong(params.getWorkspaceId() == null ? "" :
+					params.getWorkspaceId().trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Illegal workspace ID: " +
+					params.getWorkspaceId());
+		}
+		final long limit = params.getLimit() == null ? 100 : params.getLimit();
+		if (limit < 1 || limit > MAX_WORKSPACE_JOBS_PAGE) {
+			throw new IllegalArgumentException("limit must be between 1 and " +
+					MAX_WORKSPACE_JOBS_PAGE);
+		}
+		List<ExecTaskState> states = null;
+		if (params.getStates() != null) {
+			states = new ArrayList<>();
+			for (String state : params.getStates()) {
+				if (state == null) {
+					throw new IllegalArgumentException("Job states can't be null");
+				}
+				// throws for unknown states
+				states.add(ExecTaskState.fromValue(state));
+			}
+		}
+		// throws if the user can't read the workspace
+		getWorkspaceClient(authPart, config).getWorkspaceInfo(
+				new WorkspaceIdentity().withId(wsid));
+		List<ExecTaskView> views = getDb(config).getExecTaskViewsByWorkspace(
+				wsid, states, params.getCursor(), (int) limit);
+		UserAndJobStateClient ujsClient = null;
+		List<JobState> js = new ArrayList<>();
+		for (ExecTaskView view : views) {
+			ExecTask task = view.getTask();
+			String jobId = task.getUjsJobId();
+			Tuple7<String, String, String, Long, String, Long, Long> jobStatus;
+			if (task.getLastJobState() != null) {
+				jobStatus = getTaskStatus(task);
+			} else {
+				if (ujsClient == null) {
+					ujsClient = getUjsClient(authPart, config);
+				}
+				jobStatus = ujsClient.getJobStatus(jobId);
+			}
+			js.add(checkJobCondor(jobId, jobStatus, view, config));
+		}
+		return new ListWorkspaceJobsResults().withJobStates(js).withNextCursor(
+				views.size() < limit ? null : views.get(views.size() - 1).getTask().getUjsJobId());
+	}
 
-
-
-	@SuppressWarnings("unchecked")
-	public static JobState checkJobAwe(String jobId, AuthToken authPart,
-									   Map<String, String> config) throws Exception {
+	/** Check a job whose state the job runner doesn't keep in its exec task. The state is read
+	 * from UJS, and the scheduler is asked about jobs UJS doesn't report as complete, in case
+	 * the job was killed or is gone.
+	 */
+	public static JobState checkJobInScheduler(String jobId, AuthToken authPart,
+											   Map<String, String> config) throws Exception {
 		String ujsUrl = config.get(NarrativeJobServiceServer.CFG_PROP_JOBSTATUS_SRV_URL);
 		JobState returnVal = new JobState().withJobId(jobId).withUjsUrl(ujsUrl);
-		String aweJobId = getAweTaskAweJobId(jobId, config);
-		returnVal.getAdditionalProperties().put("awe_job_id", aweJobId);
 		UserAndJobStateClient ujsClient = getUjsClient(authPart, config);
 		Tuple7<String, String, String, Long, String, Long, Long> jobStatus =
 				ujsClient.getJobStatus(jobId);
 		returnVal.setStatus(new UObject(jobStatus));
 		boolean complete = jobStatus.getE6() != null && jobStatus.getE6() == 1L;
+		// the UJS status is read first so the task is read once, with the output if the job
+		// is complete
+		ExecTask task = getTaskStatusView(jobId, complete, config);
+		String aweJobId = task.getAweJobId();
+		returnVal.getAdditionalProperties().put("awe_job_id", aweJobId);
 		FinishJobParams params = null;
 		if (complete) {
-			params = getJobOutput(jobId, authPart, config);
+			params = getJobOutput(task);
 		}
 		if (params == null) {
-			// We should consult AWE for case the job was killed or gone with no reason.
-			AuthToken aweAdminToken = getAweAdminAuth(config);
-			Map<String, Object> aweData = null;
-			String aweState = null;
-			String aweServerUrl = getAweServerURL(config);
+			final Scheduler jobScheduler = getScheduler(config);
+			final String schedName = jobScheduler.getType().toUpperCase();
+			Scheduler.JobStatus schedStatus;
 			try {
-				Map<String, Object> aweJob = AweUtils.getAweJobDescr(aweServerUrl, aweJobId,
-						aweAdminToken);
-				aweData = (Map<String, Object>) aweJob.get("data");
-				if (aweData != null) {
-					aweState = (String) aweData.get("state");
-				}
+				schedStatus = jobScheduler.getJobStatus(jobId, aweJobId);
 			} catch (Exception ex) {
-				throw new IllegalStateException("Error checking AWE job (id=" + aweJobId + ") " +
-						"for ujs-id=" + jobId + " (" + ex.getMessage() + ")", ex);
+				throw new IllegalStateException("Error checking " + schedName + " job (id=" +
+						aweJobId + ") for ujs-id=" + jobId + " (" + ex.getMessage() + ")", ex);
 			}
-			if (aweState == null) {
-				final String aweDataStr = new ObjectMapper().writeValueAsString(aweData);
-				throw new IllegalStateException("Error checking AWE job (id=" + aweJobId + ") " +
-						"for ujs-id=" + jobId + " - state is null. AWE returned:\n " + aweDataStr);
+			if (schedStatus == null) {
+				throw new IllegalStateException("Error checking " + schedName + " job (id=" +
+						aweJobId + ") for ujs-id=" + jobId + " - the job is unknown to " +
+						schedName);
 			}
-			if ((!aweState.equals("init")) && (!aweState.equals("queued")) &&
-					(!aweState.equals("in-progress"))) {
-				// Let's double-check, what if UJS job was marked as complete while we checked AWE?
+			final String aweState = schedStatus.getSchedulerState();
+			if (!schedStatus.isActive()) {
+				// Let's double-check, what if UJS job was marked as complete while we checked?
 				jobStatus = ujsClient.getJobStatus(jobId);
 				complete = jobStatus.getE6() != null && jobStatus.getE6() == 1L;
 				if (complete) { // Yes, we are switching to "complete" scenario
 					returnVal.setStatus(new UObject(jobStatus));
-					params = getJobOutput(jobId, authPart, config);
+					task = getTaskStatusView(jobId, true, config);
+					params = getJobOutput(task);
 				} else {
-					if (aweState.equals("suspend")) {
-						throw new IllegalStateException("FATAL error in AWE job (" + aweState +
-								" for id=" + aweJobId + ")" + (jobStatus.getE2().equals("created") ?
+					if (APP_STATE_ERROR.equals(schedStatus.getState())) {
+						throw new IllegalStateException("FATAL error in " + schedName + " job (" +
+								aweState + " for id=" + aweJobId + ")" +
+								(jobStatus.getE2().equals("created") ?
 								" whereas job script wasn't started at all" : ""));
 					}
 					throw new IllegalStateException(String.format(
-							"Unexpected AWE job state: %s. Job id: %s. Awe job id: %s.",
-							aweState, jobId, aweJobId));
+							"Unexpected %s job state: %s. Job id: %s. %s job id: %s.",
+							schedName, aweState, jobId, schedName, aweJobId));
 				}
 			}
 			if (!complete) {
@@ -843,14 +1504,7 @@ public class SDKMethodRunner {
 					returnVal.setJobState(APP_STATE_STARTED);
 				} else {
 					returnVal.setJobState(APP_STATE_QUEUED);
-					try {
-						Map<String, Object> aweResp = AweUtils.getAweJobPosition(aweServerUrl,
-								aweJobId, aweAdminToken);
-						Map<String, Object> posData = (Map<String, Object>) aweResp.get("data");
-						if (posData != null && posData.containsKey("position"))
-							returnVal.setPosition(UObject.transformObjectToObject(posData.get("position"), Long.class));
-					} catch (Exception ignore) {
-					}
+					returnVal.setPosition(schedStatus.getPosition());
 				}
 			}
 		}
@@ -871,14 +1525,14 @@ public class SDKMethodRunner {
 				returnVal.setJobState(APP_STATE_DONE);
 			}
 		}
-		Long[] execTimes = getTaskExecTimes(jobId, config);
-		if (execTimes != null) {
-			if (execTimes[0] != null)
-				returnVal.withCreationTime(execTimes[0]);
-			if (execTimes[1] != null)
-				returnVal.withExecStartTime(execTimes[1]);
-			if (execTimes[2] != null)
-				returnVal.withFinishTime(execTimes[2]);
+		if (task.getCreationTime() != null)
+			returnVal.withCreationTime(task.getCreationTime());
+		if (task.getExecStartTime() != null)
+			returnVal.withExecStartTime(task.getExecStartTime());
+		if (task.getFinishTime() != null)
+			returnVal.withFinishTime(task.getFinishTime());
+		if (complete) {
+			getFinishedJobCache(config).put(jobId, returnVal, task.getStateVersion());
 		}
 		return returnVal;
 	}
@@ -919,11 +1573,22 @@ public class SDKMethodRunner {
 	}
 
 
-	@SuppressWarnings("unchecked")
 	public static JobState checkJobCondor(String jobId,
 										  Tuple7<String, String, String, Long, String, Long, Long> jobStatus,
 										  AuthToken authPart,
 										  Map<String, String> config) throws Exception {
+		boolean complete = jobStatus.getE6() != null && jobStatus.getE6() == 1L;
+		return checkJobCondor(jobId, jobStatus, getDb(config).getExecTaskView(jobId, complete),
+				config);
+	}
+
+	private static JobState checkJobCondor(String jobId,
+										   Tuple7<String, String, String, Long, String, Long, Long> jobStatus,
+										   ExecTaskView view,
+										   Map<String, String> config) throws Exception {
+		ExecTask task = view == null ? null : view.getTask();
+		String[] subJobs = view == null ? new String[0] :
+				view.getSubJobIds().toArray(new String[view.getSubJobIds().size()]);
 		String ujsUrl = config.get(NarrativeJobServiceServer.CFG_PROP_JOBSTATUS_SRV_URL);
 		JobState returnVal = new JobState().withJobId(jobId).withUjsUrl(ujsUrl);
 
@@ -935,14 +1600,18 @@ public class SDKMethodRunner {
 //		(6) parameter "complete" of original type "boolean" (A boolean. 0 = false, other = true.),
 //		(7) parameter "error" of original type "boolean" (A boolean. 0 = false, other = true.)
 
-		String[] subJobs = getDb(config).getSubJobIds(jobId);
 		returnVal.getAdditionalProperties().put("sub_jobs", subJobs);
 
 
 		boolean complete = jobStatus.getE6() != null && jobStatus.getE6() == 1L;
 		FinishJobParams params = null;
 		if (complete) {
-			params = getJobOutput(jobId, authPart, config);
+			if (task == null)
+				throw new IllegalStateException("AWE task wasn't found in DB for jobid=" + jobId);
+			params = getJobOutput(task);
+			if (params == null) {
+				params = new FinishJobParams();
+			}
 
 			boolean isCanceled = params.getIsCanceled() == null ? false :
 					(params.getIsCanceled() == 1L);
@@ -994,14 +1663,17 @@ public class SDKMethodRunner {
 
 		returnVal.setStatus(new UObject(jobStatus));
 
-		Long[] execTimes = getTaskExecTimes(jobId, config);
-		if (execTimes != null) {
-			if (execTimes[0] != null)
-				returnVal.withCreationTime(execTimes[0]);
-			if (execTimes[1] != null)
-				returnVal.withExecStartTime(execTimes[1]);
-			if (execTimes[2] != null)
-				returnVal.withFinishTime(execTimes[2]);
+		if (task != null) {
+			if (task.getCreationTime() != null)
+				returnVal.withCreationTime(task.getCreationTime());
+			if (task.getExecStartTime() != null)
+				returnVal.withExecStartTime(task.getExecStartTime());
+			if (task.getFinishTime() != null)
+				returnVal.withFinishTime(task.getFinishTime());
+		}
+		if (complete) {
+			// canceled jobs that aren't complete yet may still change
+			getFinishedJobCache(config).put(jobId, returnVal, task.getStateVersion());
 		}
 		return returnVal;
 	}
@@ -1013,34 +1685,103 @@ public class SDKMethodRunner {
 	    if (params.getJobIds() == null) {
 	        throw new IllegalStateException("Input parameters should include 'job_ids' property");
 	    }
-	    boolean withJobParams = params.getWithJobParams() != null &&
+	    final boolean withJobParams = params.getWithJobParams() != null &&
 	            params.getWithJobParams() == 1L;
-	    Map<String, RunJobParams> jobParams = new LinkedHashMap<String, RunJobParams>();
+	    final Long timeoutMs = params.getTimeoutMs();
+	    if (timeoutMs != null && timeoutMs < 0) {
+	        throw new IllegalArgumentException("timeout_ms cannot be negative");
+	    }
+	    final long deadline = timeoutMs == null ? 0 :
+	            System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+	    final List<String> jobIds = new ArrayList<String>(
+	            new LinkedHashSet<String>(params.getJobIds()));
+	    // the views hold the state versions the cached states are checked against
+	    final Map<String, ExecTaskView> views = new HashMap<String, ExecTaskView>(
+	            getDb(config).getExecTaskViews(jobIds, withJobParams, false));
+	    final Map<String, JobState> cached = new HashMap<String, JobState>();
+	    for (final String jobId : jobIds) {
+	        final ExecTask task = views.containsKey(jobId) ? views.get(jobId).getTask() : null;
+	        final JobState state = getFinishedJobCache(config).get(jobId,
+	                task == null ? null : task.getStateVersion());
+	        if (state != null) {
+	            cached.put(jobId, state);
+	        }
+	    }
+	    // if the job runner keeps the job states in the exec tasks, all the job data but the UJS
+	    // status is fetched up front in bulk. Only finished jobs have output, so it is only read
+	    // for the finished jobs that weren't cached, and there's no need to wait for the UJS
+	    // status.
+	    final boolean stateInTasks = getScheduler(config).isStateInTasks();
+	    final List<String> toLoad = new ArrayList<String>();
+	    for (final String jobId : jobIds) {
+	        final ExecTask task = views.containsKey(jobId) ? views.get(jobId).getTask() : null;
+	        final ExecTaskState taskState = task == null ? null :
+	                ExecTaskState.fromValue(task.getLastJobState());
+	        if (stateInTasks && !cached.containsKey(jobId) && taskState != null &&
+	                taskState.isFinished()) {
+	            toLoad.add(jobId);
+	        }
+	    }
+	    if (!toLoad.isEmpty()) {
+	        views.putAll(getDb(config).getExecTaskViews(toLoad, withJobParams, true));
+	    }
+	    final ExecutorService executor = getCheckJobsExecutor(config);
+	    final Map<String, Future<Tuple2<JobState, RunJobParams>>> checks =
+	            new LinkedHashMap<String, Future<Tuple2<JobState, RunJobParams>>>();
 	    Map<String, JsonRpcError> checkError = new LinkedHashMap<String, JsonRpcError>();
+	    for (final String jobId : jobIds) {
+	        final Callable<Tuple2<JobState, RunJobParams>> check = () -> {
+	            JobState state = cached.get(jobId);
+	            final ExecTaskView view = views.get(jobId);
+	            final ExecTask task = view == null ? null : view.getTask();
+	            if (state != null) {
+	                checkJobAccess(jobId, auth, config);
+	            } else if (stateInTasks && task != null && task.getLastJobState() != null) {
+	                checkJobAccess(jobId, auth, config);
+	                state = checkJobCondor(jobId, getTaskStatus(task), view, config);
+	            } else if (stateInTasks) {
+	                state = checkJobCondor(jobId, getUjsClient(auth, config).getJobStatus(jobId),
+	                        view, config);
+	            } else {
+	                state = checkJob(jobId, auth, config);
+	            }
+	            RunJobParams input = null;
+	            if (withJobParams) {
+	                checkJobAccess(jobId, auth, config);
+	                input = task == null ? getJobInput(jobId, config) : getJobInput(task);
+	            }
+	            return new Tuple2<JobState, RunJobParams>().withE1(state).withE2(input);
+	        };
+	        try {
+	            checks.put(jobId, executor.submit(check));
+	        } catch (RejectedExecutionException ex) {
+	            // checking the job in this thread would hold the call past its timeout
+	            checkError.put(jobId, new JsonRpcError().withCode(-32603L)
+	                    .withName(ex.getClass().getSimpleName())
+	                    .withMessage("The server is too busy to check the job, please try " +
+	                            "again later"));
+	        }
+	    }
+	    Map<String, RunJobParams> jobParams = new LinkedHashMap<String, RunJobParams>();
 	    CheckJobsResults ret = new CheckJobsResults().withJobStates(
 	            new LinkedHashMap<String, JobState>()).withCheckError(checkError);
-	    for (String jobId : params.getJobIds()) {
+	    for (final String jobId : checks.keySet()) {
+	        final Future<Tuple2<JobState, RunJobParams>> check = checks.get(jobId);
 	        try {
-	            ret.getJobStates().put(jobId, checkJob(jobId, auth, config));
+	            final Tuple2<JobState, RunJobParams> res = timeoutMs == null ? check.get() :
+	                    check.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+	            ret.getJobStates().put(jobId, res.getE1());
 	            if (withJobParams) {
-	                jobParams.put(jobId, getJobInputParams(jobId, auth, config, null));
-	            }
-	        } catch (Exception ex) {
-	            JsonRpcError error = null;
-	            if (ex instanceof ServerException) {
-	                ServerException se = (ServerException)ex;
-	                error = new JsonRpcError().withCode((long)se.getCode()).withName(se.getName())
-	                        .withMessage(se.getMessage()).withError(se.getData());
-	            } else {
-	                StringWriter sw = new StringWriter();
-	                PrintWriter pw = new PrintWriter(sw);
-	                ex.printStackTrace(pw);
-	                pw.close();
-	                error = new JsonRpcError().withCode(-32603L)
-	                        .withName(ex.getClass().getSimpleName()).withMessage(ex.getMessage())
-	                        .withError(sw.toString());
+	                jobParams.put(jobId, res.getE2());
 	            }
-	            checkError.put(jobId, error);
+	        } catch (TimeoutException ex) {
+	            check.cancel(true);
+	            checkError.put(jobId, new JsonRpcError().withCode(-32603L)
+	                    .withName(ex.getClass().getSimpleName())
+	                    .withMessage("The job wasn't checked within the timeout of " +
+	                            timeoutMs + " ms"));
+	        } catch (ExecutionException ex) {
+	            checkError.put(jobId, toJsonRpcError(ex.getCause()));
 	        }
 	    }
 	    if (withJobParams) {
@@ -1049,13 +1790,156 @@ public class SDKMethodRunner {
 	    return ret;
 	}
 
+	public static CheckJobsSinceResults checkJobsSince(CheckJobsSinceParams params,
+	        AuthToken auth, Map<String, String> config) throws Exception {
+	    if (params.getJobVersions() == null) {
+	        throw new IllegalStateException(
+	                "Input parameters should include 'job_versions' property");
+	    }
+	    // versions are read before the states, so a returned state is never older than its
+	    // version. It may be newer, in which case the client sees that change again on its
+	    // next call, but never misses one. Job states that aren't kept in the exec tasks are
+	    // read from the scheduler, so the versions don't follow them
+	    final Map<String, Long> versions = getScheduler(config).isStateInTasks() ?
+	            getDb(config).getExecTaskStateVersions(params.getJobVersions().keySet()) :
+	            new HashMap<String, Long>();
+	    final List<String> changed = new ArrayList<String>();
+	    final List<String> unchanged = new ArrayList<String>();
+	    final Map<String, JsonRpcError> checkError = new LinkedHashMap<String, JsonRpcError>();
+	    for (final String jobId : params.getJobVersions().keySet()) {
+	        final Long version = versions.get(jobId);
+	        if (version == null || !version.equals(params.getJobVersions().get(jobId))) {
+	            changed.add(jobId);
+	            continue;
+	        }
+	        try {
+	            checkJobAccess(jobId, auth, config);
+	            unchanged.add(jobId);
+	        } catch (Exception ex) {
+	            checkError.put(jobId, toJsonRpcError(ex));
+	        }
+	    }
+	    final CheckJobsSinceResults ret = new CheckJobsSinceResults()
+	            .withJobStates(new LinkedHashMap<String, JobState>())
+	            .withCheckError(checkError)
+	            .withUnchanged(unchanged)
+	            .withStateVersions(new LinkedHashMap<String, Long>());
+	    if (!changed.isEmpty()) {
+	        final CheckJobsResults res = checkJobs(new CheckJobsParams().withJobIds(changed)
+	                .withWithJobParams(params.getWithJobParams())
+	                .withTimeoutMs(params.getTimeoutMs()), auth, config);
+	        ret.getJobStates().putAll(res.getJobStates());
+	        checkError.putAll(res.getCheckError());
+	        ret.setJobParams(res.getJobParams());
+	        for (final String jobId : res.getJobStates().keySet()) {
+	            if (versions.containsKey(jobId)) {
+	                ret.getStateVersions().put(jobId, versions.get(jobId));
+	            }
+	        }
+	    }
+	    return ret;
+	}
+
+	private static JsonRpcError toJsonRpcError(Throwable ex) {
+	    if (ex instanceof ServerException) {
+	        ServerException se = (ServerException)ex;
+	        return new JsonRpcError().withCode((long)se.getCode()).withName(se.getName())
+	                .withMessage(se.getMessage()).withError(se.getData());
+	    }
+	    StringWriter sw = new StringWriter();
+	    PrintWriter pw = new PrintWriter(sw);
+	    ex.printStackTrace(pw);
+	    pw.close();
+	    return new JsonRpcError().withCode(-32603L)
+	            .withName(ex.getClass().getSimpleName()).withMessage(ex.getMessage())
+	            .withError(sw.toString());
+	}
+
+	public static JobTree getJobTree(GetJobTreeParams params, AuthToken auth,
+	        Map<String, String> config) throws Exception {
+	    final String rootId = params.getJobId();
+	    if (rootId == null) {
+	        throw new IllegalArgumentException("Input parameters should include 'job_id' property");
+	    }
+	    final Long maxDepth = params.getMaxDepth();
+	    if (maxDepth != null && (maxDepth < 0 || maxDepth > Integer.MAX_VALUE)) {
+	        throw new IllegalArgumentException("Illegal max_depth: " + maxDepth);
+	    }
+	    // sub jobs are visible to anyone who can see the root job, as in check_job
+	    checkJobAccess(rootId, auth, config);
+	    final List<ExecTask> tasks = getDb(config).getExecTaskTree(
+	            rootId, maxDepth == null ? null : maxDepth.intValue());
+	    if (tasks.isEmpty()) {
+	        throw new IllegalArgumentException("There is no job with ID " + rootId);
+	    }
+	    final Map<String, JobTreeNode> nodes = new LinkedHashMap<String, JobTreeNode>();
+	    for (final ExecTask task : tasks) {
+	        final ExecTaskState state = ExecTaskState.fromValue(task.getLastJobState());
+	        nodes.put(task.getUjsJobId(), new JobTreeNode()
+	                .withJobId(task.getUjsJobId())
+	                .withParentJobId(rootId.equals(task.getUjsJobId()) ?
+	                        null : task.getParentJobId())
+	                .withJobState(state == null ? null : state.getValue())
+	                .withStatus(task.getLastJobStatus())
+	                .withFinished(state != null && state.isFinished() ? 1L : 0L)
+	                .withCreationTime(task.getCreationTime())
+	                .withExecStartTime(task.getExecStartTime())
+	                .withFinishTime(task.getFinishTime())
+	                .withSubJobIds(new ArrayList<String>())
+	                .withChildStates(new TreeMap<String, Long>())
+	                .withDescendantStates(new TreeMap<String, Long>()));
+	    }
+	    // walk the tree level by level from the root so the depths and order are stable
+	    final List<JobTreeNode> ordered = new ArrayList<JobTreeNode>();
+	    final Map<String, List<String>> children = new HashMap<String, List<String>>();
+	    for (final JobTreeNode node : nodes.values()) {
+	        if (node.getParentJobId() != null) {
+	            children.computeIfAbsent(node.getParentJobId(), k -> new ArrayList<String>())
+	                    .add(node.getJobId());
+	        }
+	    }
+	    final JobTreeNode root = nodes.get(rootId);
+	    root.setDepth(0L);
+	    ordered.add(root);
+	    for (int i = 0; i < ordered.size(); i++) {
+	        final JobTreeNode node = ordered.get(i);
+	        final List<String> subs = children.getOrDefault(node.getJobId(),
+	                Collections.<String>emptyList());
+	        Collections.sort(subs);
+	        for (final String subId : subs) {
+	            final JobTreeNode sub = nodes.get(subId);
+	            if (sub.getDepth() == null) {
+	                sub.setDepth(node.getDepth() + 1);
+	                node.getSubJobIds().add(subId);
+	                ordered.add(sub);
+	            }
+	        }
+	    }
+	    // deepest levels first, so each job's descendants are counted before the job itself
+	    for (int i = ordered.size() - 1; i > 0; i--) {
+	        final JobTreeNode node = ordered.get(i);
+	        final JobTreeNode parent = nodes.get(node.getParentJobId());
+	        final String state = node.getJobState() == null ? "unknown" : node.getJobState();
+	        parent.getChildStates().merge(state, 1L, Long::sum);
+	        parent.getDescendantStates().merge(state, 1L, Long::sum);
+	        for (final Map.Entry<String, Long> e : node.getDescendantStates().entrySet()) {
+	            parent.getDescendantStates().merge(e.getKey(), e.getValue(), Long::sum);
+	        }
+	    }
+	    return new JobTree().withRootJobId(rootId).withJobs(ordered);
+	}
+
 	public static void cancelJob(CancelJobParams params, AuthToken auth,
 	        Map<String, String> config) throws Exception {
 	    FinishJobParams finishParams = new FinishJobParams().withIsCanceled(1L);
 	    // Next line is here for backward compatibility:
 	    finishParams.setIsCancelled(1L);
 	    finishJob(params.getJobId(), finishParams, auth, null, config);
-	    CondorUtils.condorRemoveJobRangeAsync(params.getJobId());
+	    if (jobSubmitter != null) {
+	        // a job that hasn't been submitted yet never will be
+	        getDb(config).removeExecSubmission(params.getJobId());
+	    }
+	    getScheduler(config).cancel(Arrays.asList(params.getJobId()));
 	}
 
 	private static UserAndJobStateClient getUjsClient(AuthToken auth,
@@ -1114,16 +1998,804 @@ public class SDKMethodRunner {
 	}
 
 	public static ExecEngineMongoDb getDb(Map<String, String> config) throws Exception {
-		if (db == null)
+		if (db == null) {
 			db = NarrativeJobServiceServer.getMongoDb(config);
+			db.setExecTaskEventErrorHandler(e -> logLostJobStateEvents(e));
+		}
 		return db;
 	}
 
+	private static void logLostJobStateEvents(final Exception e) {
+		getErrorLogger().logErr("Job state events couldn't be written, followers of the " +
+				"job state event log must re-read the job states: " + e);
+	}
+
+	/** Set the logger the background threads report errors to.
+	 * @param log the logger.
+	 */
+	public static void setErrorLogger(final ErrorLogger log) {
+		errorLogger = log;
+	}
+
+	private static ErrorLogger getErrorLogger() {
+		final ErrorLogger log = errorLogger;
+		return log == null ? ErrorLogger.STDERR : log;
+	}
+
+	/** Get the job log write-behind buffer, or null if log buffering is disabled in the
+	 * configuration.
+	 */
+	private static synchronized LogIngestionBuffer getLogBuffer(Map<String, String> config)
+			throws Exception {
+		if (logBuffer == null && "true".equals(config.get(
+				NarrativeJobServiceServer.CFG_PROP_LOG_BUFFER_ENABLED))) {
+			logBuffer = new LogIngestionBuffer(getDb(config), getTailNotifier(config),
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_LOG_BUFFER_MAX_LINES, 200000),
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_LOG_BUFFER_FLUSH_LINES, 10000),
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_LOG_BUFFER_FLUSH_INTERVAL_MS, 500),
+					getErrorLogger());
+		}
+		return logBuffer;
+	}
+
+	private static synchronized JobAccessCache getAccessCache(Map<String, String> config) {
+		if (accessCache == null) {
+			accessCache = new JobAccessCache(
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_JOB_ACCESS_CACHE_SIZE, 10000),
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_JOB_ACCESS_CACHE_TTL_SEC, 300) * 1000L,
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_JOB_ACCESS_CACHE_NEGATIVE_TTL_SEC, 10)
+							* 1000L);
+		}
+		return accessCache;
+	}
+
+	private static synchronized WorkspaceObjectCache getWsObjectCache(
+			final Map<String, String> config) {
+		if (wsObjectCache == null) {
+			wsObjectCache = new WorkspaceObjectCache(
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_WS_OBJECT_CACHE_SIZE, 10000),
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_WS_OBJECT_CACHE_TTL_SEC, 60) * 1000L,
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_WS_OBJECT_CACHE_VERSIONED_TTL_SEC,
+							3600) * 1000L);
+		}
+		return wsObjectCache;
+	}
+
+	private static synchronized CatalogCache getCatalogCache(Map<String, String> config) {
+		if (catalogCache == null) {
+			catalogCache = new CatalogCache(
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_CATALOG_CACHE_SIZE, 10000),
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_CATALOG_CACHE_TAG_TTL_SEC, 60) * 1000L,
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_CATALOG_CACHE_CONFIG_TTL_SEC, 300)
+							* 1000L,
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_CATALOG_CACHE_MAX_STALE_SEC, 3600)
+							* 1000L,
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_CATALOG_CACHE_REFRESH_TIMEOUT_MS,
+							5000));
+		}
+		return catalogCache;
+	}
+
+	private static synchronized LogTailNotifier getTailNotifier(Map<String, String> config) {
+		if (tailNotifier == null) {
+			tailNotifier = new LogTailNotifier(
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_LOG_TAIL_MAX_WAIT_MS, 30000),
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_LOG_TAIL_POLL_INTERVAL_MS, 1000),
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_LOG_TAIL_MAX_WAITERS,
+							DEFAULT_LOG_TAIL_MAX_WAITERS));
+		}
+		return tailNotifier;
+	}
+
+	// a bounded queue, so a flood of large check_jobs calls fails the checks that don't fit
+	// rather than piling them up in memory or running them past the callers' timeouts
+	private static synchronized ExecutorService getCheckJobsExecutor(
+			Map<String, String> config) {
+		if (checkJobsExecutor == null) {
+			final AtomicInteger threadNum = new AtomicInteger();
+			final int threads = getIntConfigParam(config,
+					NarrativeJobServiceServer.CFG_PROP_CHECK_JOBS_THREADS, 20);
+			checkJobsExecutor = new ThreadPoolExecutor(threads, threads,
+					0, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+							threads * CHECK_JOBS_QUEUE_PER_THREAD),
+					r -> {
+						final Thread t = new Thread(r, "check-jobs-" + threadNum.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					},
+					new ThreadPoolExecutor.AbortPolicy());
+		}
+		return checkJobsExecutor;
+	}
+
+	// no queue, so a stage runs at once either in the pool or in the calling thread
+	private static synchronized ExecutorService getRunJobExecutor(
+			Map<String, String> config) {
+		if (runJobExecutor == null) {
+			final AtomicInteger threadNum = new AtomicInteger();
+			runJobExecutor = new ThreadPoolExecutor(0,
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_RUN_JOB_THREADS, 32),
+					60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+					r -> {
+						final Thread t = new Thread(r, "run-job-" + threadNum.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					},
+					new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		return runJobExecutor;
+	}
+
+	private static synchronized ExecutorService getRunJobsExecutor(
+			Map<String, String> config) {
+		if (runJobsExecutor == null) {
+			final AtomicInteger threadNum = new AtomicInteger();
+			runJobsExecutor = Executors.newFixedThreadPool(
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_RUN_JOBS_THREADS, 20),
+					r -> {
+						final Thread t = new Thread(r, "run-jobs-" + threadNum.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					});
+		}
+		return runJobsExecutor;
+	}
+
+	/** Check that the user can see a job in UJS, using the access cache where possible. */
+	private static void checkJobAccess(
+			final String ujsJobId,
+			final AuthToken auth,
+			final Map<String, String> config)
+			throws Exception {
+		getAccessCache(config).checkAccess(auth.getUserName(), ujsJobId,
+				() -> getUjsClient(auth, config).getJobStatus(ujsJobId));
+	}
+
+	private static synchronized FinishedJobStateCache getFinishedJobCache(
+			Map<String, String> config) {
+		if (finishedJobCache == null) {
+			finishedJobCache = new FinishedJobStateCache(
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_JOB_STATE_CACHE_HEAP_MB, 64)
+							* 1024L * 1024L,
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_JOB_STATE_CACHE_OFFHEAP_MB, 0)
+							* 1024L * 1024L,
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_JOB_STATE_CACHE_OFFHEAP_THRESHOLD_KB,
+							64) * 1024);
+		}
+		return finishedJobCache;
+	}
+
+	private static synchronized UjsStateUpdater getUjsUpdater(Map<String, String> config) {
+		if (ujsUpdater == null) {
+			ujsUpdater = new UjsStateUpdater(
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_UJS_UPDATE_THREADS, 4),
+					5, 1000, getErrorLogger());
+		}
+		return ujsUpdater;
+	}
+
+	private static synchronized JobStateFeed getJobStateFeed(Map<String, String> config)
+			throws Exception {
+		if (jobStateFeed == null) {
+			final ExecEngineMongoDb db = getDb(config);
+			final JobStateFeed feed = new JobStateFeed(
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_JOB_STATUS_STREAM_MAX_SUBSCRIBERS,
+							DEFAULT_JOB_STATUS_STREAM_MAX_SUBSCRIBERS),
+					1000, getErrorLogger());
+			db.setExecTaskEventListener(feed::publish);
+			db.setExecTaskEventErrorHandler(e -> {
+				logLostJobStateEvents(e);
+				feed.markEventsLost();
+			});
+			feed.startTailing(new JobStateFeed.EventLog() {
+
+				@Override
+				public String getLastEventId() {
+					return db.getLastExecTaskEventId();
+				}
+
+				@Override
+				public String tail(
+						final String afterId,
+						final Consumer<ExecTaskEvent> consumer,
+						final BooleanSupplier running) {
+					return db.tailExecTaskEvents(afterId, consumer, running);
+				}
+
+				@Override
+				public long getGapCount() {
+					return db.getExecTaskEventGapCount();
+				}
+			});
+			jobStateFeed = feed;
+		}
+		return jobStateFeed;
+	}
+
+	/** Subscribe to the state changes of jobs and/or the jobs in a workspace. The user must
+	 * be able to see each of the jobs. Events for workspace jobs must be filtered with
+	 * {@link #canSeeJobStateEvent(ExecTaskEvent, AuthToken, Map)}.
+	 * @param ujsJobIds the job IDs. May be empty.
+	 * @param wsid the workspace ID, or null.
+	 * @param auth the user's token.
+	 * @param config the server configuration.
+	 * @return the subscription, which must be passed to
+	 * {@link #unsubscribeJobStates(JobStateFeed.Subscription, Map)} when done.
+	 */
+	public static JobStateFeed.Subscription subscribeJobStates(
+			final Set<String> ujsJobIds,
+			final Long wsid,
+			final AuthToken auth,
+			final Map<String, String> config)
+			throws Exception {
+		for (final String jobId: ujsJobIds) {
+			checkJobAccess(jobId, auth, config);
+		}
+		return getJobStateFeed(config).subscribe(ujsJobIds, wsid);
+	}
+
+	/** Remove a job state subscription.
+	 * @param sub the subscription.
+	 * @param config the server configuration.
+	 */
+	public static void unsubscribeJobStates(
+			final JobStateFeed.Subscription sub,
+			final Map<String, String> config)
+			throws Exception {
+		getJobStateFeed(config).unsubscribe(sub);
+	}
+
+	/** Get the job state events recorded after an event for a subscription, so clients that
+	 * reconnect don't miss changes.
+	 * @param afterId the ID of the last event the client saw.
+	 * @param sub the subscription.
+	 * @param limit the maximum number of events to return.
+	 * @param config the server configuration.
+	 * @return the events, oldest first.
+	 */
+	public static List<ExecTaskEvent> getJobStateEvents(
+			final String afterId,
+			final JobStateFeed.Subscription sub,
+			final int limit,
+			final Map<String, String> config)
+			throws Exception {
+		return getDb(config).getExecTaskEvents(afterId, sub.getUjsJobIds(), sub.getWsid(), limit);
+	}
+
+	/** Check whether a user may see a job state event. Uses the job access cache, so repeated
+	 * checks of the same job are cheap.
+	 * @param event the event.
+	 * @param auth the user's token.
+	 * @param config the server configuration.
+	 * @return true if the user can see the job.
+	 */
+	public static boolean canSeeJobStateEvent(
+			final ExecTaskEvent event,
+			final AuthToken auth,
+			final Map<String, String> config) {
+		try {
+			checkJobAccess(event.getUjsJobId(), auth, config);
+			return true;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	/** Remove jobs from the finished job state cache. Must be called whenever the state of a
+	 * finished job is changed, e.g. when an admin purges jobs. Other servers notice the change
+	 * through the job's state version.
+	 * @param jobIds the IDs of the jobs.
+	 */
+	public static void invalidateFinishedJobStates(Collection<String> jobIds) {
+		final FinishedJobStateCache cache;
+		synchronized (SDKMethodRunner.class) {
+			cache = finishedJobCache;
+		}
+		if (cache != null) {
+			cache.invalidate(jobIds);
+		}
+	}
+
+	/** Get the hit and miss counts and size of the finished job state cache.
+	 * @param config the server configuration.
+	 * @return the cache statistics.
+	 */
+	public static Map<String, Long> getFinishedJobStateCacheStats(Map<String, String> config) {
+		return getFinishedJobCache(config).getStats();
+	}
+
+	/** Get the hit and miss counts of the job access cache.
+	 * @param config the server configuration.
+	 * @return the cache statistics.
+	 */
+	public static Map<String, Long> getJobAccessCacheStats(Map<String, String> config) {
+		return getAccessCache(config).getStats();
+	}
+
+	/** Get the hit and miss counts and check latencies of the workspace object cache.
+	 * @param config the server configuration.
+	 * @return the cache statistics.
+	 */
+	public static Map<String, Long> getWsObjectCacheStats(Map<String, String> config) {
+		return getWsObjectCache(config).getStats();
+	}
+
+	/** Get the hit, miss and stale hit counts of the catalog cache.
+	 * @param config the server configuration.
+	 * @return the cache statistics.
+	 */
+	public static Map<String, Long> getCatalogCacheStats(Map<String, String> config) {
+		return getCatalogCache(config).getStats();
+	}
+
+	/** Get the depth of the submission queue and the submission counts and latencies.
+	 * @return the submission statistics, or null if jobs are submitted synchronously.
+	 */
+	public static Map<String, Long> getJobSubmitterStats() {
+		final JobSubmitter submitter = jobSubmitter;
+		return submitter == null ? null : submitter.getStats();
+	}
+
+	/** Get the number of pending UJS updates and the numbers of updates the sweeper sent and
+	 * failed to send.
+	 * @return the update statistics, or null if the sweeper isn't running.
+	 */
+	public static Map<String, Long> getUjsUpdateStats() {
+		final UjsUpdateSweeper sweeper = ujsUpdateSweeper;
+		return sweeper == null ? null : sweeper.getStats();
+	}
+
+	private static int getIntConfigParam(
+			Map<String, String> config,
+			String param,
+			int defaultValue) {
+		String value = config.get(param);
+		if (value == null || value.trim().isEmpty())
+			return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalStateException("Parameter '" + param +
+					"' must be an integer: " + value);
+		}
+	}
+
+	/** Release resources held by the job runner, writing any buffered job log lines.
+	 * Called when the servlet is shut down.
+	 */
+	public static synchronized void shutdown() {
+		if (jobSubmitter != null) {
+			try {
+				jobSubmitter.close(10000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			jobSubmitter = null;
+		}
+		if (scheduler != null) {
+			scheduler.close();
+			scheduler = null;
+		}
+		if (logBuffer != null) {
+			logBuffer.close();
+			logBuffer = null;
+		}
+		if (logArchiver != null) {
+			logArchiver.close();
+			logArchiver = null;
+		}
+		if (checkJobsExecutor != null) {
+			checkJobsExecutor.shutdownNow();
+			checkJobsExecutor = null;
+		}
+		if (runJobsExecutor != null) {
+			runJobsExecutor.shutdownNow();
+			runJobsExecutor = null;
+		}
+		if (runJobExecutor != null) {
+			runJobExecutor.shutdownNow();
+			runJobExecutor = null;
+		}
+		if (ujsUpdateSweeper != null) {
+			ujsUpdateSweeper.close();
+			ujsUpdateSweeper = null;
+		}
+		if (ujsUpdater != null) {
+			try {
+				ujsUpdater.close(10000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			ujsUpdater = null;
+		}
+		if (jobStateFeed != null) {
+			try {
+				jobStateFeed.close(10000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			jobStateFeed = null;
+		}
+		if (finishedJobCache != null) {
+			// releases any off heap buffers
+			finishedJobCache.clear();
+			finishedJobCache = null;
+		}
+	}
+
+	/** Bring the database schema up to date in a background thread, unless migrations are
+	 * disabled in the configuration. If another server is already migrating, this server
+	 * leaves it to that server.
+	 * @param config the server configuration.
+	 * @param log the logger, which also receives the migration progress.
+	 */
+	public static void startDbMigration(final Map<String, String> config, final ErrorLogger log)
+			throws Exception {
+		if ("false".equals(config.get(NarrativeJobServiceServer.CFG_PROP_MONGO_MIGRATE))) {
+			return;
+		}
+		final ExecEngineMongoDb db = getDb(config);
+		if (db.getMigrator().getPendingMigrations().isEmpty()) {
+			return;
+		}
+		final Thread t = new Thread(() -> {
+			try {
+				db.getMigrator().migrate(log::logInfo);
+			} catch (Throwable e) {
+				log.logErr("Database migration failed, it will be retried on the next " +
+						"server start");
+				log.logErr(e);
+			}
+		}, "db-migration");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/** Check that the requests waiting for log lines or job state changes can't take up most
+	 * of the server's request threads, since each waiting request holds a thread.
+	 * @param config the server configuration.
+	 * @throws IllegalStateException if the waiters and subscribers could hold more than half
+	 * of the server threads.
+	 */
+	public static void checkRequestThreadLimits(Map<String, String> config) {
+		final int threads = getIntConfigParam(config,
+				NarrativeJobServiceServer.CFG_PROP_SERVER_THREADS, -1);
+		if (threads < 0) {
+			// the container decides
+			return;
+		}
+		final int waiters = getIntConfigParam(config,
+				NarrativeJobServiceServer.CFG_PROP_LOG_TAIL_MAX_WAITERS,
+				DEFAULT_LOG_TAIL_MAX_WAITERS);
+		final int subscribers = getIntConfigParam(config,
+				NarrativeJobServiceServer.CFG_PROP_JOB_STATUS_STREAM_MAX_SUBSCRIBERS,
+				DEFAULT_JOB_STATUS_STREAM_MAX_SUBSCRIBERS);
+		if (2 * (waiters + subscribers) > threads) {
+			throw new IllegalStateException(String.format(
+					"%s (%s) and %s (%s) together may hold more than half of the %s " +
+					"server threads (%s), leaving too few for other requests",
+					NarrativeJobServiceServer.CFG_PROP_LOG_TAIL_MAX_WAITERS, waiters,
+					NarrativeJobServiceServer.CFG_PROP_JOB_STATUS_STREAM_MAX_SUBSCRIBERS,
+					subscribers, NarrativeJobServiceServer.CFG_PROP_SERVER_THREADS, threads));
+		}
+	}
+
+	/** Start moving the logs of finished jobs to the log archive, if an archive directory is
+	 * configured.
+	 * @param config the server configuration.
+	 * @param log the error logger.
+	 */
+	public static synchronized void startLogArchiver(Map<String, String> config, ErrorLogger log)
+			throws Exception {
+		String archiveDir = config.get(NarrativeJobServiceServer.CFG_PROP_LOG_ARCHIVE_DIR);
+		if (logArchiver == null && archiveDir != null && !archiveDir.trim().isEmpty()) {
+			logArchiver = new LogArchiver(getDb(config),
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_LOG_ARCHIVE_DELAY_SEC, 86400) * 1000L,
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_LOG_ARCHIVE_INTERVAL_SEC, 600) * 1000L,
+					log);
+		}
+	}
+
+	/** Start sending the UJS updates that weren't sent when they were made.
+	 * @param config the server configuration.
+	 * @param log the error logger.
+	 */
+	public static synchronized void startUjsUpdateSweeper(
+			final Map<String, String> config,
+			final ErrorLogger log)
+			throws Exception {
+		if (ujsUpdateSweeper == null) {
+			ujsUpdateSweeper = new UjsUpdateSweeper(getDb(config),
+					u -> sendUjsUpdate(u, config), getUjsUpdateSweepIntervalMs(config),
+					getIntConfigParam(config,
+							NarrativeJobServiceServer.CFG_PROP_UJS_UPDATE_MAX_ATTEMPTS, 1440),
+					log);
+		}
+	}
+
+	private static long getUjsUpdateSweepIntervalMs(final Map<String, String> config) {
+		return getIntConfigParam(config,
+				NarrativeJobServiceServer.CFG_PROP_UJS_UPDATE_SWEEP_INTERVAL_SEC, 60) * 1000L;
+	}
+
+	/** Start submitting queued jobs in the background, unless the configuration disables
+	 * asynchronous submission or the server runs AWE jobs.
+	 * @param config the server configuration.
+	 * @param log the error logger.
+	 */
+	public static synchronized void startJobSubmitter(
+			final Map<String, String> config,
+			final ErrorLogger log)
+			throws Exception {
+		if (jobSubmitter != null || !isSubmitAsync(config) || isAwe(config)) {
+			return;
+		}
+		jobSubmitter = new JobSubmitter(getDb(config), getScheduler(config),
+				(submission, error) -> failSubmission(submission, error, config),
+				getIntConfigParam(config, NarrativeJobServiceServer.CFG_PROP_SUBMIT_THREADS, 2),
+				getIntConfigParam(config,
+						NarrativeJobServiceServer.CFG_PROP_SUBMIT_BATCH_SIZE, 100),
+				getIntConfigParam(config,
+						NarrativeJobServiceServer.CFG_PROP_SUBMIT_MAX_ATTEMPTS, 10),
+				getIntConfigParam(config,
+						NarrativeJobServiceServer.CFG_PROP_SUBMIT_RETRY_BASE_MS, 1000),
+				getIntConfigParam(config,
+						NarrativeJobServiceServer.CFG_PROP_SUBMIT_RETRY_MAX_MS, 60000),
+				getIntConfigParam(config,
+						NarrativeJobServiceServer.CFG_PROP_SUBMIT_LEASE_SEC, 600) * 1000L,
+				log);
+	}
+
+	private static boolean isSubmitAsync(final Map<String, String> config) {
+		return !"false".equals(config.get(NarrativeJobServiceServer.CFG_PROP_SUBMIT_ASYNC));
+	}
+
+	private static boolean isAwe(final Map<String, String> config) {
+		return AweScheduler.TYPE.equals(getSchedulerType(config));
+	}
+
+	private static String getSchedulerType(final Map<String, String> config) {
+		final String type = config.get(NarrativeJobServiceServer.CFG_PROP_SCHEDULER);
+		if (type == null || type.trim().isEmpty()) {
+			return "1".equals(config.get(NarrativeJobServiceServer.CFG_PROP_CONDOR_MODE)) ?
+					CondorScheduler.TYPE : AweScheduler.TYPE;
+		}
+		return type.trim();
+	}
+
+	/** Get the scheduler set in the configuration. If none is set, condor is used in condor
+	 * mode and AWE otherwise.
+	 * @param config the server configuration.
+	 * @return the scheduler.
+	 */
+	public static synchronized Scheduler getScheduler(final Map<String, String> config)
+			throws Exception {
+		if (scheduler != null) {
+			return scheduler;
+		}
+		final String type = getSchedulerType(config);
+		switch (type) {
+			case CondorScheduler.TYPE:
+				// the job submitter retries failed submissions itself, with a backoff
+				scheduler = new CondorScheduler(() -> getCatalogAdminAuth(config),
+						isSubmitAsync(config) ? 1 : 10);
+				break;
+			case AweScheduler.TYPE:
+				scheduler = new AweScheduler(getAweServerURL(config),
+						() -> getCatalogAdminAuth(config), () -> getAweAdminAuth(config));
+				break;
+			case SimulatedScheduler.TYPE:
+				scheduler = getSimulatedScheduler(config);
+				break;
+			default:
+				throw new IllegalStateException("Unknown scheduler: " + type);
+		}
+		return scheduler;
+	}
+
+	private static SimulatedScheduler getSimulatedScheduler(final Map<String, String> config) {
+		final String model = config.get(NarrativeJobServiceServer.CFG_PROP_SIM_RUN_MODEL);
+		final String rate = config.get(NarrativeJobServiceServer.CFG_PROP_SIM_FAILURE_RATE);
+		final SimulatedScheduler.RunTimeModel runTimeModel;
+		final double failureRate;
+		try {
+			runTimeModel = model == null || model.trim().isEmpty() ?
+					SimulatedScheduler.RunTimeModel.FIXED :
+					SimulatedScheduler.RunTimeModel.valueOf(model.trim().toUpperCase());
+			failureRate = rate == null || rate.trim().isEmpty() ? 0 :
+					Double.parseDouble(rate.trim());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalStateException("Illegal simulated scheduler configuration: " +
+					e.getMessage(), e);
+		}
+		final int logLines = getIntConfigParam(config,
+				NarrativeJobServiceServer.CFG_PROP_SIM_LOG_LINES, 10);
+		return new SimulatedScheduler(
+				getIntConfigParam(config, NarrativeJobServiceServer.CFG_PROP_SIM_SLOTS, 100),
+				getIntConfigParam(config, NarrativeJobServiceServer.CFG_PROP_SIM_SUBMIT_MS, 50),
+				getIntConfigParam(config,
+						NarrativeJobServiceServer.CFG_PROP_SIM_SUBMIT_PER_JOB_MS, 5),
+				getIntConfigParam(config,
+						NarrativeJobServiceServer.CFG_PROP_SIM_DISPATCH_INTERVAL_MS, 0),
+				getIntConfigParam(config, NarrativeJobServiceServer.CFG_PROP_SIM_RUN_MS, 60000),
+				runTimeModel,
+				failureRate,
+				getIntConfigParam(config, NarrativeJobServiceServer.CFG_PROP_SIM_THREADS, 8),
+				new SimulatedScheduler.JobRunner() {
+
+					// make the calls the job runner script makes
+					@Override
+					public void started(final ExecSubmission job) throws Exception {
+						updateJob(new UpdateJobParams().withJobId(job.getUjsJobId())
+								.withIsStarted(1L), getAuth(job), config);
+					}
+
+					@Override
+					public void finished(final ExecSubmission job, final String error)
+							throws Exception {
+						final List<LogLine> lines = new ArrayList<LogLine>();
+						for (long i = 0; i < logLines; i++) {
+							lines.add(new LogLine().withLine("Simulated log line " + i)
+									.withIsError(0L));
+						}
+						if (!lines.isEmpty()) {
+							addJobLogs(job.getUjsJobId(), lines, getAuth(job), config);
+						}
+						final FinishJobParams params = error == null ?
+								new FinishJobParams().withResult(
+										new UObject(new ArrayList<Object>())) :
+								new FinishJobParams().withError(new JsonRpcError()
+										.withName("JSONRPCError").withCode(-32000L)
+										.withMessage(error).withError(error));
+						finishJob(job.getUjsJobId(), params, getAuth(job), null, config);
+					}
+
+					private AuthToken getAuth(final ExecSubmission job) {
+						return new AuthToken(job.getToken(), job.getUser());
+					}
+				},
+				getErrorLogger());
+	}
+
+	private static ExecSubmission newExecSubmission(
+			final String ujsJobId,
+			final String method,
+			final AuthToken authPart,
+			final String clientGroups,
+			final Map<String, String> classAds,
+			final String baseDir,
+			final String externalUrl) {
+		final ExecSubmission s = new ExecSubmission();
+		s.setUjsJobId(ujsJobId);
+		s.setMethod(method);
+		s.setUser(authPart.getUserName());
+		s.setToken(authPart.getToken());
+		s.setClientGroups(clientGroups);
+		s.setClassAds(classAds);
+		s.setBaseDir(baseDir);
+		s.setExternalUrl(externalUrl);
+		return s;
+	}
+
+	private static void queueJobs(
+			final List<ExecTask> tasks,
+			final List<ExecSubmission> submissions,
+			final Map<String, String> config) throws Exception {
+		final ExecEngineMongoDb db = getDb(config);
+		db.insertExecTasks(tasks);
+		try {
+			db.insertExecSubmissions(submissions);
+		} catch (Exception e) {
+			// don't leave jobs that will never be submitted queued
+			final List<String> ujsJobIds = new ArrayList<String>();
+			for (final ExecSubmission s : submissions) {
+				ujsJobIds.add(s.getUjsJobId());
+			}
+			final Map<String, Object> finishFields = new HashMap<String, Object>();
+			finishFields.put("job_output", newErrorJobOutput("Couldn't queue job", e.toString()));
+			finishFields.put("finish_time", System.currentTimeMillis());
+			db.setExecTaskStates(ujsJobIds, ExecTaskState.UNFINISHED, ExecTaskState.ERROR,
+					"Couldn't queue job", finishFields);
+			throw e;
+		}
+		jobSubmitter.wakeUp();
+	}
+
+	// submits the jobs of a user synchronously, recording the scheduler IDs in the tasks
+	private static void submitJobs(
+			final List<ExecTask> tasks,
+			final List<ExecSubmission> submissions,
+			final Map<String, String> config) throws Exception {
+		final long start = System.currentTimeMillis();
+		final List<String> schedulerIds = getScheduler(config).submit(submissions);
+		final long submitMs = System.currentTimeMillis() - start;
+		final List<String> ujsJobIds = new ArrayList<String>();
+		for (int i = 0; i < tasks.size(); i++) {
+			tasks.get(i).setTaskId(schedulerIds.get(i));
+			if (tasks.get(i).getSubmitTimings() != null) {
+				tasks.get(i).getSubmitTimings().put("submit", submitMs);
+			}
+			ujsJobIds.add(tasks.get(i).getUjsJobId());
+		}
+		try {
+			getDb(config).insertExecTasks(tasks);
+		} catch (Exception e) {
+			// without their tasks the jobs can't be checked or finished, so don't leave them
+			// running
+			try {
+				getScheduler(config).cancel(ujsJobIds);
+			} catch (Exception ce) {
+				getErrorLogger().logErr(ce);
+			}
+			throw e;
+		}
+	}
+
+	private static void failSubmission(
+			final ExecSubmission submission,
+			final String error,
+			final Map<String, String> config) throws Exception {
+		final String ujsJobId = submission.getUjsJobId();
+		String msg = "Couldn't submit " + getScheduler(config).getType() + " job: " + error;
+		if (msg.length() > 200)
+			msg = msg.substring(0, 197) + "...";
+		final String status = msg;
+		final Map<String, Object> finishFields = new HashMap<String, Object>();
+		finishFields.put("job_output", newErrorJobOutput(status, error));
+		finishFields.put("finish_time", System.currentTimeMillis());
+		final AuthToken auth = new AuthToken(submission.getToken(), submission.getUser());
+		final ExecUjsUpdate ujsUpdate = newUjsUpdate(ujsJobId, ExecUjsUpdate.STAGE_COMPLETED,
+				status, error, auth, config);
+		if (!getDb(config).setExecTaskState(ujsJobId, ExecTaskState.UNFINISHED,
+				ExecTaskState.ERROR, status, finishFields, ujsUpdate)) {
+			// canceled in the meantime
+			return;
+		}
+		queueUjsUpdate(ujsUpdate, config);
+	}
+
+	// the output of a job that NJS failed itself, in the form the job runner reports errors
+	private static Map<String, Object> newErrorJobOutput(final String status, final String error) {
+		@SuppressWarnings("unchecked") final Map<String, Object> ret =
+				UObject.transformObjectToObject(new FinishJobParams().withError(
+						new JsonRpcError().withName("JSONRPCError").withCode(-32000L)
+								.withMessage(status).withError(error)), Map.class);
+		SanitizeMongoObject.sanitize(ret);
+		return ret;
+	}
+
 	private static void addAweTaskDescription(
 			final String ujsJobId,
 			final String aweJobId,
 			final Map<String, Object> jobInput,
 			final String appJobId,
+			final Map<String, Long> submitTimings,
 			final Map<String, String> config) throws Exception {
 		SanitizeMongoObject.sanitize(jobInput);
 		ExecEngineMongoDb db = getDb(config);
@@ -1133,6 +2805,9 @@ public class SDKMethodRunner {
 		dbTask.setJobInput(jobInput);
 		dbTask.setCreationTime(System.currentTimeMillis());
 		dbTask.setAppJobId(appJobId);
+		dbTask.setWsid(getWsid(jobInput));
+		dbTask.setSubmitTimings(submitTimings);
+		setQueued(dbTask);
 		db.insertExecTask(dbTask);
 	}
 
@@ -1148,26 +2823,38 @@ public class SDKMethodRunner {
 	 * @param config (Configuration File)
 	 * @throws Exception
 	 */
-	private static void saveTask(
+	private static ExecTask newExecTask(
 			final String ujsJobId,
 			final String jobId,
 			final Map<String, Object> jobInput,
 			final String appJobId,
 			final String schedulerType,
-			final String parentJobId,
-			final Map<String, String> config) throws Exception {
-
+			final String parentJobId) {
 		SanitizeMongoObject.sanitize(jobInput);
-		ExecEngineMongoDb db = getDb(config);
 		ExecTask dbTask = new ExecTask();
 		dbTask.setUjsJobId(ujsJobId);
 		dbTask.setJobInput(jobInput);
 		dbTask.setCreationTime(System.currentTimeMillis());
 		dbTask.setAppJobId(appJobId);
+		dbTask.setWsid(getWsid(jobInput));
+		setQueued(dbTask);
 		dbTask.setSchdulerType(schedulerType);
 		dbTask.setTaskId(jobId);
 		dbTask.setParentJobId(parentJobId);
-		db.insertExecTask(dbTask);
+		return dbTask;
+	}
+
+	// kept at the top level of the task so job state events can be matched to workspaces
+	private static Long getWsid(final Map<String, Object> jobInput) {
+		final Object wsid = jobInput.get("wsid");
+		return wsid instanceof Number ? ((Number) wsid).longValue() : null;
+	}
+
+	private static void setQueued(ExecTask dbTask) {
+		dbTask.setLastJobState(ExecTaskState.QUEUED.getValue());
+		dbTask.setLastJobStatus(APP_STATE_QUEUED);
+		dbTask.setLastJobStateTime(dbTask.getCreationTime());
+		dbTask.setStateVersion(1L);
 	}
 
 	private static ExecTask getTaskDescription(String ujsJobId, Map<String, String> config) throws Exception {
@@ -1178,8 +2865,53 @@ public class SDKMethodRunner {
 		return dbTask;
 	}
 
-	private static String getAweTaskAweJobId(String ujsJobId, Map<String, String> config) throws Exception {
-		return getTaskDescription(ujsJobId, config).getAweJobId();
+	/** Get the state of a job from its task.
+	 * @return the state, or null if the job has no task or the task was created before
+	 * states were recorded.
+	 */
+	private static ExecTaskState getTaskState(String ujsJobId, Map<String, String> config)
+			throws Exception {
+		ExecTaskView view = getDb(config).getExecTaskView(ujsJobId, false);
+		return view == null || view.getTask() == null ? null :
+				ExecTaskState.fromValue(view.getTask().getLastJobState());
+	}
+
+	/** Build a UJS style status tuple from the state recorded in a task, so jobs can be
+	 * checked without calling UJS.
+	 */
+	private static Tuple7<String, String, String, Long, String, Long, Long> getTaskStatus(
+			ExecTask task) {
+		ExecTaskState state = ExecTaskState.fromValue(task.getLastJobState());
+		Long time = task.getLastJobStateTime();
+		String stage;
+		switch (state) {
+			case QUEUED:
+			case STARTED:
+				stage = "started";
+				break;
+			default:
+				stage = state.getValue();
+		}
+		return new Tuple7<String, String, String, Long, String, Long, Long>()
+				.withE1(time == null ? null : DATE_FORMATTER.print(time))
+				.withE2(stage)
+				.withE3(task.getLastJobStatus())
+				.withE4(0L)
+				.withE5(null)
+				.withE6(state.isFinished() ? 1L : 0L)
+				.withE7(state == ExecTaskState.ERROR ? 1L : 0L);
+	}
+
+	/** Get the parts of a task needed to report the state of its job. */
+	private static ExecTask getTaskStatusView(
+			String ujsJobId,
+			boolean withOutput,
+			Map<String, String> config)
+			throws Exception {
+		ExecTaskView view = getDb(config).getExecTaskView(ujsJobId, withOutput);
+		if (view == null || view.getTask() == null)
+			throw new IllegalStateException("AWE task wasn't found in DB for jobid=" + ujsJobId);
+		return view.getTask();
 	}
 
 	/**
@@ -1270,11 +3002,7 @@ public class SDKMethodRunner {
 				"impossible occurred and a job was started without parameters");
 	}
 
-	private static FinishJobParams getJobOutput(
-			final String ujsJobId,
-			final AuthToken token,
-			final Map<String, String> config) throws Exception {
-		final ExecTask task = getTaskDescription(ujsJobId, config);
+	private static FinishJobParams getJobOutput(final ExecTask task) throws Exception {
 		if (task.getJobOutput() != null) {
 			SanitizeMongoObject.befoul(task.getJobOutput());
 			FinishJobParams ret = UObject.transformObjectToObject(task.getJobOutput(),
@@ -1284,6 +3012,17 @@ public class SDKMethodRunner {
 			}
 			return ret;
 		}
+		// jobs failed by earlier versions of NJS may have no output
+		final ExecTaskState state = task.getLastJobState() == null ? null :
+				ExecTaskState.fromValue(task.getLastJobState());
+		if (state == ExecTaskState.ERROR) {
+			final String status = task.getLastJobStatus() == null ? "Unknown error" :
+					task.getLastJobStatus();
+			return new FinishJobParams().withError(new JsonRpcError().withName("JSONRPCError")
+					.withCode(-32000L).withMessage(status).withError(status));
+		} else if (state == ExecTaskState.CANCELED) {
+			return new FinishJobParams().withIsCanceled(1L);
+		}
 		return null;
 	}
 
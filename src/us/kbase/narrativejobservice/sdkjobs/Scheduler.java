@@ -0,0 +1,92 @@
+package us.kbase.narrativejobservice.sdkjobs;
+
+import java.util.List;
+
+/** A batch scheduler that runs the job runner script of NJS jobs. Jobs are identified by their
+ * UJS job IDs. Job states are reported with the SDKMethodRunner APP_STATE_* constants.
+ *
+ * Submitting extends {@link JobSubmitter.BatchSubmit}, so the jobs of a submit call must
+ * share the same user token.
+ */
+public interface Scheduler extends JobSubmitter.BatchSubmit {
+
+	/** Get the scheduler type, which is recorded in the exec tasks of submitted jobs.
+	 * @return the scheduler type.
+	 */
+	String getType();
+
+	/** Check whether the job runner keeps the states of the scheduler's jobs in the exec tasks.
+	 * If it doesn't, job states are read from UJS, and jobs UJS doesn't report as complete are
+	 * checked with {@link #getJobStatus(String, String)}.
+	 * @return true if the job states are kept in the exec tasks.
+	 */
+	boolean isStateInTasks();
+
+	/** Get the status of a job in the scheduler.
+	 * @param ujsJobId the job ID.
+	 * @param schedulerJobId the scheduler's ID for the job as recorded in the exec task, or null
+	 * if none was recorded.
+	 * @return the status, or null if the scheduler doesn't know the job.
+	 * @throws Exception if the scheduler couldn't be reached or returned an unusable status.
+	 */
+	JobStatus getJobStatus(String ujsJobId, String schedulerJobId) throws Exception;
+
+	/** Cancel jobs, removing them from the scheduler. Jobs the scheduler doesn't know are
+	 * ignored.
+	 * @param ujsJobIds the job IDs.
+	 * @throws Exception if the scheduler couldn't be reached.
+	 */
+	void cancel(List<String> ujsJobIds) throws Exception;
+
+	/** Release the resources held by the scheduler. */
+	void close();
+
+	/** The status of a job in a scheduler. */
+	class JobStatus {
+
+		private final String schedulerState;
+		private final String state;
+		private final Long position;
+
+		/** Create the status.
+		 * @param schedulerState the job state in the scheduler's own terms.
+		 * @param state the job state as one of the SDKMethodRunner APP_STATE_* constants.
+		 * @param position the position of the job in the scheduler's queue, or null if the job
+		 * isn't queued or the scheduler doesn't report positions.
+		 */
+		public JobStatus(final String schedulerState, final String state, final Long position) {
+			this.schedulerState = schedulerState;
+			this.state = state;
+			this.position = position;
+		}
+
+		/** Get the job state in the scheduler's own terms.
+		 * @return the scheduler state.
+		 */
+		public String getSchedulerState() {
+			return schedulerState;
+		}
+
+		/** Get the job state as one of the SDKMethodRunner APP_STATE_* constants.
+		 * @return the state.
+		 */
+		public String getState() {
+			return state;
+		}
+
+		/** Check whether the scheduler still has the job queued or running.
+		 * @return true if the job hasn't finished in the scheduler.
+		 */
+		public boolean isActive() {
+			return SDKMethodRunner.APP_STATE_QUEUED.equals(state) ||
+					SDKMethodRunner.APP_STATE_STARTED.equals(state);
+		}
+
+		/** Get the position of the job in the scheduler's queue.
+		 * @return the position, or null if unknown.
+		 */
+		public Long getPosition() {
+			return position;
+		}
+	}
+}
@@ -0,0 +1,291 @@
+package us.kbase.narrativejobservice.sdkjobs;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import us.kbase.narrativejobservice.db.ExecSubmission;
+
+/** An in-process scheduler that simulates running jobs, so NJS can be load tested without a
+ * real scheduler.
+ *
+ * Submitting takes a fixed time plus a time per job, like condor_submit. Submitted jobs wait in
+ * a FIFO queue for one of a fixed number of slots. If a dispatch interval is set, queued jobs
+ * are only started once per interval, like jobs matched in condor negotiation cycles, otherwise
+ * they start as soon as a slot is free. A job runs for a fixed or exponentially distributed
+ * time and then succeeds or fails at random with the given failure rate.
+ *
+ * The job runner is told when a job starts and finishes, so it can make the calls the job
+ * runner script would make. Jobs are forgotten once they finish.
+ */
+public class SimulatedScheduler implements Scheduler {
+
+	public static final String TYPE = "simulated";
+
+	/** Makes the calls the job runner script makes when a simulated job starts and finishes. */
+	public interface JobRunner {
+
+		/** Called when a job starts.
+		 * @param job the job.
+		 * @throws Exception if the call failed. The job runs anyway.
+		 */
+		void started(ExecSubmission job) throws Exception;
+
+		/** Called when a job finishes.
+		 * @param job the job.
+		 * @param error the error message of a failed job, or null if the job succeeded.
+		 * @throws Exception if the call failed.
+		 */
+		void finished(ExecSubmission job, String error) throws Exception;
+	}
+
+	/** How job run times are distributed. */
+	public enum RunTimeModel {
+		/** Every job runs for the run time. */
+		FIXED,
+		/** Run times are exponentially distributed with the run time as the mean. */
+		EXPONENTIAL
+	}
+
+	private static class SimJob {
+		private final ExecSubmission submission;
+		private String state = SDKMethodRunner.APP_STATE_QUEUED;
+		private ScheduledFuture<?> finish = null;
+
+		private SimJob(final ExecSubmission submission) {
+			this.submission = submission;
+		}
+	}
+
+	private final int slots;
+	private final long submitMs;
+	private final long submitPerJobMs;
+	private final long dispatchIntervalMs;
+	private final long runTimeMs;
+	private final RunTimeModel runTimeModel;
+	private final double failureRate;
+	private final JobRunner runner;
+	private final ErrorLogger log;
+	private final ScheduledExecutorService timer;
+	private final ExecutorService callbacks;
+
+	// all guarded by this
+	private final Deque<SimJob> queue = new ArrayDeque<>();
+	private final Map<String, SimJob> jobs = new LinkedHashMap<>();
+	private int running = 0;
+	private long nextId = 1;
+
+	/** Create the scheduler.
+	 * @param slots the number of jobs that may run at once.
+	 * @param submitMs the time a submission takes.
+	 * @param submitPerJobMs the time each job adds to a submission.
+	 * @param dispatchIntervalMs the interval at which queued jobs are started, or 0 to start
+	 * them as soon as a slot is free.
+	 * @param runTimeMs the run time of a job, or the mean run time.
+	 * @param runTimeModel how run times are distributed.
+	 * @param failureRate the fraction of jobs that fail, from 0 to 1.
+	 * @param callbackThreads the number of threads calling the job runner.
+	 * @param runner the job runner.
+	 * @param log the logger for job runner errors, or null to print them to standard error.
+	 */
+	public SimulatedScheduler(
+			final int slots,
+			final long submitMs,
+			final long submitPerJobMs,
+			final long dispatchIntervalMs,
+			final long runTimeMs,
+			final RunTimeModel runTimeModel,
+			final double failureRate,
+			final int callbackThreads,
+			final JobRunner runner,
+			final ErrorLogger log) {
+		if (slots < 1 || callbackThreads < 1) {
+			throw new IllegalArgumentException(
+					"Simulated scheduler slots and threads must be at least 1");
+		}
+		if (submitMs < 0 || submitPerJobMs < 0 || dispatchIntervalMs < 0 || runTimeMs < 0) {
+			throw new IllegalArgumentException("Simulated scheduler times cannot be negative");
+		}
+		if (failureRate < 0 || failureRate > 1) {
+			throw new IllegalArgumentException(
+					"Simulated scheduler failure rate must be between 0 and 1");
+		}
+		this.slots = slots;
+		this.submitMs = submitMs;
+		this.submitPerJobMs = submitPerJobMs;
+		this.dispatchIntervalMs = dispatchIntervalMs;
+		this.runTimeMs = runTimeMs;
+		this.runTimeModel = runTimeModel;
+		this.failureRate = failureRate;
+		this.runner = runner;
+		this.log = log == null ? ErrorLogger.STDERR : log;
+		timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread t = new Thread(r, "njs-simulated-scheduler");
+			t.setDaemon(true);
+			return t;
+		});
+		callbacks = Executors.newFixedThreadPool(callbackThreads, r -> {
+			final Thread t = new Thread(r, "njs-simulated-job");
+			t.setDaemon(true);
+			return t;
+		});
+		if (dispatchIntervalMs > 0) {
+			timer.scheduleWithFixedDelay(() -> dispatch(), dispatchIntervalMs,
+					dispatchIntervalMs, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public String getType() {
+		return TYPE;
+	}
+
+	@Override
+	public List<String> submit(final List<ExecSubmission> batch) throws Exception {
+		Thread.sleep(submitMs + submitPerJobMs * batch.size());
+		final List<String> ret = new ArrayList<>();
+		synchronized (this) {
+			for (final ExecSubmission s : batch) {
+				final SimJob job = new SimJob(s);
+				jobs.put(s.getUjsJobId(), job);
+				queue.add(job);
+				ret.add("sim." + nextId++);
+			}
+		}
+		if (dispatchIntervalMs == 0) {
+			timer.execute(() -> dispatch());
+		}
+		return ret;
+	}
+
+	private synchronized void dispatch() {
+		while (running < slots && !queue.isEmpty()) {
+			final SimJob job = queue.poll();
+			job.state = SDKMethodRunner.APP_STATE_STARTED;
+			running++;
+			callbacks.execute(() -> start(job));
+		}
+	}
+
+	private void start(final SimJob job) {
+		try {
+			runner.started(job.submission);
+		} catch (Exception e) {
+			log.logErr(e);
+		}
+		final long runTime = runTimeModel == RunTimeModel.EXPONENTIAL ?
+				(long) (-runTimeMs * Math.log(1 - ThreadLocalRandom.current().nextDouble())) :
+				runTimeMs;
+		synchronized (this) {
+			// skip jobs canceled while starting
+			if (jobs.get(job.submission.getUjsJobId()) == job) {
+				job.finish = timer.schedule(() -> finish(job), runTime, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	private void finish(final SimJob job) {
+		synchronized (this) {
+			if (!jobs.remove(job.submission.getUjsJobId(), job)) {
+				return;
+			}
+			running--;
+		}
+		final String error = ThreadLocalRandom.current().nextDouble() < failureRate ?
+				"Simulated job failure" : null;
+		callbacks.execute(() -> {
+			try {
+				runner.finished(job.submission, error);
+			} catch (Exception e) {
+				log.logErr(e);
+			}
+		});
+		if (dispatchIntervalMs == 0) {
+			dispatch();
+		}
+	}
+
+	/** Get the states of simulated jobs.
+	 * @param ujsJobIds the job IDs.
+	 * @return the state of each queued or running job. Finished jobs are left out.
+	 */
+	public synchronized Map<String, String> getStates(final List<String> ujsJobIds) {
+		final Map<String, String> ret = new LinkedHashMap<>();
+		for (final String id : ujsJobIds) {
+			final SimJob job = jobs.get(id);
+			if (job != null) {
+				ret.put(id, job.state);
+			}
+		}
+		return ret;
+	}
+
+	@Override
+	public boolean isStateInTasks() {
+		// the job runner makes the calls the job runner script makes
+		return true;
+	}
+
+	@Override
+	public synchronized JobStatus getJobStatus(
+			final String ujsJobId,
+			final String schedulerJobId) {
+		final SimJob job = jobs.get(ujsJobId);
+		return job == null ? null : new JobStatus(job.state, job.state, null);
+	}
+
+	@Override
+	public void cancel(final List<String> ujsJobIds) {
+		synchronized (this) {
+			for (final String id : ujsJobIds) {
+				final SimJob job = jobs.remove(id);
+				if (job == null || queue.remove(job)) {
+					continue;
+				}
+				running--;
+				if (job.finish != null) {
+					job.finish.cancel(false);
+				}
+			}
+		}
+		if (dispatchIntervalMs == 0) {
+			timer.execute(() -> dispatch());
+		}
+	}
+
+	/** Get the states of all the queued and running simulated jobs.
+	 * @return the state of each job.
+	 */
+	public synchronized Map<String, String> getSnapshot() {
+		final Map<String, String> ret = new LinkedHashMap<>();
+		for (final Map.Entry<String, SimJob> e : jobs.entrySet()) {
+			ret.put(e.getKey(), e.getValue().state);
+		}
+		return ret;
+	}
+
+	/** Get the numbers of queued and running jobs.
+	 * @return the job counts.
+	 */
+	public synchronized Map<String, Long> getStats() {
+		final Map<String, Long> ret = new LinkedHashMap<>();
+		ret.put("queued", (long) queue.size());
+		ret.put("running", (long) running);
+		return ret;
+	}
+
+	@Override
+	public void close() {
+		timer.shutdownNow();
+		callbacks.shutdownNow();
+	}
+}
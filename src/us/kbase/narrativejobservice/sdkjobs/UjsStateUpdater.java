@@ -0,0 +1,122 @@
+package us.kbase.narrativejobservice.sdkjobs;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import us.kbase.common.service.ServerException;
+
+/** Sends job state changes to UJS in the background. The job states kept in the exec tasks
+ * are authoritative, UJS is only kept up to date for clients that read jobs from UJS directly.
+ *
+ * Updates for the same job are sent in the order they were submitted. Updates that fail
+ * because UJS can't be reached are retried, while updates that UJS rejects are not. Updates
+ * that are dropped after the last retry, or lost when the server stops, are resent by the
+ * {@link UjsUpdateSweeper}.
+ */
+public class UjsStateUpdater {
+
+	/** A call to UJS. */
+	public interface Update {
+
+		/** Send the update.
+		 * @throws Exception if the update failed.
+		 */
+		void send() throws Exception;
+	}
+
+	private final ExecutorService[] stripes;
+	private final int maxAttempts;
+	private final long retryDelayMs;
+	private final ErrorLogger log;
+
+	/** Create the updater.
+	 * @param threads the number of threads sending updates.
+	 * @param maxAttempts the number of times an update is tried before it is dropped.
+	 * @param retryDelayMs the delay before the first retry. The delay grows with each retry.
+	 * @param log the error logger, or null to print errors to standard error.
+	 */
+	public UjsStateUpdater(
+			final int threads,
+			final int maxAttempts,
+			final long retryDelayMs,
+			final ErrorLogger log) {
+		if (threads < 1 || maxAttempts < 1) {
+			throw new IllegalArgumentException(
+					"The thread and attempt counts must be at least 1");
+		}
+		this.maxAttempts = maxAttempts;
+		this.retryDelayMs = retryDelayMs;
+		this.log = log == null ? ErrorLogger.STDERR : log;
+		// one single threaded executor per stripe keeps the updates for a job in order
+		stripes = new ExecutorService[threads];
+		for (int i = 0; i < threads; i++) {
+			final String name = "ujs-updater-" + (i + 1);
+			stripes[i] = Executors.newSingleThreadExecutor(r -> {
+				final Thread t = new Thread(r, name);
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	/** Queue an update to a job.
+	 * @param ujsJobId the job ID.
+	 * @param update the update.
+	 * @return a future that completes when the update is sent, or fails with the last error
+	 * if it couldn't be sent.
+	 */
+	public Future<Void> submit(final String ujsJobId, final Update update) {
+		final CompletableFuture<Void> ret = new CompletableFuture<>();
+		stripes[Math.floorMod(ujsJobId.hashCode(), stripes.length)].execute(() -> {
+			try {
+				send(ujsJobId, update);
+				ret.complete(null);
+			} catch (Throwable e) {
+				logErr("Couldn't update job " + ujsJobId + " in UJS", e);
+				ret.completeExceptionally(e);
+			}
+		});
+		return ret;
+	}
+
+	private void send(final String ujsJobId, final Update update) throws Exception {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				update.send();
+				return;
+			} catch (ServerException e) {
+				throw e;
+			} catch (Exception e) {
+				if (attempt >= maxAttempts) {
+					throw e;
+				}
+				logErr("Retrying update of job " + ujsJobId + " in UJS", e);
+				Thread.sleep(retryDelayMs * attempt);
+			}
+		}
+	}
+
+	private void logErr(final String message, final Throwable e) {
+		log.logErr(message + ": " + e);
+	}
+
+	/** Stop the updater, waiting for queued updates to be sent.
+	 * @param timeoutMs the maximum time to wait.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public void close(final long timeoutMs) throws InterruptedException {
+		for (final ExecutorService e: stripes) {
+			e.shutdown();
+		}
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+		for (final ExecutorService e: stripes) {
+			if (!e.awaitTermination(Math.max(0, deadline - System.nanoTime()),
+					TimeUnit.NANOSECONDS)) {
+				e.shutdownNow();
+			}
+		}
+	}
+}
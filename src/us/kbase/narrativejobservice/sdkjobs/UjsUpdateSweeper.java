@@ -0,0 +1,143 @@
+package us.kbase.narrativejobservice.sdkjobs;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import us.kbase.narrativejobservice.db.ExecEngineMongoDb;
+import us.kbase.narrativejobservice.db.ExecUjsUpdate;
+
+/** Periodically sends the pending UJS updates recorded in the exec tasks that weren't sent
+ * when they were made, e.g. because UJS was down for longer than the {@link UjsStateUpdater}
+ * retries or the server restarted. Each update is claimed with a lease before it's sent, so
+ * servers sharing the database split the work between them, and an update that fails again is
+ * retried once its lease expires. An update that fails too many times is dropped, so the user
+ * token it holds isn't kept forever.
+ */
+public class UjsUpdateSweeper {
+
+	private static final int BATCH_SIZE = 1000;
+
+	/** Sends an update to UJS. */
+	public interface Sender {
+
+		/** Send the update and remove it from the exec task.
+		 * @param update the update.
+		 * @throws Exception if the update couldn't be sent.
+		 */
+		void send(ExecUjsUpdate update) throws Exception;
+	}
+
+	private final ExecEngineMongoDb db;
+	private final Sender sender;
+	private final long leaseMs;
+	private final int maxAttempts;
+	private final ErrorLogger log;
+	private final ScheduledExecutorService executor;
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	/** Start sending pending updates.
+	 * @param db the database.
+	 * @param sender sends the updates.
+	 * @param intervalMs the time between searches for pending updates, which is also the time
+	 * before a failed update is retried.
+	 * @param maxAttempts the number of attempts to send an update before it is dropped.
+	 * @param log the error logger, or null to print errors to standard error.
+	 */
+	public UjsUpdateSweeper(
+			final ExecEngineMongoDb db,
+			final Sender sender,
+			final long intervalMs,
+			final int maxAttempts,
+			final ErrorLogger log) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("UJS update attempts must be at least 1");
+		}
+		this.db = db;
+		this.sender = sender;
+		this.leaseMs = intervalMs;
+		this.maxAttempts = maxAttempts;
+		this.log = log == null ? ErrorLogger.STDERR : log;
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread t = new Thread(r, "njs-ujs-update-sweeper");
+			t.setDaemon(true);
+			return t;
+		});
+		executor.scheduleWithFixedDelay(() -> sweep(), intervalMs, intervalMs,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/** Send the due pending updates.
+	 * @return the number of sent updates.
+	 */
+	public int sweep() {
+		int count = 0;
+		final List<ExecUjsUpdate> due;
+		try {
+			due = db.claimExecTaskUjsUpdates(BATCH_SIZE, leaseMs);
+		} catch (Exception e) {
+			logErr("Couldn't read the pending UJS updates", e);
+			return count;
+		}
+		for (final ExecUjsUpdate u: due) {
+			try {
+				sender.send(u);
+				sent.incrementAndGet();
+				count++;
+			} catch (Exception e) {
+				failed.incrementAndGet();
+				logErr(String.format("Couldn't update job %s in UJS, attempt %s",
+						u.getUjsJobId(), u.getAttempts()), e);
+				if (u.getAttempts() != null && u.getAttempts() >= maxAttempts) {
+					drop(u);
+				}
+			}
+		}
+		return count;
+	}
+
+	private void drop(final ExecUjsUpdate u) {
+		try {
+			db.removeExecTaskUjsUpdate(u.getUjsJobId(), u.getId());
+			dropped.incrementAndGet();
+			logErr(String.format("Gave up updating job %s in UJS after %s attempts",
+					u.getUjsJobId(), u.getAttempts()), null);
+		} catch (Exception e) {
+			logErr("Couldn't drop the pending UJS update of job " + u.getUjsJobId(), e);
+		}
+	}
+
+	private void logErr(final String message, final Exception e) {
+		log.logErr(e == null ? message : message + ": " + e);
+	}
+
+	/** Get the number of pending updates and the numbers of updates this sweeper sent and
+	 * failed to send.
+	 * @return the update statistics.
+	 */
+	public Map<String, Long> getStats() {
+		final Map<String, Long> ret = new LinkedHashMap<>();
+		long pending = -1;
+		try {
+			pending = db.getExecTaskUjsUpdateCount();
+		} catch (Exception e) {
+			logErr("Couldn't count the pending UJS updates", e);
+		}
+		ret.put("pending", pending);
+		ret.put("swept", sent.get());
+		ret.put("sweep_failures", failed.get());
+		ret.put("dropped", dropped.get());
+		return ret;
+	}
+
+	/** Stop sending pending updates. */
+	public void close() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,236 @@
+package us.kbase.narrativejobservice.sdkjobs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import us.kbase.common.service.JsonClientException;
+
+/** Caches which workspace objects a user can access, so jobs resubmitted against the same
+ * inputs don't check them with the workspace every time.
+ *
+ * Only accessible objects are cached, so a newly shared or created object is never reported
+ * as inaccessible. Access is cached for the TTL, or the longer versioned TTL for references
+ * like ws/obj/ver, which always point to the same object. Revoked access may go unnoticed for
+ * up to the TTL.
+ *
+ * Concurrent lookups of the same object by the same user share one workspace call.
+ */
+public class WorkspaceObjectCache {
+
+	private static final Pattern VERSIONED_REF =
+			Pattern.compile("[^/;]+/[^/;]+/\\d+(;[^/;]+/[^/;]+/\\d+)*");
+	private static final int LATENCY_SAMPLES = 1024;
+
+	/** Looks up objects with the workspace. */
+	public interface Lookup {
+
+		/** Check which objects are accessible.
+		 * @param refs the object references.
+		 * @return whether each object is accessible, in order.
+		 * @throws IOException if the workspace couldn't be reached.
+		 * @throws JsonClientException if the workspace returned an error.
+		 */
+		List<Boolean> lookup(List<String> refs) throws IOException, JsonClientException;
+	}
+
+	private final long ttlMs;
+	private final long versionedTtlMs;
+	private final Map<String, Long> cache;
+	// guarded by cache
+	private final Map<String, CompletableFuture<Boolean>> inFlight = new HashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong shared = new AtomicLong();
+	private final AtomicLong lookups = new AtomicLong();
+	// guarded by latencies
+	private final long[] latencies = new long[LATENCY_SAMPLES];
+	private long latencyCount = 0;
+
+	/** Create the cache.
+	 * @param maxSize the maximum number of cached objects.
+	 * @param ttlMs how long access to an object is cached.
+	 * @param versionedTtlMs how long access to an object referenced with a version is cached.
+	 */
+	public WorkspaceObjectCache(final int maxSize, final long ttlMs, final long versionedTtlMs) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Cache size must be at least 1");
+		}
+		if (ttlMs < 0 || versionedTtlMs < 0) {
+			throw new IllegalArgumentException("Cache TTLs cannot be negative");
+		}
+		this.ttlMs = ttlMs;
+		this.versionedTtlMs = versionedTtlMs;
+		cache = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	private static String key(final String user, final String ref) {
+		return user + "\n" + ref;
+	}
+
+	/** Find the objects a user can't access.
+	 * @param user the user name.
+	 * @param refs the object references.
+	 * @param lookup looks up the objects that aren't cached with the workspace.
+	 * @return the inaccessible objects.
+	 * @throws IOException if the workspace couldn't be reached.
+	 * @throws JsonClientException if the workspace returned an error.
+	 */
+	public Set<String> getInaccessible(
+			final String user,
+			final List<String> refs,
+			final Lookup lookup)
+			throws IOException, JsonClientException {
+		final long start = System.currentTimeMillis();
+		final List<String> mine = new ArrayList<>();
+		final List<CompletableFuture<Boolean>> mineFutures = new ArrayList<>();
+		final Map<String, CompletableFuture<Boolean>> waits = new LinkedHashMap<>();
+		synchronized (cache) {
+			for (final String ref : new LinkedHashSet<>(refs)) {
+				final String key = key(user, ref);
+				final Long expires = cache.get(key);
+				if (expires != null && expires > start) {
+					hits.incrementAndGet();
+					continue;
+				}
+				misses.incrementAndGet();
+				CompletableFuture<Boolean> f = inFlight.get(key);
+				if (f != null) {
+					shared.incrementAndGet();
+				} else {
+					f = new CompletableFuture<>();
+					inFlight.put(key, f);
+					mine.add(ref);
+					mineFutures.add(f);
+				}
+				waits.put(ref, f);
+			}
+		}
+		if (!mine.isEmpty()) {
+			load(user, mine, mineFutures, lookup);
+		}
+		final Set<String> ret = new LinkedHashSet<>();
+		for (final Map.Entry<String, CompletableFuture<Boolean>> e : waits.entrySet()) {
+			if (!get(e.getValue())) {
+				ret.add(e.getKey());
+			}
+		}
+		addLatency(System.currentTimeMillis() - start);
+		return ret;
+	}
+
+	private void load(
+			final String user,
+			final List<String> refs,
+			final List<CompletableFuture<Boolean>> futures,
+			final Lookup lookup) {
+		lookups.incrementAndGet();
+		List<Boolean> accessible = null;
+		Throwable error = null;
+		try {
+			accessible = lookup.lookup(refs);
+			if (accessible.size() != refs.size()) {
+				throw new IllegalStateException(String.format(
+						"The workspace returned %s results for %s objects",
+						accessible.size(), refs.size()));
+			}
+		} catch (Throwable t) {
+			error = t;
+		}
+		final long now = System.currentTimeMillis();
+		synchronized (cache) {
+			for (int i = 0; i < refs.size(); i++) {
+				final String key = key(user, refs.get(i));
+				inFlight.remove(key);
+				if (error != null) {
+					continue;
+				}
+				if (accessible.get(i)) {
+					final long ttl = VERSIONED_REF.matcher(refs.get(i)).matches() ?
+							versionedTtlMs : ttlMs;
+					if (ttl > 0) {
+						cache.put(key, now + ttl);
+					}
+				}
+			}
+		}
+		// complete outside the lock, waiters may run dependent actions
+		for (int i = 0; i < futures.size(); i++) {
+			if (error != null) {
+				futures.get(i).completeExceptionally(error);
+			} else {
+				futures.get(i).complete(accessible.get(i));
+			}
+		}
+	}
+
+	private static boolean get(final CompletableFuture<Boolean> f)
+			throws IOException, JsonClientException {
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while checking workspace objects", e);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof JsonClientException) {
+				throw (JsonClientException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	private void addLatency(final long ms) {
+		synchronized (latencies) {
+			latencies[(int) (latencyCount++ % LATENCY_SAMPLES)] = ms;
+		}
+	}
+
+	/** Get the hit, miss and shared lookup counts, the number of workspace calls, the current
+	 * size of the cache and the median and 99th percentile time of the recent checks.
+	 * @return the cache statistics.
+	 */
+	public Map<String, Long> getStats() {
+		final Map<String, Long> ret = new LinkedHashMap<>();
+		ret.put("hits", hits.get());
+		ret.put("misses", misses.get());
+		ret.put("shared", shared.get());
+		ret.put("lookups", lookups.get());
+		synchronized (cache) {
+			ret.put("size", (long) cache.size());
+		}
+		final long[] sorted;
+		synchronized (latencies) {
+			sorted = Arrays.copyOf(latencies,
+					(int) Math.min(latencyCount, LATENCY_SAMPLES));
+		}
+		Arrays.sort(sorted);
+		ret.put("check_ms_p50", sorted.length == 0 ? 0 : sorted[(sorted.length - 1) / 2]);
+		ret.put("check_ms_p99", sorted.length == 0 ? 0 :
+				sorted[(int) Math.ceil(sorted.length * 0.99) - 1]);
+		return ret;
+	}
+}
@@ -0,0 +1,107 @@
+package us.kbase.narrativejobservice.test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import us.kbase.catalog.CatalogClient;
+import us.kbase.catalog.ModuleVersion;
+import us.kbase.catalog.SelectModuleVersion;
+import us.kbase.common.executionengine.CatalogCache;
+import us.kbase.common.service.JsonClientException;
+import us.kbase.common.service.RpcContext;
+import us.kbase.common.service.ServerException;
+
+public class CatalogCacheTest {
+
+    private static final String HASH1 = "0123456789abcdef0123456789abcdef01234567";
+    private static final String HASH2 = "fedcba9876543210fedcba9876543210fedcba98";
+
+    private static class FakeCatalog extends CatalogClient {
+        private final List<String> calls = new ArrayList<>();
+        private String releaseHash = HASH1;
+        private boolean down = false;
+
+        private FakeCatalog() throws Exception {
+            super(new URL("http://localhost:1"));
+        }
+
+        @Override
+        public ModuleVersion getModuleVersion(
+                final SelectModuleVersion selection,
+                final RpcContext... jsonRpcContext)
+                throws IOException, JsonClientException {
+            calls.add(selection.getVersion());
+            if (down) {
+                throw new SocketTimeoutException("Read timed out");
+            }
+            if (selection.getVersion().equals("nope")) {
+                throw new ServerException("No module version found", -32500, "Server error");
+            }
+            final String hash = selection.getVersion().equals("release") ?
+                    releaseHash : selection.getVersion();
+            return new ModuleVersion().withModuleName(selection.getModuleName())
+                    .withGitCommitHash(hash);
+        }
+    }
+
+    @Test
+    public void hashesNeverExpireAndTagsSeedHashes() throws Exception {
+        final CatalogCache cache = new CatalogCache(100, 0, 0, 0, 0);
+        final FakeCatalog cat = new FakeCatalog();
+        cache.getModuleVersion(cat, "mod", HASH2);
+        cache.getModuleVersion(cat, "mod", HASH2);
+        // a tag TTL of 0 expires tag lookups at once
+        assertThat("incorrect hash", cache.getModuleVersion(cat, "mod", "release")
+                .getGitCommitHash(), is(HASH1));
+        cat.releaseHash = HASH2;
+        assertThat("incorrect hash", cache.getModuleVersion(cat, "mod", "release")
+                .getGitCommitHash(), is(HASH2));
+        cache.getModuleVersion(cat, "mod", HASH1);
+        assertThat("incorrect calls", cat.calls.toString(), is("[" + HASH2 + ", release, release]"));
+        assertThat("incorrect hits", cache.getStats().get("hits"), is(2L));
+        assertThat("incorrect misses", cache.getStats().get("misses"), is(3L));
+    }
+
+    @Test
+    public void staleEntriesServedWhenCatalogIsDown() throws Exception {
+        final CatalogCache cache = new CatalogCache(100, 0, 0, 60000, 100);
+        final FakeCatalog cat = new FakeCatalog();
+        cache.getModuleVersion(cat, "mod", "release");
+        cat.down = true;
+        assertThat("incorrect hash", cache.getModuleVersion(cat, "mod", "release")
+                .getGitCommitHash(), is(HASH1));
+        assertThat("incorrect stale hits", cache.getStats().get("stale_hits"), is(1L));
+        try {
+            cache.getModuleVersion(cat, "mod", "beta");
+            fail("expected exception");
+        } catch (SocketTimeoutException e) {
+            assertThat("incorrect message", e.getMessage(), is("Read timed out"));
+        }
+        assertThat("incorrect errors", cache.getStats().get("load_errors"), is(2L));
+    }
+
+    @Test
+    public void catalogErrorsNotCached() throws Exception {
+        final CatalogCache cache = new CatalogCache(100, 60000, 60000, 60000, 0);
+        final FakeCatalog cat = new FakeCatalog();
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.getModuleVersion(cat, "mod", "nope");
+                fail("expected exception");
+            } catch (ServerException e) {
+                assertThat("incorrect message", e.getMessage(), is("No module version found"));
+            }
+        }
+        assertThat("incorrect calls", cat.calls.size(), is(2));
+        assertThat("incorrect size", cache.getStats().get("size"), is(0L));
+    }
+}
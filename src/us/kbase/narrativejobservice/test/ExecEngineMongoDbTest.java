@@ -8,8 +8,10 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -20,14 +22,24 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.google.common.collect.ImmutableMap;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
 import com.mongodb.MongoClient;
-import com.mongodb.WriteConcernException;
 
 import us.kbase.common.test.controllers.mongo.MongoController;
+import us.kbase.narrativejobservice.db.DbMigrator;
 import us.kbase.narrativejobservice.db.ExecEngineMongoDb;
 import us.kbase.narrativejobservice.db.ExecLog;
+import us.kbase.narrativejobservice.db.ExecLogArchive;
 import us.kbase.narrativejobservice.db.ExecLogLine;
+import us.kbase.narrativejobservice.db.ExecSubmission;
 import us.kbase.narrativejobservice.db.ExecTask;
+import us.kbase.narrativejobservice.db.ExecTaskEvent;
+import us.kbase.narrativejobservice.db.ExecTaskState;
+import us.kbase.narrativejobservice.db.ExecTaskView;
+import us.kbase.narrativejobservice.db.ExecUjsUpdate;
+import us.kbase.narrativejobservice.sdkjobs.UjsUpdateSweeper;
 
 public class ExecEngineMongoDbTest {
     private static MongoController mongo;
@@ -212,17 +224,260 @@ public class ExecEngineMongoDbTest {
                 ell.setIsError(false);
                 part.add(ell);
             }
-            try {
-                db.updateExecLogLines(ujsJobId, i + 1, part);
-                Assert.assertTrue(i != count);
-            } catch (WriteConcernException ex) {
-                Assert.assertEquals(count, i);
-                Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("Size must be between 0 and "));
-                Assert.assertEquals(10334, ex.getCode());
-            }
+            // with chunked storage the log is no longer limited by the 16MB document size
+            db.updateExecLogLines(ujsJobId, (i + 1) * partSize, part);
         }
         t2 = System.currentTimeMillis() - t2;
         System.out.println("testSpeedAndSize: t2=" + t2 + " (" + (t2 / (double)count) + " per insert)");
+        final int from = count * partSize - 10;
+        final List<ExecLogLine> got = db.getExecLogLines(ujsJobId, from, partSize);
+        assertThat("incorrect line count", got.size(), is(partSize));
+        for (int i = 0; i < got.size(); i++) {
+            assertThat("incorrect line pos", got.get(i).getLinePos(), is(from + i));
+        }
+    }
+    
+    @Test
+    public void logChunks() throws Exception {
+        final ExecLog el = new ExecLog();
+        el.setUjsJobId("jobid");
+        el.setOriginalLineCount(0);
+        el.setStoredLineCount(0);
+        el.setLines(new ArrayList<ExecLogLine>());
+        db.insertExecLog(el);
+        final int size = ExecEngineMongoDb.LOG_CHUNK_SIZE;
+        db.updateExecLogLines("jobid", size - 2, lines(0, size - 2));
+        db.updateExecLogLines("jobid", size + 5, lines(size - 2, size + 5));
+        
+        assertThat("incorrect stored line count",
+                db.getExecLog("jobid").getStoredLineCount(), is(size + 5));
+        checkLines(db.getExecLogLines("jobid", size - 4, 6), size - 4, size + 2);
+        checkLines(db.getExecLogLines("jobid", size + 3, 100), size + 3, size + 5);
+        checkLines(db.getExecLogLines("jobid", 3 * size, 10), 0, 0);
+    }
+    
+    @Test
+    public void appendExecLogLinesBulk() throws Exception {
+        for (final String id: Arrays.asList("job1", "job2")) {
+            final ExecLog el = new ExecLog();
+            el.setUjsJobId(id);
+            el.setOriginalLineCount(0);
+            el.setStoredLineCount(0);
+            el.setLines(new ArrayList<ExecLogLine>());
+            db.insertExecLog(el);
+        }
+        db.appendExecLogLines(ImmutableMap.of("job1", lines(0, 3), "job2", lines(0, 1)));
+        db.appendExecLogLines(ImmutableMap.of("job1", lines(3, 5)));
+        
+        assertThat("incorrect line count", db.getExecLog("job1").getStoredLineCount(), is(5));
+        assertThat("incorrect line count", db.getExecLog("job2").getStoredLineCount(), is(1));
+        checkLines(db.getExecLogLines("job1", 0, 5), 0, 5);
+        checkLines(db.getExecLogLines("job2", 0, 5), 0, 1);
+        
+        // log is created on first append
+        assertThat("incorrect line count", db.appendExecLogLines("job3", lines(0, 2)), is(2));
+        checkLines(db.getExecLogLines("job3", 0, 5), 0, 2);
+    }
+    
+    @Test
+    public void appendExecLogLinesConcurrent() throws Exception {
+        final int threads = 8;
+        final int appends = 20;
+        final List<Thread> workers = new ArrayList<>();
+        final List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < threads; t++) {
+            workers.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < appends; i++) {
+                        db.appendExecLogLines("job", lines(0, 3));
+                    }
+                } catch (Exception e) {
+                    errors.add(e);
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        for (final Thread w: workers) {
+            w.join();
+        }
+        assertThat("append errors", errors, is(Collections.emptyList()));
+        final int total = threads * appends * 3;
+        assertThat("incorrect line count", db.getExecLog("job").getStoredLineCount(), is(total));
+        final List<ExecLogLine> got = db.getExecLogLines("job", 0, total);
+        assertThat("incorrect line count", got.size(), is(total));
+        for (int i = 0; i < total; i++) {
+            assertThat("incorrect line pos", got.get(i).getLinePos(), is(i));
+        }
+    }
+    
+    @Test
+    public void packedLogChunks() throws Exception {
+        final int size = ExecEngineMongoDb.LOG_CHUNK_SIZE;
+        final MongoClient mc = new MongoClient("localhost:" + mongo.getServerPort());
+        final DBCollection chunks = mc.getDB(DB_NAME).getCollection("exec_log_chunks");
+        db.appendExecLogLines("job", lines(0, size + 3));
+        
+        // the full chunk is packed on append
+        final DBObject full = chunks.findOne(new BasicDBObject("chunk_no", 0));
+        assertThat("chunk not packed", full.containsField("packed"), is(true));
+        assertThat("chunk not packed", full.containsField("lines"), is(false));
+        checkLines(db.getExecLogLines("job", size - 2, 4), size - 2, size + 2);
+        
+        assertThat("incorrect packed count", db.packExecLogChunks("job"), is(1));
+        assertThat("incorrect packed count", db.packExecLogChunks("job"), is(0));
+        
+        // append to a packed chunk, then repack
+        db.appendExecLogLines("job", lines(size + 3, size + 5));
+        checkLines(db.getExecLogLines("job", 0, 2 * size), 0, size + 5);
+        assertThat("incorrect packed count", db.packExecLogChunks("job"), is(1));
+        checkLines(db.getExecLogLines("job", size + 1, 10), size + 1, size + 5);
+    }
+    
+    @Test
+    public void archiveExecLog() throws Exception {
+        final int size = ExecEngineMongoDb.LOG_CHUNK_SIZE;
+        final File dir = TesterUtils.prepareWorkDir(new File("temp_files"),
+                "awe-ee_log_archive");
+        db.setLogArchive(new ExecLogArchive(dir.toPath(), "node1", 1024 * 1024));
+        try {
+            final ExecTask t = new ExecTask();
+            t.setUjsJobId("job");
+            t.setFinishTime(1000L);
+            db.insertExecTask(t);
+            final ExecTask running = new ExecTask();
+            running.setUjsJobId("running");
+            db.insertExecTask(running);
+            db.appendExecLogLines("job", lines(0, size + 3));
+            
+            assertThat("incorrect job", db.claimUnarchivedFinishedJob(999L, 60000),
+                    nullValue());
+            assertThat("incorrect job", db.claimUnarchivedFinishedJob(1001L, 60000),
+                    is("job"));
+            // claimed by this server
+            assertThat("incorrect job", db.claimUnarchivedFinishedJob(1001L, 60000),
+                    nullValue());
+            assertThat("not archived", db.archiveExecLog("job"), is(true));
+            assertThat("incorrect task", db.getExecTask("job").getFinishTime(), is(1000L));
+            assertThat("incorrect job", db.claimUnarchivedFinishedJob(1001L, 0),
+                    nullValue());
+            final MongoClient mc = new MongoClient("localhost:" + mongo.getServerPort());
+            assertThat("chunks not removed", mc.getDB(DB_NAME).getCollection("exec_log_chunks")
+                    .count(new BasicDBObject("ujs_job_id", "job")), is(0L));
+            checkLines(db.getExecLogLines("job", 0, 2 * size), 0, size + 3);
+            checkLines(db.getExecLogLines("job", size - 1, 3), size - 1, size + 2);
+            assertThat("incorrect line count", db.getExecLog("job").getStoredLineCount(),
+                    is(size + 3));
+            
+            // lines appended after archival
+            db.appendExecLogLines("job", lines(size + 3, size + 5));
+            checkLines(db.getExecLogLines("job", 0, 2 * size), 0, size + 5);
+            checkLines(db.getExecLogLines("job", size + 4, 10), size + 4, size + 5);
+            assertThat("archived twice", db.archiveExecLog("job"), is(false));
+        } finally {
+            db.setLogArchive(null);
+        }
+    }
+    
+    @Test
+    public void archiveExecLogAcrossSegments() throws Exception {
+        final int size = ExecEngineMongoDb.LOG_CHUNK_SIZE;
+        final File dir = TesterUtils.prepareWorkDir(new File("temp_files"),
+                "awe-ee_log_archive_split");
+        // every chunk is larger than a segment
+        db.setLogArchive(new ExecLogArchive(dir.toPath(), "node1", 1, 1));
+        try {
+            final ExecTask t = new ExecTask();
+            t.setUjsJobId("job");
+            t.setFinishTime(1000L);
+            db.insertExecTask(t);
+            db.appendExecLogLines("job", lines(0, 2 * size + 3));
+            assertThat("not archived", db.archiveExecLog("job"), is(true));
+            assertThat("incorrect segment count", dir.list().length, is(3));
+            checkLines(db.getExecLogLines("job", 0, 3 * size), 0, 2 * size + 3);
+            checkLines(db.getExecLogLines("job", size - 1, size + 2), size - 1, 2 * size + 1);
+        } finally {
+            db.setLogArchive(null);
+        }
+    }
+    
+    @Test
+    public void scanExecLogLines() throws Exception {
+        final int size = ExecEngineMongoDb.LOG_CHUNK_SIZE;
+        db.appendExecLogLines("job", lines(0, 2 * size + 10));
+        final List<ExecLogLine> got = new ArrayList<>();
+        
+        // every line, stopping at the limit
+        assertThat("incorrect next", db.scanExecLogLines(
+                "job", 5, 3 * size, null, size, got), is(size + 5));
+        checkLines(got, 5, size + 5);
+        
+        // lines ending in 7 across chunks, stopping at the end of the window
+        got.clear();
+        assertThat("incorrect next", db.scanExecLogLines("job", size - 20, size + 30,
+                l -> l.getLine().endsWith("7"), 100, got), is(size + 30));
+        assertThat("incorrect count", got.size(), is(5));
+        assertThat("incorrect pos", got.get(0).getLinePos(), is(size - 13));
+        assertThat("incorrect pos", got.get(4).getLinePos(), is(size + 27));
+        
+        // the only error line, stopping at the end of the log
+        got.clear();
+        assertThat("incorrect next", db.scanExecLogLines("job", 0, 10 * size,
+                l -> l.getIsError(), 100, got), is(2 * size + 10));
+        checkLines(got, 1, 2);
+    }
+    
+    @Test
+    public void logChunksMigration() throws Exception {
+        // logs written before chunking embed the lines in the exec_logs document
+        final MongoClient mc = new MongoClient("localhost:" + mongo.getServerPort());
+        final List<BasicDBObject> legacyLines = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            legacyLines.add(new BasicDBObject("line_pos", i).append("line", "line " + i)
+                    .append("is_error", i == 1));
+        }
+        mc.getDB(DB_NAME).getCollection("exec_logs").insert(new BasicDBObject(
+                "ujs_job_id", "legacy")
+                .append("original_line_count", 3)
+                .append("stored_line_count", 3)
+                .append("lines", legacyLines));
+        
+        checkLines(db.getExecLogLines("legacy", 1, 5), 1, 3);
+        
+        db.updateExecLogLines("legacy", 5, lines(3, 5));
+        
+        checkLines(db.getExecLogLines("legacy", 0, 5), 0, 5);
+        assertThat("incorrect line count", db.appendExecLogLines("legacy", lines(5, 6)), is(6));
+        checkLines(db.getExecLogLines("legacy", 0, 10), 0, 6);
+        assertThat("lines not moved to chunks", mc.getDB(DB_NAME).getCollection("exec_logs")
+                .findOne(new BasicDBObject("ujs_job_id", "legacy")).containsField("lines"),
+                is(false));
+        assertThat("already migrated", db.migrateExecLogToChunks("legacy"), is(false));
+        assertThat("incorrect migration count", db.migrateExecLogsToChunks(), is(0));
+    }
+    
+    private static List<ExecLogLine> lines(final int from, final int to) {
+        final List<ExecLogLine> ret = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            final ExecLogLine ell = new ExecLogLine();
+            ell.setLinePos(i);
+            ell.setLine("line " + i);
+            ell.setIsError(i == 1);
+            ret.add(ell);
+        }
+        return ret;
+    }
+    
+    private static void checkLines(
+            final List<ExecLogLine> got,
+            final int from,
+            final int to) {
+        assertThat("incorrect line count", got.size(), is(to - from));
+        for (int i = 0; i < got.size(); i++) {
+            final ExecLogLine l = got.get(i);
+            assertThat("incorrect line pos", l.getLinePos(), is(from + i));
+            assertThat("incorrect line", l.getLine(), is("line " + (from + i)));
+            assertThat("incorrect error", l.getIsError(), is(from + i == 1));
+        }
     }
     
     @Test
@@ -257,6 +512,496 @@ public class ExecEngineMongoDbTest {
                 is(set()));
     }
     
+    @Test
+    public void taskViews() throws Exception {
+        final ExecTask parent = new ExecTask();
+        parent.setUjsJobId("pid");
+        parent.setAweJobId("aweid");
+        parent.setCreationTime(1L);
+        parent.setFinishTime(3L);
+        parent.setJobInput(ImmutableMap.of("method", "mod.meth"));
+        parent.setJobOutput(ImmutableMap.of("result", "foo"));
+        final ExecTask sub = new ExecTask();
+        sub.setUjsJobId("subid");
+        sub.setParentJobId("pid");
+        sub.setJobOutput(ImmutableMap.of("result", "bar"));
+        db.insertExecTask(parent);
+        db.insertExecTask(sub);
+
+        final ExecTaskView view = db.getExecTaskView("pid", false);
+        assertThat("incorrect sub jobs", view.getSubJobIds(), is(Arrays.asList("subid")));
+        assertThat("incorrect awe id", view.getTask().getAweJobId(), is("aweid"));
+        assertThat("incorrect creation", view.getTask().getCreationTime(), is(1L));
+        assertThat("incorrect start", view.getTask().getExecStartTime(), nullValue());
+        assertThat("incorrect finish", view.getTask().getFinishTime(), is(3L));
+        assertThat("incorrect input", view.getTask().getJobInput(), nullValue());
+        assertThat("incorrect output", view.getTask().getJobOutput(), nullValue());
+
+        final Map<String, ExecTaskView> views = db.getExecTaskViews(
+                Arrays.asList("pid", "subid", "noid"), true, true);
+        assertThat("incorrect views", views.keySet(), is(set("pid", "subid")));
+        final ExecTask pt = views.get("pid").getTask();
+        assertThat("incorrect input", pt.getJobInput(),
+                is(ImmutableMap.of("method", "mod.meth")));
+        assertThat("incorrect output", pt.getJobOutput(), is(ImmutableMap.of("result", "foo")));
+        final ExecTaskView sv = views.get("subid");
+        assertThat("incorrect sub jobs", sv.getSubJobIds(), is(Collections.emptyList()));
+        assertThat("incorrect parent", sv.getTask().getParentJobId(), is("pid"));
+        assertThat("incorrect output", sv.getTask().getJobOutput(),
+                is(ImmutableMap.of("result", "bar")));
+
+        // sub jobs that weren't requested don't bring their output along
+        final Map<String, ExecTaskView> parentOnly = db.getExecTaskViews(
+                Arrays.asList("pid"), false, true);
+        assertThat("incorrect views", parentOnly.keySet(), is(set("pid")));
+        assertThat("incorrect sub jobs", parentOnly.get("pid").getSubJobIds(),
+                is(Arrays.asList("subid")));
+
+        assertThat("incorrect view", db.getExecTaskView("noid", true), nullValue());
+    }
+
+    @Test
+    public void taskStates() throws Exception {
+        final ExecTask t1 = new ExecTask();
+        t1.setUjsJobId("id1");
+        t1.setLastJobState(ExecTaskState.QUEUED.getValue());
+        final ExecTask legacy = new ExecTask();
+        legacy.setUjsJobId("id2");
+        db.insertExecTask(t1);
+        db.insertExecTask(legacy);
+
+        assertThat("incorrect update", db.setExecTaskState("id1",
+                Arrays.asList(ExecTaskState.QUEUED), ExecTaskState.STARTED, "in-progress", null),
+                is(true));
+        ExecTask got = db.getExecTaskView("id1", false).getTask();
+        assertThat("incorrect state", got.getLastJobState(), is("started"));
+        assertThat("incorrect status", got.getLastJobStatus(), is("in-progress"));
+        assertThat("no state time", got.getLastJobStateTime() != null, is(true));
+
+        // only expected states can change
+        assertThat("incorrect update", db.setExecTaskState("id1",
+                Arrays.asList(ExecTaskState.QUEUED), ExecTaskState.STARTED, "in-progress", null),
+                is(false));
+        assertThat("incorrect update", db.setExecTaskState("id1", ExecTaskState.UNFINISHED,
+                ExecTaskState.COMPLETED, "done", ImmutableMap.of(
+                        "job_output", ImmutableMap.of("result", "foo"), "finish_time", 7L)),
+                is(true));
+        got = db.getExecTaskView("id1", true).getTask();
+        assertThat("incorrect state", got.getLastJobState(), is("completed"));
+        assertThat("incorrect finish", got.getFinishTime(), is(7L));
+        assertThat("incorrect output", got.getJobOutput(), is(ImmutableMap.of("result", "foo")));
+        assertThat("incorrect update", db.setExecTaskState("id1", ExecTaskState.UNFINISHED,
+                ExecTaskState.CANCELED, "canceled", null), is(false));
+
+        // tasks without a state can move to any state
+        assertThat("incorrect update count", db.setExecTaskStates(
+                Arrays.asList("id1", "id2", "id3"), ExecTaskState.UNFINISHED,
+                ExecTaskState.ERROR, "reaped", null), is(1));
+        assertThat("incorrect state", db.getExecTaskView("id2", false).getTask()
+                .getLastJobState(), is("error"));
+        assertThat("incorrect state", ExecTaskState.fromValue("error").isFinished(), is(true));
+    }
+
+    @Test
+    public void taskStateVersions() throws Exception {
+        final ExecTask t1 = new ExecTask();
+        t1.setUjsJobId("vid1");
+        t1.setLastJobState(ExecTaskState.QUEUED.getValue());
+        t1.setStateVersion(1L);
+        final ExecTask legacy = new ExecTask();
+        legacy.setUjsJobId("vid2");
+        db.insertExecTask(t1);
+        db.insertExecTask(legacy);
+
+        assertThat("incorrect versions", db.getExecTaskStateVersions(
+                Arrays.asList("vid1", "vid2", "vid3")), is(ImmutableMap.of("vid1", 1L)));
+        db.setExecTaskState("vid1", Arrays.asList(ExecTaskState.QUEUED),
+                ExecTaskState.STARTED, "in-progress", null);
+        db.updateExecTaskTime("vid1", false, 5L);
+        // failed transitions don't change the version
+        db.setExecTaskState("vid1", Arrays.asList(ExecTaskState.QUEUED),
+                ExecTaskState.STARTED, "in-progress", null);
+        assertThat("incorrect versions", db.getExecTaskStateVersions(
+                Arrays.asList("vid1")), is(ImmutableMap.of("vid1", 3L)));
+        assertThat("incorrect view version", db.getExecTaskView("vid1", false).getTask()
+                .getStateVersion(), is(3L));
+
+        // adding a sub job changes the parent's state, parents without a version keep none
+        final ExecTask sub1 = new ExecTask();
+        sub1.setUjsJobId("vid4");
+        sub1.setParentJobId("vid1");
+        sub1.setStateVersion(1L);
+        final ExecTask sub2 = new ExecTask();
+        sub2.setUjsJobId("vid5");
+        sub2.setParentJobId("vid2");
+        db.insertExecTasks(Arrays.asList(sub1, sub2));
+        assertThat("incorrect versions", db.getExecTaskStateVersions(
+                Arrays.asList("vid1", "vid2", "vid4")),
+                is(ImmutableMap.of("vid1", 4L, "vid4", 1L)));
+        assertThat("incorrect versions", db.getExecTaskStateVersions(
+                Collections.emptyList()), is(Collections.emptyMap()));
+    }
+
+    @Test
+    public void workspaceTaskViews() throws Exception {
+        for (final String id: Arrays.asList("wj1", "wj2", "wj3")) {
+            final ExecTask t = new ExecTask();
+            t.setUjsJobId(id);
+            t.setWsid(3L);
+            t.setLastJobState(id.equals("wj2") ? ExecTaskState.COMPLETED.getValue() :
+                    ExecTaskState.QUEUED.getValue());
+            t.setJobOutput(id.equals("wj2") ? ImmutableMap.of("result", "foo") : null);
+            db.insertExecTask(t);
+        }
+        final ExecTask sub = new ExecTask();
+        sub.setUjsJobId("wsub");
+        sub.setParentJobId("wj1");
+        db.insertExecTask(sub);
+        final ExecTask legacy = new ExecTask();
+        legacy.setUjsJobId("wj4");
+        legacy.setJobInput(ImmutableMap.of("wsid", 3));
+        db.insertExecTask(legacy);
+        final ExecTask other = new ExecTask();
+        other.setUjsJobId("wj0");
+        other.setWsid(4L);
+        db.insertExecTask(other);
+
+        List<ExecTaskView> got = db.getExecTaskViewsByWorkspace(3L, null, null, 2);
+        assertThat("incorrect page size", got.size(), is(2));
+        assertThat("incorrect job", got.get(0).getTask().getUjsJobId(), is("wj1"));
+        assertThat("incorrect sub jobs", got.get(0).getSubJobIds(), is(Arrays.asList("wsub")));
+        assertThat("incorrect output", got.get(1).getTask().getJobOutput(),
+                is(ImmutableMap.of("result", "foo")));
+        got = db.getExecTaskViewsByWorkspace(3L, null, "wj2", 2);
+        assertThat("incorrect page size", got.size(), is(1));
+        assertThat("incorrect job", got.get(0).getTask().getUjsJobId(), is("wj3"));
+
+        got = db.getExecTaskViewsByWorkspace(3L, ExecTaskState.UNFINISHED, null, 10);
+        assertThat("incorrect count", got.size(), is(2));
+        assertThat("incorrect sub jobs", got.get(1).getSubJobIds(),
+                is(Collections.emptyList()));
+
+        // tasks from before the workspace ID was recorded show up once it's copied
+        assertThat("incorrect copy count", db.copyExecTaskWsids(), is(1));
+        got = db.getExecTaskViewsByWorkspace(3L, null, "wj3", 10);
+        assertThat("incorrect job", got.get(0).getTask().getUjsJobId(), is("wj4"));
+        assertThat("incorrect copy count", db.copyExecTaskWsids(), is(0));
+    }
+
+    @Test
+    public void taskTree() throws Exception {
+        final String[][] tree = {{"root", null}, {"c1", "root"}, {"c2", "root"},
+                {"g1", "c1"}, {"gg1", "g1"}, {"other", null}};
+        for (final String[] node: tree) {
+            final ExecTask t = new ExecTask();
+            t.setUjsJobId(node[0]);
+            t.setParentJobId(node[1]);
+            t.setLastJobState(ExecTaskState.STARTED.getValue());
+            t.setJobInput(ImmutableMap.of("big", "input"));
+            db.insertExecTask(t);
+        }
+        List<ExecTask> got = db.getExecTaskTree("root", null);
+        final Set<String> ids = new HashSet<>();
+        for (final ExecTask t: got) {
+            ids.add(t.getUjsJobId());
+            assertThat("input returned", t.getJobInput(), nullValue());
+        }
+        assertThat("incorrect root", got.get(0).getUjsJobId(), is("root"));
+        assertThat("incorrect tree", ids, is(set("root", "c1", "c2", "g1", "gg1")));
+        assertThat("incorrect state", got.get(1).getLastJobState(), is("started"));
+
+        ids.clear();
+        for (final ExecTask t: db.getExecTaskTree("root", 1)) {
+            ids.add(t.getUjsJobId());
+        }
+        assertThat("incorrect tree", ids, is(set("root", "c1", "c2")));
+        got = db.getExecTaskTree("c1", 0);
+        assertThat("incorrect tree size", got.size(), is(1));
+        assertThat("incorrect parent", got.get(0).getParentJobId(), is("root"));
+        assertThat("incorrect tree", db.getExecTaskTree("noid", null),
+                is(Collections.emptyList()));
+    }
+
+    @Test
+    public void insertTasks() throws Exception {
+        final List<ExecTask> tasks = new ArrayList<>();
+        for (final String id: Arrays.asList("bulk1", "bulk2", "bulk3")) {
+            final ExecTask t = new ExecTask();
+            t.setUjsJobId(id);
+            t.setLastJobState(ExecTaskState.QUEUED.getValue());
+            tasks.add(t);
+        }
+        tasks.get(0).setSubmitTimings(ImmutableMap.of("ws_objects", 12L, "submit", 340L));
+        db.insertExecTasks(Collections.emptyList());
+        db.insertExecTasks(tasks);
+        for (final ExecTask t: tasks) {
+            assertThat("incorrect state", db.getExecTask(t.getUjsJobId()).getLastJobState(),
+                    is("queued"));
+        }
+        assertThat("incorrect timings", db.getExecTask("bulk1").getSubmitTimings(),
+                is(ImmutableMap.of("ws_objects", 12L, "submit", 340L)));
+    }
+
+    @Test
+    public void submissionQueue() throws Exception {
+        final List<ExecSubmission> subs = new ArrayList<>();
+        for (final String id: Arrays.asList("sub1", "sub2", "sub3")) {
+            final ExecTask t = new ExecTask();
+            t.setUjsJobId(id);
+            t.setLastJobState(ExecTaskState.QUEUED.getValue());
+            db.insertExecTask(t);
+            final ExecSubmission s = new ExecSubmission();
+            s.setUjsJobId(id);
+            s.setUser("someuser");
+            s.setToken("sometoken");
+            s.setClassAds(ImmutableMap.of("kb_app_id", "app"));
+            subs.add(s);
+        }
+        db.insertExecSubmissions(subs);
+        assertThat("incorrect depth", db.getExecSubmissionQueueDepth(), is(3L));
+
+        final List<ExecSubmission> claimed = db.claimExecSubmissions(2, 60000);
+        assertThat("incorrect claim count", claimed.size(), is(2));
+        assertThat("incorrect state", claimed.get(0).getState(), is("submitting"));
+        assertThat("incorrect attempts", claimed.get(0).getAttempts(), is(1));
+        assertThat("incorrect user", claimed.get(0).getUser(), is("someuser"));
+        assertThat("incorrect class ads", claimed.get(0).getClassAds(),
+                is(ImmutableMap.of("kb_app_id", "app")));
+        // claimed jobs are leased
+        final List<ExecSubmission> rest = db.claimExecSubmissions(10, 60000);
+        assertThat("incorrect claim count", rest.size(), is(1));
+        assertThat("claimed twice", db.claimExecSubmissions(10, 60000).isEmpty(), is(true));
+
+        assertThat("not completed", db.completeExecSubmission(
+                claimed.get(0).getUjsJobId(), "1.0 - 1.0"),
+                is(ExecSubmission.Completion.COMPLETED));
+        assertThat("incorrect task id", db.getExecTask(claimed.get(0).getUjsJobId())
+                .getTaskId(), is("1.0 - 1.0"));
+        db.retryExecSubmission(claimed.get(1).getUjsJobId(), 0, "condor is down");
+        final List<ExecSubmission> retried = db.claimExecSubmissions(10, 60000);
+        assertThat("incorrect claim count", retried.size(), is(1));
+        assertThat("incorrect attempts", retried.get(0).getAttempts(), is(2));
+        assertThat("incorrect error", retried.get(0).getLastError(), is("condor is down"));
+        // canceled while being submitted
+        db.setExecTaskState(rest.get(0).getUjsJobId(), ExecTaskState.UNFINISHED,
+                ExecTaskState.CANCELED, "canceled by user", null);
+        assertThat("completed canceled job", db.completeExecSubmission(
+                rest.get(0).getUjsJobId(), "2.0 - 2.0"),
+                is(ExecSubmission.Completion.CANCELED));
+        assertThat("incorrect task id", db.getExecTask(rest.get(0).getUjsJobId())
+                .getTaskId(), nullValue());
+        assertThat("incorrect depth", db.getExecSubmissionQueueDepth(), is(1L));
+        // another submitter took over after the lease expired and completed the job first
+        db.removeExecSubmission(retried.get(0).getUjsJobId());
+        assertThat("completed removed job", db.completeExecSubmission(
+                retried.get(0).getUjsJobId(), "3.0 - 3.0"),
+                is(ExecSubmission.Completion.ALREADY_COMPLETED));
+        assertThat("incorrect task id", db.getExecTask(retried.get(0).getUjsJobId())
+                .getTaskId(), nullValue());
+        assertThat("incorrect depth", db.getExecSubmissionQueueDepth(), is(0L));
+        // a removed entry of a job that finished in the meantime is removed from the scheduler
+        db.setExecTaskState(retried.get(0).getUjsJobId(), ExecTaskState.UNFINISHED,
+                ExecTaskState.CANCELED, "canceled by user", null);
+        assertThat("completed removed finished job", db.completeExecSubmission(
+                retried.get(0).getUjsJobId(), "3.0 - 3.0"),
+                is(ExecSubmission.Completion.CANCELED));
+    }
+
+    @Test
+    public void ujsUpdateOutbox() throws Exception {
+        final List<ExecUjsUpdate> queued = new ArrayList<>();
+        for (final String id: Arrays.asList("uu1", "uu2")) {
+            final ExecTask t = new ExecTask();
+            t.setUjsJobId(id);
+            t.setLastJobState(ExecTaskState.QUEUED.getValue());
+            db.insertExecTask(t);
+            queued.add(newUjsUpdate(id, "q" + id, ExecUjsUpdate.STAGE_QUEUED, 0));
+        }
+        // a newer update isn't replaced by the queued update
+        assertThat("not started", db.setExecTaskState("uu2", ExecTaskState.UNFINISHED,
+                ExecTaskState.STARTED, "in-progress", null,
+                newUjsUpdate("uu2", "suu2", ExecUjsUpdate.STAGE_STARTED, 0)), is(true));
+        db.addExecTaskUjsUpdates(queued);
+        assertThat("incorrect count", db.getExecTaskUjsUpdateCount(), is(2L));
+        // the pending update isn't part of the task
+        assertThat("incorrect state", db.getExecTask("uu2").getLastJobState(),
+                is(ExecTaskState.STARTED.getValue()));
+
+        final List<ExecUjsUpdate> claimed = db.claimExecTaskUjsUpdates(10, 60000);
+        assertThat("incorrect claim count", claimed.size(), is(2));
+        final Map<String, ExecUjsUpdate> byJob = new HashMap<>();
+        for (final ExecUjsUpdate u: claimed) {
+            byJob.put(u.getUjsJobId(), u);
+        }
+        assertThat("incorrect id", byJob.get("uu1").getId(), is("quu1"));
+        assertThat("incorrect id", byJob.get("uu2").getId(), is("suu2"));
+        assertThat("incorrect stage", byJob.get("uu2").getStage(),
+                is(ExecUjsUpdate.STAGE_STARTED));
+        assertThat("incorrect token", byJob.get("uu2").getToken(), is("sometoken"));
+        assertThat("incorrect attempts", byJob.get("uu2").getAttempts(), is(1));
+        // claimed updates are leased
+        assertThat("claimed twice", db.claimExecTaskUjsUpdates(10, 60000).isEmpty(), is(true));
+
+        // a sent update isn't removed once it's been replaced
+        assertThat("not completed", db.setExecTaskState("uu2", ExecTaskState.UNFINISHED,
+                ExecTaskState.COMPLETED, "done", null,
+                newUjsUpdate("uu2", "cuu2", ExecUjsUpdate.STAGE_COMPLETED, 0)), is(true));
+        db.removeExecTaskUjsUpdate("uu2", "suu2");
+        db.removeExecTaskUjsUpdate("uu1", "quu1");
+        assertThat("incorrect count", db.getExecTaskUjsUpdateCount(), is(1L));
+        final List<ExecUjsUpdate> due = db.claimExecTaskUjsUpdates(10, 60000);
+        assertThat("incorrect claim count", due.size(), is(1));
+        assertThat("incorrect id", due.get(0).getId(), is("cuu2"));
+        db.removeExecTaskUjsUpdate("uu2", null);
+        assertThat("incorrect count", db.getExecTaskUjsUpdateCount(), is(0L));
+    }
+
+    @Test
+    public void ujsUpdateSweeperDropsFailingUpdates() throws Exception {
+        final ExecTask t = new ExecTask();
+        t.setUjsJobId("du1");
+        t.setLastJobState(ExecTaskState.QUEUED.getValue());
+        db.insertExecTask(t);
+        db.addExecTaskUjsUpdates(Arrays.asList(
+                newUjsUpdate("du1", "qdu1", ExecUjsUpdate.STAGE_QUEUED, 0)));
+        final UjsUpdateSweeper sweeper = new UjsUpdateSweeper(db, u -> {
+            throw new IllegalStateException("UJS is down");
+        }, 3600000, 1, null);
+        try {
+            assertThat("incorrect sent", sweeper.sweep(), is(0));
+            // the update and the token it holds are gone
+            assertThat("not dropped", db.getExecTaskUjsUpdateCount(), is(0L));
+            assertThat("incorrect dropped", sweeper.getStats().get("dropped"), is(1L));
+        } finally {
+            sweeper.close();
+        }
+    }
+
+    private static ExecUjsUpdate newUjsUpdate(
+            final String ujsJobId,
+            final String id,
+            final String stage,
+            final long nextAttemptTime) {
+        final ExecUjsUpdate u = new ExecUjsUpdate();
+        u.setId(id);
+        u.setUjsJobId(ujsJobId);
+        u.setStage(stage);
+        u.setStatus(stage);
+        u.setUser("someuser");
+        u.setToken("sometoken");
+        u.setAttempts(0);
+        u.setNextAttemptTime(nextAttemptTime);
+        return u;
+    }
+
+    @Test
+    public void migrations() throws Exception {
+        final MongoClient mc = new MongoClient("localhost:" + mongo.getServerPort());
+        final DBCollection props = mc.getDB("migrations").getCollection("srv_props");
+        final ExecTask t = new ExecTask();
+        t.setUjsJobId("mj1");
+        t.setWsid(5L);
+        t.setLastJobState(ExecTaskState.QUEUED.getValue());
+        // a new database starts at the latest version
+        final ExecEngineMongoDb mdb = new ExecEngineMongoDb(
+                "localhost:" + mongo.getServerPort(), "migrations", null, null);
+        final DbMigrator migrator = mdb.getMigrator();
+        assertThat("incorrect version", migrator.getVersion(),
+                is(migrator.getLatestVersion()));
+        assertThat("incorrect pending", migrator.getPendingMigrations().size(), is(0));
+        assertThat("incorrect migrate count", migrator.migrate(m -> {}), is(0));
+
+        mdb.insertExecTask(t);
+        props.update(new BasicDBObject("prop_id", "db_version"),
+                new BasicDBObject("$set", new BasicDBObject("value", "1.0")));
+        assertThat("incorrect pending", migrator.getPendingMigrations().size(), is(5));
+        assertThat("incorrect migrated", migrator.isMigratedTo("1.0"), is(true));
+        assertThat("incorrect migrated", migrator.isMigratedTo("1.1"), is(false));
+        assertThat("incorrect wsids copied", mdb.isExecTaskWsidsCopied(), is(false));
+        final List<String> report = migrator.getDryRunReport();
+        assertThat("incorrect report", report.get(0), is(String.format(
+                "Database schema version 1.0, latest version %s, 5 pending migration(s)",
+                migrator.getLatestVersion())));
+        assertThat("report changed version", migrator.getVersion(), is("1.0"));
+
+        final List<String> log = new ArrayList<>();
+        assertThat("incorrect migrate count", migrator.migrate(log::add), is(5));
+        assertThat("incorrect version", migrator.getVersion(),
+                is(migrator.getLatestVersion()));
+        assertThat("no log", log.isEmpty(), is(false));
+        assertThat("incorrect migrated", migrator.isMigratedTo("1.1"), is(true));
+        assertThat("incorrect wsids copied", mdb.isExecTaskWsidsCopied(), is(true));
+        assertThat("lock not released", props.findOne(
+                new BasicDBObject("prop_id", "migration_lock")), nullValue());
+
+        // a database migrated by a newer server is rejected
+        props.update(new BasicDBObject("prop_id", "db_version"),
+                new BasicDBObject("$set", new BasicDBObject("value", "99.0")));
+        try {
+            new ExecEngineMongoDb("localhost:" + mongo.getServerPort(), "migrations",
+                    null, null);
+            Assert.fail("expected exception");
+        } catch (IllegalStateException e) {
+            assertThat("incorrect message", e.getMessage(), is(String.format(
+                    "The database schema version 99.0 is not supported by this server, " +
+                    "which supports versions up to %s", migrator.getLatestVersion())));
+        }
+        TesterUtils.destroyDB(mc.getDB("migrations"));
+    }
+
+    @Test
+    public void taskEvents() throws Exception {
+        final ExecTask t1 = new ExecTask();
+        t1.setUjsJobId("evid1");
+        t1.setWsid(42L);
+        t1.setLastJobState(ExecTaskState.QUEUED.getValue());
+        final ExecTask t2 = new ExecTask();
+        t2.setUjsJobId("evid2");
+        t2.setLastJobState(ExecTaskState.QUEUED.getValue());
+        db.insertExecTask(t1);
+        db.insertExecTask(t2);
+        final String start = db.getLastExecTaskEventId();
+        final List<ExecTaskEvent> published = new ArrayList<>();
+        db.setExecTaskEventListener(published::add);
+        try {
+            db.setExecTaskState("evid1", Arrays.asList(ExecTaskState.QUEUED),
+                    ExecTaskState.STARTED, "in-progress", null);
+            // failed transitions don't write events
+            db.setExecTaskState("evid1", Arrays.asList(ExecTaskState.QUEUED),
+                    ExecTaskState.STARTED, "in-progress", null);
+            db.setExecTaskState("evid2", ExecTaskState.UNFINISHED,
+                    ExecTaskState.CANCELED, "canceled", null);
+        } finally {
+            db.setExecTaskEventListener(null);
+        }
+        assertThat("incorrect event count", published.size(), is(2));
+        final ExecTaskEvent e = published.get(0);
+        assertThat("incorrect job", e.getUjsJobId(), is("evid1"));
+        assertThat("incorrect wsid", e.getWsid(), is(42L));
+        assertThat("incorrect state", e.getState(), is(ExecTaskState.STARTED));
+        assertThat("incorrect status", e.getStatus(), is("in-progress"));
+
+        final String after = start == null ? "0" : start;
+        // events are numbered in order
+        assertThat("incorrect event order", Long.parseLong(published.get(1).getId()),
+                is(Long.parseLong(e.getId()) + 1));
+        List<ExecTaskEvent> got = db.getExecTaskEvents(after, Arrays.asList("evid2"), 42L, 10);
+        assertThat("incorrect event count", got.size(), is(2));
+        assertThat("incorrect event", got.get(0).getId(), is(e.getId()));
+        assertThat("incorrect event", got.get(1).getUjsJobId(), is("evid2"));
+        got = db.getExecTaskEvents(e.getId(), null, 42L, 10);
+        assertThat("incorrect event count", got.size(), is(0));
+        assertThat("incorrect last event", db.getLastExecTaskEventId(),
+                is(published.get(1).getId()));
+
+        // events written by this instance aren't returned when tailing
+        final List<ExecTaskEvent> tailed = new ArrayList<>();
+        final long deadline = System.currentTimeMillis() + 2000;
+        db.tailExecTaskEvents(after, tailed::add,
+                () -> System.currentTimeMillis() < deadline);
+        assertThat("incorrect tailed events", tailed.size(), is(0));
+    }
+
     @Test
     public void updateExecOriginalLineCount() throws Exception {
         final ExecLog el = new ExecLog();
@@ -0,0 +1,105 @@
+package us.kbase.narrativejobservice.test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import us.kbase.narrativejobservice.db.ExecLogArchive;
+
+public class ExecLogArchiveTest {
+
+    @Test
+    public void appendReadAndRollOver() throws Exception {
+        final File dir = TesterUtils.prepareWorkDir(new File("temp_files"),
+                "exec_log_archive");
+        final ExecLogArchive a = new ExecLogArchive(dir.toPath(), "node1", 10);
+        final ExecLogArchive.Location l1 = a.append(Arrays.asList(
+                new byte[] {1, 2, 3}, new byte[] {4, 5}));
+        assertThat("incorrect segment", l1.segments[0], is("segment-node1-000001.seg"));
+        assertThat("incorrect offsets", l1.offsets[0], is(0L));
+        assertThat("incorrect offsets", l1.offsets[1], is(3L));
+        // reads map the segment, which then grows
+        assertThat("incorrect read", a.read(l1.segments[0], 3, 2), is(new byte[] {4, 5}));
+        final ExecLogArchive.Location l2 = a.append(Arrays.asList(new byte[] {6, 7, 8}));
+        assertThat("incorrect segment", l2.segments[0], is("segment-node1-000001.seg"));
+        assertThat("incorrect read", a.read(l2.segments[0], l2.offsets[0], 3),
+                is(new byte[] {6, 7, 8}));
+        // segment is full
+        final ExecLogArchive.Location l3 = a.append(Arrays.asList(new byte[] {9, 10, 11}));
+        assertThat("incorrect segment", l3.segments[0], is("segment-node1-000002.seg"));
+        assertThat("incorrect offsets", l3.offsets[0], is(0L));
+        a.close();
+
+        // reopen and continue in the last segment
+        final ExecLogArchive a2 = new ExecLogArchive(dir.toPath(), "node1", 10);
+        final ExecLogArchive.Location l4 = a2.append(Arrays.asList(new byte[] {12}));
+        assertThat("incorrect segment", l4.segments[0], is("segment-node1-000002.seg"));
+        assertThat("incorrect offsets", l4.offsets[0], is(3L));
+        assertThat("incorrect read", a2.read(l1.segments[0], 0, 3), is(new byte[] {1, 2, 3}));
+        assertThat("incorrect read", a2.read(l4.segments[0], 0, 4), is(new byte[] {9, 10, 11, 12}));
+        a2.verify(l4, Arrays.asList(new byte[] {12}));
+        try {
+            a2.verify(l4, Arrays.asList(new byte[] {13}));
+            fail("expected exception");
+        } catch (IOException e) {
+            assertThat("incorrect message", e.getMessage(), is("Log archive segment " +
+                    "segment-node1-000002.seg doesn't hold the chunk written at offset 3"));
+        }
+        a2.close();
+    }
+
+    @Test
+    public void splitAcrossSegments() throws Exception {
+        final File dir = TesterUtils.prepareWorkDir(new File("temp_files"),
+                "exec_log_archive_split");
+        final ExecLogArchive a = new ExecLogArchive(dir.toPath(), "node1", 5, 1);
+        a.append(Arrays.asList(new byte[] {1, 2}));
+        // the log doesn't fit in the rest of the segment, and its last chunk doesn't fit in
+        // any segment
+        final ExecLogArchive.Location l = a.append(Arrays.asList(new byte[] {3, 4, 5},
+                new byte[] {6, 7, 8}, new byte[] {9}, new byte[] {10, 11, 12, 13, 14, 15}));
+        assertThat("incorrect segments", l.segments, is(new String[] {
+                "segment-node1-000001.seg", "segment-node1-000002.seg",
+                "segment-node1-000002.seg", "segment-node1-000003.seg"}));
+        assertThat("incorrect offsets", l.offsets, is(new long[] {2, 0, 3, 0}));
+        a.verify(l, Arrays.asList(new byte[] {3, 4, 5}, new byte[] {6, 7, 8}, new byte[] {9},
+                new byte[] {10, 11, 12, 13, 14, 15}));
+        // only one segment is mapped at a time
+        assertThat("incorrect read", a.read(l.segments[0], 2, 3), is(new byte[] {3, 4, 5}));
+        assertThat("incorrect read", a.read(l.segments[3], 0, 6),
+                is(new byte[] {10, 11, 12, 13, 14, 15}));
+        assertThat("incorrect read", a.read(l.segments[1], 3, 1), is(new byte[] {9}));
+        assertThat("incorrect read", a.read(l.segments[0], 0, 2), is(new byte[] {1, 2}));
+        // the next log starts a new segment after the oversized chunk
+        assertThat("incorrect segment", a.append(Arrays.asList(new byte[] {16})).segments[0],
+                is("segment-node1-000004.seg"));
+        a.close();
+    }
+
+    @Test
+    public void serversWriteOwnSegments() throws Exception {
+        final File dir = TesterUtils.prepareWorkDir(new File("temp_files"),
+                "exec_log_archive_nodes");
+        final ExecLogArchive a = new ExecLogArchive(dir.toPath(), "node1", 100);
+        final ExecLogArchive b = new ExecLogArchive(dir.toPath(), "node1-b", 100);
+        final ExecLogArchive.Location l1 = a.append(Arrays.asList(new byte[] {1, 2}));
+        final ExecLogArchive.Location l2 = b.append(Arrays.asList(new byte[] {3, 4}));
+        assertThat("incorrect segment", l2.segments[0], is("segment-node1-b-000001.seg"));
+        assertThat("incorrect offsets", l2.offsets[0], is(0L));
+        assertThat("incorrect read", b.read(l1.segments[0], 0, 2), is(new byte[] {1, 2}));
+        assertThat("incorrect read", a.read(l2.segments[0], 0, 2), is(new byte[] {3, 4}));
+        a.close();
+        b.close();
+        // other servers' segments are ignored when reopening
+        final ExecLogArchive a2 = new ExecLogArchive(dir.toPath(), "node1", 100);
+        assertThat("incorrect segment", a2.append(Arrays.asList(new byte[] {5})).segments[0],
+                is("segment-node1-000001.seg"));
+        a2.close();
+    }
+}
@@ -0,0 +1,111 @@
+package us.kbase.narrativejobservice.test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import us.kbase.common.service.UObject;
+import us.kbase.narrativejobservice.JobState;
+import us.kbase.narrativejobservice.sdkjobs.FinishedJobStateCache;
+
+public class FinishedJobStateCacheTest {
+
+    private static JobState state(final String jobId, final String result) {
+        return new JobState().withJobId(jobId).withFinished(1L).withJobState("completed")
+                .withResult(new UObject(Arrays.asList(result)));
+    }
+
+    private static String result(final JobState state) {
+        return state.getResult().asClassInstance(String[].class)[0];
+    }
+
+    @Test
+    public void getReturnsCopy() throws Exception {
+        final FinishedJobStateCache c = new FinishedJobStateCache(100000, 0, 0);
+        assertThat("incorrect get", c.get("j1"), is(nullValue()));
+        c.put("j1", state("j1", "foo"));
+        final JobState s = c.get("j1");
+        assertThat("incorrect job id", s.getJobId(), is("j1"));
+        assertThat("incorrect result", result(s), is("foo"));
+        s.setJobState("error");
+        assertThat("cache modified", c.get("j1").getJobState(), is("completed"));
+
+        final Map<String, Long> stats = c.getStats();
+        assertThat("incorrect hits", stats.get("hits"), is(2L));
+        assertThat("incorrect misses", stats.get("misses"), is(1L));
+        assertThat("incorrect size", stats.get("size"), is(1L));
+        assertThat("incorrect off heap", stats.get("off_heap_bytes"), is(0L));
+
+        c.invalidate(Arrays.asList("j1", "j2"));
+        assertThat("incorrect get", c.get("j1"), is(nullValue()));
+        assertThat("incorrect size", c.getStats().get("heap_bytes"), is(0L));
+    }
+
+    @Test
+    public void staleVersion() throws Exception {
+        final FinishedJobStateCache c = new FinishedJobStateCache(100000, 0, 0);
+        c.put("j1", state("j1", "foo"), 3L);
+        c.put("j2", state("j2", "bar"));
+        assertThat("incorrect result", result(c.get("j1", 3L)), is("foo"));
+        // unversioned entries don't go stale
+        assertThat("incorrect result", result(c.get("j2", 4L)), is("bar"));
+
+        // another server changed the job
+        assertThat("stale get", c.get("j1", 4L), is(nullValue()));
+        assertThat("stale entry kept", c.get("j1", 3L), is(nullValue()));
+        assertThat("incorrect size", c.getStats().get("size"), is(1L));
+        assertThat("incorrect misses", c.getStats().get("misses"), is(2L));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws Exception {
+        final String big = StringUtils.repeat("x", 1000);
+        final FinishedJobStateCache c = new FinishedJobStateCache(3500, 0, 0);
+        c.put("j1", state("j1", big));
+        c.put("j2", state("j2", big));
+        c.put("j3", state("j3", big));
+        c.get("j1");
+        c.put("j4", state("j4", big));
+        assertThat("incorrect size", c.getStats().get("size"), is(3L));
+        assertThat("j2 not evicted", c.get("j2"), is(nullValue()));
+        assertThat("j1 evicted", result(c.get("j1")), is(big));
+
+        // states too large for the cache are ignored
+        c.put("j5", state("j5", StringUtils.repeat("x", 5000)));
+        assertThat("incorrect get", c.get("j5"), is(nullValue()));
+        assertThat("incorrect size", c.getStats().get("size"), is(3L));
+    }
+
+    @Test
+    public void offHeap() throws Exception {
+        final String big = StringUtils.repeat("x", 2000);
+        final FinishedJobStateCache c = new FinishedJobStateCache(1000, 5000, 500);
+        c.put("small", state("small", "foo"));
+        c.put("big1", state("big1", big));
+        c.put("big2", state("big2", big));
+        Map<String, Long> stats = c.getStats();
+        assertThat("incorrect size", stats.get("size"), is(3L));
+        assertThat("incorrect heap", stats.get("heap_bytes") > 0, is(true));
+        assertThat("incorrect heap", stats.get("heap_bytes") < 500, is(true));
+        assertThat("incorrect off heap", stats.get("off_heap_bytes") > 4000, is(true));
+        assertThat("incorrect result", result(c.get("big1")), is(big));
+
+        // only the off heap part of the cache is over its limit
+        c.put("big3", state("big3", big));
+        assertThat("big2 not evicted", c.get("big2"), is(nullValue()));
+        assertThat("small evicted", result(c.get("small")), is("foo"));
+        assertThat("big1 evicted", result(c.get("big1")), is(big));
+        assertThat("incorrect result", result(c.get("big3")), is(big));
+
+        c.clear();
+        stats = c.getStats();
+        assertThat("incorrect size", stats.get("size"), is(0L));
+        assertThat("incorrect off heap", stats.get("off_heap_bytes"), is(0L));
+    }
+}
@@ -0,0 +1,75 @@
+package us.kbase.narrativejobservice.test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import us.kbase.common.service.ServerException;
+import us.kbase.narrativejobservice.sdkjobs.JobAccessCache;
+
+public class JobAccessCacheTest {
+
+    @Test
+    public void cachesGrantsAndDenials() throws Exception {
+        final JobAccessCache cache = new JobAccessCache(10, 60000, 60000);
+        final AtomicInteger calls = new AtomicInteger();
+        cache.checkAccess("u", "j1", () -> calls.incrementAndGet());
+        cache.checkAccess("u", "j1", () -> calls.incrementAndGet());
+        assertThat("incorrect UJS calls", calls.get(), is(1));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.checkAccess("u2", "j1", () -> {
+                    calls.incrementAndGet();
+                    throw new ServerException("no access", -32500, "Error");
+                });
+                fail("expected exception");
+            } catch (ServerException e) {
+                assertThat("incorrect message", e.getMessage(), is("no access"));
+            }
+        }
+        assertThat("incorrect UJS calls", calls.get(), is(2));
+
+        cache.grant("u3", "j2");
+        cache.checkAccess("u3", "j2", () -> fail("granted access was not cached"));
+
+        assertThat("incorrect hits", cache.getStats().get("hits"), is(3L));
+        assertThat("incorrect misses", cache.getStats().get("misses"), is(2L));
+        assertThat("incorrect size", cache.getStats().get("size"), is(3L));
+    }
+
+    @Test
+    public void evictsAndExpires() throws Exception {
+        final JobAccessCache cache = new JobAccessCache(2, 60000, 0);
+        final AtomicInteger calls = new AtomicInteger();
+        cache.grant("u", "j1");
+        cache.grant("u", "j2");
+        cache.checkAccess("u", "j1", () -> calls.incrementAndGet());
+        cache.grant("u", "j3"); // evicts j2, the least recently used
+        cache.checkAccess("u", "j2", () -> calls.incrementAndGet());
+        assertThat("incorrect UJS calls", calls.get(), is(1));
+
+        // no negative caching
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.checkAccess("u", "j4", () -> {
+                    calls.incrementAndGet();
+                    throw new ServerException("no access", -32500, "Error");
+                });
+                fail("expected exception");
+            } catch (ServerException e) {
+                // expected
+            }
+        }
+        assertThat("incorrect UJS calls", calls.get(), is(3));
+
+        final JobAccessCache noCache = new JobAccessCache(2, 0, 0);
+        noCache.grant("u", "j1");
+        noCache.checkAccess("u", "j1", () -> calls.incrementAndGet());
+        assertThat("incorrect UJS calls", calls.get(), is(4));
+    }
+}
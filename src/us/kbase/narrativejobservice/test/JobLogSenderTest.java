@@ -0,0 +1,157 @@
+package us.kbase.narrativejobservice.test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import us.kbase.narrativejobservice.LogLine;
+import us.kbase.narrativejobservice.sdkjobs.JobLogSender;
+import us.kbase.narrativejobservice.sdkjobs.JobLogSpool;
+
+public class JobLogSenderTest {
+
+    private static LogLine line(final int i) {
+        return new LogLine().withLine("line " + i).withIsError(0L);
+    }
+
+    private static void checkLines(final List<LogLine> got, final int count) {
+        assertThat("incorrect line count", got.size(), is(count));
+        for (int i = 0; i < count; i++) {
+            assertThat("incorrect line", got.get(i).getLine(), is("line " + i));
+        }
+    }
+
+    @Test
+    public void slowSinkDoesntBlockAdd() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<LogLine> sent = Collections.synchronizedList(new ArrayList<LogLine>());
+        final JobLogSender s = new JobLogSender(lines -> {
+            release.await();
+            sent.addAll(lines);
+        }, 10, 1000, 1000000);
+        s.start();
+        s.add(line(0));
+        Thread.sleep(100);
+        // the flusher is stuck sending the first line
+        final long start = System.nanoTime();
+        for (int i = 1; i < 100000; i++) {
+            s.add(line(i));
+        }
+        final long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("adding took too long: " + elapsedMs, elapsedMs < 5000);
+        release.countDown();
+        s.close();
+        checkLines(sent, 100000);
+    }
+
+    @Test
+    public void sendOnDelayAndThreshold() throws Exception {
+        final List<Integer> batches = Collections.synchronizedList(new ArrayList<Integer>());
+        final JobLogSender s = new JobLogSender(
+                lines -> batches.add(lines.size()), 60000, 1000, 1000000);
+        s.start();
+        for (int i = 0; i < 99; i++) {
+            s.add(line(i));
+        }
+        Thread.sleep(200);
+        assertThat("sent early", batches.size(), is(0));
+        s.add(line(99));
+        final long start = System.currentTimeMillis();
+        while (batches.isEmpty() && System.currentTimeMillis() - start < 5000) {
+            Thread.sleep(10);
+        }
+        assertThat("incorrect batches", batches, is((List<Integer>) new ArrayList<>(
+                Collections.singletonList(100))));
+        s.close();
+
+        final List<LogLine> sent = Collections.synchronizedList(new ArrayList<LogLine>());
+        final JobLogSender s2 = new JobLogSender(lines -> sent.addAll(lines), 50, 1000, 1000000);
+        s2.start();
+        s2.add(line(0));
+        Thread.sleep(500);
+        checkLines(sent, 1);
+        s2.close();
+    }
+
+    @Test
+    public void retryAndAdapt() throws Exception {
+        final AtomicBoolean fail = new AtomicBoolean(true);
+        final List<LogLine> sent = new ArrayList<>();
+        final JobLogSender s = new JobLogSender(lines -> {
+            if (fail.get()) {
+                throw new Exception("NJS is down");
+            }
+            Thread.sleep(1100);
+            sent.addAll(lines);
+        }, 60000, 250, 1000000);
+        for (int i = 0; i < 3; i++) {
+            s.add(line(i));
+        }
+        assertThat("flushed", s.flush(), is(false));
+        s.add(line(3));
+        fail.set(false);
+        assertThat("flushed", s.flush(), is(true));
+        // the failed batch is sent first, then the new line
+        checkLines(sent, 4);
+        // two slow sends raise the send threshold from 100 up to the batch size
+        assertThat("incorrect threshold", s.getFlushLines(), is(250));
+        s.close();
+    }
+
+    @Test
+    public void spoolDuringOutage() throws Exception {
+        final File dir = TesterUtils.prepareWorkDir(new File("temp_files"), "job_log_spool");
+        final AtomicBoolean fail = new AtomicBoolean(true);
+        final List<LogLine> sent = new ArrayList<>();
+        final JobLogSender s = new JobLogSender(lines -> {
+            if (fail.get()) {
+                throw new Exception("NJS is down");
+            }
+            sent.addAll(lines);
+        }, 60000, 100, 1000000, 150, 1000000);
+        s.setSpool(new JobLogSpool(dir));
+        for (int i = 0; i < 50; i++) {
+            s.add(line(i));
+        }
+        // the first batch fails and is held in memory, newer lines go to disk
+        assertThat("flushed", s.flush(), is(false));
+        for (int i = 50; i < 1000; i++) {
+            s.add(line(i));
+        }
+        assertTrue("too many queued lines: " + s.getQueuedLines(), s.getQueuedLines() < 150);
+        final File spoolFile = new File(dir, JobLogSpool.SPOOL_FILE);
+        assertTrue("no spool", spoolFile.length() > 0);
+        fail.set(false);
+        assertThat("flushed", s.flush(), is(true));
+        checkLines(sent, 1000);
+        assertThat("spool not truncated", spoolFile.length(), is(0L));
+
+        // lines that couldn't be sent on close are replayed by a new sender
+        sent.clear();
+        fail.set(true);
+        for (int i = 0; i < 10; i++) {
+            s.add(line(i));
+        }
+        assertThat("flushed", s.flush(), is(false));
+        for (int i = 10; i < 300; i++) {
+            s.add(line(i));
+        }
+        assertThat("closed", s.close(), is(false));
+        fail.set(false);
+        final JobLogSender s2 = new JobLogSender(lines -> sent.addAll(lines));
+        s2.setSpool(new JobLogSpool(dir));
+        s2.add(line(300));
+        assertThat("closed", s2.close(), is(true));
+        checkLines(sent, 301);
+    }
+}
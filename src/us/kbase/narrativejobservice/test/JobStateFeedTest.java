@@ -0,0 +1,133 @@
+package us.kbase.narrativejobservice.test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+import us.kbase.narrativejobservice.db.ExecTaskEvent;
+import us.kbase.narrativejobservice.db.ExecTaskState;
+import us.kbase.narrativejobservice.sdkjobs.ErrorLogger;
+import us.kbase.narrativejobservice.sdkjobs.JobStateFeed;
+
+public class JobStateFeedTest {
+
+    private static ExecTaskEvent event(final String id, final String jobId, final Long wsid) {
+        return new ExecTaskEvent(id, jobId, wsid, ExecTaskState.STARTED, "in-progress", 1L);
+    }
+
+    @Test
+    public void eventsGoToMatchingSubscriptions() throws Exception {
+        final JobStateFeed feed = new JobStateFeed(10, 10, ErrorLogger.STDERR);
+        final JobStateFeed.Subscription jobs = feed.subscribe(
+                new HashSet<>(Arrays.asList("j1", "j2")), null);
+        final JobStateFeed.Subscription ws = feed.subscribe(Collections.emptySet(), 7L);
+
+        feed.publish(event("1", "j1", 7L));
+        feed.publish(event("2", "j3", 7L));
+        feed.publish(event("3", "j4", 8L));
+
+        assertThat("incorrect event", jobs.poll(0).getId(), is("1"));
+        assertThat("incorrect event", jobs.poll(0), nullValue());
+        assertThat("incorrect event", ws.poll(0).getId(), is("1"));
+        assertThat("incorrect event", ws.poll(0).getId(), is("2"));
+        assertThat("incorrect event", ws.poll(0), nullValue());
+
+        feed.unsubscribe(jobs);
+        feed.publish(event("4", "j1", null));
+        assertThat("incorrect event", jobs.poll(0), nullValue());
+        assertThat("incorrect count", feed.getSubscriberCount(), is(1));
+        feed.close(1000);
+    }
+
+    @Test
+    public void slowSubscriberOverflows() throws Exception {
+        final JobStateFeed feed = new JobStateFeed(10, 2, ErrorLogger.STDERR);
+        final JobStateFeed.Subscription s = feed.subscribe(Collections.singleton("j1"), null);
+        feed.publish(event("1", "j1", null));
+        feed.publish(event("2", "j1", null));
+        assertThat("incorrect overflow", s.isOverflowed(), is(false));
+        feed.publish(event("3", "j1", null));
+        assertThat("incorrect overflow", s.isOverflowed(), is(true));
+        assertThat("incorrect event count", s.drain().size(), is(2));
+        feed.close(1000);
+    }
+
+    @Test
+    public void maxSubscribers() throws Exception {
+        final JobStateFeed feed = new JobStateFeed(1, 10, ErrorLogger.STDERR);
+        final JobStateFeed.Subscription s = feed.subscribe(Collections.singleton("j1"), null);
+        try {
+            feed.subscribe(Collections.singleton("j2"), null);
+            fail("expected exception");
+        } catch (IllegalStateException e) {
+            assertThat("incorrect message", e.getMessage(),
+                    is("Too many job state subscriptions, please try again later"));
+        }
+        feed.unsubscribe(s);
+        feed.subscribe(Collections.singleton("j2"), null);
+        feed.close(1000);
+    }
+
+    @Test
+    public void tailedEventsArePublished() throws Exception {
+        final JobStateFeed feed = new JobStateFeed(10, 10, ErrorLogger.STDERR);
+        final JobStateFeed.Subscription s = feed.subscribe(Collections.singleton("j1"), null);
+        final CountDownLatch done = new CountDownLatch(1);
+        feed.startTailing(new JobStateFeed.EventLog() {
+
+            @Override
+            public String getLastEventId() {
+                return "0";
+            }
+
+            @Override
+            public String tail(
+                    final String afterId,
+                    final Consumer<ExecTaskEvent> consumer,
+                    final BooleanSupplier running) {
+                assertThat("incorrect start", afterId, is("0"));
+                consumer.accept(event("1", "j1", null));
+                done.countDown();
+                while (running.getAsBoolean()) {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+                return "1";
+            }
+
+            @Override
+            public long getGapCount() {
+                return 0;
+            }
+        });
+        assertThat("not tailed", done.await(5, TimeUnit.SECONDS), is(true));
+        assertThat("incorrect event", s.poll(1000).getId(), is("1"));
+        assertThat("incorrect overflow", s.isOverflowed(), is(false));
+        feed.close(5000);
+    }
+
+    @Test
+    public void lostEventsMarkSubscriptionsOverflowed() throws Exception {
+        final JobStateFeed feed = new JobStateFeed(10, 10, ErrorLogger.STDERR);
+        final JobStateFeed.Subscription s1 = feed.subscribe(Collections.singleton("j1"), null);
+        final JobStateFeed.Subscription s2 = feed.subscribe(Collections.emptySet(), 7L);
+        feed.markEventsLost();
+        assertThat("incorrect overflow", s1.isOverflowed(), is(true));
+        assertThat("incorrect overflow", s2.isOverflowed(), is(true));
+        feed.close(1000);
+    }
+}
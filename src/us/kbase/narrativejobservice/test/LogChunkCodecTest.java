@@ -0,0 +1,167 @@
+package us.kbase.narrativejobservice.test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.bson.BasicBSONEncoder;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+
+import us.kbase.narrativejobservice.db.ExecEngineMongoDb;
+import us.kbase.narrativejobservice.db.ExecLogLine;
+import us.kbase.narrativejobservice.db.LogChunkCodec;
+
+public class LogChunkCodecTest {
+
+    private static ExecLogLine line(final int pos, final String text, final boolean isError) {
+        final ExecLogLine l = new ExecLogLine();
+        l.setLinePos(pos);
+        l.setLine(text);
+        l.setIsError(isError);
+        return l;
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        final List<ExecLogLine> lines = new ArrayList<>();
+        lines.add(line(17, "first", false));
+        lines.add(line(18, "", true));
+        lines.add(line(19, "\u00fcn\u00efc\u00f8d\u00e9 \u2603 line", false));
+        lines.add(line(20, null, true));
+        final byte[] packed = LogChunkCodec.encode(lines);
+
+        final List<ExecLogLine> got = LogChunkCodec.decode(packed, 0, 100);
+        assertThat("incorrect size", got.size(), is(4));
+        for (int i = 0; i < 4; i++) {
+            assertThat("incorrect pos", got.get(i).getLinePos(), is(17 + i));
+            assertThat("incorrect error", got.get(i).getIsError(), is(lines.get(i).getIsError()));
+        }
+        assertThat("incorrect line", got.get(2).getLine(), is("\u00fcn\u00efc\u00f8d\u00e9 \u2603 line"));
+        assertThat("incorrect line", got.get(3).getLine(), is(""));
+
+        final List<ExecLogLine> range = LogChunkCodec.decode(packed, 18, 20);
+        assertThat("incorrect size", range.size(), is(2));
+        assertThat("incorrect pos", range.get(0).getLinePos(), is(18));
+        assertThat("incorrect line", range.get(1).getLine(), is("\u00fcn\u00efc\u00f8d\u00e9 \u2603 line"));
+        assertThat("incorrect size", LogChunkCodec.decode(packed, 21, 30).size(), is(0));
+    }
+
+    @Test
+    public void badInput() throws Exception {
+        try {
+            LogChunkCodec.encode(new ArrayList<ExecLogLine>());
+            fail("expected exception");
+        } catch (IllegalArgumentException e) {
+            assertThat("incorrect message", e.getMessage(), is("No lines to encode"));
+        }
+        final List<ExecLogLine> lines = new ArrayList<>();
+        lines.add(line(1, "a", false));
+        lines.add(line(3, "b", false));
+        try {
+            LogChunkCodec.encode(lines);
+            fail("expected exception");
+        } catch (IllegalArgumentException e) {
+            assertThat("incorrect message", e.getMessage(),
+                    is("Log line positions must be consecutive, expected 2, got 3"));
+        }
+        try {
+            LogChunkCodec.decode(new byte[] {1, 2, 3}, 0, 1);
+            fail("expected exception");
+        } catch (IllegalArgumentException e) {
+            assertThat("incorrect message", e.getMessage(), is("Corrupt packed log chunk"));
+        }
+    }
+
+    /* Assembler and aligner style output: progress lines with counters, timestamps and
+     * paths, the occasional warning and a few long lines.
+     */
+    private static List<ExecLogLine> corpus(final int count) {
+        final Random r = new Random(42);
+        final String[] stages = {"Reading reads", "Building k-mer index", "Assembling contigs",
+                "Mapping reads", "Writing output"};
+        final List<ExecLogLine> ret = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final String text;
+            final int kind = r.nextInt(20);
+            if (kind == 0) {
+                text = "WARNING: low coverage in contig NODE_" + r.nextInt(100000) +
+                        "_length_" + r.nextInt(50000) + "_cov_" + r.nextDouble();
+            } else if (kind == 1) {
+                final StringBuilder sb = new StringBuilder("@SQ\tSN:");
+                for (int j = 0; j < 300; j++) {
+                    sb.append("ACGT".charAt(r.nextInt(4)));
+                }
+                text = sb.toString();
+            } else {
+                text = String.format("[2019-04-%02d %02d:%02d:%02d] %s: processed %d of %d " +
+                        "reads (%.2f%%) /kb/module/work/tmp/reads_%d.fastq",
+                        1 + r.nextInt(28), r.nextInt(24), r.nextInt(60), r.nextInt(60),
+                        stages[r.nextInt(stages.length)], i * 1000, count * 1000,
+                        100.0 * i / count, r.nextInt(10));
+            }
+            ret.add(line(i, text, kind == 0));
+        }
+        return ret;
+    }
+
+    @Test
+    public void sizeAndThroughput() throws Exception {
+        final int size = ExecEngineMongoDb.LOG_CHUNK_SIZE;
+        final int chunkCount = 50;
+        final List<List<ExecLogLine>> chunks = new ArrayList<>();
+        final List<ExecLogLine> all = corpus(size * chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            chunks.add(all.subList(i * size, (i + 1) * size));
+        }
+        long textBytes = 0;
+        for (final ExecLogLine l: all) {
+            textBytes += l.getLine().getBytes("UTF-8").length;
+        }
+        // the current format, one subdocument per line
+        final BasicBSONEncoder bson = new BasicBSONEncoder();
+        long bsonBytes = 0;
+        long t = System.nanoTime();
+        for (final List<ExecLogLine> chunk: chunks) {
+            final List<BasicDBObject> lines = new ArrayList<>();
+            for (final ExecLogLine l: chunk) {
+                lines.add(new BasicDBObject("line_pos", l.getLinePos())
+                        .append("line", l.getLine()).append("is_error", l.getIsError()));
+            }
+            bsonBytes += bson.encode(new BasicDBObject("lines", lines)).length;
+        }
+        final long bsonNs = System.nanoTime() - t;
+
+        long packedBytes = 0;
+        final List<byte[]> packed = new ArrayList<>();
+        t = System.nanoTime();
+        for (final List<ExecLogLine> chunk: chunks) {
+            final byte[] p = LogChunkCodec.encode(chunk);
+            packed.add(p);
+            packedBytes += p.length;
+        }
+        final long encodeNs = System.nanoTime() - t;
+        t = System.nanoTime();
+        int decoded = 0;
+        for (final byte[] p: packed) {
+            decoded += LogChunkCodec.decode(p, 0, Integer.MAX_VALUE).size();
+        }
+        final long decodeNs = System.nanoTime() - t;
+        assertThat("incorrect decoded count", decoded, is(all.size()));
+
+        System.out.println(String.format("LogChunkCodec: %d lines, %d text bytes", all.size(),
+                textBytes));
+        System.out.println(String.format("  BSON subdocuments: %d bytes (%.2fx text), " +
+                "encoded at %.1f MB/s", bsonBytes, (double) bsonBytes / textBytes,
+                textBytes / (bsonNs / 1e3)));
+        System.out.println(String.format("  packed %s: %d bytes (%.2fx text), " +
+                "encoded at %.1f MB/s, decoded at %.1f MB/s", LogChunkCodec.ENCODING,
+                packedBytes, (double) packedBytes / textBytes, textBytes / (encodeNs / 1e3),
+                textBytes / (decodeNs / 1e3)));
+    }
+}
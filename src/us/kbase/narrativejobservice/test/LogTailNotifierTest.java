@@ -0,0 +1,60 @@
+package us.kbase.narrativejobservice.test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import us.kbase.narrativejobservice.sdkjobs.LogTailNotifier;
+
+public class LogTailNotifierTest {
+
+    @Test
+    public void wakeOnNotify() throws Exception {
+        final LogTailNotifier n = new LogTailNotifier(60000, 60000, 10);
+        final AtomicInteger count = new AtomicInteger(5);
+        final Thread writer = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            count.set(7);
+            n.notifyLines("job");
+        });
+        final long start = System.currentTimeMillis();
+        writer.start();
+        assertThat("incorrect count", n.awaitLines("job", 5, 30000, count::get), is(7));
+        final long elapsed = System.currentTimeMillis() - start;
+        assertTrue("waited too long: " + elapsed, elapsed < 5000);
+        assertThat("waiters left", n.getWaiterCount(), is(0));
+        writer.join();
+    }
+
+    @Test
+    public void pollAndTimeout() throws Exception {
+        final LogTailNotifier n = new LogTailNotifier(300, 50, 10);
+        final AtomicInteger reads = new AtomicInteger();
+        // lines already there
+        assertThat("incorrect count", n.awaitLines("job", 2, 10000, () -> 3), is(3));
+        // lines written by another server are seen by polling
+        assertThat("incorrect count", n.awaitLines("job", 2, 10000,
+                () -> reads.incrementAndGet() < 3 ? 2 : 4), is(4));
+        // wait is capped at the maximum
+        final long start = System.currentTimeMillis();
+        assertThat("incorrect count", n.awaitLines("job", 2, 100000, () -> 2), is(2));
+        final long elapsed = System.currentTimeMillis() - start;
+        assertTrue("incorrect wait: " + elapsed, elapsed >= 300 && elapsed < 5000);
+    }
+
+    @Test
+    public void maxWaiters() throws Exception {
+        final LogTailNotifier n = new LogTailNotifier(60000, 60000, 0);
+        final long start = System.currentTimeMillis();
+        assertThat("incorrect count", n.awaitLines("job", 2, 60000, () -> 2), is(2));
+        assertTrue("waited", System.currentTimeMillis() - start < 5000);
+    }
+}
@@ -0,0 +1,96 @@
+package us.kbase.narrativejobservice.test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import us.kbase.narrativejobservice.db.ExecSubmission;
+import us.kbase.narrativejobservice.sdkjobs.ErrorLogger;
+import us.kbase.narrativejobservice.sdkjobs.SimulatedScheduler;
+
+public class SimulatedSchedulerTest {
+
+    private static class Recorder implements SimulatedScheduler.JobRunner {
+        private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch finished;
+
+        private Recorder(final int jobs) {
+            finished = new CountDownLatch(jobs);
+        }
+
+        @Override
+        public void started(final ExecSubmission job) {
+            events.add("start " + job.getUjsJobId());
+        }
+
+        @Override
+        public void finished(final ExecSubmission job, final String error) {
+            events.add("finish " + job.getUjsJobId() + " " + error);
+            finished.countDown();
+        }
+    }
+
+    private static ExecSubmission job(final String id) {
+        final ExecSubmission s = new ExecSubmission();
+        s.setUjsJobId(id);
+        s.setUser("someuser");
+        return s;
+    }
+
+    @Test
+    public void jobsWaitForSlots() throws Exception {
+        final Recorder rec = new Recorder(2);
+        final SimulatedScheduler sched = new SimulatedScheduler(1, 0, 0, 0, 200,
+                SimulatedScheduler.RunTimeModel.FIXED, 0, 1, rec, ErrorLogger.STDERR);
+        try {
+            final List<String> ids = sched.submit(Arrays.asList(job("j1"), job("j2")));
+            assertThat("incorrect ids", ids, is(Arrays.asList("sim.1", "sim.2")));
+            Thread.sleep(100);
+            assertThat("incorrect states", sched.getSnapshot(),
+                    is(ImmutableMap.of("j1", "in-progress", "j2", "queued")));
+            assertThat("incorrect states", sched.getStates(Arrays.asList("j2", "j3")),
+                    is(ImmutableMap.of("j2", "queued")));
+            assertThat("incorrect state", sched.getJobStatus("j1", "sim.1").getState(),
+                    is("in-progress"));
+            assertThat("job not active", sched.getJobStatus("j2", "sim.2").isActive(),
+                    is(true));
+            assertThat("unknown job found", sched.getJobStatus("j3", null), is(nullValue()));
+            assertThat("jobs didn't finish", rec.finished.await(5, TimeUnit.SECONDS), is(true));
+            assertThat("incorrect events", rec.events, is(Arrays.asList(
+                    "start j1", "finish j1 null", "start j2", "finish j2 null")));
+            assertThat("finished jobs kept", sched.getSnapshot().isEmpty(), is(true));
+        } finally {
+            sched.close();
+        }
+    }
+
+    @Test
+    public void cancelAndFail() throws Exception {
+        final Recorder rec = new Recorder(1);
+        final SimulatedScheduler sched = new SimulatedScheduler(1, 0, 0, 0, 200,
+                SimulatedScheduler.RunTimeModel.FIXED, 1, 1, rec, ErrorLogger.STDERR);
+        try {
+            sched.submit(Arrays.asList(job("j1"), job("j2"), job("j3")));
+            Thread.sleep(100);
+            sched.cancel(Arrays.asList("j1", "j2"));
+            assertThat("job didn't finish", rec.finished.await(5, TimeUnit.SECONDS), is(true));
+            assertThat("incorrect events", rec.events, is(Arrays.asList(
+                    "start j1", "start j3", "finish j3 Simulated job failure")));
+            assertThat("incorrect stats", sched.getStats(),
+                    is(ImmutableMap.of("queued", 0L, "running", 0L)));
+        } finally {
+            sched.close();
+        }
+    }
+}
@@ -75,7 +75,9 @@ public class TesterUtils {
     
     public static void destroyDB(final DB db) {
         for (String name: db.getCollectionNames()) {
-            if (!name.startsWith("system.")) {
+            // documents can't be removed from capped collections, so tests using them
+            // must not expect them to be empty
+            if (!name.startsWith("system.") && !db.getCollection(name).isCapped()) {
                 // dropping collection also drops indexes
                 db.getCollection(name).remove(new BasicDBObject());
             }
@@ -0,0 +1,94 @@
+package us.kbase.narrativejobservice.test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import us.kbase.common.service.ServerException;
+import us.kbase.narrativejobservice.sdkjobs.UjsStateUpdater;
+
+public class UjsStateUpdaterTest {
+
+    @Test
+    public void updatesForAJobStayInOrder() throws Exception {
+        final UjsStateUpdater u = new UjsStateUpdater(4, 1, 0, null);
+        final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+        for (int i = 0; i < 100; i++) {
+            final int n = i;
+            u.submit("job", () -> {
+                if (n % 10 == 0) {
+                    Thread.sleep(5);
+                }
+                sent.add("update " + n);
+            });
+        }
+        u.close(10000);
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add("update " + i);
+        }
+        assertThat("incorrect updates", sent, is(expected));
+    }
+
+    @Test
+    public void retryUnreachableUjs() throws Exception {
+        final UjsStateUpdater u = new UjsStateUpdater(1, 3, 10, null);
+        final AtomicInteger attempts = new AtomicInteger();
+        final Future<Void> ok = u.submit("job", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IOException("UJS is down");
+            }
+        });
+        ok.get();
+        assertThat("incorrect attempts", attempts.get(), is(3));
+
+        attempts.set(0);
+        final Future<Void> down = u.submit("job", () -> {
+            attempts.incrementAndGet();
+            throw new IOException("UJS is down");
+        });
+        failUpdate(down, IOException.class);
+        assertThat("incorrect attempts", attempts.get(), is(3));
+        u.close(10000);
+    }
+
+    @Test
+    public void noRetryWhenRejected() throws Exception {
+        final UjsStateUpdater u = new UjsStateUpdater(1, 3, 10, null);
+        final AtomicInteger attempts = new AtomicInteger();
+        final Future<Void> rejected = u.submit("job", () -> {
+            attempts.incrementAndGet();
+            throw new ServerException("not allowed", -32500, "Server error", null);
+        });
+        failUpdate(rejected, ServerException.class);
+        assertThat("incorrect attempts", attempts.get(), is(1));
+
+        // later updates to the job are still sent
+        final List<String> sent = new ArrayList<>();
+        u.submit("job", () -> sent.add("next")).get();
+        assertThat("incorrect updates", sent, is(Arrays.asList("next")));
+        u.close(10000);
+    }
+
+    private static void failUpdate(final Future<Void> update, final Class<?> expected)
+            throws Exception {
+        try {
+            update.get();
+            fail("expected exception");
+        } catch (ExecutionException e) {
+            assertThat("incorrect exception", e.getCause().getClass().equals(expected),
+                    is(true));
+        }
+    }
+}
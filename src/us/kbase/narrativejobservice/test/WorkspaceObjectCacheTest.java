@@ -0,0 +1,122 @@
+package us.kbase.narrativejobservice.test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import us.kbase.narrativejobservice.sdkjobs.WorkspaceObjectCache;
+
+public class WorkspaceObjectCacheTest {
+
+    private static class FakeWorkspace implements WorkspaceObjectCache.Lookup {
+        private final List<List<String>> calls = Collections.synchronizedList(
+                new ArrayList<>());
+        private CountDownLatch block = null;
+        private boolean down = false;
+
+        @Override
+        public List<Boolean> lookup(final List<String> refs) throws IOException {
+            calls.add(refs);
+            if (block != null) {
+                try {
+                    block.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (down) {
+                throw new IOException("Connection refused");
+            }
+            final List<Boolean> ret = new ArrayList<>();
+            for (final String ref : refs) {
+                ret.add(!ref.startsWith("private"));
+            }
+            return ret;
+        }
+    }
+
+    @Test
+    public void onlyAccessibleObjectsCached() throws Exception {
+        final WorkspaceObjectCache cache = new WorkspaceObjectCache(100, 60000, 60000);
+        final FakeWorkspace ws = new FakeWorkspace();
+        final Set<String> res = cache.getInaccessible("user1",
+                Arrays.asList("1/2", "private/3", "1/2"), ws);
+        assertThat("incorrect inaccessible", res.toString(), is("[private/3]"));
+        cache.getInaccessible("user1", Arrays.asList("1/2", "private/3"), ws);
+        // access is cached per user
+        cache.getInaccessible("user2", Arrays.asList("1/2"), ws);
+        assertThat("incorrect calls", ws.calls.toString(),
+                is("[[1/2, private/3], [private/3], [1/2]]"));
+        assertThat("incorrect hits", cache.getStats().get("hits"), is(1L));
+        assertThat("incorrect size", cache.getStats().get("size"), is(2L));
+    }
+
+    @Test
+    public void versionedRefsCachedLonger() throws Exception {
+        final WorkspaceObjectCache cache = new WorkspaceObjectCache(100, 0, 60000);
+        final FakeWorkspace ws = new FakeWorkspace();
+        final List<String> refs = Arrays.asList("1/2/3", "1/2", "ws/obj/4;5/6/7", "1/2/x");
+        cache.getInaccessible("user1", refs, ws);
+        cache.getInaccessible("user1", refs, ws);
+        assertThat("incorrect calls", ws.calls.toString(),
+                is("[[1/2/3, 1/2, ws/obj/4;5/6/7, 1/2/x], [1/2, 1/2/x]]"));
+    }
+
+    @Test
+    public void concurrentLookupsShared() throws Exception {
+        final WorkspaceObjectCache cache = new WorkspaceObjectCache(100, 60000, 60000);
+        final FakeWorkspace ws = new FakeWorkspace();
+        ws.block = new CountDownLatch(1);
+        final ExecutorService exe = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Set<String>> first = exe.submit(() -> cache.getInaccessible(
+                    "user1", Arrays.asList("1/2", "private/3"), ws));
+            while (ws.calls.isEmpty()) {
+                Thread.sleep(10);
+            }
+            final Future<Set<String>> second = exe.submit(() -> cache.getInaccessible(
+                    "user1", Arrays.asList("private/3", "1/4"), ws));
+            while (cache.getStats().get("shared") < 1) {
+                Thread.sleep(10);
+            }
+            ws.block.countDown();
+            assertThat("incorrect inaccessible", first.get().toString(), is("[private/3]"));
+            assertThat("incorrect inaccessible", second.get().toString(), is("[private/3]"));
+            assertThat("incorrect calls", ws.calls.toString(),
+                    is("[[1/2, private/3], [1/4]]"));
+        } finally {
+            exe.shutdownNow();
+        }
+    }
+
+    @Test
+    public void errorsNotCached() throws Exception {
+        final WorkspaceObjectCache cache = new WorkspaceObjectCache(100, 60000, 60000);
+        final FakeWorkspace ws = new FakeWorkspace();
+        ws.down = true;
+        try {
+            cache.getInaccessible("user1", Arrays.asList("1/2"), ws);
+            fail("expected exception");
+        } catch (IOException e) {
+            assertThat("incorrect message", e.getMessage(), is("Connection refused"));
+        }
+        ws.down = false;
+        assertThat("incorrect inaccessible", cache.getInaccessible(
+                "user1", Arrays.asList("1/2"), ws).isEmpty(), is(true));
+        assertThat("incorrect calls", ws.calls.size(), is(2));
+    }
+}